@@ -0,0 +1,132 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.analyser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nz.org.venice.bench.Benchmark;
+import nz.org.venice.parser.EvaluationException;
+import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
+import nz.org.venice.parser.ExpressionException;
+import nz.org.venice.parser.ImplicitVariables;
+import nz.org.venice.parser.Parser;
+import nz.org.venice.parser.Variables;
+import nz.org.venice.portfolio.Portfolio;
+import nz.org.venice.quote.EODQuoteBundle;
+import nz.org.venice.quote.MissingQuoteException;
+import nz.org.venice.quote.QuoteBenchmarks;
+import nz.org.venice.util.Money;
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Benchmarks of paper trading and ordering the symbols traded each day.
+ * The expression cache is turned off while paper trading, so each
+ * paper trade evaluates the rules.
+ *
+ * @author Andrew Leppard
+ * @see nz.org.venice.bench.BenchmarkRunner
+ */
+public class AnalyserBenchmarks {
+
+    // Moving average cross over rules
+    private final static String BUY_RULE = "avg(close, 10, 0) > avg(close, 30, 0)";
+    private final static String SELL_RULE = "avg(close, 10, 0) < avg(close, 30, 0)";
+
+    // Number of days before the first trading day used by the rules
+    private final static int HISTORY = 60;
+
+    private AnalyserBenchmarks() {
+        // nothing to do
+    }
+
+    /**
+     * Create the analyser benchmarks. The current quote source must be a
+     * {@link nz.org.venice.quote.SyntheticQuoteSource}.
+     *
+     * @return list of {@link Benchmark}s
+     * @exception ExpressionException if a rule could not be parsed
+     * @exception MissingQuoteException if the quotes could not be loaded
+     * @exception CloneNotSupportedException if the variables could not be copied
+     */
+    public static List create()
+        throws ExpressionException, MissingQuoteException, CloneNotSupportedException {
+
+        List benchmarks = new ArrayList();
+        final EODQuoteBundle quoteBundle = QuoteBenchmarks.createQuoteBundle();
+        final int firstOffset = quoteBundle.getFirstOffset() + HISTORY;
+        final int lastOffset = quoteBundle.getLastOffset();
+        final TradingDate startDate = quoteBundle.offsetToDate(firstOffset);
+        final TradingDate endDate = quoteBundle.offsetToDate(lastOffset);
+        int days = lastOffset - firstOffset + 1;
+
+        final Variables variables = new Variables();
+        ImplicitVariables.getInstance().setup(variables, true);
+
+        final Expression buy = Parser.parse((Variables)variables.clone(), BUY_RULE);
+        final Expression sell = Parser.parse((Variables)variables.clone(), SELL_RULE);
+
+        benchmarks.add(new Benchmark("analyser.PaperTrade.paperTrade", days) {
+                public double run()
+                    throws EvaluationException, CloneNotSupportedException {
+
+                    OrderCache orderCache =
+                        new OrderCache(quoteBundle,
+                                       new OrderComparator(quoteBundle,
+                                                           OrderComparator.NO_ORDER));
+
+                    ExpressionCache.getInstance().setEnabled(false);
+
+                    try {
+                        Portfolio portfolio =
+                            PaperTrade.paperTrade("Benchmark", quoteBundle,
+                                                  (Variables)variables.clone(), orderCache,
+                                                  startDate, endDate, buy, sell,
+                                                  new Money(10000), new Money(2500),
+                                                  new Money(10), "open", "open");
+
+                        return portfolio.countTransactions();
+                    }
+                    finally {
+                        ExpressionCache.getInstance().setEnabled(true);
+                    }
+                }
+            });
+
+        benchmarks.add(new Benchmark("analyser.OrderCache.getTodaySymbols", days) {
+                public double run() {
+                    // Use a new cache so the symbols are ordered each run
+                    OrderCache orderCache =
+                        new OrderCache(quoteBundle,
+                                       new OrderComparator(quoteBundle,
+                                                           OrderComparator.DAY_VOLUME_DECREASING));
+                    double sum = 0.0D;
+
+                    for(int offset = firstOffset; offset <= lastOffset; offset++)
+                        sum += orderCache.getTodaySymbols(offset).size();
+
+                    return sum;
+                }
+            });
+
+        return benchmarks;
+    }
+}
@@ -0,0 +1,77 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.bench;
+
+/**
+ * A single benchmark run by the {@link BenchmarkRunner}. Each call to
+ * {@link #run} performs a fixed number of operations, such as reading
+ * every quote in a bundle, so that the runner can report the time taken
+ * per operation.
+ *
+ * @author Andrew Leppard
+ * @see BenchmarkRunner
+ */
+public abstract class Benchmark {
+
+    // Name of benchmark in results
+    private String name;
+
+    // Number of operations performed by each run
+    private int operations;
+
+    /**
+     * Create a new benchmark.
+     *
+     * @param name       the name of the benchmark, e.g.
+     *                   <code>quote.EODQuoteCache.getQuote</code>
+     * @param operations the number of operations performed by each run
+     */
+    public Benchmark(String name, int operations) {
+        this.name = name;
+        this.operations = operations;
+    }
+
+    /**
+     * Return the name of the benchmark.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the number of operations performed by each run.
+     *
+     * @return number of operations
+     */
+    public int getOperations() {
+        return operations;
+    }
+
+    /**
+     * Perform the operations being measured. The result is only used to
+     * stop the Java VM optimising the work away.
+     *
+     * @return a result of the operations
+     * @exception Throwable if the operations failed
+     */
+    public abstract double run() throws Throwable;
+}
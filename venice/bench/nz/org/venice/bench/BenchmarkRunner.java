@@ -0,0 +1,147 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.bench;
+
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import nz.org.venice.analyser.AnalyserBenchmarks;
+import nz.org.venice.parser.ParserBenchmarks;
+import nz.org.venice.quote.QuoteBenchmarks;
+import nz.org.venice.quote.QuoteSourceManager;
+import nz.org.venice.quote.SyntheticQuoteSource;
+
+/**
+ * Run the performance benchmarks of the quote, parser and analyser
+ * packages and print the time taken by each operation. The benchmarks use
+ * a generated set of quotes, so they give the same results on any machine
+ * and don't need a database or network connection.
+ * <p>
+ * Each benchmark is run until the timings settle, then timed over
+ * several rounds. The results are written as tab separated values with a
+ * header line, so they can be compared between releases:
+ * <pre>
+ * benchmark	operations	best ns/op	median ns/op
+ * </pre>
+ *
+ * Usage:
+ * <pre>
+ *      java nz.org.venice.bench.BenchmarkRunner [results file] [benchmark prefix]
+ * </pre>
+ *
+ * @author Andrew Leppard
+ * @see Benchmark
+ */
+public class BenchmarkRunner {
+
+    // Size of the generated quote data
+    private final static int SYMBOLS = 100;
+    private final static int DAYS = 500;
+
+    private final static int WARM_UP_ROUNDS = 5;
+    private final static int ROUNDS = 10;
+
+    // Minimum time of each round in nanoseconds
+    private final static long ROUND_TIME = 100 * 1000 * 1000;
+
+    private BenchmarkRunner() {
+        // nothing to do
+    }
+
+    public static void main(String[] args) throws Throwable {
+        String resultsFile = (args.length > 0) ? args[0] : null;
+        String prefix = (args.length > 1) ? args[1] : "";
+
+        QuoteSourceManager.setSource(new SyntheticQuoteSource(SYMBOLS, DAYS));
+
+        List benchmarks = new ArrayList();
+        benchmarks.addAll(QuoteBenchmarks.create());
+        benchmarks.addAll(ParserBenchmarks.create());
+        benchmarks.addAll(AnalyserBenchmarks.create());
+
+        PrintWriter results = null;
+        if(resultsFile != null)
+            results = new PrintWriter(new FileWriter(resultsFile));
+
+        print(results, "benchmark\toperations\tbest ns/op\tmedian ns/op");
+
+        for(Iterator iterator = benchmarks.iterator(); iterator.hasNext();) {
+            Benchmark benchmark = (Benchmark)iterator.next();
+
+            if(benchmark.getName().startsWith(prefix)) {
+                double[] times = time(benchmark);
+
+                print(results, benchmark.getName() + "\t" +
+                      benchmark.getOperations() + "\t" +
+                      Math.round(times[0]) + "\t" +
+                      Math.round(times[times.length / 2]));
+            }
+        }
+
+        if(results != null)
+            results.close();
+
+        System.exit(0);
+    }
+
+    // Print the line to standard output and the results file
+    private static void print(PrintWriter results, String line) {
+        System.out.println(line);
+
+        if(results != null)
+            results.println(line);
+    }
+
+    // Return the sorted times taken in nanoseconds per operation of each round
+    private static double[] time(Benchmark benchmark) throws Throwable {
+        double[] times = new double[ROUNDS];
+        double sum = 0.0D;
+        int repeats = 1;
+
+        for(int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+
+            for(int repeat = 0; repeat < repeats; repeat++)
+                sum += benchmark.run();
+
+            long elapsed = System.nanoTime() - start;
+
+            if(round >= WARM_UP_ROUNDS)
+                times[round - WARM_UP_ROUNDS] =
+                    (double)elapsed / ((double)repeats * benchmark.getOperations());
+
+            // Run quick benchmarks enough times to be measured accurately
+            else if(elapsed < ROUND_TIME)
+                repeats = (int)Math.min(repeats * (ROUND_TIME / Math.max(elapsed, 1) + 1),
+                                        1000000);
+        }
+
+        // Stop the result being optimised away
+        if(sum == Double.MIN_VALUE)
+            System.out.println(sum);
+
+        Arrays.sort(times);
+        return times;
+    }
+}
@@ -0,0 +1,155 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nz.org.venice.bench.Benchmark;
+import nz.org.venice.quote.EODQuoteBundle;
+import nz.org.venice.quote.MissingQuoteException;
+import nz.org.venice.quote.QuoteBenchmarks;
+import nz.org.venice.quote.Symbol;
+import nz.org.venice.quote.SymbolFormatException;
+
+/**
+ * Benchmarks of parsing and evaluating expressions. Each indicator is
+ * evaluated by the tree walking interpreter, as compiled code and over
+ * the whole range of quotes at once. The expression cache is turned off
+ * while evaluating, so every evaluation does the work.
+ *
+ * @author Andrew Leppard
+ * @see nz.org.venice.bench.BenchmarkRunner
+ */
+public class ParserBenchmarks {
+
+    // Representative indicators and buy and sell rules
+    private final static String[] EXPRESSIONS = {
+        "close > open * 1.01",
+        "(close - open) / open > 0.02 and volume > 1000",
+        "close > open and lag(close, -1) < lag(open, -1) * 0.99",
+        "avg(close, 15, 0) > avg(close, 30, 0)",
+        "ema(close, 12, 0, 0.1) - ema(close, 26, 0, 0.1)",
+        "rsi(14, 0) < 30",
+        "macd(close, 0)",
+        "bol_upper(close, 20, -1)",
+        "sd(close, 20, 0)",
+        "momentum(close, 10, 0)",
+        "obv(20, 0, 50000)",
+        "min(low, 10, 0) > max(high, 10, -10)"
+    };
+
+    // Number of days before the first evaluated day used by the indicators
+    private final static int HISTORY = 60;
+
+    private ParserBenchmarks() {
+        // nothing to do
+    }
+
+    /**
+     * Create the parser benchmarks. The current quote source must be a
+     * {@link nz.org.venice.quote.SyntheticQuoteSource}.
+     *
+     * @return list of {@link Benchmark}s
+     * @exception ExpressionException if an expression could not be parsed
+     * @exception MissingQuoteException if the quotes could not be loaded
+     * @exception SymbolFormatException if the symbol is invalid
+     */
+    public static List create()
+        throws ExpressionException, MissingQuoteException, SymbolFormatException {
+
+        List benchmarks = new ArrayList();
+        final EODQuoteBundle quoteBundle = QuoteBenchmarks.createQuoteBundle();
+        final Symbol symbol = Symbol.find("AAA");
+        final int firstDay = quoteBundle.getFirstOffset() + HISTORY;
+        final int lastDay = quoteBundle.getLastOffset();
+        int days = lastDay - firstDay + 1;
+
+        benchmarks.add(new Benchmark("parser.Parser.parse", EXPRESSIONS.length) {
+                public double run() throws ExpressionException {
+                    double sum = 0.0D;
+
+                    for(int i = 0; i < EXPRESSIONS.length; i++)
+                        sum += Parser.parse(new Variables(), EXPRESSIONS[i]).size();
+
+                    return sum;
+                }
+            });
+
+        for(int i = 0; i < EXPRESSIONS.length; i++) {
+            final Expression expression = Parser.parse(new Variables(), EXPRESSIONS[i]);
+            final Expression compiled = ExpressionCompiler.compile(expression);
+
+            benchmarks.add(new Benchmark("parser.Expression.evaluate " + EXPRESSIONS[i],
+                                         days) {
+                    public double run() throws EvaluationException {
+                        return evaluate(expression, quoteBundle, symbol, firstDay, lastDay);
+                    }
+                });
+
+            benchmarks.add(new Benchmark("parser.CompiledExpression.evaluate " + EXPRESSIONS[i],
+                                         days) {
+                    public double run() throws EvaluationException {
+                        return evaluate(compiled, quoteBundle, symbol, firstDay, lastDay);
+                    }
+                });
+
+            benchmarks.add(new Benchmark("parser.Expression.evaluateSeries " + EXPRESSIONS[i],
+                                         days) {
+                    public double run() throws EvaluationException {
+                        ExpressionCache.getInstance().setEnabled(false);
+
+                        try {
+                            double[] results =
+                                expression.evaluateSeries(new Variables(), quoteBundle,
+                                                          symbol, firstDay, lastDay);
+                            return results[results.length - 1];
+                        }
+                        finally {
+                            ExpressionCache.getInstance().setEnabled(true);
+                        }
+                    }
+                });
+        }
+
+        return benchmarks;
+    }
+
+    // Evaluate the expression for each day without the expression cache
+    private static double evaluate(Expression expression, EODQuoteBundle quoteBundle,
+                                   Symbol symbol, int firstDay, int lastDay)
+        throws EvaluationException {
+
+        Variables variables = new Variables();
+        double sum = 0.0D;
+
+        ExpressionCache.getInstance().setEnabled(false);
+
+        try {
+            for(int day = firstDay; day <= lastDay; day++)
+                sum += expression.evaluate(variables, quoteBundle, symbol, day);
+        }
+        finally {
+            ExpressionCache.getInstance().setEnabled(true);
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,157 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import nz.org.venice.bench.Benchmark;
+
+/**
+ * Benchmarks of reading quotes from the quote cache and quote bundles,
+ * and of parsing quotes with each of the file quote filters.
+ *
+ * @author Andrew Leppard
+ * @see nz.org.venice.bench.BenchmarkRunner
+ */
+public class QuoteBenchmarks {
+
+    // Number of days of quotes parsed by the filter benchmarks
+    private final static int FILTER_DAYS = 10;
+
+    private QuoteBenchmarks() {
+        // nothing to do
+    }
+
+    /**
+     * Create the quote benchmarks. The current quote source must be a
+     * {@link SyntheticQuoteSource}.
+     *
+     * @return list of {@link Benchmark}s
+     * @exception MissingQuoteException if the quotes could not be loaded
+     */
+    public static List create() throws MissingQuoteException {
+        List benchmarks = new ArrayList();
+        SyntheticQuoteSource source = (SyntheticQuoteSource)QuoteSourceManager.getSource();
+        final EODQuoteBundle quoteBundle = createQuoteBundle();
+        final EODQuoteCache quoteCache = EODQuoteCache.getInstance();
+        final Symbol[] symbols = (Symbol[])source.getSymbols().toArray(new Symbol[0]);
+        final int firstOffset = quoteBundle.getFirstOffset();
+        final int lastOffset = quoteBundle.getLastOffset();
+        int quotes = symbols.length * (lastOffset - firstOffset + 1);
+
+        benchmarks.add(new Benchmark("quote.EODQuoteCache.getQuote", quotes) {
+                public double run() throws QuoteNotLoadedException {
+                    double sum = 0.0D;
+
+                    for(int i = 0; i < symbols.length; i++)
+                        for(int offset = firstOffset; offset <= lastOffset; offset++)
+                            sum += quoteCache.getQuote(symbols[i], Quote.DAY_CLOSE, offset);
+
+                    return sum;
+                }
+            });
+
+        benchmarks.add(new Benchmark("quote.EODQuoteBundle.getQuote", quotes) {
+                public double run() throws MissingQuoteException {
+                    double sum = 0.0D;
+
+                    for(int i = 0; i < symbols.length; i++)
+                        for(int offset = firstOffset; offset <= lastOffset; offset++)
+                            sum += quoteBundle.getQuote(symbols[i], Quote.DAY_CLOSE, offset);
+
+                    return sum;
+                }
+            });
+
+        // Parse the first few days of quotes written by each text filter
+        List filters = EODQuoteFilterList.getInstance().getList();
+
+        for(Iterator iterator = filters.iterator(); iterator.hasNext();) {
+            final IFileEODQuoteFilter filter = (IFileEODQuoteFilter)iterator.next();
+            final String[] lines = createLines(source, filter, symbols.length);
+
+            // Skip binary filters
+            if(lines == null)
+                continue;
+
+            String name = filter.getClass().getName();
+            name = name.substring(name.lastIndexOf('.') + 1);
+
+            benchmarks.add(new Benchmark("quote." + name + ".toEODQuote", lines.length) {
+                    public double run() throws QuoteFormatException {
+                        double sum = 0.0D;
+
+                        for(int i = 0; i < lines.length; i++)
+                            sum += filter.toEODQuote(lines[i]).getDayClose();
+
+                        return sum;
+                    }
+                });
+        }
+
+        return benchmarks;
+    }
+
+    /**
+     * Create a quote bundle containing all the quotes of the current quote
+     * source and make sure the quotes are loaded. The current quote source
+     * must be a {@link SyntheticQuoteSource}.
+     *
+     * @return the quote bundle
+     * @exception MissingQuoteException if the quotes could not be loaded
+     */
+    public static EODQuoteBundle createQuoteBundle() throws MissingQuoteException {
+        SyntheticQuoteSource source = (SyntheticQuoteSource)QuoteSourceManager.getSource();
+        EODQuoteRange quoteRange = new EODQuoteRange(EODQuoteRange.ALL_SYMBOLS,
+                                                     source.getFirstDate(),
+                                                     source.getLastDate());
+        EODQuoteBundle quoteBundle = new EODQuoteBundle(quoteRange);
+
+        // Quotes are loaded when the first quote is read
+        Symbol symbol = (Symbol)source.getSymbols().get(0);
+        quoteBundle.getQuote(symbol, Quote.DAY_CLOSE, source.getLastDate());
+
+        return quoteBundle;
+    }
+
+    // Return quotes written by the given filter, or null if the filter can't
+    // write quotes as text
+    private static String[] createLines(SyntheticQuoteSource source,
+                                        IFileEODQuoteFilter filter,
+                                        int symbolCount) {
+        String[] lines = new String[FILTER_DAYS * symbolCount];
+
+        for(int day = 0; day < FILTER_DAYS; day++) {
+            for(int i = 0; i < symbolCount; i++) {
+                EODQuote quote = source.getQuote(i, day);
+                String line = filter.toString(quote);
+
+                if(line == null)
+                    return null;
+
+                lines[day * symbolCount + i] = line;
+            }
+        }
+
+        return lines;
+    }
+}
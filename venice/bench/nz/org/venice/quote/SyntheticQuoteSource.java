@@ -0,0 +1,242 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import nz.org.venice.util.Currency;
+import nz.org.venice.util.TradingDate;
+
+/**
+ * A quote source containing generated quotes. Each symbol follows its own
+ * random walk, which always starts with the same seed, so the quotes are
+ * the same every time. This lets the benchmarks run without any quote
+ * files or database.
+ *
+ * @author Andrew Leppard
+ * @see nz.org.venice.bench.BenchmarkRunner
+ */
+public class SyntheticQuoteSource implements QuoteSource {
+
+    // Date of the last quotes
+    private final static TradingDate LAST_DATE = new TradingDate(2010, 12, 31);
+
+    private Symbol[] symbols;
+
+    // Dates of quotes, oldest first
+    private List dates;
+
+    private long[][] volumes;
+    private float[][] lows;
+    private float[][] highs;
+    private float[][] opens;
+    private float[][] closes;
+
+    /**
+     * Create a new quote source.
+     *
+     * @param symbolCount the number of symbols
+     * @param dayCount    the number of trading days of quotes for each symbol
+     */
+    public SyntheticQuoteSource(int symbolCount, int dayCount) {
+        symbols = new Symbol[symbolCount];
+        dates = new ArrayList();
+
+        for(int i = dayCount - 1; i >= 0; i--)
+            dates.add(LAST_DATE.previous(i));
+
+        volumes = new long[symbolCount][dayCount];
+        lows = new float[symbolCount][dayCount];
+        highs = new float[symbolCount][dayCount];
+        opens = new float[symbolCount][dayCount];
+        closes = new float[symbolCount][dayCount];
+
+        for(int i = 0; i < symbolCount; i++) {
+            symbols[i] = createSymbol(i);
+
+            Random random = new Random(i);
+            double close = 1.0D + random.nextInt(50);
+
+            for(int day = 0; day < dayCount; day++) {
+                double open = close;
+                close = Math.max(0.01D, close + close * random.nextGaussian() * 0.02D);
+
+                volumes[i][day] = 1000 + random.nextInt(100000);
+                opens[i][day] = (float)open;
+                closes[i][day] = (float)close;
+                highs[i][day] = (float)(Math.max(open, close) * (1.0D + random.nextDouble() * 0.01D));
+                lows[i][day] = (float)(Math.min(open, close) * (1.0D - random.nextDouble() * 0.01D));
+            }
+        }
+    }
+
+    // Create the symbol with the given index, e.g. AAA, AAB, AAC...
+    private static Symbol createSymbol(int index) {
+        char[] name = new char[3];
+
+        for(int i = name.length - 1; i >= 0; i--) {
+            name[i] = (char)('A' + index % 26);
+            index /= 26;
+        }
+
+        try {
+            return Symbol.find(new String(name));
+        }
+        catch(SymbolFormatException e) {
+            assert false;
+            return null;
+        }
+    }
+
+    /**
+     * Return the generated quote of the given symbol and date.
+     *
+     * @param symbolIndex the index of the symbol
+     * @param dayIndex    the index of the date, the oldest date being zero
+     * @return the quote
+     */
+    public EODQuote getQuote(int symbolIndex, int dayIndex) {
+        return new EODQuote(symbols[symbolIndex], (TradingDate)dates.get(dayIndex),
+                            volumes[symbolIndex][dayIndex],
+                            lows[symbolIndex][dayIndex], highs[symbolIndex][dayIndex],
+                            opens[symbolIndex][dayIndex], closes[symbolIndex][dayIndex]);
+    }
+
+    /**
+     * Return the generated symbols.
+     *
+     * @return list of symbols
+     */
+    public List getSymbols() {
+        List list = new ArrayList();
+        Collections.addAll(list, symbols);
+        return list;
+    }
+
+    public String getSymbolName(Symbol symbol) {
+        return symbol.toString();
+    }
+
+    public Symbol getSymbol(String partialCompanyName) {
+        return null;
+    }
+
+    public boolean symbolExists(Symbol symbol) {
+        for(int i = 0; i < symbols.length; i++)
+            if(symbols[i].equals(symbol))
+                return true;
+
+        return false;
+    }
+
+    public TradingDate getLastDate() {
+        return (TradingDate)dates.get(dates.size() - 1);
+    }
+
+    public TradingDate getFirstDate() {
+        return (TradingDate)dates.get(0);
+    }
+
+    public boolean loadQuoteRange(EODQuoteRange quoteRange) {
+        EODQuoteCache quoteCache = EODQuoteCache.getInstance();
+        TradingDate firstDate = quoteRange.getFirstDate();
+        TradingDate lastDate = quoteRange.getLastDate();
+
+        // ... all dates?
+        if(firstDate == null) {
+            firstDate = getFirstDate();
+            lastDate = getLastDate();
+        }
+
+        for(int day = 0; day < dates.size(); day++) {
+            TradingDate date = (TradingDate)dates.get(day);
+
+            if(date.compareTo(firstDate) >= 0 && date.compareTo(lastDate) <= 0) {
+                for(int i = 0; i < symbols.length; i++)
+                    if(quoteRange.containsSymbol(symbols[i]))
+                        quoteCache.load(getQuote(i, day));
+            }
+        }
+
+        return true;
+    }
+
+    public boolean containsDate(TradingDate date) {
+        return Collections.binarySearch(dates, date) >= 0;
+    }
+
+    public List getDates() {
+        return new ArrayList(dates);
+    }
+
+    public boolean isMarketIndex(Symbol symbol) {
+        return false;
+    }
+
+    public int getAdvanceDecline(TradingDate date)
+        throws MissingQuoteException {
+
+        int day = Collections.binarySearch(dates, date);
+
+        if(day < 0)
+            throw MissingQuoteException.getInstance();
+
+        int advanceDecline = 0;
+
+        for(int i = 0; i < symbols.length; i++) {
+            if(closes[i][day] > opens[i][day])
+                advanceDecline++;
+            else if(closes[i][day] < opens[i][day])
+                advanceDecline--;
+        }
+
+        return advanceDecline;
+    }
+
+    public HashMap getAdvanceDecline(TradingDate startDate, TradingDate endDate)
+        throws MissingQuoteException {
+
+        HashMap advanceDeclines = new HashMap();
+        List range = TradingDate.dateRangeToList(startDate, endDate);
+
+        for(int i = 0; i < range.size(); i++) {
+            TradingDate date = (TradingDate)range.get(i);
+            advanceDeclines.put(date, new Integer(getAdvanceDecline(date)));
+        }
+
+        return advanceDeclines;
+    }
+
+    public List getExchangeRates(Currency sourceCurrency, Currency destinationCurrency) {
+        return new ArrayList();
+    }
+
+    public void shutdown() {
+        // nothing to do
+    }
+
+    public void cacheExpiry() {
+        // nothing to do
+    }
+}
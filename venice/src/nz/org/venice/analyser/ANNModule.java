@@ -458,6 +458,9 @@ public class ANNModule extends Page implements Module {
 
         quoteBundle = new EODQuoteBundle(quoteRangePage.getQuoteRange());
 
+        // Don't let other windows free our quotes while the ANN runs
+        quoteBundle.pin();
+
         OrderComparator orderComparator = quoteRangePage.getOrderComparator(quoteBundle);
         OrderCache orderCache = new OrderCache(quoteBundle, orderComparator);
         String quoteRangeDescription = quoteBundle.getQuoteRange().getDescription();
@@ -510,6 +513,9 @@ public class ANNModule extends Page implements Module {
 
             return null;
         }
+        finally {
+            quoteBundle.unpin();
+        }
 
         ProgressDialogManager.closeProgressDialog(progress);
 	return ANNResults;
@@ -542,6 +548,9 @@ public class ANNModule extends Page implements Module {
 
         quoteBundle = new EODQuoteBundle(quoteRangePage.getQuoteRange());
 
+        // Don't let other windows free our quotes while the ANN runs
+        quoteBundle.pin();
+
         OrderComparator orderComparator = quoteRangePage.getOrderComparator(quoteBundle);
         OrderCache orderCache = new OrderCache(quoteBundle, orderComparator);
         String quoteRangeDescription = quoteBundle.getQuoteRange().getDescription();
@@ -592,6 +601,9 @@ public class ANNModule extends Page implements Module {
                  Locale.getString("ERROR_EVALUATING_EQUATION"));
 
         }
+        finally {
+            quoteBundle.unpin();
+        }
     }
 
     /*
@@ -500,10 +500,7 @@ public class ANNPaperTrade extends PaperTrade {
         }
 
         // Train the ANN
-        artificialNeuralNetwork.runTraining(ANNInputArray, ANNOutputDesiredArray,
-                ANNTrainingPage.getLearningRate(), 
-                ANNTrainingPage.getMomentum(), ANNTrainingPage.getPreLearning(), 
-                ANNTrainingPage.getTotCycles(), ANNArrayPointer);
+        train(ANNTrainingPage, artificialNeuralNetwork, ANNArrayPointer);
     }
 
     /**
@@ -634,10 +631,7 @@ public class ANNPaperTrade extends PaperTrade {
         }
 
         // Train the ANN
-        artificialNeuralNetwork.runTraining(ANNInputArray, ANNOutputDesiredArray,
-                ANNTrainingPage.getLearningRate(), 
-                ANNTrainingPage.getMomentum(), ANNTrainingPage.getPreLearning(), 
-                ANNTrainingPage.getTotCycles(), ANNArrayPointer);
+        train(ANNTrainingPage, artificialNeuralNetwork, ANNArrayPointer);
     }
 
     /**
@@ -759,23 +753,21 @@ public class ANNPaperTrade extends PaperTrade {
                             Expression[] inputExpressions,
                             ArtificialNeuralNetwork artificialNeuralNetwork) {
                                       
-        symbolStock = new String[symbols.size()];
-        buyRule = new boolean[symbols.size()];
-        sellRule = new boolean[symbols.size()];
-        buyValue = new double[symbols.size()];
-        sellValue = new double[symbols.size()];
+        Tip tip = new Tip(symbols.size());
+        tips.set(tip);
         
-        setSellTip(environment, quoteBundle, variables, dateOffset,
+        setSellTip(tip, environment, quoteBundle, variables, dateOffset,
                     tradeCost, symbols, orderCache,
                     inputExpressions, artificialNeuralNetwork);
         
-        setBuyTip(environment, quoteBundle, variables, dateOffset,
+        setBuyTip(tip, environment, quoteBundle, variables, dateOffset,
                     tradeCost, symbols, orderCache,
                     inputExpressions, artificialNeuralNetwork);
         
     }
 
-    private static void setSellTip(Environment environment,
+    private static void setSellTip(Tip tip,
+                                   Environment environment,
                                     EODQuoteBundle quoteBundle,
                                     Variables variables,
                                     int dateOffset,
@@ -833,17 +825,17 @@ public class ANNPaperTrade extends PaperTrade {
                 
                 // Get if the stock must be sold
                 boolean[] sell = artificialNeuralNetwork.run(inputDoubles);
-                sellRule[index] = sell[artificialNeuralNetwork.OUTPUT_SELL];
+                tip.sellRule[index] = sell[artificialNeuralNetwork.OUTPUT_SELL];
                         
                 // calculate the price wanted by user trade value expression
                 // to sell the stock (tradeValueWanted).
                 // If trade value expression is 'open', then
                 // set the price to zero (sell at open price).
-                sellValue[index] = 0;
+                tip.sellValue[index] = 0;
                 if(!environment.tradeValueSell.equals("open")) {
                     Expression tradeValueSellExpression =
                             ExpressionFactory.newExpression(environment.tradeValueSell);
-                    sellValue[index] =
+                    tip.sellValue[index] =
                             tradeValueSellExpression.evaluate(variables,
                             environment.quoteBundle, symbol, dateOffset);
                 }
@@ -857,7 +849,8 @@ public class ANNPaperTrade extends PaperTrade {
         }
     }
     
-    private static void setBuyTip(Environment environment,
+    private static void setBuyTip(Tip tip,
+                                  Environment environment,
                                 EODQuoteBundle quoteBundle,
                                 Variables variables,
                                 int dateOffset,
@@ -872,6 +865,12 @@ public class ANNPaperTrade extends PaperTrade {
         
         variables.setValue("stockcapital", 0.0D);
 
+        // Generate the input array of doubles of every stock available
+        // today, so that the ANN can be run on them all at once.
+        // The index of the stocks whose inputs could be evaluated is kept.
+        List inputDoubles = new ArrayList(symbols.size());
+        List inputIndices = new ArrayList(symbols.size());
+
         int order = 0;
         
         int index = 0;
@@ -880,7 +879,7 @@ public class ANNPaperTrade extends PaperTrade {
         for(Iterator iterator = symbols.iterator(); iterator.hasNext();) {
             Symbol symbol = (Symbol)iterator.next();
 
-            symbolStock[index] = new String(symbol.get());
+            tip.symbolStock[index] = new String(symbol.get());
             
             // If we care about the order, make sure the "order" variable is set
             if(orderCache.isOrdered())
@@ -888,34 +887,57 @@ public class ANNPaperTrade extends PaperTrade {
 
             try {
                 // Generate the input array of doubles according to the input expressions
-                double[] inputDoubles = new double[inputExpressions.length];
-                for (int ii=0; ii<inputDoubles.length; ii++) {
-                    inputDoubles[ii] = inputExpressions[ii].evaluate(variables,
+                double[] inputDoublesRow = new double[inputExpressions.length];
+                for (int ii=0; ii<inputDoublesRow.length; ii++) {
+                    inputDoublesRow[ii] = inputExpressions[ii].evaluate(variables,
                     quoteBundle, symbol, dateOffset);
                 }
-                
-                // Get if the stock must be bought
-                boolean[] buy = artificialNeuralNetwork.run(inputDoubles);
-                buyRule[index] = buy[artificialNeuralNetwork.OUTPUT_BUY];
-                
-                // If you own the stock and both sell and buy rule fire,
-                // you wouldn't sell it, neither would you buy it.
-                // So it is necessary set the buyRule and sellRule to false.
-                //if(environment.shareAccount.isHolding(symbol) && sellRule[index] &&
-                //  buyRule[index]) {
-                //    sellRule[index] = false;
-                //    buyRule[index] = false;
-                //}
+                inputDoubles.add(inputDoublesRow);
+                inputIndices.add(new Integer(index));
+            }
+            catch(EvaluationException e) {
+                // do nothing
+            }
+            finally {
+                index++;
+            }
+
+            order++;
+        }
+
+        // Get which stocks must be bought
+        boolean[][] buy = artificialNeuralNetwork.run(
+                (double[][])inputDoubles.toArray(new double[inputDoubles.size()][]));
+
+        for (int ii=0; ii<buy.length; ii++) {
+            index = ((Integer)inputIndices.get(ii)).intValue();
+            Symbol symbol = (Symbol)symbols.get(index);
 
+            tip.buyRule[index] = buy[ii][artificialNeuralNetwork.OUTPUT_BUY];
+
+            // If you own the stock and both sell and buy rule fire,
+            // you wouldn't sell it, neither would you buy it.
+            // So it is necessary set the buyRule and sellRule to false.
+            //if(environment.shareAccount.isHolding(symbol) && tip.sellRule[index] &&
+            //  tip.buyRule[index]) {
+            //    tip.sellRule[index] = false;
+            //    tip.buyRule[index] = false;
+            //}
+
+            // The order of a stock is its index
+            if(orderCache.isOrdered())
+                variables.setValue("order", index);
+
+            try {
                 // calculate the price wanted by user trade value expression
                 // to buy the stock (tradeValueWanted).
                 // If trade value expression is 'open', then
                 // set this price to zero (buy at open price).
-                buyValue[index] = 0;
+                tip.buyValue[index] = 0;
                 if(!environment.tradeValueBuy.equals("open")) {
                     Expression tradeValueBuyExpression =
                             ExpressionFactory.newExpression(environment.tradeValueBuy);
-                    buyValue[index] =
+                    tip.buyValue[index] =
                             tradeValueBuyExpression.evaluate(variables,
                             environment.quoteBundle, symbol, dateOffset);
                 }
@@ -923,14 +945,32 @@ public class ANNPaperTrade extends PaperTrade {
             catch(EvaluationException e) {
                 // do nothing
             }
-            finally {
-                index++;
-            }
-
-            order++;
         }
     }
     
+    /*
+     * Train the ANN on the first trainingPatterns rows of the training arrays.
+     * The ANN is trained by multi-threaded backpropagation if the user has
+     * asked for it and the ANN supports it, otherwise it is trained by Joone.
+     */
+    private static void train(ANNTrainingPage ANNTrainingPage,
+            ArtificialNeuralNetwork artificialNeuralNetwork,
+            int trainingPatterns) {
+
+        if (ANNTrainingPage.isParallelTraining() &&
+            artificialNeuralNetwork.runParallelTraining(ANNInputArray, ANNOutputDesiredArray,
+                ANNTrainingPage.getLearningRate(), 
+                ANNTrainingPage.getMomentum(), ANNTrainingPage.getPreLearning(), 
+                ANNTrainingPage.getTotCycles(), trainingPatterns)) {
+            return;
+        }
+
+        artificialNeuralNetwork.runTraining(ANNInputArray, ANNOutputDesiredArray,
+                ANNTrainingPage.getLearningRate(), 
+                ANNTrainingPage.getMomentum(), ANNTrainingPage.getPreLearning(), 
+                ANNTrainingPage.getTotCycles(), trainingPatterns);
+    }
+
     /*
      * This is the core method which manages the Cross Target technique.
      * All the CT method is described at the beginning of this class.
@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import javax.swing.border.TitledBorder;
 import javax.swing.BoxLayout;
+import javax.swing.JCheckBox;
 import javax.swing.JComponent;
 import javax.swing.JDesktopPane;
 import javax.swing.JPanel;
@@ -39,6 +40,7 @@ public class ANNTrainingPage extends Page implements AnalyserPage {
     private JTextField momentumTextRow;
     private JTextField preLearningTextRow;
     private JTextField totCyclesTextRow;
+    private JCheckBox parallelTrainingCheckBox;
     
     private JTextField minEarningPercentageTextRow;
     private JTextField windowForecastTextRow;
@@ -47,6 +49,7 @@ public class ANNTrainingPage extends Page implements AnalyserPage {
     private double momentum = 0.5D;
     private int preLearning = 0;
     private int totCycles = 150;
+    private boolean parallelTraining = false;
     
     private double minEarningPercentage = 2.0D;
     private int windowForecast = 7;
@@ -80,6 +83,8 @@ public class ANNTrainingPage extends Page implements AnalyserPage {
         settingsInitPop.put("momentum", momentumTextRow.getText());
         settingsInitPop.put("pre_learning", preLearningTextRow.getText());
         settingsInitPop.put("tot_cycles", totCyclesTextRow.getText());
+        settingsInitPop.put("parallel_training",
+                            parallelTrainingCheckBox.isSelected()? "1" : "0");
         
         settingsInitPop.put("min_earning_percentage", minEarningPercentageTextRow.getText());
         settingsInitPop.put("window_forecast", windowForecastTextRow.getText());
@@ -124,6 +129,9 @@ public class ANNTrainingPage extends Page implements AnalyserPage {
         if(setting.equals("tot_cycles") && !value.equals("")) {
             totCyclesTextRow.setText(value);
         }
+        if(setting.equals("parallel_training")) {
+            parallelTrainingCheckBox.setSelected(value.equals("1"));
+        }
 
         if(setting.equals("min_earning_percentage") && !value.equals("")) {
             minEarningPercentageTextRow.setText(value);
@@ -167,6 +175,8 @@ public class ANNTrainingPage extends Page implements AnalyserPage {
                         windowForecastTextRow.getText());
             }
 
+            parallelTraining = parallelTrainingCheckBox.isSelected();
+
         } catch(NumberFormatException e) {
         	showErrorMessage(
             		Locale.getString("ERROR_PARSING_NUMBER",e.getMessage()),
@@ -266,6 +276,16 @@ public class ANNTrainingPage extends Page implements AnalyserPage {
         return totCycles;
     }
     
+    /** 
+     * Get whether the ANN should be trained by Venice's own multi-threaded
+     * backpropagation rather than by Joone.
+     *
+     * @return <code>true</code> to train the ANN in parallel
+     */
+    public boolean isParallelTraining() {
+        return parallelTraining;
+    }
+    
     /** 
      * Get the earning percentage of ANN.
      * Earning percentage is the percentage we want to gain,
@@ -340,6 +360,10 @@ public class ANNTrainingPage extends Page implements AnalyserPage {
         Locale.getString("TRAINING_PARAMETER_TOT_CYCLES"), "",
         gridbag, c,
         12);
+        parallelTrainingCheckBox =
+        GridBagHelper.addCheckBoxRow(innerPanelOne,
+        Locale.getString("TRAINING_PARAMETER_PARALLEL"), parallelTraining,
+        gridbag, c);
 
         
         // Cross Target Panel
@@ -380,6 +404,7 @@ public class ANNTrainingPage extends Page implements AnalyserPage {
         momentumTextRow.setText(Double.toString(momentum));
         preLearningTextRow.setText(Integer.toString(preLearning));
         totCyclesTextRow.setText(Integer.toString(totCycles));
+        parallelTrainingCheckBox.setSelected(parallelTraining);
         
         minEarningPercentageTextRow.setText(Double.toString(minEarningPercentage));
         windowForecastTextRow.setText(Integer.toString(windowForecast));
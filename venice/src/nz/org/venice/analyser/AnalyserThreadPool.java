@@ -0,0 +1,219 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.analyser;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import nz.org.venice.prefs.PreferencesManager;
+import nz.org.venice.ui.ProgressDialog;
+
+/**
+ * A pool of worker threads used by the analyser to paper trade many
+ * candidates at once. The GP, GA and batch paper trade all spend nearly
+ * all of their time paper trading independent candidates, so spreading
+ * the candidates across the machine's processors gives a near linear
+ * speed up.
+ * <p>
+ * Tasks must not share any mutable state, each task should have its own
+ * {@link nz.org.venice.parser.Variables}, {@link OrderCache} and
+ * {@link nz.org.venice.portfolio.Portfolio}. The results are always
+ * returned in the order the tasks were given, regardless of the order
+ * in which they finished, so the analysers give the same results no
+ * matter how many threads are used.
+ * <p>
+ * If the pool has a single thread, the tasks are run directly in the
+ * calling thread.
+ *
+ * @author Andrew Leppard
+ * @see nz.org.venice.prefs.PreferencesManager#getAnalyserThreads
+ */
+public class AnalyserThreadPool {
+
+    // Number of threads in the pool
+    private int threads;
+
+    // The worker threads, or null if tasks are run in the calling thread
+    private ExecutorService executor = null;
+
+    /**
+     * Create a new pool using the number of threads given in the
+     * user preferences.
+     *
+     * @param name name given to the worker threads
+     */
+    public AnalyserThreadPool(String name) {
+        this(name, PreferencesManager.getAnalyserThreads());
+    }
+
+    /**
+     * Create a new pool with the given number of threads.
+     *
+     * @param name    name given to the worker threads
+     * @param threads number of worker threads
+     */
+    public AnalyserThreadPool(final String name, int threads) {
+        this.threads = Math.max(1, threads);
+
+        if(this.threads > 1) {
+            executor = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+                    private int count = 0;
+
+                    public synchronized Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, name + " " + (++count));
+
+                        // Don't let an abandoned pool keep Venice running
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+    }
+
+    /**
+     * Return the number of threads in the pool.
+     *
+     * @return number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Run the given tasks and wait for them to finish. The progress dialog,
+     * if given, is incremented in the calling thread as each task finishes
+     * with a result. A task that returns <code>null</code> is taken to
+     * have failed and does not count towards the progress.
+     * <p>
+     * If the calling thread is interrupted, the remaining tasks are
+     * cancelled and their results are returned as <code>null</code>. The
+     * calling thread's interrupt status is kept so the caller can check
+     * it as usual.
+     *
+     * @param tasks    list of {@link Callable} tasks
+     * @param progress progress dialog to increment, or <code>null</code>
+     * @return list of the results of each task, in the order of the tasks
+     */
+    public List invokeAll(List tasks, ProgressDialog progress) {
+        List results = new ArrayList(tasks.size());
+        Thread thread = Thread.currentThread();
+
+        // Run the tasks ourselves if we don't have any worker threads
+        if(executor == null) {
+            for(Iterator iterator = tasks.iterator(); iterator.hasNext();) {
+                Callable task = (Callable)iterator.next();
+
+                if(thread.isInterrupted())
+                    results.add(null);
+                else {
+                    Object result = call(task);
+                    results.add(result);
+
+                    if(progress != null && result != null)
+                        progress.increment();
+                }
+            }
+
+            return results;
+        }
+
+        List futures = new ArrayList(tasks.size());
+
+        for(Iterator iterator = tasks.iterator(); iterator.hasNext();)
+            futures.add(executor.submit((Callable)iterator.next()));
+
+        for(Iterator iterator = futures.iterator(); iterator.hasNext();) {
+            Future future = (Future)iterator.next();
+
+            if(future.isCancelled()) {
+                results.add(null);
+                continue;
+            }
+
+            try {
+                Object result = future.get();
+                results.add(result);
+
+                if(progress != null && result != null)
+                    progress.increment();
+            }
+            catch(InterruptedException e) {
+                // The user has cancelled the operation. Stop the remaining
+                // tasks and restore the interrupt flag for the caller.
+                cancel(futures);
+                thread.interrupt();
+                results.add(null);
+            }
+            catch(CancellationException e) {
+                results.add(null);
+            }
+            catch(ExecutionException e) {
+                cancel(futures);
+                rethrow(e.getCause());
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Stop the worker threads. The pool cannot be used after this call.
+     */
+    public void shutdown() {
+        if(executor != null)
+            executor.shutdownNow();
+    }
+
+    // Cancel all the given futures that haven't finished yet
+    private void cancel(List futures) {
+        for(Iterator iterator = futures.iterator(); iterator.hasNext();)
+            ((Future)iterator.next()).cancel(true);
+    }
+
+    // Run the task in the calling thread
+    private Object call(Callable task) {
+        try {
+            return task.call();
+        }
+        catch(Exception e) {
+            rethrow(e);
+            return null;
+        }
+    }
+
+    // Tasks handle their own checked exceptions, so anything thrown by
+    // a task is a bug and is passed on to the caller.
+    private void rethrow(Throwable throwable) {
+        if(throwable instanceof RuntimeException)
+            throw (RuntimeException)throwable;
+        else if(throwable instanceof Error)
+            throw (Error)throwable;
+        else
+            throw new RuntimeException(throwable);
+    }
+}
@@ -59,6 +59,11 @@ import nz.org.venice.prefs.settings.AnalyserModuleSettings;
 
 public class GAModule extends JPanel implements Module {
 
+    // Number of individuals created and paper traded together. This is
+    // fixed rather than depending on the number of threads so the GA
+    // gives the same results however many threads it uses.
+    private final static int BATCH_SIZE = 64;
+
     private PropertyChangeSupport propertySupport;
     private JDesktopPane desktop;
     private EODQuoteBundle quoteBundle;
@@ -306,86 +311,117 @@ public class GAModule extends JPanel implements Module {
 
         // Get the quote bundle
         quoteBundle = new EODQuoteBundle(quoteRangePage.getQuoteRange());
-        OrderComparator orderComparator = quoteRangePage.getOrderComparator(quoteBundle);
-        OrderCache orderCache = new OrderCache(quoteBundle, orderComparator);
+
+        // Don't let other windows free our quotes while the GA runs
+        quoteBundle.pin();
+
+        try {
+            OrderComparator orderComparator = quoteRangePage.getOrderComparator(quoteBundle);
+            OrderCache orderCache = new OrderCache(quoteBundle, orderComparator);
         
-        if(!thread.isInterrupted()) {
-            int numberGenerations = GAPage.getGenerations();
-            int population = GAPage.getPopulation();
+            if(!thread.isInterrupted()) {
+                int numberGenerations = GAPage.getGenerations();
+                int population = GAPage.getPopulation();
             
-            progress.setIndeterminate(false);
-            progress.setMaximum(numberGenerations * population);
-            progress.setProgress(0);
-            progress.setMaster(true);
+                progress.setIndeterminate(false);
+                progress.setMaximum(numberGenerations * population);
+                progress.setProgress(0);
+                progress.setMaster(true);
             
-            GeneticAlgorithm geneticAlgorithm =
-                new GeneticAlgorithm(quoteBundle,
-                            orderCache,
-                            buyRule,
-                            sellRule,
-                            startDate,
-                            endDate,
-                            initialCapital,
-                            stockValue,
-                            numberStocks,
-                            tradeCost,
-                            breedingPopulation,
-                            tradeValueBuy,
-                            tradeValueSell,
-                            lowestGAIndividual,
-                            highestGAIndividual,
-                            variables);
+                GeneticAlgorithm geneticAlgorithm =
+                    new GeneticAlgorithm(quoteBundle,
+                                orderCache,
+                                buyRule,
+                                sellRule,
+                                startDate,
+                                endDate,
+                                initialCapital,
+                                stockValue,
+                                numberStocks,
+                                tradeCost,
+                                breedingPopulation,
+                                tradeValueBuy,
+                                tradeValueSell,
+                                lowestGAIndividual,
+                                highestGAIndividual,
+                                variables);
             
-            for(int generation = 1; generation <= numberGenerations; generation++) {
-                if(thread.isInterrupted())
-                    break;
+                try {
+                    for(int generation = 1; generation <= numberGenerations; generation++) {
+                        if(thread.isInterrupted())
+                            break;
                 
-                int individual = 1;
+                        int individual = 1;
+
+                        // Keep track of how quickly the individuals are paper traded
+                        long startTime = System.currentTimeMillis();
+                        int created = 0;
                 
-                // Keep generating more individuals until we've created the
-                // breeding population size or if the breeding population size
-                // is too small. The breeding population size can only be too
-                // small for the first generation.
-                int actualBreedingPopulation = geneticAlgorithm.getNextBreedingPopulationSize();
-                while(individual < population ||
-                        actualBreedingPopulation < breedingPopulation) {
-                    if(thread.isInterrupted())
-                        break;
-                    
-                    // "Generation x of y (%)"
-                    int perc = Math.min((new Double((100.0D*actualBreedingPopulation)/breedingPopulation)).intValue(),
-                            (new Double((100.0D*individual)/population)).intValue());
-                    progress.setNote(Locale.getString("GENERATION_OF",
-                                                        perc,
-                                                        generation,
-                                                        numberGenerations));
+                        // Keep generating more individuals until we've created the
+                        // breeding population size or if the breeding population size
+                        // is too small. The breeding population size can only be too
+                        // small for the first generation. The individuals are created
+                        // in batches so they can be paper traded in parallel.
+                        int actualBreedingPopulation = geneticAlgorithm.getNextBreedingPopulationSize();
+                        while(individual < population ||
+                                actualBreedingPopulation < breedingPopulation) {
+                            if(thread.isInterrupted())
+                                break;
                     
-                    // If we are looping only to increase the breeding population size
-                    // then don't update the progress counter as we didn't count this
-                    // time in our estimate. Unfortunately this might look to the user
-                    // like it has stalled at the end of the first generation.
-                    if(individual < population)
-                        progress.increment();
+                            // "Generation x of y (%)"
+                            int perc = Math.min((new Double((100.0D*actualBreedingPopulation)/breedingPopulation)).intValue(),
+                                    (new Double((100.0D*individual)/population)).intValue());
+                            progress.setNote(Locale.getString("GENERATION_OF",
+                                                                perc,
+                                                                generation,
+                                                                numberGenerations));
                     
-                    geneticAlgorithm.nextIndividual();
+                            // Once the population has been created, only create as
+                            // many individuals as the breeding population is short by
+                            int batchSize;
+                            if(individual < population)
+                                batchSize = Math.min(BATCH_SIZE, population - individual);
+                            else
+                                batchSize = Math.max(1, Math.min(BATCH_SIZE,
+                                                                 breedingPopulation - actualBreedingPopulation));
+
+                            // If we are looping only to increase the breeding population size
+                            // then don't update the progress counter as we didn't count this
+                            // time in our estimate. Unfortunately this might look to the user
+                            // like it has stalled at the end of the first generation.
+                            created += geneticAlgorithm.nextIndividuals(batchSize,
+                                                                        individual < population? progress : null);
                     
-                    individual++;
-                    actualBreedingPopulation = geneticAlgorithm.getNextBreedingPopulationSize();
-                }
+                            individual += batchSize;
+                            actualBreedingPopulation = geneticAlgorithm.getNextBreedingPopulationSize();
+                        }
                 
-                geneticAlgorithm.nextGeneration();
+                        geneticAlgorithm.nextGeneration();
+
+                        // Number of individuals paper traded per second
+                        long elapsedTime = Math.max(System.currentTimeMillis() - startTime, 1);
+                        double throughput = (created * 1000.0D) / elapsedTime;
                 
-                // The actual breeding population size and the breeding population
-                // may be different iff the operation was cancelled
-                if(geneticAlgorithm.getBreedingPopulationSize() > 0)
-                    display(getResults(geneticAlgorithm,
-                        geneticAlgorithm.getBreedingPopulationSize(),
-                        displayPopulation,
-                        quoteBundle, startDate, endDate,
-                        initialCapital, tradeCost, generation));
+                        // The actual breeding population size and the breeding population
+                        // may be different iff the operation was cancelled
+                        if(geneticAlgorithm.getBreedingPopulationSize() > 0)
+                            display(getResults(geneticAlgorithm,
+                                geneticAlgorithm.getBreedingPopulationSize(),
+                                displayPopulation,
+                                quoteBundle, startDate, endDate,
+                                initialCapital, tradeCost, generation,
+                                geneticAlgorithm.getThreads(), throughput));
+                    }
+                }
+                finally {
+                    geneticAlgorithm.shutdown();
+                }
             }
         }
-        
+        finally {
+            quoteBundle.unpin();
+        }
+
         ProgressDialogManager.closeProgressDialog(progress);
     }
     
@@ -397,7 +433,9 @@ public class GAModule extends JPanel implements Module {
                             TradingDate endDate,
                             Money initialCapital,
                             Money tradeCost,
-                            int generation) {
+                            int generation,
+                            int threads,
+                            double throughput) {
         // Create a list of results from the top breeding individuals
         List results = new ArrayList();
         int displayCount = Math.min(breedingPopulation, displayPopulation);
@@ -413,7 +451,9 @@ public class GAModule extends JPanel implements Module {
                                     tradeCost,
                                     generation,
                                     startDate,
-                                    endDate));
+                                    endDate,
+                                    threads,
+                                    throughput));
         }
         return results;
     }
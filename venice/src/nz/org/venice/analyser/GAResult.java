@@ -44,6 +44,8 @@ public class GAResult {
     private int generation;
     private TradingDate startDate;	
     private TradingDate endDate;
+    private int threads;
+    private double throughput;
     
     public GAResult(GAIndividual individual,
                     Expression buyRule, Expression sellRule,
@@ -51,7 +53,9 @@ public class GAResult {
                     Money initialCapital, Money tradeCost,
                     int generation,
                     TradingDate startDate,
-                    TradingDate endDate) {
+                    TradingDate endDate,
+                    int threads,
+                    double throughput) {
         this.individual = individual;
         this.buyRule = buyRule;
         this.sellRule = sellRule;
@@ -61,6 +65,8 @@ public class GAResult {
         this.generation = generation;
         this.startDate = startDate;
         this.endDate = endDate;
+        this.threads = threads;
+        this.throughput = throughput;
     }
 
     public TradingDate getStartDate() {
@@ -118,6 +124,14 @@ public class GAResult {
         return generation;
     }
 
+    public int getThreads() {
+        return threads;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
     public Money getTradeCost() {
         return tradeCost;
     }
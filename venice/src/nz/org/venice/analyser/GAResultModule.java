@@ -71,6 +71,8 @@ public class GAResultModule extends AbstractTable implements Module {
     private static final int INITIAL_CAPITAL_COLUMN = 8;
     private static final int FINAL_CAPITAL_COLUMN = 9;
     private static final int PERCENT_RETURN_COLUMN = 10;
+    private static final int THREADS_COLUMN = 11;
+    private static final int THROUGHPUT_COLUMN = 12;
 
     private Model model;
     private Settings settings;
@@ -167,6 +169,12 @@ public class GAResultModule extends AbstractTable implements Module {
 	    else if(column == PERCENT_RETURN_COLUMN)
 		return new ChangeFormat(result.getInitialCapital(),
                                         result.getFinalCapital());
+
+	    else if(column == THREADS_COLUMN)
+		return new Integer(result.getThreads());
+
+	    else if(column == THROUGHPUT_COLUMN)
+		return new Double(Math.round(result.getThroughput() * 100.0D) / 100.0D);
 	    else {
 		assert false;
                 return "";
@@ -273,6 +281,16 @@ public class GAResultModule extends AbstractTable implements Module {
                                Locale.getString("PERCENT_RETURN_COLUMN_HEADER"),
                                ChangeFormat.class,
                                Column.VISIBLE));
+        columns.add(new Column(THREADS_COLUMN,
+                               Locale.getString("ANALYSER_THREADS"),
+                               Locale.getString("ANALYSER_THREADS_COLUMN_HEADER"),
+                               Integer.class,
+                               Column.HIDDEN));
+        columns.add(new Column(THROUGHPUT_COLUMN,
+                               Locale.getString("INDIVIDUALS_PER_SECOND"),
+                               Locale.getString("INDIVIDUALS_PER_SECOND_COLUMN_HEADER"),
+                               Double.class,
+                               Column.HIDDEN));
 
 	return columns;
     }
@@ -32,6 +32,7 @@ import nz.org.venice.analyser.gp.GPQuoteBundle;
 import nz.org.venice.main.CommandManager;
 import nz.org.venice.main.Module;
 import nz.org.venice.main.ModuleFrame;
+import nz.org.venice.parser.Expression;
 import nz.org.venice.parser.ExpressionFactory;
 import nz.org.venice.quote.EODQuoteBundle;
 import nz.org.venice.ui.ProgressDialog;
@@ -43,6 +44,11 @@ import nz.org.venice.prefs.settings.Settings;
 import nz.org.venice.prefs.settings.AnalyserModuleSettings;
 
 public class GPModule extends Page implements Module {
+
+    // Number of individuals created and paper traded together. This is
+    // fixed rather than depending on the number of threads so the GP
+    // gives the same results however many threads it uses.
+    private final static int BATCH_SIZE = 64;
     
     private PropertyChangeSupport propertySupport;
     private JTabbedPane tabbedPane;
@@ -259,107 +265,130 @@ public class GPModule extends Page implements Module {
         String tradeValueSell = tradeValuePage.getTradeValueSell();
 
         // quote bundle should load window days before quote range...
-        GPQuoteBundle quoteBundle =
-            new GPQuoteBundle(new EODQuoteBundle(quoteRangePage.getQuoteRange()), window);
-        OrderComparator orderComparator = quoteRangePage.getOrderComparator(quoteBundle);
-        OrderCache orderCache = new OrderCache(quoteBundle, orderComparator);
+        EODQuoteBundle eodQuoteBundle = new EODQuoteBundle(quoteRangePage.getQuoteRange());
+        GPQuoteBundle quoteBundle = new GPQuoteBundle(eodQuoteBundle, window);
+
+        // Don't let other windows free our quotes while the GP runs
+        quoteBundle.pin();
+        try {
+            OrderComparator orderComparator = quoteRangePage.getOrderComparator(quoteBundle);
+            OrderCache orderCache = new OrderCache(quoteBundle, orderComparator);
         
-        if(!thread.isInterrupted()) {
-            int numberGenerations = GPPage.getGenerations();
-            int population = GPPage.getPopulation();
+            if(!thread.isInterrupted()) {
+                int numberGenerations = GPPage.getGenerations();
+                int population = GPPage.getPopulation();
             
-            progress.setIndeterminate(false);
-            progress.setMaximum(numberGenerations * population);
-            progress.setProgress(0);
-            progress.setMaster(true);
+                progress.setIndeterminate(false);
+                progress.setMaximum(numberGenerations * population);
+                progress.setProgress(0);
+                progress.setMaster(true);
             
-            GeneticProgramme geneticProgramme =
-                new GeneticProgramme(quoteBundle,
-                                     GPGondolaSelection,
-                                     orderCache,
-                                     startDate,
-                                     endDate,
-                                     initialCapital,
-                                     stockValue,
-                                     numberStocks,
-                                     tradeCost,
-                                     breedingPopulation,
-                                     tradeValueBuy,
-                                     tradeValueSell);
+                GeneticProgramme geneticProgramme =
+                    new GeneticProgramme(quoteBundle,
+                                         GPGondolaSelection,
+                                         orderCache,
+                                         startDate,
+                                         endDate,
+                                         initialCapital,
+                                         stockValue,
+                                         numberStocks,
+                                         tradeCost,
+                                         breedingPopulation,
+                                         tradeValueBuy,
+                                         tradeValueSell);
             
-            for(int generation = 1; generation <= numberGenerations; generation++) {
-                if(thread.isInterrupted())
-                    break;
+                try {
+                    for(int generation = 1; generation <= numberGenerations; generation++) {
+                        if(thread.isInterrupted())
+                            break;
                 
-                int individual = 1;
+                        int individual = 1;
                 
-                // Keep generating more individuals until we've created the
-                // breeding population size or if the breeding population size
-                // is too small. The breeding population size can only be too
-                // small for the first generation.
-                int actualBreedingPopulation = geneticProgramme.getNextBreedingPopulationSize();
-                while(individual < population ||
-                        actualBreedingPopulation < breedingPopulation) {
-                    if(thread.isInterrupted())
-                        break;
+                        // Keep generating more individuals until we've created the
+                        // breeding population size or if the breeding population size
+                        // is too small. The breeding population size can only be too
+                        // small for the first generation. The individuals are created
+                        // in batches so they can be paper traded in parallel.
+                        int actualBreedingPopulation = geneticProgramme.getNextBreedingPopulationSize();
+                        while(individual < population ||
+                                actualBreedingPopulation < breedingPopulation) {
+                            if(thread.isInterrupted())
+                                break;
                     
-                    // "Generation x of y (%)"
-                    int perc = Math.min((new Double((100.0D*actualBreedingPopulation)/breedingPopulation)).intValue(),
-                            (new Double((100.0D*individual)/population)).intValue());
-                    progress.setNote(Locale.getString("GENERATION_OF",
-                                                        perc,
-                                                        generation,
-                                                        numberGenerations));
-                    
-                    // If we are looping only to increase the breeding population size
-                    // then don't update the progress counter as we didn't count this
-                    // time in our estimate. Unfortunately this might look to the user
-                    // like it has stalled at the end of the first generation.
-                    if(individual < population)
-                        progress.increment();
+                            // "Generation x of y (%)"
+                            int perc = Math.min((new Double((100.0D*actualBreedingPopulation)/breedingPopulation)).intValue(),
+                                    (new Double((100.0D*individual)/population)).intValue());
+                            progress.setNote(Locale.getString("GENERATION_OF",
+                                                                perc,
+                                                                generation,
+                                                                numberGenerations));
+
+                            // Once the population has been created, only create as
+                            // many individuals as the breeding population is short by
+                            int batchSize;
+                            if(individual < population)
+                                batchSize = Math.min(BATCH_SIZE, population - individual);
+                            else
+                                batchSize = Math.max(1, Math.min(BATCH_SIZE,
+                                                                 breedingPopulation - actualBreedingPopulation));
                     
-                    // GPPageInitialPopulation.getIfRandom()==0 is true
-                    // if we must create a random individual.
-                    // GPPageInitialPopulation.getIfRandom()==0 is false
-                    // if we must create an individual according to
-                    // the user defined buy/sell rules
-                    // (defined in the Initial Population Section).
-                    // All that is written above is applied only
-                    // for the first generation, the other generations
-                    // get new inidividuals from their parents,
-                    // so it can be applied geneticProgramme.nextIndividual(null, null);
-                    // with no input rules.
-                    if ((GPPageInitialPopulation.getIfRandom()==0) || (generation!=1)) {
-                        geneticProgramme.nextIndividual(null, null, mutations);
-                    } else {
-                        // Get a random buy/sell rules from initial population
-                        int randomRow = GPPageInitialPopulation.getIfRandom();
-                        String buyRuleString = GPPageInitialPopulation.getBuyRule(randomRow);
-                        String sellRuleString = GPPageInitialPopulation.getSellRule(randomRow);
-                        // Call the nextIndividual method to put
-                        geneticProgramme.nextIndividual(
-                            ExpressionFactory.newExpression(buyRuleString),
-                            ExpressionFactory.newExpression(sellRuleString),
-                            mutations);
-                    }
+                            // GPPageInitialPopulation.getIfRandom()==0 is true
+                            // if we must create a random individual.
+                            // GPPageInitialPopulation.getIfRandom()==0 is false
+                            // if we must create an individual according to
+                            // the user defined buy/sell rules
+                            // (defined in the Initial Population Section).
+                            // All that is written above is applied only
+                            // for the first generation, the other generations
+                            // get new inidividuals from their parents,
+                            // so it can be applied geneticProgramme.nextIndividual(null, null);
+                            // with no input rules.
+                            Expression[] buyRules = new Expression[batchSize];
+                            Expression[] sellRules = new Expression[batchSize];
+
+                            for(int i = 0; i < batchSize; i++) {
+                                if ((GPPageInitialPopulation.getIfRandom()!=0) && (generation==1)) {
+                                    // Get a random buy/sell rules from initial population
+                                    int randomRow = GPPageInitialPopulation.getIfRandom();
+                                    String buyRuleString = GPPageInitialPopulation.getBuyRule(randomRow);
+                                    String sellRuleString = GPPageInitialPopulation.getSellRule(randomRow);
+                                    buyRules[i] = ExpressionFactory.newExpression(buyRuleString);
+                                    sellRules[i] = ExpressionFactory.newExpression(sellRuleString);
+                                }
+                            }
+
+                            // If we are looping only to increase the breeding population size
+                            // then don't update the progress counter as we didn't count this
+                            // time in our estimate. Unfortunately this might look to the user
+                            // like it has stalled at the end of the first generation.
+                            geneticProgramme.nextIndividuals(buyRules, sellRules, mutations,
+                                                             individual < population? progress : null);
                     
-                    individual++;
-                    actualBreedingPopulation = geneticProgramme.getNextBreedingPopulationSize();
-                }
+                            individual += batchSize;
+                            actualBreedingPopulation = geneticProgramme.getNextBreedingPopulationSize();
+                        }
                 
-                geneticProgramme.nextGeneration();
+                        geneticProgramme.nextGeneration();
                 
-                // The actual breeding population size and the breeding population
-                // may be different iff the operation was cancelled
-                if(geneticProgramme.getBreedingPopulationSize() > 0)
-                    display(getResults(geneticProgramme,
-                        geneticProgramme.getBreedingPopulationSize(),
-                        displayPopulation,
-                        quoteBundle, startDate, endDate,
-                        initialCapital, tradeCost, generation));
+                        // The actual breeding population size and the breeding population
+                        // may be different iff the operation was cancelled
+                        if(geneticProgramme.getBreedingPopulationSize() > 0)
+                            display(getResults(geneticProgramme,
+                                geneticProgramme.getBreedingPopulationSize(),
+                                displayPopulation,
+                                quoteBundle, startDate, endDate,
+                                initialCapital, tradeCost, generation));
+                    }
+                }
+                finally {
+                    geneticProgramme.shutdown();
+                }
             }
         }
-        
+        finally {
+            quoteBundle.unpin();
+        }
+
         ProgressDialogManager.closeProgressDialog(progress);
     }
     
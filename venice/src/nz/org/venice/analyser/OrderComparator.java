@@ -19,6 +19,7 @@
 package nz.org.venice.analyser;
 
 import java.util.Comparator;
+import java.util.List;
 
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Expression;
@@ -131,6 +132,23 @@ public class OrderComparator implements Comparator {
         isDateSet = false;
     }
 
+    /**
+     * Create a new order comparator that orders the quotes in the same
+     * way as the given order comparator. The equation, if any, is copied
+     * so the two comparators can be used in different threads.
+     *
+     * @param orderComparator the order comparator to copy
+     */
+    public OrderComparator(OrderComparator orderComparator) {
+        this.quoteBundle = orderComparator.quoteBundle;
+        this.orderByKey = orderComparator.orderByKey;
+
+        if(orderComparator.orderByEquation != null)
+            this.orderByEquation = (Expression)orderComparator.orderByEquation.clone();
+
+        isDateSet = false;
+    }
+
     /**
      * Return the method of ordering. If the quotes will be ordered by equation
      * then this function will return {@link #EQUATION}.
@@ -161,6 +179,91 @@ public class OrderComparator implements Comparator {
         isDateSet = true;
     }
 
+    /**
+     * Return whether the order can be given by a key for each symbol,
+     * see {@link #getKeys}. The stock symbols can be ordered by key
+     * unless they are not ordered at all or are ordered alphabetically.
+     *
+     * @return <code>true</code> if the order can be given by keys
+     */
+    public boolean isKeyed() {
+        return orderByKey != NO_ORDER && orderByKey != STOCK_SYMBOL;
+    }
+
+    /**
+     * Return the key of each of the given stock symbols on the date set by
+     * {@link #setDateOffset}. Sorting the symbols by increasing key gives
+     * the same order as this comparator. Since each key is calculated
+     * once, rather than once per comparison, this is much faster than
+     * sorting with the comparator when ordering by equation. Symbols whose
+     * equation can't be evaluated are placed last.
+     *
+     * @param symbols the symbols to order
+     * @return the key of each symbol
+     */
+    public double[] getKeys(List symbols) {
+
+        assert isDateSet && isKeyed();
+
+        double[] keys = new double[symbols.size()];
+
+        for(int i = 0; i < keys.length; i++) {
+            keys[i] = getKey((Symbol)symbols.get(i));
+
+            if(Double.isNaN(keys[i]))
+                keys[i] = Double.POSITIVE_INFINITY;
+        }
+
+        return keys;
+    }
+
+    // Return the key of the symbol, where lower keys are ordered first
+    private double getKey(Symbol symbol) {
+        try {
+            switch(orderByKey) {
+            case(DAY_VOLUME_INCREASING):
+                return quoteBundle.getQuote(symbol, Quote.DAY_VOLUME, dateOffset);
+            case(DAY_VOLUME_DECREASING):
+                return -quoteBundle.getQuote(symbol, Quote.DAY_VOLUME, dateOffset);
+            case(DAY_LOW_INCREASING):
+                return quoteBundle.getQuote(symbol, Quote.DAY_LOW, dateOffset);
+            case(DAY_LOW_DECREASING):
+                return -quoteBundle.getQuote(symbol, Quote.DAY_LOW, dateOffset);
+            case(DAY_HIGH_INCREASING):
+                return quoteBundle.getQuote(symbol, Quote.DAY_HIGH, dateOffset);
+            case(DAY_HIGH_DECREASING):
+                return -quoteBundle.getQuote(symbol, Quote.DAY_HIGH, dateOffset);
+            case(DAY_OPEN_INCREASING):
+                return quoteBundle.getQuote(symbol, Quote.DAY_OPEN, dateOffset);
+            case(DAY_OPEN_DECREASING):
+                return -quoteBundle.getQuote(symbol, Quote.DAY_OPEN, dateOffset);
+            case(DAY_CLOSE_INCREASING):
+                return quoteBundle.getQuote(symbol, Quote.DAY_CLOSE, dateOffset);
+            case(DAY_CLOSE_DECREASING):
+                return -quoteBundle.getQuote(symbol, Quote.DAY_CLOSE, dateOffset);
+            case(CHANGE_INCREASING):
+                return (quoteBundle.getQuote(symbol, Quote.DAY_CLOSE, dateOffset) /
+                        quoteBundle.getQuote(symbol, Quote.DAY_OPEN,  dateOffset));
+            case(CHANGE_DECREASING):
+                return -(quoteBundle.getQuote(symbol, Quote.DAY_CLOSE, dateOffset) /
+                         quoteBundle.getQuote(symbol, Quote.DAY_OPEN,  dateOffset));
+            case(EQUATION):
+                return -orderByEquation.evaluate(new Variables(), quoteBundle, symbol,
+                                                 dateOffset);
+            default:
+                assert false;
+                return 0.0D;
+            }
+        }
+        catch(MissingQuoteException e) {
+            assert false;
+            return 0.0D;
+        }
+        catch(EvaluationException e) {
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
     /**
      * Compare two stock symbols on the date set by {@link #setDateOffset}.
      *
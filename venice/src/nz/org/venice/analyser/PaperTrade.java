@@ -25,6 +25,7 @@ import java.util.List;
 
 import nz.org.venice.util.Locale;
 import nz.org.venice.util.Money;
+import nz.org.venice.util.MoneyAccumulator;
 import nz.org.venice.util.TradingDate;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Expression;
@@ -68,12 +69,26 @@ public class PaperTrade {
     // Stocks per line for the tip()
     public final static int STOCKS_PER_LINES = 1;
     
-    // Information to get the next day trading prices
-    protected static String[] symbolStock;
-    protected static boolean[] buyRule;
-    protected static boolean[] sellRule;
-    protected static double[] buyValue;
-    protected static double[] sellValue;
+    // Information to get the next day trading prices. Each thread keeps the
+    // tip from its last paper trade, so paper trades can run in parallel.
+    protected static ThreadLocal tips = new ThreadLocal();
+
+    // The tip for the next day trading
+    protected static class Tip {
+        public String[] symbolStock;
+        public boolean[] buyRule;
+        public boolean[] sellRule;
+        public double[] buyValue;
+        public double[] sellValue;
+
+        public Tip(int size) {
+            symbolStock = new String[size];
+            buyRule = new boolean[size];
+            sellRule = new boolean[size];
+            buyValue = new double[size];
+            sellValue = new double[size];
+        }
+    }
 
     // Since this process uses so many temporary variables, it makes sense
     // grouping them all together.
@@ -106,6 +121,9 @@ public class PaperTrade {
         // The rule getting the sell price
         protected String tradeValueSell;
 
+        // Used for summing money without creating new money objects
+        public MoneyAccumulator sum;
+
         /**
          * Create a new environment for paper trading.
          *
@@ -139,6 +157,8 @@ public class PaperTrade {
             portfolio.addAccount(cashAccount);
             portfolio.addAccount(shareAccount);
 
+            sum = new MoneyAccumulator(portfolio.getCurrency());
+
             // Deposit starting capital into portfolio
             Transaction transaction =
                 Transaction.newDeposit(startDate, capital, cashAccount);
@@ -269,8 +289,7 @@ public class PaperTrade {
      * @param environment the paper trade environment
      * @param quoteBundle the historical quote data
      * @param variables any Gondola variables set
-     * @param sell the sell indicator
-     * @param buy the buy indicator
+     * @param signals the buy and sell signals
      * @param dateOffset date to examine
      * @param tradeCost the cost of a trade
      * @param symbols ordered list of symbols on that date
@@ -279,8 +298,7 @@ public class PaperTrade {
     private static void sellTrades(Environment environment,
                                    EODQuoteBundle quoteBundle,
                                    Variables variables,
-                                   Expression sell,
-                                   Expression buy,
+                                   SignalMatrix signals,
                                    int dateOffset,
                                    Money tradeCost,
                                    List symbols,
@@ -311,8 +329,8 @@ public class PaperTrade {
 
             try {
                 // If you want to buy the stock, do not sell it.
-                if(!(buy.evaluate(variables, quoteBundle, symbol, dateOffset) >= Expression.TRUE)) {
-                    if(sell.evaluate(variables, quoteBundle, symbol, dateOffset) >= Expression.TRUE) {
+                if(!signals.isBuy(variables, symbol, dateOffset)) {
+                    if(signals.isSell(variables, symbol, dateOffset)) {
                         // calculate the price wanted by user trade value expression
                         // to sell the stock (tradeValueWanted).
                         // If trade value expression is 'open', then
@@ -345,7 +363,7 @@ public class PaperTrade {
      * @param environment the paper trade environment
      * @param quoteBundle the historical quote data
      * @param variables any Gondola variables set
-     * @param buy the buy indicator
+     * @param signals the buy and sell signals
      * @param dateOffset date to examine
      * @param tradeCost the cost of a trade
      * @param symbols ordered list of symbols on that date
@@ -355,7 +373,7 @@ public class PaperTrade {
     private static void buyTrades(Environment environment,
                                   EODQuoteBundle quoteBundle,
                                   Variables variables,
-                                  Expression buy,
+                                  SignalMatrix signals,
                                   int dateOffset,
                                   Money tradeCost,
                                   List symbols,
@@ -367,10 +385,16 @@ public class PaperTrade {
         variables.setValue("stockcapital", 0);
 
         // If we have enough money, iterate through stocks available today -
-        // should we buy any of it?
+        // should we buy any of it? We need enough money for the stock and
+        // the trade cost of buying and selling it.
         Money cash = environment.cashAccount.getValue();
+        MoneyAccumulator tradeValue = environment.sum;
+
+        tradeValue.set(stockValue);
+        tradeValue.add(tradeCost);
+        tradeValue.add(tradeCost);
 
-        if(stockValue.add(tradeCost.multiply(2)).isLessThanEqual(cash)) {
+        if(tradeValue.isLessThanEqual(cash)) {
             int order = 0;
 
             // Iterate through stocks available today - should we buy or sell any of it?
@@ -385,8 +409,7 @@ public class PaperTrade {
                         variables.setValue("order", order);
 
                     try {
-                        if(buy.evaluate(variables, quoteBundle, symbol,
-                                        dateOffset) >= Expression.TRUE) {
+                        if(signals.isBuy(variables, symbol, dateOffset)) {
 
                             // calculate the price wanted by user trade value expression
                             // to buy the stock (tradeValueWanted).
@@ -407,7 +430,7 @@ public class PaperTrade {
                                 // other stocks
                                 cash = environment.cashAccount.getValue();
 
-                                if(stockValue.add(tradeCost.multiply(2)).isGreaterThan(cash))
+                                if(tradeValue.isGreaterThan(cash))
                                     break;
                             }
                         }
@@ -487,6 +510,27 @@ public class PaperTrade {
     }
 
 
+    /**
+     * Return the number of trading days from the start of the paper trade
+     * to the given date. This gives the same answer as
+     * {@link TradingDate#getDifference}, but looks the date up in the quote
+     * cache instead of counting the days one at a time.
+     *
+     * @param environment the paper trade environment
+     * @param startDate start date of trading
+     * @param date a date on or after the start date
+     * @return the number of trading days
+     */
+    private static int getDaysFromStart(Environment environment, TradingDate startDate,
+                                        TradingDate date) {
+        try {
+            return environment.quoteBundle.dateToOffset(date) - environment.startDateOffset;
+        }
+        catch(WeekendDateException e) {
+            return date.getDifference(startDate);
+        }
+    }
+
     /**
      * Return the actual capital of the portfolio.
      *
@@ -498,7 +542,9 @@ public class PaperTrade {
     protected static double getCapital(Portfolio portfolio, EODQuoteBundle quoteBundle, int dateOffset) {
         double retValue = 0.0D;
         try {
-            retValue = portfolio.getValue(quoteBundle, dateOffset).doubleValue();
+            MoneyAccumulator value = new MoneyAccumulator(portfolio.getCurrency());
+            portfolio.addValue(value, quoteBundle, dateOffset);
+            retValue = value.doubleValue();
         }
         catch(MissingQuoteException e) {
             // Ignore and move on
@@ -509,6 +555,33 @@ public class PaperTrade {
     }
 
 
+    /**
+     * Create the buy and sell signals for the paper trade. The signals of
+     * rules that don't depend on the portfolio are calculated for the whole
+     * trading period up front, leaving only the cheap work of updating
+     * the portfolio for each day.
+     *
+     * @param environment the paper trade environment
+     * @param variables any Gondola variables set, including the implicit variables
+     * @param orderCache cache of ordered symbols
+     * @param buy the buy indicator
+     * @param sell the sell indicator
+     * @return the signals
+     */
+    private static SignalMatrix createSignals(Environment environment,
+                                              Variables variables,
+                                              OrderCache orderCache,
+                                              Expression buy,
+                                              Expression sell) {
+        SignalMatrix signals = new SignalMatrix(environment.quoteBundle, buy, sell);
+
+        // The last date is only used for placing the previous date's orders
+        signals.precompute(variables, orderCache, environment.startDateOffset,
+                           environment.endDateOffset - 1);
+
+        return signals;
+    }
+
     /**
      * Perform paper trading using a fixed stock value. This method will try to keep
      * the value of each stock holding equal to <code>stockValue</code>.
@@ -554,7 +627,10 @@ public class PaperTrade {
 	
 	// Paper Trading variables
 	ImplicitVariables.getInstance().setup(variables, orderCache.isOrdered());
-        
+
+        // Calculate the signals of rules which don't depend on the portfolio
+        SignalMatrix signals = createSignals(environment, variables, orderCache, buy, sell);
+
         // daysfromstart
         int daysRest = (int)(-1) * dateOffset;
 
@@ -571,7 +647,7 @@ public class PaperTrade {
 	    // the daysfromstart value should be safe to use.
 	    TradingDate dateOfLastTransaction = environment.portfolio.getLastDate();
 	    
-	    int daysLastTrn = (dateOfLastTransaction != null) ? daysFromStart - dateOfLastTransaction.getDifference(startDate) : daysFromStart;
+	    int daysLastTrn = (dateOfLastTransaction != null) ? daysFromStart - getDaysFromStart(environment, startDate, dateOfLastTransaction) : daysFromStart;
 
 	    variables.setValue("daysfromlastransaction", daysLastTrn);
             
@@ -588,12 +664,12 @@ public class PaperTrade {
 
 	    int origTransactionCount = environment.portfolio.countTransactions();
 
-            sellTrades(environment, quoteBundle, variables, sell, buy, dateOffset, tradeCost,
+            sellTrades(environment, quoteBundle, variables, signals, dateOffset, tradeCost,
                        symbols, orderCache);
 	    
 	    resetDaysLastVar(environment, variables, origTransactionCount, daysLastTrn);
 
-            buyTrades(environment, quoteBundle, variables, buy, dateOffset, tradeCost,
+            buyTrades(environment, quoteBundle, variables, signals, dateOffset, tradeCost,
                       symbols, orderCache, stockValue);
 
             dateOffset++;
@@ -652,7 +728,10 @@ public class PaperTrade {
 
         // Paper Trading variables
 	ImplicitVariables.getInstance().setup(variables, orderCache.isOrdered());
-        
+
+        // Calculate the signals of rules which don't depend on the portfolio
+        SignalMatrix signals = createSignals(environment, variables, orderCache, buy, sell);
+
         // daysfromstart
         int daysRest = (int)(-1) * dateOffset;
         
@@ -670,7 +749,7 @@ public class PaperTrade {
 	    // the daysfromstart value should be safe to use.
 	    TradingDate dateOfLastTransaction = environment.portfolio.getLastDate();
 	    
-	    int daysLastTrn = (dateOfLastTransaction != null) ? daysFromStart - dateOfLastTransaction.getDifference(startDate) : daysFromStart;
+	    int daysLastTrn = (dateOfLastTransaction != null) ? daysFromStart - getDaysFromStart(environment, startDate, dateOfLastTransaction) : daysFromStart;
 	    
 	    variables.setValue("daysfromlasttransaction", daysLastTrn);
             
@@ -687,7 +766,7 @@ public class PaperTrade {
 
 	    int origTransactionCount = environment.portfolio.countTransactions();
 
-            sellTrades(environment, quoteBundle, variables, sell, buy, dateOffset, tradeCost,
+            sellTrades(environment, quoteBundle, variables, signals, dateOffset, tradeCost,
                        symbols, orderCache);
 	    
 	    resetDaysLastVar(environment, variables, origTransactionCount, daysLastTrn);
@@ -696,11 +775,17 @@ public class PaperTrade {
 
             try {
                 // stockValue = (portfolio / numberStocks) - (2 * tradeCost)
-                Money portfolioValue = environment.portfolio.getValue(quoteBundle, dateOffset);
-                Money stockValue =
-                    portfolioValue.divide(numberStocks).subtract(tradeCost.multiply(2));
+                MoneyAccumulator value = environment.sum;
+
+                value.clear();
+                environment.portfolio.addValue(value, quoteBundle, dateOffset);
+                value.divide(numberStocks);
+                value.subtract(tradeCost);
+                value.subtract(tradeCost);
 
-		buyTrades(environment, quoteBundle, variables, buy, dateOffset, tradeCost,
+                Money stockValue = value.toMoney();
+
+		buyTrades(environment, quoteBundle, variables, signals, dateOffset, tradeCost,
 			  symbols, orderCache, stockValue);
 		
             }
@@ -731,21 +816,19 @@ public class PaperTrade {
                                   List symbols,
                                   OrderCache orderCache) {
                                       
-        symbolStock = new String[symbols.size()];
-        buyRule = new boolean[symbols.size()];
-        sellRule = new boolean[symbols.size()];
-        buyValue = new double[symbols.size()];
-        sellValue = new double[symbols.size()];
+        Tip tip = new Tip(symbols.size());
+        tips.set(tip);
         
-        setSellTip(environment, quoteBundle, variables, sell, dateOffset,
+        setSellTip(tip, environment, quoteBundle, variables, sell, dateOffset,
                     tradeCost, symbols, orderCache);
         
-        setBuyTip(environment, quoteBundle, variables, buy, dateOffset,
+        setBuyTip(tip, environment, quoteBundle, variables, buy, dateOffset,
                     tradeCost, symbols, orderCache);
         
     }
 
-    private static void setSellTip(Environment environment,
+    private static void setSellTip(Tip tip,
+                                   Environment environment,
                                    EODQuoteBundle quoteBundle,
                                    Variables variables,
                                    Expression sell,
@@ -792,16 +875,16 @@ public class PaperTrade {
 
             try {
                 // Get if the stock must be sold
-                sellRule[index] = (sell.evaluate(variables, quoteBundle, symbol, dateOffset) >= Expression.TRUE);
+                tip.sellRule[index] = (sell.evaluate(variables, quoteBundle, symbol, dateOffset) >= Expression.TRUE);
                         
                 // calculate the price wanted by user trade value expression
                 // to sell the stock (tradeValueWanted).
                 // If trade value expression is 'open', then
                 // set the price to zero (sell at open price).
-                sellValue[index] = 0;
+                tip.sellValue[index] = 0;
                 if(!environment.tradeValueSell.equals("open")) {
                     Expression tradeValueSellExpression = ExpressionFactory.newExpression(environment.tradeValueSell);
-                    sellValue[index] = tradeValueSellExpression.evaluate(variables, environment.quoteBundle, symbol, dateOffset);
+                    tip.sellValue[index] = tradeValueSellExpression.evaluate(variables, environment.quoteBundle, symbol, dateOffset);
                 }
            }
             catch(EvaluationException e) {
@@ -813,7 +896,8 @@ public class PaperTrade {
         }
     }
     
-    private static void setBuyTip(Environment environment,
+    private static void setBuyTip(Tip tip,
+                                  Environment environment,
                                   EODQuoteBundle quoteBundle,
                                   Variables variables,
                                   Expression buy,
@@ -835,7 +919,7 @@ public class PaperTrade {
         for(Iterator iterator = symbols.iterator(); iterator.hasNext();) {
             Symbol symbol = (Symbol)iterator.next();
 
-            symbolStock[index] = new String(symbol.get());
+            tip.symbolStock[index] = new String(symbol.get());
             
             // If we care about the order, make sure the "order" variable is set
             if(orderCache.isOrdered())
@@ -843,25 +927,25 @@ public class PaperTrade {
 
             try {
                 // Get if the stock must be bought
-                buyRule[index] = (buy.evaluate(variables, quoteBundle, symbol,
+                tip.buyRule[index] = (buy.evaluate(variables, quoteBundle, symbol,
                             dateOffset) >= Expression.TRUE);
                 
                 // If you own the stock and both sell and buy rule fire,
                 // you wouldn't sell it, neither would you buy it.
                 // So it is necessary set the buyRule and sellRule to false.
-                //if(environment.shareAccount.isHolding(symbol) && sellRule[index] && buyRule[index]) {
-                //    sellRule[index] = false;
-                //    buyRule[index] = false;
+                //if(environment.shareAccount.isHolding(symbol) && tip.sellRule[index] && tip.buyRule[index]) {
+                //    tip.sellRule[index] = false;
+                //    tip.buyRule[index] = false;
                 //}
 
                 // calculate the price wanted by user trade value expression
                 // to buy the stock (tradeValueWanted).
                 // If trade value expression is 'open', then
                 // set this price to zero (buy at open price).
-                buyValue[index] = 0;
+                tip.buyValue[index] = 0;
                 if(!environment.tradeValueBuy.equals("open")) {
                     Expression tradeValueBuyExpression = ExpressionFactory.newExpression(environment.tradeValueBuy);
-                    buyValue[index] = tradeValueBuyExpression.evaluate(variables, environment.quoteBundle, symbol, dateOffset);
+                    tip.buyValue[index] = tradeValueBuyExpression.evaluate(variables, environment.quoteBundle, symbol, dateOffset);
                 }
           }
             catch(EvaluationException e) {
@@ -880,10 +964,13 @@ public class PaperTrade {
      * The method can be called after a paperTrade one, so doing
      * it obtains a tip for next day trading, where next is the date
      * folowing the end date of the trading period of paperTrade.
+     * The tip is for the last paper trade run by the calling thread.
      *
      * @return the string representing the tip.
      */
     public static String getTip() {
+        Tip tip = (Tip)tips.get();
+
         // tip() format for output numbers
         NumberFormat format;
         
@@ -899,19 +986,19 @@ public class PaperTrade {
         
         retValue.append(Locale.getString("BUY_STOCKS"));
         
-        for (int i=0; i<symbolStock.length; i++) {
+        for (int i=0; i<tip.symbolStock.length; i++) {
 
-            if (buyRule[i]) {
+            if (tip.buyRule[i]) {
                 if (found%STOCKS_PER_LINES==0) {
                     retValue.append("\n");
                 } else {
                     retValue.append(", ");
                 }
                 
-                retValue.append(symbolStock[i]);
+                retValue.append(tip.symbolStock[i]);
                 
-                if (buyValue[i]!=0)
-                    retValue.append(" (@ " + format.format(buyValue[i]) + ")");
+                if (tip.buyValue[i]!=0)
+                    retValue.append(" (@ " + format.format(tip.buyValue[i]) + ")");
                 
                 found++;
             }
@@ -923,19 +1010,19 @@ public class PaperTrade {
         found = 0;
         retValue.append(Locale.getString("SELL_STOCKS"));
             
-        for (int i=0; i<symbolStock.length; i++) {
+        for (int i=0; i<tip.symbolStock.length; i++) {
             
-            if (sellRule[i]) {
+            if (tip.sellRule[i]) {
                 if (found%STOCKS_PER_LINES==0) {
                     retValue.append("\n");
                 } else {
                     retValue.append(", ");
                 }
                 
-                retValue.append(symbolStock[i]);
+                retValue.append(tip.symbolStock[i]);
                 
-                if (sellValue[i]!=0)
-                    retValue.append(" (@ " + format.format(sellValue[i]) + ")");
+                if (tip.sellValue[i]!=0)
+                    retValue.append(" (@ " + format.format(tip.sellValue[i]) + ")");
                 
                 found++;
            }
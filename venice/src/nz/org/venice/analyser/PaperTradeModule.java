@@ -26,6 +26,7 @@ import java.beans.PropertyChangeListener;
 import java.beans.PropertyVetoException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JComponent;
@@ -39,6 +40,7 @@ import nz.org.venice.main.CommandManager;
 import nz.org.venice.main.Module;
 import nz.org.venice.main.ModuleFrame;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCompiler;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Variable;
 import nz.org.venice.parser.Variables;
@@ -54,8 +56,11 @@ import nz.org.venice.prefs.settings.AnalyserModuleSettings;
 
 public class PaperTradeModule extends Page implements Module {
 
+    // Number of paper trades run together. The results of each batch
+    // are sent to the result table as soon as the batch has finished.
+    private final static int BATCH_SIZE = 64;
+
     private PropertyChangeSupport propertySupport;
-    private EODQuoteBundle quoteBundle;
     private AnalyserModuleSettings settings;
 
     // Single result table for entire application
@@ -215,13 +220,10 @@ public class PaperTradeModule extends Page implements Module {
                     // so if the programme crashes etc our stuff is still there
                     save();
 
-                    // Read data from GUI and load quote data
-                    if(parse()) {
-                        List paperTradeResults = getPaperTradeResults();
-
-                        if(paperTradeResults != null && !thread.isInterrupted())
-                            display(paperTradeResults);
-                    }
+                    // Read data from GUI and load quote data. The results
+                    // are displayed as they are paper traded.
+                    if(parse())
+                        paperTradeAll();
                 }
             });
 
@@ -251,8 +253,7 @@ public class PaperTradeModule extends Page implements Module {
             return true;
     }
 
-    private PaperTradeResult paperTrade(ProgressDialog progress,
-                                        EODQuoteBundle quoteBundle,
+    private PaperTradeResult paperTrade(EODQuoteBundle quoteBundle,
                                         String quoteRangeDescription,
                                         OrderCache orderCache,
                                         TradingDate startDate,
@@ -305,11 +306,6 @@ public class PaperTradeModule extends Page implements Module {
                                               tradeValueBuy,
                                               tradeValueSell);
         }
-        
-        // Running the equation means we might need to load in
-        // more quotes so the note may have changed...
-        progress.setNote(Locale.getString("PAPER_TRADING"));
-        progress.increment();
 
         return new PaperTradeResult(portfolio,
                                     quoteBundle,
@@ -323,7 +319,9 @@ public class PaperTradeModule extends Page implements Module {
                                     PaperTrade.getTip());
     }
 
-    private List getPaperTradeResults() {
+    // Paper trade the rule, or each rule in the rule family. The rules
+    // in the rule family are paper traded in parallel.
+    private void paperTradeAll() {
         ProgressDialog progress =
             ProgressDialogManager.getProgressDialog();
 
@@ -333,133 +331,187 @@ public class PaperTradeModule extends Page implements Module {
 
         // Get a copy of the values in the GUI, so that if the user changes
         // them, it won't screw up the paper trade.
-        boolean isFamilyEnabled = rulesPage.isFamilyEnabled();
+        final boolean isFamilyEnabled = rulesPage.isFamilyEnabled();
         int aRange = rulesPage.getARange();
         int bRange = rulesPage.getBRange();
         int cRange = rulesPage.getCRange();
-        TradingDate startDate = quoteRangePage.getQuoteRange().getFirstDate();
-        TradingDate endDate = quoteRangePage.getQuoteRange().getLastDate();
-        Expression buyRule = rulesPage.getBuyRule();
-        Expression sellRule = rulesPage.getSellRule();
-        Money initialCapital = portfolioPage.getInitialCapital();
-        int mode = portfolioPage.getMode();
-        Money stockValue = portfolioPage.getStockValue();
-        int numberStocks = portfolioPage.getNumberStocks();
-        Money tradeCost = portfolioPage.getTradeCost();
+        final TradingDate startDate = quoteRangePage.getQuoteRange().getFirstDate();
+        final TradingDate endDate = quoteRangePage.getQuoteRange().getLastDate();
+        final Expression buyRule = rulesPage.getBuyRule();
+        final Expression sellRule = rulesPage.getSellRule();
+        final Money initialCapital = portfolioPage.getInitialCapital();
+        final int mode = portfolioPage.getMode();
+        final Money stockValue = portfolioPage.getStockValue();
+        final int numberStocks = portfolioPage.getNumberStocks();
+        final Money tradeCost = portfolioPage.getTradeCost();
         
 
-        quoteBundle = new EODQuoteBundle(quoteRangePage.getQuoteRange());
+        final EODQuoteBundle quoteBundle = new EODQuoteBundle(quoteRangePage.getQuoteRange());
+
+        // Don't let other windows free our quotes while we paper trade
+        quoteBundle.pin();
 
-        OrderComparator orderComparator = quoteRangePage.getOrderComparator(quoteBundle);
-        OrderCache orderCache = new OrderCache(quoteBundle, orderComparator);
-        String quoteRangeDescription = quoteBundle.getQuoteRange().getDescription();
+        try {
+            OrderComparator orderComparator = quoteRangePage.getOrderComparator(quoteBundle);
+            final OrderCache orderCache = new OrderCache(quoteBundle, orderComparator);
+            final String quoteRangeDescription = quoteBundle.getQuoteRange().getDescription();
 
-        // If we are using a rule family, how many equations are in the family?
-        // Otherwise it's just a single equation.
-        int numberEquations = (isFamilyEnabled ? aRange * bRange * cRange : 1);
+            // If we are using a rule family, how many equations are in the family?
+            // Otherwise it's just a single equation.
+            int numberEquations = (isFamilyEnabled ? aRange * bRange * cRange : 1);
         
-        // We get the formulas that rule at which price the stock is sold or bought
-        String tradeValueBuy = tradeValuePage.getTradeValueBuy();
-        String tradeValueSell = tradeValuePage.getTradeValueSell();
+            // We get the formulas that rule at which price the stock is sold or bought
+            final String tradeValueBuy = tradeValuePage.getTradeValueBuy();
+            final String tradeValueSell = tradeValuePage.getTradeValueSell();
+
+            AnalyserThreadPool threadPool = new AnalyserThreadPool("Paper Trade");
+            try {
+
+                // Order the symbols once, rather than once for each equation
+                orderCache.precompute(quoteBundle.getFirstOffset(), quoteBundle.getLastOffset(),
+                                      threadPool);
+
+                // The order cache isn't thread safe, and expressions might keep
+                // state while they are evaluated, so give each thread its own.
+                // Each thread evaluates its rules many times, so compile them.
+                final ThreadLocal orderCaches = new ThreadLocal() {
+                        protected Object initialValue() {
+                            return new OrderCache(orderCache);
+                        }
+                    };
+                final ThreadLocal buyRules = new ThreadLocal() {
+                        protected Object initialValue() {
+                            return ExpressionCompiler.compile((Expression)buyRule.clone());
+                        }
+                    };
+                final ThreadLocal sellRules = new ThreadLocal() {
+                        protected Object initialValue() {
+                            return ExpressionCompiler.compile((Expression)sellRule.clone());
+                        }
+                    };
 
-        progress.setIndeterminate(false);
-        progress.setMaximum(numberEquations);
-        progress.setProgress(0);
-        progress.setNote(Locale.getString("PAPER_TRADING"));
-        progress.setMaster(true);
+                final Variables variables = new Variables();
 
-        // Iterate through all possible paper trade equations
-        List paperTradeResults = new ArrayList(numberEquations);
+                if(isFamilyEnabled) {
+                    variables.add("a", Expression.INTEGER_TYPE, Variable.CONSTANT);
+                    variables.add("b", Expression.INTEGER_TYPE, Variable.CONSTANT);
+                    variables.add("c", Expression.INTEGER_TYPE, Variable.CONSTANT);
+                }
 
-        long startTime = System.currentTimeMillis();
+                // Paper trade the rules with the given values of a, b and c. The
+                // task returns the result, or null if the paper trade failed.
+                class PaperTradeTask implements Callable {
+                    private int a, b, c;
+                    private EvaluationException exception = null;
 
-        try {
-            Variables variables = new Variables();
-
-            // If the user has selected rule family, then iterate through
-            // each combination of a, b, c
-            if(isFamilyEnabled) {
-                variables.add("a", Expression.INTEGER_TYPE, Variable.CONSTANT);
-                variables.add("b", Expression.INTEGER_TYPE, Variable.CONSTANT);
-                variables.add("c", Expression.INTEGER_TYPE, Variable.CONSTANT);
-
-                for(int a = 1; a <= aRange; a++) {
-                    if(thread.isInterrupted())
-                        break;
-
-                    variables.setValue("a", a);
-
-                    for(int b = 1; b <= bRange; b++) {
-                        if(thread.isInterrupted())
-                            break;
-
-                        variables.setValue("b", b);
-
-                        for(int c = 1; c <= cRange; c++) {
-                            if(thread.isInterrupted())
-                                break;
-
-                            variables.setValue("c", c);
-                            paperTradeResults.add(paperTrade(progress,
-                                                             quoteBundle,
-                                                             quoteRangeDescription,
-                                                             orderCache,
-                                                             startDate,
-                                                             endDate,
-                                                             buyRule,
-                                                             sellRule,
-                                                             initialCapital,
-                                                             mode,
-                                                             stockValue,
-                                                             numberStocks,
-                                                             tradeCost,
-                                                             variables,
-                                                             a, b, c,
-                                                             tradeValueBuy,
-                                                             tradeValueSell));
+                    public PaperTradeTask(int a, int b, int c) {
+                        this.a = a;
+                        this.b = b;
+                        this.c = c;
+                    }
+
+                    public Object call() {
+                        Variables taskVariables = null;
+
+                        try {
+                            taskVariables = (Variables)variables.copyVariables();
+                        }
+                        catch(CloneNotSupportedException e) {
+                            assert false;
+                        }
+
+                        if(isFamilyEnabled) {
+                            taskVariables.setValue("a", a);
+                            taskVariables.setValue("b", b);
+                            taskVariables.setValue("c", c);
+                        }
+
+                        try {
+                            return paperTrade(quoteBundle,
+                                              quoteRangeDescription,
+                                              (OrderCache)orderCaches.get(),
+                                              startDate,
+                                              endDate,
+                                              (Expression)buyRules.get(),
+                                              (Expression)sellRules.get(),
+                                              initialCapital,
+                                              mode,
+                                              stockValue,
+                                              numberStocks,
+                                              tradeCost,
+                                              taskVariables,
+                                              a, b, c,
+                                              tradeValueBuy,
+                                              tradeValueSell);
+                        }
+                        catch(EvaluationException e) {
+                            exception = e;
+                            return null;
                         }
                     }
                 }
-            }
 
-            // Otherwise there is only one equation and one result.
-            else if (!thread.isInterrupted())
-                paperTradeResults.add(paperTrade(progress,
-                                                 quoteBundle,
-                                                 quoteRangeDescription,
-                                                 orderCache,
-                                                 startDate,
-                                                 endDate,
-                                                 buyRule,
-                                                 sellRule,
-                                                 initialCapital,
-                                                 mode,
-                                                 stockValue,
-                                                 numberStocks,
-                                                 tradeCost,
-                                                 variables,
-                                                 0, 0, 0,
-                                                 tradeValueBuy,
-                                                 tradeValueSell));
-
-        } catch(EvaluationException e) {
-            ProgressDialogManager.closeProgressDialog(progress);
-            progress = null;
-
-            showErrorMessage(
-            		e.getReason(),
-                    Locale.getString("ERROR_EVALUATING_EQUATION"));
-
-            return null;
-        }
+                // If the user has selected rule family, then iterate through
+                // each combination of a, b, c. Otherwise there is only one
+                // equation and one result.
+                List tasks = new ArrayList(numberEquations);
+
+                if(isFamilyEnabled) {
+                    for(int a = 1; a <= aRange; a++)
+                        for(int b = 1; b <= bRange; b++)
+                            for(int c = 1; c <= cRange; c++)
+                                tasks.add(new PaperTradeTask(a, b, c));
+                }
+                else
+                    tasks.add(new PaperTradeTask(0, 0, 0));
+
+                progress.setIndeterminate(false);
+                progress.setMaximum(numberEquations);
+                progress.setProgress(0);
+                progress.setNote(Locale.getString("PAPER_TRADING"));
+                progress.setMaster(true);
+
+                // Iterate through all possible paper trade equations
+                for(int i = 0; i < tasks.size() && !thread.isInterrupted(); i += BATCH_SIZE) {
+                    List batch = tasks.subList(i, Math.min(i + BATCH_SIZE, tasks.size()));
+                    List results = threadPool.invokeAll(batch, progress);
+                    List paperTradeResults = new ArrayList(batch.size());
+                    EvaluationException exception = null;
+
+                    for(int j = 0; j < results.size(); j++) {
+                        if(results.get(j) != null)
+                            paperTradeResults.add(results.get(j));
+                        else if(exception == null)
+                            exception = ((PaperTradeTask)batch.get(j)).exception;
+                    }
+
+                    if(exception != null) {
+                        ProgressDialogManager.closeProgressDialog(progress);
 
-        long endTime = System.currentTimeMillis();
+                        showErrorMessage(
+                            exception.getReason(),
+                            Locale.getString("ERROR_EVALUATING_EQUATION"));
+
+                        return;
+                    }
 
-	//        System.out.println("Total time (s) " + (endTime - startTime));
+                    if(!thread.isInterrupted())
+                        display(paperTradeResults);
 
+                    // Running the equation means we might need to load in
+                    // more quotes so the note may have changed...
+                    progress.setNote(Locale.getString("PAPER_TRADING"));
+                }
+            }
+            finally {
+                threadPool.shutdown();
+            }
+        }
+        finally {
+            quoteBundle.unpin();
+        }
 
         ProgressDialogManager.closeProgressDialog(progress);
-	return paperTradeResults;
     }
 
     private void display(final List paperTradeResults) {
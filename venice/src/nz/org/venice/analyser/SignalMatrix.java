@@ -0,0 +1,379 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.analyser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import nz.org.venice.parser.EvaluationException;
+import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.Variables;
+import nz.org.venice.parser.expression.AlertExpression;
+import nz.org.venice.parser.expression.DefineParameterExpression;
+import nz.org.venice.parser.expression.DefineVariableExpression;
+import nz.org.venice.parser.expression.EvalFunctionExpression;
+import nz.org.venice.parser.expression.FunctionExpression;
+import nz.org.venice.parser.expression.GetVariableExpression;
+import nz.org.venice.parser.expression.HaltExpression;
+import nz.org.venice.parser.expression.IncludeExpression;
+import nz.org.venice.parser.expression.LoggingExpression;
+import nz.org.venice.parser.expression.RandomWithSeedExpression;
+import nz.org.venice.parser.expression.RandomWithoutSeedExpression;
+import nz.org.venice.parser.expression.SetVariableExpression;
+import nz.org.venice.quote.EODQuoteBundle;
+import nz.org.venice.quote.Symbol;
+
+/**
+ * The buy and sell signals of a paper trade. Paper trading evaluates the
+ * buy and sell rules for every symbol on every day, one at a time, as it
+ * goes along building the portfolio. Most rules don't look at the portfolio
+ * at all, so their signals can be calculated before the paper trade
+ * starts. The symbols are independent of each other, so each symbol's
+ * signals can be calculated for the whole trading period at once, which
+ * lets rules that only depend on the quotes use
+ * {@link Expression#evaluateSeries}.
+ * <p>
+ * A rule can't be precalculated if it reads any of the implicit variables
+ * that depend on the portfolio, e.g. <code>held</code> or
+ * <code>capital</code>, or if it has side effects or returns random
+ * results. The signals of these rules are evaluated when they are asked
+ * for, as before.
+ * <p>
+ * The paper trade sees exactly the same signals either way. If the
+ * rule fails for a symbol and day, the rule is evaluated again when the
+ * paper trade asks for that signal, so it throws the same failure. The
+ * failure itself isn't kept, as evaluation exceptions are shared and
+ * their messages change with each failure.
+ *
+ * @author Andrew Leppard
+ * @see PaperTrade
+ */
+class SignalMatrix {
+
+    // Implicit variables which depend on the state of the portfolio
+    private final static String[] PORTFOLIO_VARIABLES = {"held",
+                                                         "stockcapital",
+                                                         "capital",
+                                                         "transactions",
+                                                         "daysfromlasttransaction",
+                                                         "daysfromlastransaction"};
+
+    // Implicit variables which change from day to day, but which don't
+    // depend on the portfolio
+    private final static String[] DAILY_VARIABLES = {"order", "daysfromstart"};
+
+    // The states of each signal
+    private final static byte UNKNOWN = 0;
+    private final static byte FALSE = 1;
+    private final static byte TRUE = 2;
+    private final static byte FAILED = 3;
+
+    // Historical quote data
+    private EODQuoteBundle quoteBundle;
+
+    // The buy and sell rules
+    private Expression buy;
+    private Expression sell;
+
+    // Map of symbols to their precalculated signals
+    private Map signals;
+
+    // The precalculated signals of a single symbol
+    private static class Signals {
+        // Fast access offset of the first date of the signals
+        public int firstDateOffset;
+
+        // The buy and sell signals of each date, or null if the rule
+        // can't be precalculated
+        public byte[] buy;
+        public byte[] sell;
+    }
+
+    /**
+     * Create the signals of the given buy and sell rules. No signals are
+     * precalculated until {@link #precompute} is called.
+     *
+     * @param quoteBundle historical quote data
+     * @param buy the buy rule
+     * @param sell the sell rule
+     */
+    public SignalMatrix(EODQuoteBundle quoteBundle, Expression buy, Expression sell) {
+        this.quoteBundle = quoteBundle;
+        this.buy = buy;
+        this.sell = sell;
+
+        signals = new HashMap();
+    }
+
+    /**
+     * Precalculate the signals of every symbol that can be traded on each
+     * day in the given range. The <code>daysfromstart</code> variable is
+     * counted from the first day. The variables must already contain the
+     * implicit variables, and are not modified.
+     *
+     * @param variables the variables the rules are evaluated with
+     * @param orderCache cache of ordered symbols
+     * @param firstDateOffset fast access offset of the first day
+     * @param lastDateOffset fast access offset of the last day
+     */
+    public void precompute(Variables variables, OrderCache orderCache,
+                           int firstDateOffset, int lastDateOffset) {
+        boolean isBuyPrecomputable = isPrecomputable(buy);
+        boolean isSellPrecomputable = isPrecomputable(sell);
+
+        if((!isBuyPrecomputable && !isSellPrecomputable) || lastDateOffset < firstDateOffset)
+            return;
+
+        // Don't let our evaluations disturb the paper trade's variables
+        try {
+            variables = (Variables)variables.copyVariables();
+        }
+        catch(CloneNotSupportedException e) {
+            assert false;
+        }
+
+        // Find the order of each symbol on each day it can be traded
+        int days = lastDateOffset - firstDateOffset + 1;
+        Map orders = new HashMap();
+
+        for(int day = 0; day < days; day++) {
+            List symbols = orderCache.getTodaySymbols(firstDateOffset + day);
+            int order = 0;
+
+            for(Iterator iterator = symbols.iterator(); iterator.hasNext();) {
+                Symbol symbol = (Symbol)iterator.next();
+                int[] symbolOrders = (int[])orders.get(symbol);
+
+                if(symbolOrders == null) {
+                    symbolOrders = new int[days];
+                    Arrays.fill(symbolOrders, -1);
+                    orders.put(symbol, symbolOrders);
+                }
+
+                symbolOrders[day] = order++;
+            }
+        }
+
+        for(Iterator iterator = orders.keySet().iterator(); iterator.hasNext();) {
+            Symbol symbol = (Symbol)iterator.next();
+            int[] symbolOrders = (int[])orders.get(symbol);
+
+            // Only cover the days between the first and last day the
+            // symbol can be traded
+            int first = 0;
+            while(symbolOrders[first] == -1)
+                first++;
+
+            int last = days - 1;
+            while(symbolOrders[last] == -1)
+                last--;
+
+            Signals symbolSignals = new Signals();
+            symbolSignals.firstDateOffset = firstDateOffset + first;
+
+            if(isBuyPrecomputable) {
+                symbolSignals.buy = new byte[last - first + 1];
+                precompute(buy, symbolSignals.buy, variables, orderCache.isOrdered(),
+                           symbol, symbolOrders, first, firstDateOffset);
+            }
+
+            if(isSellPrecomputable) {
+                symbolSignals.sell = new byte[last - first + 1];
+                precompute(sell, symbolSignals.sell, variables, orderCache.isOrdered(),
+                           symbol, symbolOrders, first, firstDateOffset);
+            }
+
+            signals.put(symbol, symbolSignals);
+        }
+    }
+
+    /**
+     * Return whether the buy rule fires for the given symbol and day.
+     *
+     * @param variables the variables to evaluate the rule with, if its
+     *                  signal wasn't precalculated
+     * @param symbol the symbol
+     * @param dateOffset fast access date offset
+     * @return <code>true</code> if we should buy the symbol
+     * @exception EvaluationException if the rule fails
+     */
+    public boolean isBuy(Variables variables, Symbol symbol, int dateOffset)
+        throws EvaluationException {
+
+        Signals symbolSignals = (Signals)signals.get(symbol);
+
+        if(symbolSignals != null && symbolSignals.buy != null)
+            return isSignal(buy, symbolSignals.buy, symbolSignals.firstDateOffset,
+                            variables, symbol, dateOffset);
+        else
+            return buy.evaluate(variables, quoteBundle, symbol, dateOffset) >= Expression.TRUE;
+    }
+
+    /**
+     * Return whether the sell rule fires for the given symbol and day.
+     *
+     * @param variables the variables to evaluate the rule with, if its
+     *                  signal wasn't precalculated
+     * @param symbol the symbol
+     * @param dateOffset fast access date offset
+     * @return <code>true</code> if we should sell the symbol
+     * @exception EvaluationException if the rule fails
+     */
+    public boolean isSell(Variables variables, Symbol symbol, int dateOffset)
+        throws EvaluationException {
+
+        Signals symbolSignals = (Signals)signals.get(symbol);
+
+        if(symbolSignals != null && symbolSignals.sell != null)
+            return isSignal(sell, symbolSignals.sell, symbolSignals.firstDateOffset,
+                            variables, symbol, dateOffset);
+        else
+            return sell.evaluate(variables, quoteBundle, symbol, dateOffset) >= Expression.TRUE;
+    }
+
+    /**
+     * Return whether the signals of the given rule can be calculated before
+     * paper trading. This is true if the rule doesn't read any variables
+     * that depend on the portfolio, and doesn't have side effects or
+     * return random results.
+     *
+     * @param expression the rule
+     * @return <code>true</code> if the signals can be precalculated
+     */
+    public static boolean isPrecomputable(Expression expression) {
+        if(expression instanceof SetVariableExpression ||
+           expression instanceof DefineVariableExpression ||
+           expression instanceof DefineParameterExpression ||
+           expression instanceof FunctionExpression ||
+           expression instanceof EvalFunctionExpression ||
+           expression instanceof IncludeExpression ||
+           expression instanceof RandomWithSeedExpression ||
+           expression instanceof RandomWithoutSeedExpression ||
+           expression instanceof AlertExpression ||
+           expression instanceof HaltExpression ||
+           expression instanceof LoggingExpression)
+            return false;
+
+        if(expression instanceof GetVariableExpression &&
+           isNamed((GetVariableExpression)expression, PORTFOLIO_VARIABLES))
+            return false;
+
+        for(int i = 0; i < expression.getChildCount(); i++) {
+            Expression child = expression.getChild(i);
+
+            if(child == null || !isPrecomputable(child))
+                return false;
+        }
+
+        return true;
+    }
+
+    // Look up a precalculated signal, or evaluate the rule if the signal
+    // wasn't precalculated for the day. If the rule failed on the day,
+    // evaluating it again throws the failure.
+    private boolean isSignal(Expression expression, byte[] cells, int firstDateOffset,
+                             Variables variables, Symbol symbol, int dateOffset)
+        throws EvaluationException {
+
+        int day = dateOffset - firstDateOffset;
+
+        if(day >= 0 && day < cells.length) {
+            if(cells[day] == TRUE)
+                return true;
+            else if(cells[day] == FALSE)
+                return false;
+        }
+
+        return expression.evaluate(variables, quoteBundle, symbol, dateOffset) >= Expression.TRUE;
+    }
+
+    // Precalculate the signals of the given rule for a single symbol. The
+    // days the rule fails on are marked as failed.
+    private void precompute(Expression expression, byte[] cells,
+                            Variables variables, boolean isOrdered,
+                            Symbol symbol, int[] symbolOrders,
+                            int first, int firstDateOffset) {
+        // If the rule doesn't read the daily variables, calculate the
+        // signals for every day at once.
+        if(!uses(expression, DAILY_VARIABLES)) {
+            try {
+                double[] results =
+                    expression.evaluateSeries(variables, quoteBundle, symbol,
+                                              firstDateOffset + first,
+                                              firstDateOffset + first + cells.length - 1);
+
+                for(int i = 0; i < cells.length; i++)
+                    cells[i] = results[i] >= Expression.TRUE ? TRUE : FALSE;
+
+                return;
+            }
+            catch(EvaluationException e) {
+                // Evaluate a day at a time below so we know which days failed
+            }
+        }
+
+        for(int i = 0; i < cells.length; i++) {
+            int day = first + i;
+
+            // The signal isn't needed on days the symbol can't be traded
+            if(symbolOrders[day] == -1)
+                continue;
+
+            if(isOrdered)
+                variables.setValue("order", symbolOrders[day]);
+
+            variables.setValue("daysfromstart", day);
+
+            try {
+                cells[i] = expression.evaluate(variables, quoteBundle, symbol,
+                                               firstDateOffset + day) >= Expression.TRUE ?
+                    TRUE : FALSE;
+            }
+            catch(EvaluationException e) {
+                cells[i] = FAILED;
+            }
+        }
+    }
+
+    // Return whether the rule reads any of the given variables
+    private static boolean uses(Expression expression, String[] names) {
+        if(expression instanceof GetVariableExpression &&
+           isNamed((GetVariableExpression)expression, names))
+            return true;
+
+        for(int i = 0; i < expression.getChildCount(); i++)
+            if(uses(expression.getChild(i), names))
+                return true;
+
+        return false;
+    }
+
+    // Return whether the variable has one of the given names
+    private static boolean isNamed(GetVariableExpression expression, String[] names) {
+        for(int i = 0; i < names.length; i++)
+            if(expression.getName().equals(names[i]))
+                return true;
+
+        return false;
+    }
+}
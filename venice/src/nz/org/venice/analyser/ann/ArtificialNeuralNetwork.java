@@ -24,9 +24,11 @@ package nz.org.venice.analyser.ann;
  * http://www.jooneworld.com/
  */
 import java.io.*;
+import java.text.DecimalFormat;
 import javax.swing.JDesktopPane;
 import javax.swing.JOptionPane;
 
+import nz.org.venice.analyser.AnalyserThreadPool;
 import nz.org.venice.ui.ProgressDialog;
 import nz.org.venice.ui.ProgressDialogManager;
 import nz.org.venice.util.Locale;
@@ -60,6 +62,15 @@ public class ArtificialNeuralNetwork implements NeuralNetListener {
      * All that work is done by saved boolean variable.
      */
     private boolean saved;
+
+    /*
+     * Copy of nnet which runs without Joone's threads. It is created
+     * when the network is first run and thrown away whenever nnet changes.
+     * It stays null if nnet can't be copied, in which case we run nnet
+     * through Joone.
+     */
+    private FeedForwardNetwork network;
+    private boolean networkCreated;
     
     /* Constants */
     /* index for buy and sell signals of output array*/
@@ -114,54 +125,138 @@ public class ArtificialNeuralNetwork implements NeuralNetListener {
         boolean[] ANNOutput = new boolean[this.OUTPUT_NEURONS];
 
         if (nnet != null) {
-        
-            /* We get the first layer of the net (the input layer),
-            then remove all the input synapses attached to it
-            and attach a DirectSynapse */
-            Layer input = nnet.getInputLayer();
-            input.removeAllInputs();
-            DirectSynapse memInpDS = new DirectSynapse();
-            input.addInputSynapse(memInpDS);
-
-            /* We get the last layer of the net (the output layer),
-            then remove all the output synapses attached to it
-            and attach a DirectSynapse */
-            Layer output = nnet.getOutputLayer();
-            output.removeAllOutputs();
-            DirectSynapse memOutDS = new DirectSynapse();
-            output.addOutputSynapse(memOutDS);
-
-            // Run the neural network
-            nnet.start();
+            double[] theNetOutput;
 
-            // Prepare the next input pattern
-            Pattern iPattern = new Pattern(inputDoubles);
-            iPattern.setCount(1);
-            // Interrogate the net
-            memInpDS.fwdPut(iPattern);
-            // Read the output pattern and print out it
-            Pattern pattern = memOutDS.fwdGet();
-            
-            // set the output and put it in a temporary variable,
-            // should just be one output i.e. one array as we have setup this up before
-            double[] theNetOutput = pattern.getArray();
-            
-            // stop the ANN
-            Pattern stop = new Pattern(new double[inputDoubles.length]);
-            stop.setCount(-1);
-            memInpDS.fwdPut(stop);
-            memOutDS.fwdGet();
+            // Run the network directly if we can, otherwise through Joone
+            FeedForwardNetwork network = getNetwork(inputDoubles.length);
+            if (network != null)
+                theNetOutput = network.run(inputDoubles);
+            else
+                theNetOutput = runJoone(inputDoubles);
 
             // Get the return values
-            ANNOutput[this.OUTPUT_BUY] = theNetOutput[this.OUTPUT_BUY]>this.buyThreshold;
-            ANNOutput[this.OUTPUT_SELL] = theNetOutput[this.OUTPUT_SELL]>this.sellThreshold;
-            
+            ANNOutput = toSignals(theNetOutput);
         }
         
         // return the array of booleans according to thresholds
         return ANNOutput;
     }
 
+    /**
+     * Run the current nnet neural network on a batch of inputs, such as
+     * the inputs of every symbol on a day. This is faster than running the
+     * network on each input in turn.
+     *
+     * @param	inputDoubles    the input values of the artificial neural network,
+     * one row for each run of the network
+     * @return	the output values of each row of input,
+     * returnValue[row][OUTPUT_BUY] is the buy signal returned,
+     * returnValue[row][OUTPUT_SELL] is the sell signal returned.
+     */
+    public boolean[][] run(double[][] inputDoubles) {
+
+        boolean[][] ANNOutput = new boolean[inputDoubles.length][];
+
+        FeedForwardNetwork network = null;
+        if (nnet != null && inputDoubles.length > 0) {
+            network = getNetwork(inputDoubles[0].length);
+        }
+
+        if (network != null) {
+            double[][] theNetOutput = network.run(inputDoubles);
+            for (int i = 0; i < inputDoubles.length; i++) {
+                ANNOutput[i] = toSignals(theNetOutput[i]);
+            }
+        } else {
+            for (int i = 0; i < inputDoubles.length; i++) {
+                ANNOutput[i] = run(inputDoubles[i]);
+            }
+        }
+
+        return ANNOutput;
+    }
+
+    /*
+     * Return the copy of nnet that runs without Joone, or null if there isn't
+     * one that takes the given number of inputs and gives the buy and sell signals.
+     */
+    private synchronized FeedForwardNetwork getNetwork(int inputs) {
+        if (!networkCreated) {
+            network = FeedForwardNetwork.create(nnet);
+            networkCreated = true;
+        }
+
+        if (network != null &&
+            network.getInputs() == inputs &&
+            network.getOutputs() == this.OUTPUT_NEURONS) {
+            return network;
+        } else {
+            return null;
+        }
+    }
+
+    /*
+     * Throw away the copy of nnet, as nnet has changed.
+     */
+    private synchronized void resetNetwork() {
+        network = null;
+        networkCreated = false;
+    }
+
+    /*
+     * Convert the outputs of the neural network to buy and sell signals.
+     */
+    private boolean[] toSignals(double[] theNetOutput) {
+        boolean[] ANNOutput = new boolean[this.OUTPUT_NEURONS];
+        ANNOutput[this.OUTPUT_BUY] = theNetOutput[this.OUTPUT_BUY]>this.buyThreshold;
+        ANNOutput[this.OUTPUT_SELL] = theNetOutput[this.OUTPUT_SELL]>this.sellThreshold;
+        return ANNOutput;
+    }
+
+    /*
+     * Run the current nnet neural network through Joone.
+     */
+    private double[] runJoone(double[] inputDoubles) {
+        /* We get the first layer of the net (the input layer),
+        then remove all the input synapses attached to it
+        and attach a DirectSynapse */
+        Layer input = nnet.getInputLayer();
+        input.removeAllInputs();
+        DirectSynapse memInpDS = new DirectSynapse();
+        input.addInputSynapse(memInpDS);
+
+        /* We get the last layer of the net (the output layer),
+        then remove all the output synapses attached to it
+        and attach a DirectSynapse */
+        Layer output = nnet.getOutputLayer();
+        output.removeAllOutputs();
+        DirectSynapse memOutDS = new DirectSynapse();
+        output.addOutputSynapse(memOutDS);
+
+        // Run the neural network
+        nnet.start();
+
+        // Prepare the next input pattern
+        Pattern iPattern = new Pattern(inputDoubles);
+        iPattern.setCount(1);
+        // Interrogate the net
+        memInpDS.fwdPut(iPattern);
+        // Read the output pattern and print out it
+        Pattern pattern = memOutDS.fwdGet();
+        
+        // set the output and put it in a temporary variable,
+        // should just be one output i.e. one array as we have setup this up before
+        double[] theNetOutput = pattern.getArray();
+        
+        // stop the ANN
+        Pattern stop = new Pattern(new double[inputDoubles.length]);
+        stop.setCount(-1);
+        memInpDS.fwdPut(stop);
+        memOutDS.fwdGet();
+
+        return theNetOutput;
+    }
+
     /**
      * Trains the current nnet neural network.
      *
@@ -181,6 +276,9 @@ public class ArtificialNeuralNetwork implements NeuralNetListener {
             int newTrainingPatterns) {
 
         if (nnet != null) {
+
+            // Training changes the weights
+            resetNetwork();
         
             /* We get the first layer of the net (the input layer),
             then remove all the input synapses attached to it
@@ -231,6 +329,86 @@ public class ArtificialNeuralNetwork implements NeuralNetListener {
         }
     }
 
+    /**
+     * Trains the current nnet neural network by multi-threaded mini-batch
+     * backpropagation, rather than by Joone. Unlike {@link #runTraining},
+     * the training has finished when this method returns. The progress bar
+     * shows the cycles trained per second and the RMSE after each cycle.
+     * The trained weights are written back into nnet, so it can be saved
+     * as usual.
+     *
+     * @param	inputArray    an array of input values of the artificial neural network
+     * @param	outputDesiredArray    an array of desired output values
+     * of the artificial neural network
+     * @return  false if nnet can't be trained this way,
+     * in which case it should be trained by {@link #runTraining}.
+     */
+    public boolean runParallelTraining(double[][] inputArray, double[][] outputDesiredArray,
+            double newLearningRate,
+            double newMomentum,
+            int newPreLearning,
+            int newTotCicles,
+            int newTrainingPatterns) {
+
+        if (nnet == null || nnet.getInputLayer() == null) {
+            return false;
+        }
+
+        FeedForwardNetwork network = getNetwork(nnet.getInputLayer().getRows());
+        if (network == null) {
+            return false;
+        }
+
+        AnalyserThreadPool threadPool = new AnalyserThreadPool("ANN Training");
+        BackpropagationTrainer trainer =
+            new BackpropagationTrainer(network, newLearningRate, newMomentum, threadPool);
+
+        Thread thread = Thread.currentThread();
+        DecimalFormat format = new DecimalFormat("0.0");
+        long startTime = System.currentTimeMillis();
+        double RMSE = 0.0D;
+        int cycles = 0;
+
+        // The initial ignored input patterns, as Joone's pre learning
+        int firstPattern = Math.min(newPreLearning, newTrainingPatterns);
+
+        while (cycles < newTotCicles && !thread.isInterrupted()) {
+            RMSE = trainer.train(inputArray, outputDesiredArray,
+                    firstPattern, newTrainingPatterns);
+            cycles++;
+
+            // Every cycle, we increment by one the progress bar
+            if (progress != null) {
+                double seconds = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.0D;
+                progress.setNote(Locale.getString("TRAINING_PROGRESS",
+                        format.format(cycles / seconds), Double.toString(RMSE)));
+                progress.increment();
+            }
+        }
+
+        threadPool.shutdown();
+
+        // Copy the trained weights into nnet so that it can be saved
+        network.writeWeights();
+        this.saved = false;
+
+        // Close the progress bar
+        if (progress != null) {
+            progress.hide();
+        }
+
+        // Artificial neural network stopped correctly message,
+        // unless the user cancelled the training
+        if (!thread.isInterrupted()) {
+            JOptionPane.showInternalMessageDialog(desktop,
+                Locale.getString("ANN_STOPPED_OK", Double.toString(RMSE)),
+                Locale.getString("ANN_STOPPED_OK_TITLE"),
+                JOptionPane.INFORMATION_MESSAGE);
+        }
+
+        return true;
+    }
+
     /**
      * Set the progress bar, so that we can manage it when cycle terminated event is raised.
      *
@@ -245,6 +423,7 @@ public class ArtificialNeuralNetwork implements NeuralNetListener {
      */
     public void setANNNull() {
         this.nnet = null;
+        resetNetwork();
     }
     
     /**
@@ -359,6 +538,7 @@ public class ArtificialNeuralNetwork implements NeuralNetListener {
         // After sucessful loading, we update the saved boolean variable,
         // because we have a saved ANN equal to the ANN in memory.
         this.saved = true;
+        resetNetwork();
     }
 
     /**
@@ -474,6 +654,7 @@ public class ArtificialNeuralNetwork implements NeuralNetListener {
         nnet.addLayer(output, NeuralNet.OUTPUT_LAYER);
         
         this.saved = false;
+        resetNetwork();
     }
 
     /**
@@ -488,6 +669,7 @@ public class ArtificialNeuralNetwork implements NeuralNetListener {
         if (input.getRows() != inputRows) {
             input.setRows(inputRows);
             this.saved = false;
+            resetNetwork();
         }
     }
     
@@ -502,6 +684,7 @@ public class ArtificialNeuralNetwork implements NeuralNetListener {
         if (output.getRows() != this.OUTPUT_NEURONS) {
             output.setRows(this.OUTPUT_NEURONS);
             this.saved = false;
+            resetNetwork();
         }
     }
 
@@ -607,6 +790,7 @@ public class ArtificialNeuralNetwork implements NeuralNetListener {
         progress.hide();
         // Stop the ANN
         nnet.stop();
+        resetNetwork();
         // Detach Monitor
         nnet.getMonitor().removeNeuralNetListener(this);
         // Artificial neural network stopped correctly message
@@ -622,6 +806,7 @@ public class ArtificialNeuralNetwork implements NeuralNetListener {
         progress.hide();
         // Stop the ANN
         nnet.stop();
+        resetNetwork();
         // Detach Monitor
         nnet.getMonitor().removeNeuralNetListener(this);
         // Artificial neural network stopped abnormally message
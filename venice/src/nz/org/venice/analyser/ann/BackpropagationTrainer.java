@@ -0,0 +1,282 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.analyser.ann;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import nz.org.venice.analyser.AnalyserThreadPool;
+
+/**
+ * Trains a {@link FeedForwardNetwork} by mini-batch backpropagation with
+ * momentum. This is an alternative to training the network through Joone,
+ * which trains one pattern at a time in Joone's own threads. Here the
+ * patterns are split into batches, the error gradients of each batch are
+ * summed across the threads of an {@link AnalyserThreadPool}, and then the
+ * weights are updated once for the batch.
+ * <p>
+ * The gradients of each thread are added together in the same order every
+ * time, so training gives the same network for the same number of threads.
+ *
+ * @author Andrew Leppard
+ * @see ArtificialNeuralNetwork
+ */
+public class BackpropagationTrainer {
+
+    // Number of patterns whose gradients are summed before updating the weights
+    private final static int BATCH_SIZE = 256;
+
+    // Minimum number of patterns given to each thread
+    private final static int MINIMUM_PATTERNS_PER_THREAD = 32;
+
+    private FeedForwardNetwork network;
+    private double learningRate;
+    private double momentum;
+    private AnalyserThreadPool threadPool;
+
+    // Gradients summed by each thread, and the changes made to the
+    // weights and biases by the last update, used for the momentum
+    private Gradients[] gradients;
+    private Gradients deltas;
+
+    /**
+     * Create a new trainer.
+     *
+     * @param network      the network to train
+     * @param learningRate the learning rate
+     * @param momentum     the momentum
+     * @param threadPool   the threads used to calculate the gradients
+     */
+    public BackpropagationTrainer(FeedForwardNetwork network, double learningRate,
+                                  double momentum, AnalyserThreadPool threadPool) {
+        this.network = network;
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+        this.threadPool = threadPool;
+
+        gradients = new Gradients[threadPool.getThreads()];
+        for(int i = 0; i < gradients.length; i++)
+            gradients[i] = new Gradients();
+
+        deltas = new Gradients();
+    }
+
+    /**
+     * Train the network once on each of the given patterns.
+     *
+     * @param inputs  the inputs of each pattern
+     * @param desired the desired outputs of each pattern
+     * @param first   the index of the first pattern to train on
+     * @param last    the index after the last pattern to train on
+     * @return the root mean square error of the outputs over the patterns
+     */
+    public double train(double[][] inputs, double[][] desired, int first, int last) {
+        double squaredError = 0.0D;
+
+        for(int batchFirst = first; batchFirst < last; batchFirst += BATCH_SIZE) {
+            int batchLast = Math.min(batchFirst + BATCH_SIZE, last);
+            int threads = Math.max(1, Math.min(gradients.length,
+                                               (batchLast - batchFirst) /
+                                               MINIMUM_PATTERNS_PER_THREAD));
+
+            squaredError += sumGradients(inputs, desired, batchFirst, batchLast, threads);
+            update(batchLast - batchFirst, threads);
+        }
+
+        int outputs = network.getOutputs() * Math.max(1, last - first);
+        return Math.sqrt(squaredError / outputs);
+    }
+
+    // Sum the gradients of the patterns, splitting the patterns between the
+    // given number of threads. Return the sum of the squared errors.
+    private double sumGradients(final double[][] inputs, final double[][] desired,
+                                int first, int last, int threads) {
+        if(threads == 1)
+            return gradients[0].sum(inputs, desired, first, last);
+
+        List tasks = new ArrayList(threads);
+
+        for(int i = 0; i < threads; i++) {
+            final Gradients taskGradients = gradients[i];
+            final int taskFirst = first + (last - first) * i / threads;
+            final int taskLast = first + (last - first) * (i + 1) / threads;
+
+            tasks.add(new Callable() {
+                    public Object call() {
+                        return new Double(taskGradients.sum(inputs, desired,
+                                                            taskFirst, taskLast));
+                    }
+                });
+        }
+
+        List results = threadPool.invokeAll(tasks, null);
+        double squaredError = 0.0D;
+
+        for(int i = 0; i < results.size(); i++)
+            if(results.get(i) != null)
+                squaredError += ((Double)results.get(i)).doubleValue();
+
+        return squaredError;
+    }
+
+    // Update the weights and biases using the gradients summed by the
+    // given number of threads over the given number of patterns
+    private void update(int patterns, int threads) {
+        double rate = learningRate / patterns;
+
+        for(int layer = 1; layer < network.getLayers(); layer++) {
+            double[] biases = network.getBiases(layer);
+
+            if(biases != null)
+                for(int neuron = 0; neuron < biases.length; neuron++) {
+                    double gradient = 0.0D;
+                    for(int i = 0; i < threads; i++)
+                        gradient += gradients[i].biases[layer][neuron];
+
+                    double delta = rate * gradient + momentum * deltas.biases[layer][neuron];
+                    deltas.biases[layer][neuron] = delta;
+                    biases[neuron] += delta;
+                }
+
+            double[][][] weights = network.getWeights(layer);
+
+            for(int synapse = 0; synapse < weights.length; synapse++)
+                for(int row = 0; row < weights[synapse].length; row++)
+                    for(int neuron = 0; neuron < weights[synapse][row].length; neuron++) {
+                        double gradient = 0.0D;
+                        for(int i = 0; i < threads; i++)
+                            gradient += gradients[i].weights[layer][synapse][row][neuron];
+
+                        double delta = rate * gradient +
+                            momentum * deltas.weights[layer][synapse][row][neuron];
+                        deltas.weights[layer][synapse][row][neuron] = delta;
+                        weights[synapse][row][neuron] += delta;
+                    }
+        }
+    }
+
+    /**
+     * The error gradients of a network's weights and biases, summed over
+     * a number of patterns.
+     */
+    private class Gradients {
+        private double[][] biases;
+        private double[][][][] weights;
+
+        // Working space for running the network
+        private double[][] outputs;
+        private double[][] errors;
+
+        public Gradients() {
+            int layers = network.getLayers();
+
+            biases = new double[layers][];
+            weights = new double[layers][][][];
+            outputs = network.createLayerOutputs();
+            errors = network.createLayerOutputs();
+
+            for(int layer = 0; layer < layers; layer++) {
+                biases[layer] = new double[outputs[layer].length];
+
+                double[][][] networkWeights = network.getWeights(layer);
+                weights[layer] = new double[networkWeights == null? 0 :
+                                            networkWeights.length][][];
+
+                for(int synapse = 0; synapse < weights[layer].length; synapse++)
+                    weights[layer][synapse] =
+                        new double[networkWeights[synapse].length][outputs[layer].length];
+            }
+        }
+
+        // Sum the gradients of the given patterns, replacing the previous
+        // sums. Return the sum of the squared errors.
+        public double sum(double[][] inputs, double[][] desired, int first, int last) {
+            clear();
+
+            double squaredError = 0.0D;
+            int outputLayer = outputs.length - 1;
+
+            for(int pattern = first; pattern < last; pattern++) {
+                network.run(inputs[pattern], outputs);
+
+                // The error of the output layer is how far it is from
+                // the desired output
+                for(int neuron = 0; neuron < outputs[outputLayer].length; neuron++) {
+                    double error = desired[pattern][neuron] - outputs[outputLayer][neuron];
+                    squaredError += error * error;
+                    errors[outputLayer][neuron] = error;
+                }
+
+                for(int layer = 0; layer < outputLayer; layer++)
+                    for(int neuron = 0; neuron < errors[layer].length; neuron++)
+                        errors[layer][neuron] = 0.0D;
+
+                // Pass the errors back through the network. Each layer comes
+                // after the layers feeding into it, so by the time we
+                // reach a layer its error is complete.
+                for(int layer = outputLayer; layer > 0; layer--) {
+                    for(int neuron = 0; neuron < errors[layer].length; neuron++) {
+                        errors[layer][neuron] *=
+                            network.getDerivative(layer, outputs[layer][neuron]);
+                        biases[layer][neuron] += errors[layer][neuron];
+                    }
+
+                    int[] sources = network.getSources(layer);
+                    double[][][] networkWeights = network.getWeights(layer);
+
+                    for(int synapse = 0; synapse < sources.length; synapse++) {
+                        double[] sourceOutputs = outputs[sources[synapse]];
+                        double[] sourceErrors = errors[sources[synapse]];
+
+                        for(int row = 0; row < sourceOutputs.length; row++) {
+                            double[] synapseWeights = networkWeights[synapse][row];
+                            double[] synapseGradients = weights[layer][synapse][row];
+                            double error = 0.0D;
+
+                            for(int neuron = 0; neuron < errors[layer].length; neuron++) {
+                                synapseGradients[neuron] +=
+                                    sourceOutputs[row] * errors[layer][neuron];
+                                error += synapseWeights[neuron] * errors[layer][neuron];
+                            }
+
+                            sourceErrors[row] += error;
+                        }
+                    }
+                }
+            }
+
+            return squaredError;
+        }
+
+        private void clear() {
+            for(int layer = 0; layer < biases.length; layer++) {
+                for(int neuron = 0; neuron < biases[layer].length; neuron++)
+                    biases[layer][neuron] = 0.0D;
+
+                for(int synapse = 0; synapse < weights[layer].length; synapse++)
+                    for(int row = 0; row < weights[layer][synapse].length; row++)
+                        for(int neuron = 0; neuron < weights[layer][synapse][row].length;
+                            neuron++)
+                            weights[layer][synapse][row][neuron] = 0.0D;
+            }
+        }
+    }
+}
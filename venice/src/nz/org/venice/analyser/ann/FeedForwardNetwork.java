@@ -0,0 +1,430 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.analyser.ann;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+/* Joone import */
+import org.joone.engine.FullSynapse;
+import org.joone.engine.Layer;
+import org.joone.engine.LinearLayer;
+import org.joone.engine.Matrix;
+import org.joone.engine.SigmoidLayer;
+import org.joone.engine.Synapse;
+import org.joone.engine.TanhLayer;
+import org.joone.net.NeuralNet;
+/* End Joone import */
+
+/**
+ * A copy of the weights of a Joone neural network that runs the network
+ * directly, rather than through Joone. Joone runs each layer in its own
+ * thread and passes patterns between the threads, so running the network
+ * once for every symbol on every day of a paper trade spends most of its
+ * time starting and stopping the threads. This class holds the weights in
+ * plain arrays and runs the network in the calling thread, one input or a
+ * batch of inputs at a time. The outputs are the same as Joone's.
+ * <p>
+ * Only feed forward networks of linear, sigmoid and tanh layers joined by
+ * full synapses are supported, which includes the default network. For
+ * any other network {@link #create} returns <code>null</code> and the
+ * network should be run through Joone.
+ * <p>
+ * The weights are copied when the network is created, so it must be
+ * created again after the Joone network has been trained. Likewise if
+ * the copy is trained, see {@link BackpropagationTrainer}, its weights
+ * must be copied back with {@link #writeWeights}.
+ *
+ * @author Andrew Leppard
+ * @see ArtificialNeuralNetwork
+ */
+public class FeedForwardNetwork {
+
+    // Layer types
+    private final static int LINEAR = 0;
+    private final static int SIGMOID = 1;
+    private final static int TANH = 2;
+
+    // Type of each layer in the order they are run, the input layer first
+    private int[] types;
+
+    // Number of neurons in each layer
+    private int[] rows;
+
+    // Beta of each linear layer
+    private double[] betas;
+
+    // Bias of each neuron of each sigmoid and tanh layer
+    private double[][] biases;
+
+    // Layers feeding into each layer, and the weights of their synapses
+    // indexed by source neuron then neuron
+    private int[][] sources;
+    private double[][][][] weights;
+
+    // The Joone matrices the biases and weights were copied from
+    private Matrix[] biasMatrices;
+    private Matrix[][] weightMatrices;
+
+    private FeedForwardNetwork(int layers) {
+        types = new int[layers];
+        rows = new int[layers];
+        betas = new double[layers];
+        biases = new double[layers][];
+        sources = new int[layers][];
+        weights = new double[layers][][][];
+        biasMatrices = new Matrix[layers];
+        weightMatrices = new Matrix[layers][];
+    }
+
+    /**
+     * Copy the weights of the given Joone neural network.
+     *
+     * @param nnet the Joone neural network
+     * @return the network, or <code>null</code> if the network isn't supported
+     */
+    public static FeedForwardNetwork create(NeuralNet nnet) {
+        if(nnet == null || nnet.getInputLayer() == null || nnet.getOutputLayer() == null)
+            return null;
+
+        Vector allLayers = nnet.getLayers();
+
+        // Find the layer that each synapse comes from
+        IdentityHashMap synapseSources = new IdentityHashMap();
+
+        for(Iterator iterator = allLayers.iterator(); iterator.hasNext();) {
+            Layer layer = (Layer)iterator.next();
+
+            for(Iterator synapseIterator = nonNull(layer.getAllOutputs()).iterator();
+                synapseIterator.hasNext();)
+                synapseSources.put(synapseIterator.next(), layer);
+        }
+
+        // Order the layers so that each layer comes after the layers feeding
+        // into it. Joone replaces the input synapses of the input layer with
+        // the input, so they are ignored.
+        List layers = new ArrayList();
+        layers.add(nnet.getInputLayer());
+
+        boolean added = true;
+        while(added) {
+            added = false;
+
+            for(Iterator iterator = allLayers.iterator(); iterator.hasNext();) {
+                Layer layer = (Layer)iterator.next();
+
+                if(layers.contains(layer))
+                    continue;
+
+                boolean ready = true;
+
+                for(Iterator synapseIterator = nonNull(layer.getAllInputs()).iterator();
+                    synapseIterator.hasNext();) {
+                    Object source = synapseSources.get(synapseIterator.next());
+
+                    // Inputs that don't come from a layer aren't supported
+                    if(source == null)
+                        return null;
+                    if(!layers.contains(source))
+                        ready = false;
+                }
+
+                if(ready) {
+                    layers.add(layer);
+                    added = true;
+                }
+            }
+        }
+
+        // Recurrent networks will never be ready
+        if(!layers.contains(nnet.getOutputLayer()))
+            return null;
+
+        // Only keep the layers the output layer depends on
+        layers = layers.subList(0, layers.indexOf(nnet.getOutputLayer()) + 1);
+
+        FeedForwardNetwork network = new FeedForwardNetwork(layers.size());
+
+        for(int i = 0; i < layers.size(); i++) {
+            Layer layer = (Layer)layers.get(i);
+
+            if(!network.setLayer(i, layer))
+                return null;
+
+            if(i == 0)
+                network.sources[i] = new int[0];
+            else if(!network.setSynapses(i, layer, layers, synapseSources))
+                return null;
+        }
+
+        return network;
+    }
+
+    // Copy the type, size and bias of the layer
+    private boolean setLayer(int index, Layer layer) {
+        rows[index] = layer.getRows();
+
+        if(layer.getClass() == LinearLayer.class) {
+            types[index] = LINEAR;
+            betas[index] = ((LinearLayer)layer).getBeta();
+        }
+        else if(layer.getClass() == SigmoidLayer.class || layer.getClass() == TanhLayer.class) {
+            types[index] = (layer.getClass() == SigmoidLayer.class? SIGMOID : TANH);
+            biasMatrices[index] = layer.getBias();
+            biases[index] = copyBias(biasMatrices[index], rows[index]);
+
+            if(biases[index] == null)
+                return false;
+        }
+        else
+            return false;
+
+        return true;
+    }
+
+    // Copy the weights of the full synapses feeding into the layer
+    private boolean setSynapses(int index, Layer layer, List layers,
+                                IdentityHashMap synapseSources) {
+        Vector synapses = nonNull(layer.getAllInputs());
+
+        sources[index] = new int[synapses.size()];
+        weights[index] = new double[synapses.size()][][];
+        weightMatrices[index] = new Matrix[synapses.size()];
+
+        for(int i = 0; i < synapses.size(); i++) {
+            Object synapse = synapses.get(i);
+
+            if(synapse.getClass() != FullSynapse.class ||
+               !((Synapse)synapse).isEnabled() || ((Synapse)synapse).isLoopBack())
+                return false;
+
+            int source = layers.indexOf(synapseSources.get(synapse));
+            Matrix matrix = ((Synapse)synapse).getWeights();
+
+            if(source < 0 || source >= index || matrix == null ||
+               matrix.value.length < rows[source])
+                return false;
+
+            sources[index][i] = source;
+            weights[index][i] = new double[rows[source]][];
+            weightMatrices[index][i] = matrix;
+
+            for(int row = 0; row < rows[source]; row++) {
+                if(matrix.value[row].length < rows[index])
+                    return false;
+
+                weights[index][i][row] = new double[rows[index]];
+                System.arraycopy(matrix.value[row], 0, weights[index][i][row], 0, rows[index]);
+            }
+        }
+
+        return true;
+    }
+
+    // Joone returns null rather than an empty list if a layer has no synapses
+    private static Vector nonNull(Vector synapses) {
+        return (synapses != null? synapses : new Vector());
+    }
+
+    // Copy the bias of each neuron, which Joone keeps in the first column
+    private static double[] copyBias(Matrix matrix, int rows) {
+        if(matrix == null || matrix.value.length < rows)
+            return null;
+
+        double[] values = new double[rows];
+
+        for(int row = 0; row < rows; row++) {
+            if(matrix.value[row].length < 1)
+                return null;
+            values[row] = matrix.value[row][0];
+        }
+
+        return values;
+    }
+
+    /**
+     * Return the number of inputs of the network.
+     *
+     * @return number of inputs
+     */
+    public int getInputs() {
+        return rows[0];
+    }
+
+    /**
+     * Return the number of outputs of the network.
+     *
+     * @return number of outputs
+     */
+    public int getOutputs() {
+        return rows[rows.length - 1];
+    }
+
+    /**
+     * Run the network.
+     *
+     * @param inputs the input of each input neuron
+     * @return the output of each output neuron
+     */
+    public double[] run(double[] inputs) {
+        return run(new double[][] {inputs})[0];
+    }
+
+    /**
+     * Run the network on each of the given inputs.
+     *
+     * @param inputs the inputs, one row for each run of the network
+     * @return the outputs, one row for each row of inputs
+     */
+    public double[][] run(double[][] inputs) {
+        double[][] outputs = new double[inputs.length][];
+        double[][] layerOutputs = createLayerOutputs();
+
+        for(int i = 0; i < inputs.length; i++) {
+            run(inputs[i], layerOutputs);
+            outputs[i] = (double[])layerOutputs[rows.length - 1].clone();
+        }
+
+        return outputs;
+    }
+
+    /**
+     * Copy the weights and biases back into the Joone network they were
+     * copied from.
+     */
+    public void writeWeights() {
+        for(int layer = 0; layer < rows.length; layer++) {
+            if(biases[layer] != null)
+                for(int neuron = 0; neuron < rows[layer]; neuron++)
+                    biasMatrices[layer].value[neuron][0] = biases[layer][neuron];
+
+            for(int i = 0; i < sources[layer].length; i++)
+                for(int row = 0; row < weights[layer][i].length; row++)
+                    System.arraycopy(weights[layer][i][row], 0,
+                                     weightMatrices[layer][i].value[row], 0, rows[layer]);
+        }
+    }
+
+    // Return an array to hold the outputs of each layer
+    double[][] createLayerOutputs() {
+        double[][] layerOutputs = new double[rows.length][];
+
+        for(int layer = 0; layer < rows.length; layer++)
+            layerOutputs[layer] = new double[rows[layer]];
+
+        return layerOutputs;
+    }
+
+    // Run the network, leaving the outputs of each layer in the given array
+    void run(double[] inputs, double[][] layerOutputs) {
+        assert inputs.length == getInputs();
+
+        for(int layer = 0; layer < rows.length; layer++) {
+            double[] sums = layerOutputs[layer];
+
+            // Sum the synapses feeding into the layer, in the same
+            // order as Joone
+            if(layer == 0)
+                System.arraycopy(inputs, 0, sums, 0, rows[layer]);
+            else {
+                Arrays.fill(sums, 0.0D);
+
+                for(int j = 0; j < sources[layer].length; j++) {
+                    double[] sourceOutputs = layerOutputs[sources[layer][j]];
+                    double[][] synapseWeights = weights[layer][j];
+
+                    for(int neuron = 0; neuron < rows[layer]; neuron++) {
+                        double sum = 0.0D;
+
+                        for(int row = 0; row < sourceOutputs.length; row++)
+                            sum += sourceOutputs[row] * synapseWeights[row][neuron];
+
+                        sums[neuron] += sum;
+                    }
+                }
+            }
+
+            activate(layer, sums);
+        }
+    }
+
+    // Return the number of layers
+    int getLayers() {
+        return rows.length;
+    }
+
+    // Return the layers feeding into the given layer
+    int[] getSources(int layer) {
+        return sources[layer];
+    }
+
+    // Return the weights of the synapses feeding into the given layer,
+    // indexed by synapse, source neuron then neuron
+    double[][][] getWeights(int layer) {
+        return weights[layer];
+    }
+
+    // Return the biases of the given layer, or null if it has none
+    double[] getBiases(int layer) {
+        return biases[layer];
+    }
+
+    // Return the derivative of the given layer's activation function
+    // where the layer gave the given output
+    double getDerivative(int layer, double output) {
+        switch(types[layer]) {
+        case(LINEAR):
+            return betas[layer];
+        case(SIGMOID):
+            return output * (1.0D - output);
+        case(TANH):
+            return 1.0D - output * output;
+        default:
+            assert false;
+            return 0.0D;
+        }
+    }
+
+    // Replace the layer's summed inputs with its outputs
+    private void activate(int layer, double[] values) {
+        switch(types[layer]) {
+        case(LINEAR):
+            for(int neuron = 0; neuron < values.length; neuron++)
+                values[neuron] = betas[layer] * values[neuron];
+            break;
+        case(SIGMOID):
+            for(int neuron = 0; neuron < values.length; neuron++)
+                values[neuron] = 1.0D / (1.0D + Math.exp(-(values[neuron] +
+                                                          biases[layer][neuron])));
+            break;
+        case(TANH):
+            for(int neuron = 0; neuron < values.length; neuron++)
+                values[neuron] = -1.0D + 2.0D / (1.0D + Math.exp(-2.0D * (values[neuron] +
+                                                                        biases[layer][neuron])));
+            break;
+        default:
+            assert false;
+        }
+    }
+}
@@ -22,19 +22,26 @@
  */
 package nz.org.venice.analyser.ga;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
+import nz.org.venice.analyser.AnalyserThreadPool;
 import nz.org.venice.analyser.OrderCache;
 import nz.org.venice.analyser.PaperTrade;
 
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCompiler;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Variables;
 import nz.org.venice.portfolio.Portfolio;
 import nz.org.venice.quote.MissingQuoteException;
 import nz.org.venice.quote.EODQuoteBundle;
+import nz.org.venice.prefs.PreferencesManager;
+import nz.org.venice.ui.ProgressDialog;
 import nz.org.venice.util.Locale;
 import nz.org.venice.util.Money;
 import nz.org.venice.util.TradingDate;
@@ -42,6 +49,13 @@ import nz.org.venice.util.TradingDate;
 /**
  * The Genetic Algorithm creates and breeds random paper trading individuals. This
  * class runs the GA.
+ * <p>
+ * Individuals are created in the calling thread, but are paper traded in
+ * parallel by an {@link AnalyserThreadPool}. Since the random number
+ * generator is only used in the calling thread, and the paper traded
+ * individuals compete for breeding in the order they were created, the
+ * GA gives the same results for the same seed regardless of the number
+ * of threads.
  */
 public class GeneticAlgorithm {
     
@@ -75,6 +89,15 @@ public class GeneticAlgorithm {
     
     // Cache of stock quote order
     private OrderCache orderCache;
+
+    // Each paper trading thread has its own copy of the order cache
+    // and the rules
+    private ThreadLocal orderCaches;
+    private ThreadLocal buyRules;
+    private ThreadLocal sellRules;
+
+    // Threads used to paper trade the individuals
+    private AnalyserThreadPool threadPool;
     
     // Expression rule (fixed in the GA process, becasue only prameters can change)
     private Expression buyRule;
@@ -149,6 +172,52 @@ public class GeneticAlgorithm {
                             GAIndividual lowest,
                             GAIndividual highest,
                             Variables variables) {
+        this(quoteBundle, orderCache, buyRule, sellRule, startDate, endDate,
+             initialCapital, stockValue, numberStocks, tradeCost,
+             breedingPopulationSize, tradeValueBuy, tradeValueSell,
+             lowest, highest, variables,
+             System.currentTimeMillis(), PreferencesManager.getAnalyserThreads());
+    }
+
+    /**
+     * Get ready to run the GA using the given random number seed and
+     * number of threads.
+     *
+     * @param quoteBundle the historical quote data
+     * @param orderCache cache of ordered symbols
+     * @param startDate start date of trading
+     * @param endDate last date of trading
+     * @param initialCapital initial capital in the portfolio
+     * @param stockValue the rough value of each stock holding
+     * @param numberStocks number of stocks in the portfolio
+     * @param tradeCost the cost of a trade
+     * @param breedingPopulationSize number of individuals that can breed
+     * @param tradeValueBuy value for buying a stock
+     * @param tradeValueSell value for selling a stock
+     * @param lowest lowest GA individual to know the lowest bound for generating new individuals
+     * @param highest highest GA individual to know the highest bound for generating new individuals
+     * @param variables variables containing the parameters of GA
+     * @param seed seed of the random number generator
+     * @param threads number of threads used to paper trade individuals
+     */
+    public GeneticAlgorithm(EODQuoteBundle quoteBundle,
+                            final OrderCache orderCache,
+                            Expression buyRule,
+                            Expression sellRule,
+                            TradingDate startDate,
+                            TradingDate endDate,
+                            Money initialCapital,
+                            Money stockValue,
+                            int numberStocks,
+                            Money tradeCost,
+                            int breedingPopulationSize,
+                            String tradeValueBuy,
+                            String tradeValueSell,
+                            GAIndividual lowest,
+                            GAIndividual highest,
+                            Variables variables,
+                            long seed,
+                            int threads) {
         
         this.quoteBundle = quoteBundle;
         this.orderCache = orderCache;
@@ -169,78 +238,126 @@ public class GeneticAlgorithm {
         
         nextBreedingPopulation = new TreeMap();
         breedingPopulation = new TreeMap();
-        random = new Random(System.currentTimeMillis());
+        random = new Random(seed);
         
         generation = 1;
+
+        // The order cache isn't thread safe, and expressions might keep
+        // state while they are evaluated, so give each thread its own.
+        // Each thread evaluates its rules many times, so compile them.
+        orderCaches = new ThreadLocal() {
+                protected Object initialValue() {
+                    return new OrderCache(orderCache);
+                }
+            };
+        buyRules = new ThreadLocal() {
+                protected Object initialValue() {
+                    return ExpressionCompiler.compile((Expression)getBuyRule().clone());
+                }
+            };
+        sellRules = new ThreadLocal() {
+                protected Object initialValue() {
+                    return ExpressionCompiler.compile((Expression)getSellRule().clone());
+                }
+            };
+
+        threadPool = new AnalyserThreadPool("GA", threads);
+
+        // Order the symbols up front, so each thread's copy of the order
+        // cache starts with them
+        orderCache.precompute(quoteBundle.getFirstOffset(), quoteBundle.getLastOffset(),
+                              threadPool);
+    }
+
+    /**
+     * Return the number of threads used to paper trade individuals.
+     *
+     * @return number of threads
+     */
+    public int getThreads() {
+        return threadPool.getThreads();
+    }
+
+    /**
+     * Stop the threads used to paper trade individuals. This should be
+     * called once the GA has finished.
+     */
+    public void shutdown() {
+        threadPool.shutdown();
     }
     
     /**
      * Run one iteration of the GA. This will create a single valid individual.
      */
     public void nextIndividual() {
-        boolean validIndividual = false;
-        GAIndividual individual;
-        
-        // Loop until we create a valid individual that paper trade is OK
-        while(!validIndividual) {
-            if (generation==1) {
-                individual = new GAIndividual(random, lowest, highest);
-            } else {
-                // Otherwise breed two parent individuals. We do these by calculating
-                // a random value between 0 and the sum of all the individual values.
-                // See getBreedingIndividual(double) for details.
-                double motherValue = random.nextDouble() * breedingPopulationSum;
-                double fatherValue = random.nextDouble() * breedingPopulationSum;
+        nextIndividuals(1, null);
+    }
 
-                GAIndividual mother = getBreedingIndividual(motherValue);
-                GAIndividual father = getBreedingIndividual(fatherValue);
+    /**
+     * Run several iterations of the GA. This will create the given number
+     * of valid individuals. The individuals are paper traded in parallel.
+     *
+     * @param count the number of individuals to create
+     * @param progress progress dialog to increment as each individual is
+     *                 created, or <code>null</code>
+     * @return the number of individuals created. This will be less than
+     *         the number requested iff the thread was interrupted.
+     */
+    public int nextIndividuals(int count, ProgressDialog progress) {
+        int created = 0;
+        Thread thread = Thread.currentThread();
 
-                individual = new GAIndividual(random, mother, father, lowest, highest);
-            }
-            // Set the variables with parameters of individual just created
-            for (int ii=0; ii<individual.size(); ii++) {
-                variables.setValue(individual.parameter(ii), individual.value(ii));
-            }
-            // Calculate the portfolio over the trading perdiod for the individual just created
-            try {
-                Money value = null;
-                Portfolio portfolio = paperTrade(quoteBundle,
-                                            orderCache,
-                                            startDate,
-                                            endDate,
-                                            this.buyRule,
-                                            this.sellRule,
-                                            initialCapital,
-                                            stockValue,
-                                            numberStocks,
-                                            tradeCost,
-                                            variables,
-                                            tradeValueBuy,
-                                            tradeValueSell);               
-                
-                individual.setPortfolio(portfolio);
-                
-                // Get final value of portfolio
-                try {
-                    value = portfolio.getValue(quoteBundle, endDate);
-                    individual.setValue(value);
-                }
-                catch(MissingQuoteException e) {
-                    // Already checked...
-                }
+        // Loop until we create enough valid individuals that paper trade OK
+        while(created < count && !thread.isInterrupted()) {
+            List individuals = new ArrayList();
+            List tasks = new ArrayList();
 
-                
-                // If we got here the paper trade was successful. Now let the
-                // individual 'compete' to see if it gets to breed next round.
-                // If the individual is fit enough, it'll get a chance to breed.
-                competeForBreeding(individual, value);
-                if (value!=null && individual!=null) validIndividual = true;                    
+            for(int i = created; i < count; i++) {
+                GAIndividual individual = createIndividual();
+                individuals.add(individual);
+                tasks.add(new PaperTradeTask(individual));
             }
-            catch(EvaluationException e) {
-                // If there is a problem running the equation then
-                // it dies off naturally!
+
+            List values = threadPool.invokeAll(tasks, progress);
+
+            // Now let the individuals 'compete' to see if they get to breed next
+            // round. This is done in the order the individuals were created so
+            // the result doesn't depend on which thread finished first.
+            for(int i = 0; i < values.size(); i++) {
+                Money value = (Money)values.get(i);
+
+                if(value != null) {
+                    competeForBreeding((GAIndividual)individuals.get(i), value);
+                    created++;
+                }
             }
         }
+
+        return created;
+    }
+
+    /**
+     * Create a new individual. If it is the first generation then we will
+     * create an entirely random individual, otherwise we will base it on
+     * the combination of two existing individuals.
+     *
+     * @return the new individual
+     */
+    private GAIndividual createIndividual() {
+        if (generation==1) {
+            return new GAIndividual(random, lowest, highest);
+        } else {
+            // Otherwise breed two parent individuals. We do these by calculating
+            // a random value between 0 and the sum of all the individual values.
+            // See getBreedingIndividual(double) for details.
+            double motherValue = random.nextDouble() * breedingPopulationSum;
+            double fatherValue = random.nextDouble() * breedingPopulationSum;
+
+            GAIndividual mother = getBreedingIndividual(motherValue);
+            GAIndividual father = getBreedingIndividual(fatherValue);
+
+            return new GAIndividual(random, mother, father, lowest, highest);
+        }
     }
     
     /**
@@ -447,4 +564,64 @@ public class GeneticAlgorithm {
         return portfolio;
     }
 
+    // Paper trade an individual. The task returns the individual's value, or
+    // null if there was a problem running its equations.
+    private class PaperTradeTask implements Callable {
+        private GAIndividual individual;
+
+        public PaperTradeTask(GAIndividual individual) {
+            this.individual = individual;
+        }
+
+        public Object call() {
+            Variables individualVariables = null;
+
+            // Each individual needs its own copy of the variables to hold
+            // its parameters
+            try {
+                individualVariables = (Variables)variables.copyVariables();
+            }
+            catch(CloneNotSupportedException e) {
+                assert false;
+            }
+
+            // Set the variables with parameters of individual just created
+            for (int ii=0; ii<individual.size(); ii++) {
+                individualVariables.setValue(individual.parameter(ii), individual.value(ii));
+            }
+
+            // Calculate the portfolio over the trading perdiod for the individual just created
+            try {
+                Portfolio portfolio = paperTrade(quoteBundle,
+                                                 (OrderCache)orderCaches.get(),
+                                                 startDate,
+                                                 endDate,
+                                                 (Expression)buyRules.get(),
+                                                 (Expression)sellRules.get(),
+                                                 initialCapital,
+                                                 stockValue,
+                                                 numberStocks,
+                                                 tradeCost,
+                                                 individualVariables,
+                                                 tradeValueBuy,
+                                                 tradeValueSell);
+
+                individual.setPortfolio(portfolio);
+
+                // Get final value of portfolio
+                Money value = portfolio.getValue(quoteBundle, endDate);
+                individual.setValue(value);
+                return value;
+            }
+            catch(MissingQuoteException e) {
+                // Already checked...
+                return null;
+            }
+            catch(EvaluationException e) {
+                // If there is a problem running the equation then
+                // it dies off naturally!
+                return null;
+            }
+        }
+    }
 }
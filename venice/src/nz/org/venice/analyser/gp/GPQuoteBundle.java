@@ -48,18 +48,34 @@ public class GPQuoteBundle extends EODQuoteBundle {
     private int window;
 
     /**
-     * Create a new quote bundle for the GP.
+     * Create a new quote bundle for the GP. The quotes in the window before
+     * the first date are loaded now. This means that the quote bundle will
+     * not need to load any more quotes while the GP runs, so it can be
+     * safely read by several paper trading threads at once.
      *
      * @param quoteBundle wrap the given quote bundle
      * @param window prevent access to quotes this many days before
      *               the first quote in the given quote bundle
      */
     public GPQuoteBundle(EODQuoteBundle quoteBundle, int window) {
-        super(quoteBundle.getQuoteRange());
+        super(expandQuoteRange(quoteBundle.getQuoteRange(), window));
 
         this.window = window;
     }
 
+    // Return a copy of the quote range that starts the given number of
+    // trading days earlier.
+    private static EODQuoteRange expandQuoteRange(EODQuoteRange quoteRange, int window) {
+        TradingDate firstDate = quoteRange.getFirstDate();
+
+        if(firstDate == null || window <= 0)
+            return quoteRange;
+
+        EODQuoteRange expandedQuoteRange = (EODQuoteRange)quoteRange.clone();
+        expandedQuoteRange.setFirstDate(firstDate.previous(window));
+        return expandedQuoteRange;
+    }
+
     /**
      * Get a stock quote. This function has been primarily created for Gondola
      * scripts. It passes in the current date and the date offset so that
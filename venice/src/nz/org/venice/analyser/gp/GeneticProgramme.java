@@ -18,16 +18,22 @@
 
 package nz.org.venice.analyser.gp;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
+import nz.org.venice.analyser.AnalyserThreadPool;
 import nz.org.venice.analyser.GPGondolaSelection;
 import nz.org.venice.analyser.GPModuleConstants;
 import nz.org.venice.analyser.OrderCache;
 
 import nz.org.venice.parser.Expression;
 import nz.org.venice.parser.EvaluationException;
+import nz.org.venice.prefs.PreferencesManager;
+import nz.org.venice.ui.ProgressDialog;
 import nz.org.venice.util.Money;
 import nz.org.venice.util.TradingDate;
 import nz.org.venice.util.VeniceLog;
@@ -35,6 +41,13 @@ import nz.org.venice.util.VeniceLog;
 /**
  * The Genetic Programme creates and breeds random paper trading individuals. This
  * class runs the GP.
+ * <p>
+ * Individuals are created in the calling thread, but are paper traded in
+ * parallel by an {@link AnalyserThreadPool}. Since the random number
+ * generator is only used in the calling thread, and the paper traded
+ * individuals compete for breeding in the order they were created, the
+ * GP gives the same results for the same seed regardless of the number
+ * of threads.
  *
  * @author Andrew Leppard
  * @see Individual
@@ -91,6 +104,12 @@ public class GeneticProgramme {
     
     // Cache of stock quote order
     private OrderCache orderCache;
+
+    // Each paper trading thread has its own copy of the order cache
+    private ThreadLocal orderCaches;
+
+    // Threads used to paper trade individuals
+    private AnalyserThreadPool threadPool;
     
     // Start date of paper trading
     private TradingDate startDate;
@@ -147,6 +166,46 @@ public class GeneticProgramme {
                             int breedingPopulationSize,
                             String tradeValueBuy,
                             String tradeValueSell) {
+
+        this(quoteBundle, GPGondolaSelection, orderCache, startDate, endDate,
+             initialCapital, stockValue, numberStocks, tradeCost,
+             breedingPopulationSize, tradeValueBuy, tradeValueSell,
+             System.currentTimeMillis(), PreferencesManager.getAnalyserThreads());
+    }
+
+    /**
+     * Get ready to run the GP using the given random seed and number of
+     * threads.
+     *
+     * @param quoteBundle the historical quote data
+     * @param GPGondolaSelection UI containing user's desired expression probabilities
+     * @param orderCache cache of ordered symbols
+     * @param startDate start date of trading
+     * @param endDate last date of trading
+     * @param initialCapital initial capital in the portfolio
+     * @param stockValue the rough value of each stock holding
+     * @param numberStocks number of stocks in the portfolio
+     * @param tradeCost the cost of a trade
+     * @param breedingPopulationSize number of individuals that can breed
+     * @param tradeValueBuy value for buying a stock
+     * @param tradeValueSell value for selling a stock
+     * @param seed seed of the random number generator
+     * @param threads number of threads used to paper trade individuals
+     */
+    public GeneticProgramme(GPQuoteBundle quoteBundle,
+                            GPGondolaSelection GPGondolaSelection,
+                            final OrderCache orderCache,
+                            TradingDate startDate,
+                            TradingDate endDate,
+                            Money initialCapital,
+                            Money stockValue,
+                            int numberStocks,
+                            Money tradeCost,
+                            int breedingPopulationSize,
+                            String tradeValueBuy,
+                            String tradeValueSell,
+                            long seed,
+                            int threads) {
         
         this.quoteBundle = quoteBundle;
         this.GPGondolaSelection = GPGondolaSelection;
@@ -163,7 +222,6 @@ public class GeneticProgramme {
         
         nextBreedingPopulation = new TreeMap();
         breedingPopulation = new TreeMap();
-	long seed = System.currentTimeMillis(); 
 
 	VeniceLog.getInstance().log("GeneticProgramme seed = " + seed);
         random = new Random(seed);
@@ -174,48 +232,115 @@ public class GeneticProgramme {
         sellRuleMutator = new Mutator(random, GPGondolaSelection, true, orderCache.isOrdered());
         
         generation = 1;
+
+        // The order cache isn't thread safe, so give each thread its own
+        orderCaches = new ThreadLocal() {
+                protected Object initialValue() {
+                    return new OrderCache(orderCache);
+                }
+            };
+
+        threadPool = new AnalyserThreadPool("GP", threads);
+
+        // Order the symbols up front, so each thread's copy of the order
+        // cache starts with them
+        orderCache.precompute(quoteBundle.getFirstOffset(), quoteBundle.getLastOffset(),
+                              threadPool);
+    }
+
+    /**
+     * Return the number of threads used to paper trade individuals.
+     *
+     * @return number of threads
+     */
+    public int getThreads() {
+        return threadPool.getThreads();
+    }
+
+    /**
+     * Stop the threads used to paper trade individuals. This should be
+     * called once the GP has finished.
+     */
+    public void shutdown() {
+        threadPool.shutdown();
     }
     
     /**
      * Run one iteration of the GP. This will create a single valid individual.
      */
     public void nextIndividual(Expression buyRule, Expression sellRule, int mutations) {
-        boolean validIndividual = false;
+        nextIndividuals(new Expression[] {buyRule}, new Expression[] {sellRule},
+                        mutations, null);
+    }
+
+    /**
+     * Run several iterations of the GP. This will create a valid individual
+     * for each pair of buy and sell rules given. The individuals are paper
+     * traded in parallel.
+     *
+     * @param buyRules the buy rule each individual is based on, or <code>null</code>
+     *                 entries to create random individuals
+     * @param sellRules the sell rule each individual is based on, or <code>null</code>
+     *                 entries to create random individuals
+     * @param mutations number of mutations to apply to the given rules
+     * @param progress progress dialog to increment as each individual is
+     *                 created, or <code>null</code>
+     * @return the number of individuals created. This will be less than
+     *         the number requested iff the thread was interrupted.
+     */
+    public int nextIndividuals(Expression[] buyRules, Expression[] sellRules, int mutations,
+                               ProgressDialog progress) {
+        assert buyRules.length == sellRules.length;
+
+        int count = buyRules.length;
+        int created = 0;
+        Thread thread = Thread.currentThread();
+
         // consider if you try to create an individual twice,
         // the second time we create it with random mutations, because
         // the rules passed as parameters from user do not fit the breeding process.
-        boolean twice = false;
+        boolean[] twice = new boolean[count];
+        boolean[] validIndividual = new boolean[count];
         
         // Loop until we create a valid individual that paper trades OK
-        while(!validIndividual) {
-            Individual individual = createIndividual(buyRule, sellRule, mutations, twice);
-            twice = true;
-            if(individual.isValid(MIN_SIZE, MAX_SIZE)) {
-                try {
-                    Money value =
-                        individual.paperTrade(quoteBundle,
-                                                orderCache,
-                                                startDate,
-                                                endDate,
-                                                initialCapital,
-                                                stockValue,
-                                                numberStocks,
-                                                tradeCost,
-                                                tradeValueBuy,
-                                                tradeValueSell);
-                    
-                    // If we got here the paper trade was successful. Now let the
-                    // individual 'compete' to see if it gets to breed next round.
-                    // If the individual is fit enough, it'll get a chance to breed.
-                    competeForBreeding(individual, value);
-                    if (individual!=null && value!=null) validIndividual = true;
+        // for each pair of rules
+        while(created < count && !thread.isInterrupted()) {
+            List individuals = new ArrayList();
+            List indices = new ArrayList();
+            List tasks = new ArrayList();
+
+            for(int i = 0; i < count; i++) {
+                if(validIndividual[i])
+                    continue;
+
+                Individual individual = createIndividual(buyRules[i], sellRules[i],
+                                                         mutations, twice[i]);
+                twice[i] = true;
+
+                if(individual.isValid(MIN_SIZE, MAX_SIZE)) {
+                    individuals.add(individual);
+                    indices.add(new Integer(i));
+                    tasks.add(new PaperTradeTask(individual));
                 }
-                catch(EvaluationException e) {
-                    // If there is a problem running the equation then
-                    // it dies off naturally!
+            }
+
+            List values = threadPool.invokeAll(tasks, progress);
+
+            // Now let the individuals 'compete' to see if they get to breed next
+            // round. This is done in the order the individuals were created so
+            // the result doesn't depend on which thread finished first.
+            for(int i = 0; i < values.size(); i++) {
+                Money value = (Money)values.get(i);
+
+                if(value != null) {
+                    competeForBreeding((Individual)individuals.get(i), value);
+                    validIndividual[((Integer)indices.get(i)).intValue()] = true;
+                    created++;
                 }
             }
         }
+
+        return created;
     }
     
     /**
@@ -405,4 +530,34 @@ public class GeneticProgramme {
             }
         }
     }
+
+    // Paper trade an individual. The task returns the individual's value, or
+    // null if there was a problem running its equations.
+    private class PaperTradeTask implements Callable {
+        private Individual individual;
+
+        public PaperTradeTask(Individual individual) {
+            this.individual = individual;
+        }
+
+        public Object call() {
+            try {
+                return individual.paperTrade(quoteBundle,
+                                             (OrderCache)orderCaches.get(),
+                                             startDate,
+                                             endDate,
+                                             initialCapital,
+                                             stockValue,
+                                             numberStocks,
+                                             tradeCost,
+                                             tradeValueBuy,
+                                             tradeValueSell);
+            }
+            catch(EvaluationException e) {
+                // If there is a problem running the equation then
+                // it dies off naturally!
+                return null;
+            }
+        }
+    }
 }
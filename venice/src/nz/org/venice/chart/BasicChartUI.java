@@ -62,6 +62,10 @@ public class BasicChartUI extends ComponentUI implements ImageObserver  {
     // When buffering an image, we create a buffer area around (in pixels)
     private static final int BUFFER_BUFFER_SIZE = 200;
 
+    // The buffered image is drawn in columns of this many pixels as they
+    // are first painted
+    private static final int TILE_WIDTH = 256;
+
     // Ratio of primary level to secondary level size (secondary graph
     // levels such as volume graphs try to be 1/4 of the size of the primary
     // e.g. day close graphs)
@@ -77,6 +81,7 @@ public class BasicChartUI extends ComponentUI implements ImageObserver  {
     private BufferedImage image = null;
     private int bufferWidth = 0;
     private int bufferHeight = 0;
+    private BitSet drawnTiles = new BitSet();
     private Vector levelHeights;
 
     // Also precompute data that doesnt change on resizing
@@ -297,23 +302,34 @@ public class BasicChartUI extends ComponentUI implements ImageObserver  {
 		new BufferedImage(width + BUFFER_BUFFER_SIZE,
 				  height + BUFFER_BUFFER_SIZE,
 				  BufferedImage.TYPE_3BYTE_BGR);	
+	    drawnTiles.clear();
 	}
 
 	ChartDrawingModel cdm = ((Chart)c).getChartDrawingModel();
 	
 	
-	// Draw it iff the size has changed
+	// Draw it again iff the size has changed
 	if(width != bufferWidth || 
 	   height != bufferHeight ||
 	   cdm.dataExists()) {	    
 
-	    bufferedPaint(image.getGraphics(), (Chart)c, width, height);
-	
+	    drawnTiles.clear();
+
 	    bufferWidth = width;
 	    bufferHeight = height;
 	    	    
 	}	
 
+	// Only draw the part of the buffer being painted. A chart of a long
+	// history can be many times wider than the screen, so this keeps the
+	// cost of painting proportional to the width of the screen.
+	Rectangle clip = g.getClipBounds();
+
+	if(clip != null)
+	    drawTiles((Chart)c, clip.x, clip.x + clip.width);
+	else
+	    drawTiles((Chart)c, 0, width);
+
 	// Copy buffer to screen
 	g.drawImage(image, 0, 0, this);
 	
@@ -322,11 +338,44 @@ public class BasicChartUI extends ComponentUI implements ImageObserver  {
 
     }
 
-    public BufferedImage getImage() {       	
+    public BufferedImage getImage(Chart chart) {       	
 	
+	// Make sure any part of the chart not yet painted is drawn
+	if(image != null)
+	    drawTiles(chart, 0, bufferWidth);
+
 	return image;
     }
 
+    // Draw the tiles of the buffer between the given X coordinates which
+    // have not been drawn yet
+    private synchronized void drawTiles(Chart chart, int startX, int endX) {
+	startX = Math.max(startX, 0);
+	endX = Math.min(endX, bufferWidth);
+
+	if(startX >= endX)
+	    return;
+
+	int firstTile = drawnTiles.nextClearBit(startX / TILE_WIDTH);
+	int lastTile = (endX - 1) / TILE_WIDTH;
+
+	while(lastTile >= firstTile && drawnTiles.get(lastTile))
+	    lastTile--;
+
+	// Draw all the tiles from the first to the last undrawn tile in
+	// one go, so the graphs are only rendered once
+	if(firstTile <= lastTile) {
+	    Graphics g = image.getGraphics();
+
+	    g.setClip(firstTile * TILE_WIDTH, 0,
+		      (lastTile - firstTile + 1) * TILE_WIDTH, image.getHeight());
+	    bufferedPaint(g, chart, bufferWidth, bufferHeight);
+	    g.dispose();
+
+	    drawnTiles.set(firstTile, lastTile + 1);
+	}
+    }
+
     // Repaint the component and recalculate everything
     private synchronized void bufferedPaint(Graphics g, Chart chart,
 			       int width, int height) {
@@ -921,7 +921,7 @@ public class Chart extends JComponent implements MouseListener {
 
 
     public BufferedImage getImage() {
-	return gui.getImage();
+	return gui.getImage(this);
     }
 
     public boolean dataAvailable(Graph g) {
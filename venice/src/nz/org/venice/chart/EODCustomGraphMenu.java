@@ -104,19 +104,20 @@ public class EODCustomGraphMenu extends JMenu implements ActionListener {
 				int buttonPressed = dialog.showDialog();
 				
 				if (buttonPressed == GraphSettingsDialog.ADD) {
-				    graph.setSettings(dialog.getSettings());
-				    if (graph.isPrimary()) {
-					listener.append(graph, 0);
-				    } else {
-					listener.append(graph);
-				    }
-				    listener.redraw();
-
-				    final String label = customGraph.getExpressionLabel();
-				    JMenuItem newGraphItem = new JMenuItem(label);
-				    newGraphItem.addActionListener(parent);
-				    deleteMenu.add(newGraphItem);
-				    graphItemMap.put(newGraphItem, graph);
+				    final HashMap newSettings = dialog.getSettings();
+
+				    // Compute the graph in the background
+				    final GraphScheduler scheduler = GraphScheduler.getInstance();
+
+				    scheduler.schedule(parent, graph, new Runnable() {
+					    public void run() {
+						graph.setSettings(newSettings);
+
+						scheduler.finish(new Runnable() {
+							public void run() {
+							    addGraph(graph, customGraph);
+							}});
+					    }});
 				}
 			    }
 			};
@@ -127,6 +128,22 @@ public class EODCustomGraphMenu extends JMenu implements ActionListener {
 	this.add(deleteMenu);
     }
 
+    // Add the computed custom graph to the chart and the delete menu
+    private void addGraph(Graph graph, CustomGraph customGraph) {
+	if (graph.isPrimary()) {
+	    listener.append(graph, 0);
+	} else {
+	    listener.append(graph);
+	}
+	listener.redraw();
+
+	final String label = customGraph.getExpressionLabel();
+	JMenuItem newGraphItem = new JMenuItem(label);
+	newGraphItem.addActionListener(this);
+	deleteMenu.add(newGraphItem);
+	graphItemMap.put(newGraphItem, graph);
+    }
+
     public void actionPerformed(ActionEvent e) {
 	JMenuItem deletedItem = (JMenuItem)e.getSource();
 	Graph graph = (Graph)graphItemMap.get(deletedItem);
@@ -441,8 +441,8 @@ public class EODQuoteChartMenu extends JMenu {
      * @param isSelected is this the initial view?
      * @return menu item
      */
-    private JRadioButtonMenuItem addViewMenuItem(JMenu menu, ButtonGroup group, String label,
-                                                 boolean isSelected) {
+    private JRadioButtonMenuItem addViewMenuItem(JMenu menu, final ButtonGroup group,
+                                                 String label, boolean isSelected) {
         JRadioButtonMenuItem item = new JRadioButtonMenuItem(label);
         group.add(item);
         item.setSelected(isSelected);
@@ -460,22 +460,43 @@ public class EODQuoteChartMenu extends JMenu {
 				HashMap settings = (map.get(text) != null) 
 					? ((Graph)map.get(text)).getSettings()
 					: new HashMap();
-                                Graph graph = getGraph(text, settings);
-                                if (graph != null) {
+                                final Graph graph = getGraph(text);
+                                final HashMap newSettings = getGraphSettings(graph, text, settings);
 
-                                    // Remove last graph first
-                                    if(currentViewGraph != null) {
-                                        listener.remove(currentViewGraph);
-				    }
-
-                                    addGraph(graph);
-                                    currentViewGraph = graph;
-                                    currentViewMenuItem = menuItem;
+                                // Reset last selected menu item if the user cancelled
+                                if(newSettings == null) {
+                                    if(currentViewMenuItem != null)
+                                        currentViewMenuItem.setSelected(true);
+                                    return;
                                 }
 
-                                // Reset last selected menu item if the user cancelled
-                                else if(currentViewMenuItem != null)
-                                    currentViewMenuItem.setSelected(true);
+                                // Compute the graph in the background. Only one view
+                                // can be shown, so selecting another view cancels it.
+                                final GraphScheduler scheduler = GraphScheduler.getInstance();
+
+                                scheduler.schedule(EODQuoteChartMenu.this, group, new Runnable() {
+                                        public void run() {
+                                            final Graph newGraph = createGraph(graph, newSettings);
+
+                                            scheduler.finish(new Runnable() {
+                                                    public void run() {
+                                                        if (newGraph != null) {
+
+                                                            // Remove last graph first
+                                                            if(currentViewGraph != null) {
+                                                                listener.remove(currentViewGraph);
+                                                            }
+
+                                                            addGraph(newGraph);
+                                                            currentViewGraph = newGraph;
+                                                            currentViewMenuItem = menuItem;
+                                                        }
+
+                                                        // Reset last selected menu item if there's no data
+                                                        else if(currentViewMenuItem != null)
+                                                            currentViewMenuItem.setSelected(true);
+                                                    }});
+                                        }});
                             }};
 
                     thread.start();
@@ -537,21 +558,36 @@ public class EODQuoteChartMenu extends JMenu {
 					? ((Graph)map.get(text)).getSettings()
 					: new HashMap();
 
-                                    Graph graph = getGraph(text, settings);
-                                    if (graph != null) {  
-					//Graph not in the map, means it's 
-					//being added for the first time.
-					if (map.get(text) == null) {
-					    addGraph(graph);
-					} else {
-					    updateGraph(graph);
-					}					
-				    } else {
-					if (map.get(text) != null) {
-					    removeGraph(text);
-					}
-					menuItem.setSelected(false);
-				    }
+                                    final Graph graph = getGraph(text);
+                                    final HashMap newSettings = getGraphSettings(graph, text, settings);
+
+                                    // Compute the graph in the background. If the user
+                                    // changes the settings again before it has finished,
+                                    // it is cancelled and computed with the new settings.
+                                    final GraphScheduler scheduler = GraphScheduler.getInstance();
+
+                                    scheduler.schedule(EODQuoteChartMenu.this, text, new Runnable() {
+                                            public void run() {
+                                                final Graph newGraph = createGraph(graph, newSettings);
+
+                                                scheduler.finish(new Runnable() {
+                                                        public void run() {
+                                                            if (newGraph != null) {  
+                                                                //Graph not in the map, means it's 
+                                                                //being added for the first time.
+                                                                if (map.get(text) == null) {
+                                                                    addGraph(newGraph);
+                                                                } else {
+                                                                    updateGraph(newGraph);
+                                                                }					
+                                                            } else {
+                                                                if (map.get(text) != null) {
+                                                                    removeGraph(text);
+                                                                }
+                                                                menuItem.setSelected(false);
+                                                            }
+                                                        }});
+                                            }});
                                 }};
 
                         thread.start();
@@ -649,53 +685,85 @@ public class EODQuoteChartMenu extends JMenu {
 
     /**
      * Create an instance of the graph that has the given localised name.
+     *
+     * @param text localised name of graph
+     * @return the instance of the graph
+     */
+    private Graph getGraph(String text) {
+	return GraphFactory.newGraph(text, indexChart, quoteBundle, symbol);
+    }
+
+    /**
      * Raise the graph's parameter user interface if it has one. Return
-     * the graph or <code>null</code> if the user cancels the operation.
+     * the settings the graph should be created with or <code>null</code>
+     * if the user cancels the operation.
      *
+     * @param graph the instance of the graph
      * @param text localised name of graph
-     * @return the instance of the graph or <code>null</code> if the
+     * @param settings the current settings of the graph
+     * @return the settings of the graph or <code>null</code> if the
      *         operation is cancelled
      */
-    private Graph getGraph(final String text, final HashMap settings) {
-	Graph graph = GraphFactory.newGraph(text, indexChart, quoteBundle, symbol);
-
-	GraphUI graphUI = null;
-	if (graph != null) {
-	    graphUI = graph.getUI(settings);
+    private HashMap getGraphSettings(Graph graph, String text, HashMap settings) {
+	if (graph == null) {
+	    return null;
 	}
 
+	GraphUI graphUI = graph.getUI(settings);
+
 	//Remove the graph if it exists and it has no settings 
-	if (graphUI == null && map.get(text) != null) {
-	    graph = null;
+	if (graphUI == null) {
+	    return (map.get(text) == null) ? graph.getSettings() : null;
 	}
 	
-        if(graphUI != null) {
-            GraphSettingsDialog dialog =
-                new GraphSettingsDialog(graphUI, graph.getName(), map.get(text) == null);
-
-            int buttonPressed = dialog.showDialog();
-
-	    if (buttonPressed == GraphSettingsDialog.ADD || 
-		buttonPressed == GraphSettingsDialog.EDIT) {
-		graph.setSettings(dialog.getSettings());	
-	    } else if (buttonPressed == GraphSettingsDialog.DELETE) {
-		graph = null;
-	    }  else if (buttonPressed == GraphSettingsDialog.CANCEL) {
-		graph = (map.get(text) == null) ? null : graph;	
-		//If the cancel button is pressed, reset the settings
-		//so the graph settings persist.
-		if (graph != null) {
-		    if (graphUI.checkSettings(dialog.getSettings()) == null) {
-			graph.setSettings(dialog.getSettings());	
-		    }
-		}
-		
+	HashMap newSettings = graph.getSettings();
+	GraphSettingsDialog dialog =
+	    new GraphSettingsDialog(graphUI, graph.getName(), map.get(text) == null);
+
+	int buttonPressed = dialog.showDialog();
+
+	if (buttonPressed == GraphSettingsDialog.ADD || 
+	    buttonPressed == GraphSettingsDialog.EDIT) {
+	    newSettings = dialog.getSettings();
+	} else if (buttonPressed == GraphSettingsDialog.DELETE) {
+	    newSettings = null;
+	}  else if (buttonPressed == GraphSettingsDialog.CANCEL) {
+	    if (map.get(text) == null) {
+		newSettings = null;
 	    }
-        }
-	
-	if (graph != null && !listener.isDataAvailable(graph)) {
+	    //If the cancel button is pressed, reset the settings
+	    //so the graph settings persist.
+	    else if (graphUI.checkSettings(dialog.getSettings()) == null) {
+		newSettings = dialog.getSettings();
+	    }
+	}
+
+	return newSettings;
+    }
+
+    /**
+     * Give the graph its settings, which computes its data. This is
+     * called by the {@link GraphScheduler}.
+     *
+     * @param graph the instance of the graph
+     * @param settings the settings of the graph or <code>null</code>
+     *        if the operation was cancelled
+     * @return the graph or <code>null</code> if the operation was cancelled
+     *         or there is no data to graph
+     */
+    private Graph createGraph(Graph graph, HashMap settings) {
+	if (graph == null || settings == null) {
+	    return null;
+	}
+
+	// The graph was created with its default settings
+	if (!settings.equals(graph.getSettings())) {
+	    graph.setSettings(settings);
+	}
+
+	if (!GraphScheduler.isCancelled() && !listener.isDataAvailable(graph)) {
 	    DesktopManager.showWarningMessage(Locale.getString("CHART_NO_DATA_AVAILABLE_WARNING"));
-	    graph = null;
+	    return null;
 	}
 	
         return graph;
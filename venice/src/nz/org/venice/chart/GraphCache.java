@@ -0,0 +1,167 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package nz.org.venice.chart;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nz.org.venice.chart.source.GraphSource;
+
+/**
+ * Caches the computed data of graphs, so that adding a graph that has
+ * already been computed for the same data and settings, for example when
+ * reopening a chart, doesn't compute it again.
+ * <p>
+ * Data is cached by graph name, settings and source. The source is
+ * identified by its name, type and a fingerprint of its graphable, so
+ * if the quotes of a symbol are changed the graph is computed again.
+ * Cached data is shared between graphs and must not be modified.
+ * Only the most recently used data is kept.
+ * <p>
+ * Example:
+ * <pre>
+ * GraphCache cache = GraphCache.getInstance();
+ * Object key = GraphCache.createKey(getName(), settings, getSource());
+ * movingAverage = (Graphable)cache.get(key);
+ *
+ * if(movingAverage == null) {
+ *     movingAverage = createMovingAverage(getSource().getGraphable(), period);
+ *     cache.put(key, movingAverage);
+ * }
+ * </pre>
+ *
+ * @author Andrew Leppard
+ * @see GraphScheduler
+ */
+public class GraphCache {
+
+    // Maximum number of graphs kept in the cache
+    private final static int MAXIMUM_ENTRIES = 32;
+
+    // Singleton instance of class
+    private static GraphCache instance = null;
+
+    // Map of keys to graph data in least recently used order
+    private LinkedHashMap cache;
+
+    // Identifies a graph's data
+    private static class Key {
+        private String name;
+        private HashMap settings;
+        private String sourceName;
+        private int sourceType;
+        private int size;
+        private long fingerprint;
+
+        public Key(String name, HashMap settings, GraphSource source) {
+            this.name = name;
+            this.settings = new HashMap(settings);
+            sourceName = source.getName();
+            sourceType = source.getType();
+
+            // Fingerprint the X and Y values of the source
+            Graphable graphable = source.getGraphable();
+            size = graphable.size();
+            fingerprint = size;
+
+            for(int i = 0; i < size; i++) {
+                fingerprint = fingerprint * 31 + graphable.getXAt(i).hashCode();
+                fingerprint = fingerprint * 31 +
+                    Double.doubleToLongBits(graphable.getYAt(i));
+            }
+        }
+
+        public boolean equals(Object object) {
+            if(!(object instanceof Key))
+                return false;
+
+            Key key = (Key)object;
+
+            return (name.equals(key.name) &&
+                    settings.equals(key.settings) &&
+                    (sourceName == null ? key.sourceName == null :
+                     sourceName.equals(key.sourceName)) &&
+                    sourceType == key.sourceType &&
+                    size == key.size &&
+                    fingerprint == key.fingerprint);
+        }
+
+        public int hashCode() {
+            return (name.hashCode() ^ settings.hashCode() ^
+                    (int)(fingerprint ^ (fingerprint >>> 32)));
+        }
+    }
+
+    // Create a new empty cache
+    private GraphCache() {
+        cache = new LinkedHashMap(16, 0.75F, true) {
+                protected boolean removeEldestEntry(Map.Entry eldest) {
+                    return size() > MAXIMUM_ENTRIES;
+                }
+            };
+    }
+
+    /**
+     * Create or return the singleton instance of the graph cache.
+     *
+     * @return singleton instance of this class
+     */
+    public static synchronized GraphCache getInstance() {
+        if(instance == null)
+            instance = new GraphCache();
+
+        return instance;
+    }
+
+    /**
+     * Create a key identifying the data of a graph.
+     *
+     * @param name     the name of the graph
+     * @param settings the graph's settings
+     * @param source   the graph's source
+     * @return the key
+     */
+    public static Object createKey(String name, HashMap settings, GraphSource source) {
+        return new Key(name, settings, source);
+    }
+
+    /**
+     * Return the cached data of the graph with the given key.
+     *
+     * @param key the key of the graph
+     * @return the graph's data or <code>null</code> if it isn't cached
+     */
+    public synchronized Object get(Object key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Cache the data of the graph with the given key. The data isn't cached
+     * if it was computed by a job that has been cancelled, since the
+     * computation may have stopped early.
+     *
+     * @param key  the key of the graph
+     * @param data the graph's data
+     */
+    public synchronized void put(Object key, Object data) {
+        if(!GraphScheduler.isCancelled())
+            cache.put(key, data);
+    }
+}
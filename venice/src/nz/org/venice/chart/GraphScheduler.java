@@ -0,0 +1,181 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package nz.org.venice.chart;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Computes the data of graphs in the background. Graphs such as moving
+ * averages, custom indicators and point and figure charts can take a long
+ * time to compute over a long history, so they are computed by a pool of
+ * worker threads rather than by the thread handling the user's request.
+ * <p>
+ * Each job is scheduled for a graph of an owner, such as a chart menu.
+ * If a new job is scheduled for the same graph before the last has
+ * finished, for example because the user has changed the graph's settings
+ * again, the last job is cancelled. A cancelled job's thread is
+ * interrupted and graph computations check {@link #isCancelled} to stop
+ * early. The job should make its changes to the chart by calling
+ * {@link #finish}, which only runs if the job hasn't been cancelled.
+ * <p>
+ * Example, computing a graph then adding it to a chart:
+ * <pre>
+ * final GraphScheduler scheduler = GraphScheduler.getInstance();
+ *
+ * scheduler.schedule(menu, graphName, new Runnable() {
+ *         public void run() {
+ *             graph.setSettings(settings);
+ *
+ *             scheduler.finish(new Runnable() {
+ *                     public void run() {
+ *                         chart.add(graph, 0);
+ *                     }
+ *                 });
+ *         }
+ *     });
+ * </pre>
+ *
+ * @author Andrew Leppard
+ * @see GraphCache
+ */
+public class GraphScheduler {
+
+    // Singleton instance of class
+    private static GraphScheduler instance = null;
+
+    // The worker threads
+    private ExecutorService executor;
+
+    // Map of owner and graph to the future of the last job scheduled
+    // for that graph
+    private HashMap jobs;
+
+    // Worker threads are created with this class so that computations
+    // can tell whether they are running in the background
+    private static class WorkerThread extends Thread {
+        public WorkerThread(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+
+    // Create a new scheduler with a worker thread for each processor
+    private GraphScheduler() {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int count = 0;
+
+                public synchronized Thread newThread(Runnable runnable) {
+                    Thread thread = new WorkerThread(runnable,
+                                                     "Graph scheduler " + (++count));
+
+                    // Don't let the pool keep Venice running
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+        jobs = new HashMap();
+    }
+
+    /**
+     * Create or return the singleton instance of the graph scheduler.
+     *
+     * @return singleton instance of this class
+     */
+    public static synchronized GraphScheduler getInstance() {
+        if(instance == null)
+            instance = new GraphScheduler();
+
+        return instance;
+    }
+
+    /**
+     * Schedule the given job to run in the background. Any job that was
+     * scheduled for the same graph of the same owner and hasn't finished
+     * is cancelled.
+     *
+     * @param owner the owner of the graph, e.g. a chart menu
+     * @param graph identifies the graph, e.g. its name
+     * @param job   the job
+     */
+    public synchronized void schedule(Object owner, Object graph,
+                                      final Runnable job) {
+        final Object key = Arrays.asList(new Object[] {owner, graph});
+        Future lastJob = (Future)jobs.get(key);
+
+        if(lastJob != null)
+            lastJob.cancel(true);
+
+        // The job can't finish before we have recorded it, since it needs
+        // to lock the scheduler to forget it
+        final Future[] future = new Future[1];
+
+        future[0] = executor.submit(new Runnable() {
+                public void run() {
+                    try {
+                        job.run();
+                    }
+                    finally {
+                        synchronized(GraphScheduler.this) {
+                            if(jobs.get(key) == future[0])
+                                jobs.remove(key);
+                        }
+                    }
+                }
+            });
+
+        jobs.put(key, future[0]);
+    }
+
+    /**
+     * Run the given task unless the calling job has been cancelled. A job
+     * can't be cancelled while the task is running, so the task can safely
+     * update the chart with the job's results.
+     *
+     * @param task the task
+     * @return <code>true</code> if the task was run
+     */
+    public synchronized boolean finish(Runnable task) {
+        if(isCancelled())
+            return false;
+
+        task.run();
+        return true;
+    }
+
+    /**
+     * Return whether the calling thread is running a job that has been
+     * cancelled. Graph computations can call this to stop early, their
+     * results will be thrown away. This always returns <code>false</code>
+     * when not called from a job.
+     *
+     * @return <code>true</code> if the job has been cancelled
+     */
+    public static boolean isCancelled() {
+        Thread thread = Thread.currentThread();
+
+        return (thread instanceof WorkerThread) && thread.isInterrupted();
+    }
+}
@@ -19,6 +19,7 @@
 package nz.org.venice.chart;
 
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
@@ -66,33 +67,57 @@ public class GraphTools {
 	
 	int xCoordinate, yCoordinate;
 	int lastXCoordinate = -1 , lastYCoordinate = -1;
-	Double y;
+	int index;
 	Comparable x;
-	Iterator iterator = xRange.iterator();
-	int i = 0;
+	int i = getFirstVisibleIndex(g, xoffset, horizontalScale, xRange);
+	int lastVisibleIndex = getLastVisibleIndex(g, xoffset, horizontalScale,
+						    xRange);
+	Iterator iterator = xRange.listIterator(i);
+	Comparable startX = source.getStartX();
+	Comparable endX = source.getEndX();
 	int vertDirection = (vertOrientation) ? 1 : -1;
     int halfbarWidth=(int)(0.309 * horizontalScale);//bryan    int halfBlankWidth=(int) (horizontalScale-halfbarWidth*2)/2;//bryan
+	// Join the line to the last point before the clip area
+	for(int j = i - 1; j >= 0; j--) {
+	    x = (Comparable)xRange.get(j);
+
+	    if(x.compareTo(startX) < 0)
+		break;
+
+	    index = source.indexOf(x);
+
+	    if(index != -1) {
+		lastXCoordinate = (int)(xoffset + horizontalScale * j) +
+		    halfbarWidth + 1 + halfBlankWidth;
+		lastYCoordinate = calcYCoord(yoffset, source.getYAt(index),
+					     topLineValue, bottomLineValue,
+					     verticalScale,
+					     vertDirection);
+		break;
+	    }
+	}
+
 	while(iterator.hasNext()) {
 
 	    x = (Comparable)iterator.next();
 
 	    // Skip until our start X
-	    if(x.compareTo(source.getStartX()) < 0) {
+	    if(x.compareTo(startX) < 0) {
 		i++;
 		continue;
 	    }
 
 	    // If our graph is finished exit this loop
-	    if(x.compareTo(source.getEndX()) > 0)
+	    if(x.compareTo(endX) > 0)
 		break;
 
 	    // Otherwise draw point
-	    y = source.getY(x);
+	    index = source.indexOf(x);
 
 	    // The graph is allowed to skip points
-	    if(y != null) {
+	    if(index != -1) {
 		xCoordinate = (int)(xoffset + horizontalScale * i);
-		yCoordinate = calcYCoord(yoffset, y.doubleValue(), 
+		yCoordinate = calcYCoord(yoffset, source.getYAt(index), 
 					 topLineValue, bottomLineValue, 
 					 verticalScale,
 					 vertDirection);
@@ -107,6 +132,10 @@ public class GraphTools {
 //			       xCoordinate, yCoordinate);		    g.drawLine(xCoordinate+halfbarWidth+1 +halfBlankWidth, yCoordinate,		    		xCoordinate+halfbarWidth+1 +halfBlankWidth, yCoordinate);
 //		lastXCoordinate = xCoordinate;		lastXCoordinate = xCoordinate+halfbarWidth+1 +halfBlankWidth;
 		lastYCoordinate = yCoordinate ;
+
+		// Stop once the line has been drawn past the clip area
+		if(i >= lastVisibleIndex)
+		    break;
 	    }
 
 	    i++;
@@ -134,11 +163,15 @@ public class GraphTools {
 				 boolean vertOrientation) {
 	int x2, y1, y2;
 //	int x1 = -1;    int halfbarWidth=(int)(0.309 * horizontalScale);//bryan    int halfBlankWidth=(int) (horizontalScale-halfbarWidth*2)/2;//bryan
-	Double y;
+	int index;
 	double doubleValue;
 	Comparable x;
-	Iterator iterator = xRange.iterator();
-	int i = 0;
+	int i = getFirstVisibleIndex(g, xoffset, horizontalScale, xRange);
+	int lastVisibleIndex = getLastVisibleIndex(g, xoffset, horizontalScale,
+						    xRange);
+	Iterator iterator = xRange.listIterator(i);
+	Comparable startX = source.getStartX();
+	Comparable endX = source.getEndX();
 	int vertDirection = (vertOrientation) ? 1 : -1;
 	
 	y2 = calcYCoord(yoffset, 0, topLineValue, bottomLineValue, verticalScale, 
@@ -150,24 +183,28 @@ public class GraphTools {
 
 	    x = (Comparable)iterator.next();
 
+	    // Stop once past the clip area
+	    if(i > lastVisibleIndex)
+		break;
+
 	    // Skip until our start X
-	    if(x.compareTo(source.getStartX()) < 0) {
+	    if(x.compareTo(startX) < 0) {
 		i++;
 		continue;
 	    }
 
 	    // If our graph is finished exit this loop
-	    if(x.compareTo(source.getEndX()) > 0)
+	    if(x.compareTo(endX) > 0)
 		break;
 
 	    // Otherwise draw point
-	    y = source.getY(x);
+	    index = source.indexOf(x);
 
 	    // The graph is allowed to skip points
-	    if(y == null)
+	    if(index == -1)
 		doubleValue = 0;
 	    else
-		doubleValue = y.doubleValue();
+		doubleValue = source.getYAt(index);
 
 	    x2 = (int)(xoffset + horizontalScale * i);
 	    
@@ -189,6 +226,57 @@ public class GraphTools {
 	}
     }
 
+    /**
+     * Return the index of the first point in the X range which may be drawn
+     * within the clip area of the graphics context. No point is drawn
+     * wider than twice the horizontal scale, so the points before this
+     * index can be skipped.
+     *
+     * @param   g       The graphics context
+     * @param   xoffset The xoffset in the graphics object where the graph
+     *                  starts
+     * @param   horizontalScale The number of pixels between points
+     * @param   xRange  The X range of the chart
+     * @return  the index of the first point to draw
+     */
+    public static int getFirstVisibleIndex(Graphics g, int xoffset,
+					   double horizontalScale,
+					   List xRange) {
+	Rectangle clip = g.getClipBounds();
+
+	if(clip == null)
+	    return 0;
+
+	int index = (int)Math.floor((clip.x - xoffset) / horizontalScale) - 2;
+
+	return Math.min(Math.max(index, 0), xRange.size());
+    }
+
+    /**
+     * Return the index of the last point in the X range which may be drawn
+     * within the clip area of the graphics context.
+     *
+     * @param   g       The graphics context
+     * @param   xoffset The xoffset in the graphics object where the graph
+     *                  starts
+     * @param   horizontalScale The number of pixels between points
+     * @param   xRange  The X range of the chart
+     * @return  the index of the last point to draw
+     */
+    public static int getLastVisibleIndex(Graphics g, int xoffset,
+					  double horizontalScale,
+					  List xRange) {
+	Rectangle clip = g.getClipBounds();
+
+	if(clip == null)
+	    return xRange.size() - 1;
+
+	int index = (int)Math.ceil((clip.x + clip.width - xoffset) /
+				   horizontalScale) + 2;
+
+	return Math.min(index, xRange.size() - 1);
+    }
+
     // Given the double y value of a point, the verticale offset and the
     // vertical scale, return the y coordinate where the point should be.
     public static int scaleAndFitPoint(double point,
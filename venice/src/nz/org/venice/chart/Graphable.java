@@ -18,10 +18,11 @@
 
 package nz.org.venice.chart;
 
-import java.util.Collection;
+import java.util.AbstractSet;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -39,20 +40,48 @@ import java.util.Set;
  * <pre>
  * Double squareOfThree = graphable.getY(new Double(3));
  * </pre>
+ * The points are kept in arrays in the order they were added, so each
+ * point also has an index. Graphs can read the Y values by index without
+ * creating any objects. Charts need the highest and lowest Y values of
+ * the visible X range every time they are redrawn, so the graphable keeps
+ * a segment tree of the Y values which answers these in logarithmic time
+ * rather than by going through every point.
  *
  * @author Andrew Leppard
  */
 public class Graphable {
 
-    private Comparable startX = null;
-    private Comparable endX = null;
-    private LinkedHashMap map;
+    // Initial number of points the arrays can hold
+    private final static int INITIAL_CAPACITY = 64;
+
+    // X and Y values in the order they were added
+    private Comparable[] xValues;
+    private double[] yValues;
+    private int size;
+
+    // Map of X values to their index
+    private HashMap indices;
+
+    // Whether the X values were added in ascending order. The X range
+    // of a chart can only be mapped to a range of indices if they were.
+    private boolean isSorted;
+
+    // Segment tree of the highest and lowest Y values. The leaves start at
+    // treeSize and the parent of node i is i / 2. The tree is built when it
+    // is first needed and discarded when a point is added.
+    private double[] highestTree;
+    private double[] lowestTree;
+    private int treeSize;
 
     /**
      * Create an empty graphable.
      */
     public Graphable() {
-	map = new LinkedHashMap();
+        xValues = new Comparable[INITIAL_CAPACITY];
+        yValues = new double[INITIAL_CAPACITY];
+        size = 0;
+        indices = new HashMap();
+        isSorted = true;
     }
 
     /**
@@ -61,14 +90,7 @@ public class Graphable {
      * @return	the last x value which we contain data
      */
     public Comparable getEndX() {
-        if(endX == null) {
-            // Get last value
-            Iterator iterator = map.keySet().iterator();
-            while(iterator.hasNext())
-                endX = (Comparable)iterator.next();
-        }
-
-	return endX;
+        return size > 0 ? xValues[size - 1] : null;
     }
 
     /**
@@ -77,14 +99,7 @@ public class Graphable {
      * @return	the first x value which we contain data
      */
     public Comparable getStartX() {
-        if(startX == null) {
-            // Get first value
-            Iterator iterator = map.keySet().iterator();
-            assert iterator.hasNext();
-            startX = (Comparable)iterator.next();
-        }
-
-	return startX;
+        return size > 0 ? xValues[0] : null;
     }
 
     /**
@@ -94,7 +109,9 @@ public class Graphable {
      * @return	y	the associated y value
      */
     public Double getY(Comparable x) {
-	return (Double)map.get(x);
+        int index = indexOf(x);
+
+        return index != -1 ? new Double(yValues[index]) : null;
     }
 
     /**
@@ -105,56 +122,291 @@ public class Graphable {
      * @param	y	the associated y value
      */
     public void putY(Comparable x, Double y) {
-        startX = endX = null;
+        assert y != null;
 
-	map.put(x, (Object)y);
+        putY(x, y.doubleValue());
     }
-   
+
+    /**
+     * Associate the given X value with the given Y value. This
+     * function is used to "load" up the graphable with data.
+     *
+     * @param	x	the x value
+     * @param	y	the associated y value
+     */
+    public void putY(Comparable x, double y) {
+        int index = indexOf(x);
+
+        if(index == -1) {
+            if(size == xValues.length) {
+                Comparable[] newXValues = new Comparable[size * 2];
+                double[] newYValues = new double[size * 2];
+
+                System.arraycopy(xValues, 0, newXValues, 0, size);
+                System.arraycopy(yValues, 0, newYValues, 0, size);
+                xValues = newXValues;
+                yValues = newYValues;
+            }
+
+            if(size > 0 && x.compareTo(xValues[size - 1]) <= 0)
+                isSorted = false;
+
+            index = size++;
+            xValues[index] = x;
+            indices.put(x, new Integer(index));
+        }
+
+        yValues[index] = y;
+        highestTree = lowestTree = null;
+    }
+
+    /**
+     * Return the number of points.
+     *
+     * @return the number of points
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the index of the given X value.
+     *
+     * @param	x	the x value
+     * @return	the index or <code>-1</code> if there is no Y value
+     *          associated with the X value
+     */
+    public int indexOf(Comparable x) {
+        Integer index = (Integer)indices.get(x);
+
+        return index != null ? index.intValue() : -1;
+    }
+
+    /**
+     * Return the X value at the given index.
+     *
+     * @param	index	the index
+     * @return	the x value
+     */
+    public Comparable getXAt(int index) {
+        assert index >= 0 && index < size;
+
+        return xValues[index];
+    }
+
+    /**
+     * Return the Y value at the given index.
+     *
+     * @param	index	the index
+     * @return	the y value
+     */
+    public double getYAt(int index) {
+        assert index >= 0 && index < size;
+
+        return yValues[index];
+    }
+
     /**
      * Given an X range, inspect all the associated Y values and return the
-     * highest.
+     * highest. The X range is expected to contain every X value between its
+     * first and last, as a chart's X range does.
      *
      * @param	xRange	a <code>List</code> of <code>Comparable</code>
      *			objects
      * @return	the highest Y value
      */
     public double getHighestY(List xRange) {
+        if(isSorted && size > 0) {
+            if(xRange.isEmpty())
+                return Double.NEGATIVE_INFINITY;
+
+            return getHighestY(getFirstIndex((Comparable)xRange.get(0)),
+                               getLastIndex((Comparable)xRange.get(xRange.size() - 1)));
+        }
+
 	Iterator iterator = xRange.iterator();
-	Double y = null;
-	Double highestY = new Double(Double.NEGATIVE_INFINITY);
+	double highestY = Double.NEGATIVE_INFINITY;
 
 	while(iterator.hasNext()) {
-	    y = getY((Comparable)iterator.next());
+	    int index = indexOf((Comparable)iterator.next());
 
-	    if(y != null && y.compareTo(highestY) > 0)
-            	highestY = y;
+	    if(index != -1 && Double.compare(yValues[index], highestY) > 0)
+            	highestY = yValues[index];
         }
 	
-	return highestY.doubleValue();
+	return highestY;
     }
 
     /**
      * Given an X range, inspect all the associated Y values and return the
-     * lowest.
+     * lowest. The X range is expected to contain every X value between its
+     * first and last, as a chart's X range does.
      *
      * @param	xRange	a <code>List</code> of <code>Comparable</code>
      *			objects
      * @return	the lowest Y value
      */
     public double getLowestY(List xRange) {
+        if(isSorted && size > 0) {
+            if(xRange.isEmpty())
+                return Double.MAX_VALUE;
+
+            return getLowestY(getFirstIndex((Comparable)xRange.get(0)),
+                              getLastIndex((Comparable)xRange.get(xRange.size() - 1)));
+        }
+
 	Iterator iterator = xRange.iterator();
-	Double y = null;
-	Double lowestY = new Double(Double.MAX_VALUE);
+	double lowestY = Double.MAX_VALUE;
 	
 	while(iterator.hasNext()) {
+	    int index = indexOf((Comparable)iterator.next());
 
-	    y = getY((Comparable)iterator.next());
-
-	    if(y != null && y.compareTo(lowestY) < 0)
-		lowestY = y;
+	    if(index != -1 && Double.compare(yValues[index], lowestY) < 0)
+		lowestY = yValues[index];
 	}
 
-	return lowestY.doubleValue();
+	return lowestY;
+    }
+
+    /**
+     * Return the highest Y value of the points in the given range of
+     * indices. The X values must have been added in ascending order.
+     *
+     * @param	firstIndex	index of the first point
+     * @param	lastIndex	index of the last point
+     * @return	the highest Y value
+     */
+    public double getHighestY(int firstIndex, int lastIndex) {
+        double highestY = Double.NEGATIVE_INFINITY;
+
+        if(firstIndex <= lastIndex) {
+            buildTree();
+
+            for(int left = firstIndex + treeSize, right = lastIndex + treeSize + 1;
+                left < right; left /= 2, right /= 2) {
+                if((left & 1) == 1 && Double.compare(highestTree[left++], highestY) > 0)
+                    highestY = highestTree[left - 1];
+                if((right & 1) == 1 && Double.compare(highestTree[--right], highestY) > 0)
+                    highestY = highestTree[right];
+            }
+        }
+
+        return highestY;
+    }
+
+    /**
+     * Return the lowest Y value of the points in the given range of
+     * indices. The X values must have been added in ascending order.
+     *
+     * @param	firstIndex	index of the first point
+     * @param	lastIndex	index of the last point
+     * @return	the lowest Y value
+     */
+    public double getLowestY(int firstIndex, int lastIndex) {
+        double lowestY = Double.MAX_VALUE;
+
+        if(firstIndex <= lastIndex) {
+            buildTree();
+
+            for(int left = firstIndex + treeSize, right = lastIndex + treeSize + 1;
+                left < right; left /= 2, right /= 2) {
+                if((left & 1) == 1 && Double.compare(lowestTree[left++], lowestY) < 0)
+                    lowestY = lowestTree[left - 1];
+                if((right & 1) == 1 && Double.compare(lowestTree[--right], lowestY) < 0)
+                    lowestY = lowestTree[right];
+            }
+        }
+
+        return lowestY;
+    }
+
+    /**
+     * Return the index of the first point whose X value is the same or
+     * after the given X value. The X values must have been added in
+     * ascending order.
+     *
+     * @param	x	the x value
+     * @return	the index, or the number of points if every X value
+     *          is before the given X value
+     */
+    public int getFirstIndex(Comparable x) {
+        assert isSorted;
+
+        int low = 0;
+        int high = size;
+
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+
+            if(xValues[middle].compareTo(x) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        return low;
+    }
+
+    /**
+     * Return the index of the last point whose X value is the same or
+     * before the given X value. The X values must have been added in
+     * ascending order.
+     *
+     * @param	x	the x value
+     * @return	the index, or <code>-1</code> if every X value is after the
+     *          given X value
+     */
+    public int getLastIndex(Comparable x) {
+        assert isSorted;
+
+        int low = 0;
+        int high = size;
+
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+
+            if(xValues[middle].compareTo(x) <= 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        return low - 1;
+    }
+
+    /**
+     * Return whether the X values were added in ascending order.
+     *
+     * @return	<code>true</code> if the X values are in ascending order
+     */
+    public boolean isSorted() {
+        return isSorted;
+    }
+
+    // Build the segment tree of the highest and lowest Y values. Computed
+    // graphables can be shared between threads (see GraphCache), so the
+    // tree is built while locked.
+    private synchronized void buildTree() {
+        if(highestTree == null) {
+            treeSize = size;
+            highestTree = new double[2 * treeSize];
+            lowestTree = new double[2 * treeSize];
+
+            System.arraycopy(yValues, 0, highestTree, treeSize, treeSize);
+            System.arraycopy(yValues, 0, lowestTree, treeSize, treeSize);
+
+            for(int i = treeSize - 1; i > 0; i--) {
+                double left = highestTree[2 * i];
+                double right = highestTree[2 * i + 1];
+
+                highestTree[i] = Double.compare(left, right) >= 0 ? left : right;
+
+                left = lowestTree[2 * i];
+                right = lowestTree[2 * i + 1];
+
+                lowestTree[i] = Double.compare(left, right) <= 0 ? left : right;
+            }
+        }
     }
 
     /**
@@ -163,7 +415,19 @@ public class Graphable {
      * @return	the set of all X values which have associated Y values
      */
     public Set getXRange() {
-	return map.keySet();
+        return new AbstractSet() {
+                public Iterator iterator() {
+                    return Graphable.this.iterator();
+                }
+
+                public int size() {
+                    return size;
+                }
+
+                public boolean contains(Object x) {
+                    return indices.containsKey(x);
+                }
+            };
     }
 
     /**
@@ -173,18 +437,9 @@ public class Graphable {
      * @return	array of Y values
      */
     public double[] toArray() {
-	Collection valueCollection = map.values();
-	Iterator iterator = valueCollection.iterator();
+        double[] values = new double[size];
 
-	double[] values = new double[map.size()];
-	Double value;
-	int i = 0;
-
-	while(iterator.hasNext()) {
-	    value = (Double)iterator.next();	
-	    values[i++] = value.doubleValue();
-	}
-	
+        System.arraycopy(yValues, 0, values, 0, size);
 	return values;
     }
 
@@ -194,11 +449,23 @@ public class Graphable {
      * @return iterator
      */
     public Iterator iterator() {
-        return map.keySet().iterator();
-    }
+        return new Iterator() {
+                private int index = 0;
 
-    public LinkedHashMap getMap() {
-	return map;
-    }
+                public boolean hasNext() {
+                    return index < size;
+                }
 
+                public Object next() {
+                    if(index >= size)
+                        throw new NoSuchElementException();
+
+                    return xValues[index++];
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+    }
 }
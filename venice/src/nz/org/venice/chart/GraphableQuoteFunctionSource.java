@@ -22,10 +22,7 @@ import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.quote.QuoteFunctionSource;
 import nz.org.venice.util.TradingDate;
 
-import java.util.List;
-import java.util.ArrayList;
-import java.util.Map;
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * Allow the {@link nz.org.venice.quote.QuoteFunctions} package to use quotes directly 
@@ -63,12 +60,13 @@ public class GraphableQuoteFunctionSource implements QuoteFunctionSource {
     private int period;
 
     // Quote functions need to access values by offset, while the
-    // Graphable contains values mapped to dates. So create a mapping
-    // that maps offsets to values.
-    private List values;
+    // Graphable contains values mapped to dates. So create an array
+    // of every trading day's value. Days without a value are NaN.
+    private double[] values;
 
-    // Mapping between date and offset in values array
-    private Map dateOffsets;
+    // Mapping between the index of a date in the graphable and its
+    // offset in values array
+    private int[] dateOffsets;
 
     // Offset of "current date" in values array.
     private int currentDateOffset;
@@ -98,9 +96,9 @@ public class GraphableQuoteFunctionSource implements QuoteFunctionSource {
      * @param date the current date
      */
     public void setDate(TradingDate date) {
-        Integer currentDateOffsetObject = (Integer)dateOffsets.get(date);
-        assert currentDateOffsetObject != null;
-        currentDateOffset = currentDateOffsetObject.intValue();
+        int index = graphable.indexOf(date);
+        assert index != -1 && dateOffsets[index] != -1;
+        currentDateOffset = dateOffsets[index];
     }
 
     public double getValue(int index)
@@ -108,16 +106,11 @@ public class GraphableQuoteFunctionSource implements QuoteFunctionSource {
 
 	assert index >= 0 && index < period;
 
-        Double value = null;
         int offset = currentDateOffset - period + index + 1;
 
         // Return Double.NaN if the value isn't in the array
-        if(offset >= 0 && offset < values.size())
-            value = (Double)values.get(offset);
-
-        // Return the value on that date if we have one
-        if(value != null)
-            return value.doubleValue();
+        if(offset >= 0 && offset < values.length)
+            return values[offset];
         else
             return Double.NaN;
     }
@@ -127,12 +120,13 @@ public class GraphableQuoteFunctionSource implements QuoteFunctionSource {
      * object contains an array of values so that the getValue() function
      * can return values based on an index, rather than using date calculations
      * to extract the date from the Graphable. The second object contains
-     * a mapping which maps the current date to an offset in the newly
-     * created array.
+     * a mapping which maps the index of the current date in the Graphable
+     * to an offset in the newly created array.
      */
     private void initialise() {
-        dateOffsets = new HashMap();
-        values = new ArrayList();
+        dateOffsets = new int[graphable.size()];
+        values = new double[graphable.size()];
+        Arrays.fill(dateOffsets, -1);
     
         TradingDate endDate = (TradingDate)graphable.getEndX();
         int offset = 0;
@@ -140,8 +134,31 @@ public class GraphableQuoteFunctionSource implements QuoteFunctionSource {
         for(TradingDate date = (TradingDate)graphable.getStartX();
             !date.after(endDate);
             date = date.next(1)) {
-            values.add(graphable.getY(date));
-            dateOffsets.put(date, new Integer(offset++));
+
+            // There may be more trading days than dates in the graphable
+            if(offset == values.length) {
+                double[] newValues = new double[values.length * 2];
+                System.arraycopy(values, 0, newValues, 0, values.length);
+                values = newValues;
+            }
+
+            int index = graphable.indexOf(date);
+
+            if(index != -1) {
+                values[offset] = graphable.getYAt(index);
+                dateOffsets[index] = offset;
+            }
+            else
+                values[offset] = Double.NaN;
+
+            offset++;
+        }
+
+        // Trim the array so values after the end date are also NaN
+        if(offset != values.length) {
+            double[] newValues = new double[offset];
+            System.arraycopy(values, 0, newValues, 0, offset);
+            values = newValues;
         }
     }
 }
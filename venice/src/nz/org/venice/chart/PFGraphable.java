@@ -43,7 +43,7 @@ public class PFGraphable extends Graphable {
     public PFGraphable() {
 	super();
 	
-	map = getMap();	
+	map = new LinkedHashMap();
 	charMap = new LinkedHashMap();
 	dateMap = new LinkedHashMap();
 	
@@ -286,6 +286,15 @@ public class PFGraphable extends Graphable {
 	return map.keySet();
     }
 
+    /**
+     * Return an interator which iterates over the X values.
+     *
+     * @return iterator
+     */
+    public Iterator iterator() {
+	return map.keySet().iterator();
+    }
+
     public boolean dataAvailable(Vector x) {
 	double val, lowest;
 
@@ -24,8 +24,10 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 
+import nz.org.venice.chart.GraphCache;
 import nz.org.venice.chart.Graphable;
 import nz.org.venice.chart.GraphableQuoteFunctionSource;
+import nz.org.venice.chart.GraphScheduler;
 import nz.org.venice.chart.GraphTools;
 import nz.org.venice.chart.source.GraphSource;
 import nz.org.venice.parser.EvaluationException;
@@ -140,8 +142,19 @@ public class BollingerBandsGraph extends AbstractGraph {
         // Retrieve period from settings hashmap
         int period = PeriodGraphUI.getPeriod(settings);
 
-	createBollingerBands(getSource().getGraphable(), period);
+        // Create the bands, unless they have already been computed
+        GraphCache cache = GraphCache.getInstance();
+        Object key = GraphCache.createKey(getName(), settings, getSource());
+        Graphable[] bands = (Graphable[])cache.get(key);
 
+        if(bands != null) {
+            upperBand = bands[0];
+            lowerBand = bands[1];
+        }
+        else {
+            createBollingerBands(getSource().getGraphable(), period);
+            cache.put(key, new Graphable[] {upperBand, lowerBand});
+        }
     }
 
     
@@ -155,6 +168,10 @@ public class BollingerBandsGraph extends AbstractGraph {
             = new GraphableQuoteFunctionSource(source, date, period);
 
         for(Iterator iterator = source.iterator(); iterator.hasNext();) {
+            // Stop if the user has changed the settings again
+            if(GraphScheduler.isCancelled())
+                break;
+
             date = (TradingDate)iterator.next();
             quoteFunctionSource.setDate(date);
 
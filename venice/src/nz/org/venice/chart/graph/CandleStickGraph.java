@@ -65,8 +65,12 @@ public class CandleStickGraph extends AbstractGraph {
 
         int xCoordinate, lowY, highY, closeY, openY;
         Double dayLowY, dayHighY, dayCloseY, dayOpenY;
-        Iterator iterator = xRange.iterator();
-        int i = 0;
+        int i = GraphTools.getFirstVisibleIndex(g, xoffset, horizontalScale,
+                                                xRange);
+        int lastVisibleIndex =
+            GraphTools.getLastVisibleIndex(g, xoffset, horizontalScale,
+                                           xRange);
+        Iterator iterator = xRange.listIterator(i);
         int halfbarWidth=(int)(0.309 * horizontalScale);//bryan
         int halfBlankWidth=(int) (horizontalScale-halfbarWidth*2)/2;//bryan
 	int vertDirection = (vertOrientation) ? 1 : -1;
@@ -75,6 +79,10 @@ public class CandleStickGraph extends AbstractGraph {
 
             Comparable x = (Comparable) iterator.next();
 
+            // Stop once past the clip area
+            if (i > lastVisibleIndex)
+                break;
+
             // Skip until our start date
             if (x.compareTo(dayClose.getStartX()) < 0) {
               i++;
@@ -20,15 +20,19 @@ package nz.org.venice.chart.graph;
 
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import javax.swing.JPanel;
 import javax.swing.JCheckBox;
 
+import nz.org.venice.chart.GraphScheduler;
 import nz.org.venice.chart.Graphable;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.ExpressionException;
 import nz.org.venice.parser.Parser;
 import nz.org.venice.parser.Variables;
@@ -185,20 +189,65 @@ public class CustomGraphUI implements GraphUI {
 	Iterator iterator = xRange.iterator();
         Variables variables = new Variables();
 
+        // Find the dates to graph and their offsets in the quote bundle
+        List dates = new ArrayList();
+        int[] offsets = new int[xRange.size()];
+
 	while(iterator.hasNext()) {
 	    TradingDate date = (TradingDate)iterator.next();
 
             try {
-                int dateOffset = quoteBundle.dateToOffset(date);
-                double value = indicator.evaluate(variables, quoteBundle, symbol, dateOffset);
-
-                indicatorGraphable.putY(date, new Double(value));
+                offsets[dates.size()] = quoteBundle.dateToOffset(date);
+                dates.add(date);
             }
             catch(WeekendDateException e) {
                 // ignore
             }
 	}
 
+        // If the indicator only depends on quotes, calculate all the
+        // values at once
+        double[] results = null;
+
+        if(dates.size() > 0 && ExpressionCache.isCacheable(indicator)) {
+            int firstDay = offsets[0];
+            int lastDay = offsets[0];
+
+            for(int i = 1; i < dates.size(); i++) {
+                firstDay = Math.min(firstDay, offsets[i]);
+                lastDay = Math.max(lastDay, offsets[i]);
+            }
+
+            try {
+                double[] series = indicator.evaluateSeries(variables, quoteBundle, symbol,
+                                                           firstDay, lastDay);
+                results = new double[dates.size()];
+
+                for(int i = 0; i < dates.size(); i++)
+                    results[i] = series[offsets[i] - firstDay];
+            }
+            catch(EvaluationException e) {
+                // The series may cover days which aren't graphed, so
+                // evaluate each date below
+                results = null;
+            }
+        }
+
+        for(int i = 0; i < dates.size(); i++) {
+            double value;
+
+            // Stop if the user has changed the settings again
+            if(GraphScheduler.isCancelled())
+                break;
+
+            if(results != null)
+                value = results[i];
+            else
+                value = indicator.evaluate(variables, quoteBundle, symbol, offsets[i]);
+
+            indicatorGraphable.putY((TradingDate)dates.get(i), new Double(value));
+        }
+
         return indicatorGraphable;
     }
 
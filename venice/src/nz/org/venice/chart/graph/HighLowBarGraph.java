@@ -68,14 +68,22 @@ public class HighLowBarGraph extends AbstractGraph {
 
 	int xCoordinate, lowY, highY, closeY;
 	Double dayLowY, dayHighY, dayCloseY;
-	Iterator iterator = xRange.iterator();
+	int i = GraphTools.getFirstVisibleIndex(g, xoffset, horizontalScale,
+						xRange);
+	int lastVisibleIndex =
+	    GraphTools.getLastVisibleIndex(g, xoffset, horizontalScale, xRange);
+	Iterator iterator = xRange.listIterator(i);
 	int vertDirection = (vertOrientation) ? -1 : 1;
-	int i = 0;    int halfbarWidth=(int)(0.309 * horizontalScale);//bryan    int halfBlankWidth=(int) (horizontalScale-halfbarWidth*2)/2;//bryan
+    int halfbarWidth=(int)(0.309 * horizontalScale);//bryan    int halfBlankWidth=(int) (horizontalScale-halfbarWidth*2)/2;//bryan
 
 	while(iterator.hasNext()) {
 
 	    Comparable x = (Comparable)iterator.next();
 	
+	    // Stop once past the clip area
+	    if(i > lastVisibleIndex)
+		break;
+
 	    // Skip until our start date
 	    if(x.compareTo(dayClose.getStartX()) < 0) {
 		i++;
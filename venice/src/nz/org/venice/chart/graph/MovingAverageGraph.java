@@ -23,8 +23,10 @@ import java.awt.Graphics;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import nz.org.venice.chart.GraphCache;
 import nz.org.venice.chart.Graphable;
 import nz.org.venice.chart.GraphableQuoteFunctionSource;
+import nz.org.venice.chart.GraphScheduler;
 import nz.org.venice.chart.GraphTools;
 import nz.org.venice.chart.source.GraphSource;
 import nz.org.venice.parser.EvaluationException;
@@ -111,6 +113,10 @@ public class MovingAverageGraph extends AbstractGraph {
             = new GraphableQuoteFunctionSource(source, date, period);
 
         for(Iterator iterator = source.iterator(); iterator.hasNext();) {
+            // Stop if the user has changed the settings again
+            if(GraphScheduler.isCancelled())
+                break;
+
             date = (TradingDate)iterator.next();
             quoteFunctionSource.setDate(date);
 
@@ -133,8 +139,15 @@ public class MovingAverageGraph extends AbstractGraph {
         // Retrieve period from settings hashmap
         int period = PeriodGraphUI.getPeriod(settings);
 
-	// Create moving average graphable
-	movingAverage = createMovingAverage(getSource().getGraphable(), period);
+	// Create moving average graphable, unless it has already been computed
+        GraphCache cache = GraphCache.getInstance();
+        Object key = GraphCache.createKey(getName(), settings, getSource());
+        movingAverage = (Graphable)cache.get(key);
+
+        if(movingAverage == null) {
+            movingAverage = createMovingAverage(getSource().getGraphable(), period);
+            cache.put(key, movingAverage);
+        }
     }
 
     /**
@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.Vector;
 
+import nz.org.venice.chart.GraphCache;
 import nz.org.venice.chart.Graphable;
 import nz.org.venice.chart.PFGraphable;
 import nz.org.venice.chart.PFData;
@@ -464,6 +465,15 @@ public class PointAndFigureGraph extends AbstractGraph {
     public void setSettings(HashMap settings) {
         super.setSettings(settings);
 
+        // Use the graphable already computed for these settings if
+        // there is one
+        GraphCache cache = GraphCache.getInstance();
+        Object key = GraphCache.createKey(getName(), settings, getSource());
+        pointAndFigure = (PFGraphable)cache.get(key);
+
+        if(pointAndFigure != null)
+            return;
+
         // Calculate default price scale from data
         double defaultPriceReversalScale = calculateDefaultPriceReversalScale();        double defaultBoxPriceScale = calculateDefaultBoxPriceScale();
 
@@ -473,6 +483,7 @@ public class PointAndFigureGraph extends AbstractGraph {
 
 	// Create point and figure graphable
 	pointAndFigure = createPointAndFigureGraph(getSource().getGraphable(), priceReversalScale, boxPriceScale);
+        cache.put(key, pointAndFigure);
     }
 
     /**
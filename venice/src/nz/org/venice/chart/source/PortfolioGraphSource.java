@@ -21,12 +21,15 @@ package nz.org.venice.chart.source;
 import nz.org.venice.chart.Graphable;
 import nz.org.venice.util.Locale;
 import nz.org.venice.util.Money;
+import nz.org.venice.util.MoneyAccumulator;
 import nz.org.venice.util.TradingDate;
 import nz.org.venice.portfolio.Account;
 import nz.org.venice.portfolio.Portfolio;
+import nz.org.venice.portfolio.Transaction;
 import nz.org.venice.quote.MissingQuoteException;
 import nz.org.venice.quote.EODQuoteBundle;
-import java.util.Iterator;
+import nz.org.venice.quote.WeekendDateException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -114,68 +117,114 @@ public class PortfolioGraphSource implements GraphSource {
             // Build graphable so this source can be directly graphed
             graphable = new Graphable();
 
-            // Iterate through each date between the date of the first transaction, and
-            // the latest date in the quote bundle. The portfolio iterator works by
-            // iterating over the portfolio date by date.
-            List dateRange = TradingDate.dateRangeToList(portfolio.getStartDate(),
-                                                         quoteBundle.getLastDate());
-            Iterator portfolioIterator = portfolio.iterator();
+            // Graph each trading day between the date of the first transaction, and
+            // the latest date in the quote bundle.
+            TradingDate startDate = portfolio.getStartDate();
 
-            for (Iterator dateIterator = dateRange.iterator(); dateIterator.hasNext();) {
+            if(startDate.isWeekend())
+                startDate = startDate.next(1);
 
-                // Each iteration of the portfolio iterator will advance the portfolio
-                // by one date.
-                TradingDate date = (TradingDate)dateIterator.next();
-                Portfolio portfolio = (Portfolio)portfolioIterator.next();
+            try {
+                int firstDateOffset = quoteBundle.dateToOffset(startDate);
+                int lastDateOffset = quoteBundle.dateToOffset(quoteBundle.getLastDate());
+                double[] values = createValues(firstDateOffset, lastDateOffset);
 
-                try {
-                    Money value;
+                for(int i = 0; i < values.length; i++) {
+                    // Skip dates we couldn't value
+                    if(!Double.isNaN(values[i])) {
+                        TradingDate date = quoteBundle.offsetToDate(firstDateOffset + i);
 
-                    if(mode == MARKET_VALUE)
-                        value = portfolio.getValue(quoteBundle, date);
+                        graphable.putY((Comparable)date, new Double(values[i]));
+                    }
+                }
+            }
+            catch(WeekendDateException e) {
+                // Neither date can fall on a weekend
+                assert false;
+            }
+        }
+        else
+            graphable = null;
+    }
 
-                    else if(mode == CASH_VALUE)
-                        value = portfolio.getCashValue(date);
+    /**
+     * Calculate the value of the portfolio on each day in the given range.
+     * The portfolio is replayed once over the range, adding each transaction
+     * on the day it happened, rather than rebuilding the portfolio for each day.
+     *
+     * @param firstDateOffset fast date offset of the first day
+     * @param lastDateOffset fast date offset of the last day
+     * @return the values, or <code>Double.NaN</code> for days that couldn't
+     *         be valued because a quote was missing
+     */
+    private double[] createValues(int firstDateOffset, int lastDateOffset) {
+        double[] values = new double[Math.max(0, lastDateOffset - firstDateOffset + 1)];
 
-                    else if(mode == SHARE_VALUE)
-                        value = portfolio.getShareValue(quoteBundle, date);
+        // Clone the portfolio, remove all the transactions and then add them
+        // back again as we reach them.
+        Portfolio portfolio = (Portfolio)this.portfolio.clone();
+        List transactions = new ArrayList(portfolio.getTransactions());
+        portfolio.removeAllTransactions();
 
-                    else if(mode == RETURN_VALUE)
-                        value = portfolio.getReturnValue(quoteBundle, date);
+        Account account = null;
+        MoneyAccumulator value = new MoneyAccumulator(portfolio.getCurrency());
+        int transactionIndex = 0;
 
-                    else if(mode == STOCKS_HELD) {
-                        // HACK: Stocks held should not be converted to double (or Money!)
-                        // since we might lose accuracy. This is a temporary fix until
-                        // the chart classes are updated and Integer types can be used.
-                        int stocksHeld = portfolio.getStocksHeld().size();
+        if(mode == ACCOUNT_VALUE) {
+            assert accountName != null;
 
-                        value = new Money((double)stocksHeld);
-					    
+            account = portfolio.findAccountByName(accountName);
+            assert account != null;
+        }
 
-                    }
-                    else {
-                        assert mode == ACCOUNT_VALUE;
-                        assert accountName != null;
-
-                        // This is inefficient because it only needs to call this once
-                        // for the portfolio. However, it's cleaner to put it here and
-                        // its impact should be tiny.
-                        Account account = portfolio.findAccountByName(accountName);
-                        
-			assert account != null;
-
-                        value = account.getValue(quoteBundle, date);
-                    }
-		    
-                    graphable.putY((Comparable)date, new Double(value.doubleValue()));
+        for(int i = 0; i < values.length; i++) {
+            int dateOffset = firstDateOffset + i;
+            TradingDate date = quoteBundle.offsetToDate(dateOffset);
+
+            // Add the transactions that happened on or before this date.
+            // The transaction list will be in date order.
+            while(transactionIndex < transactions.size()) {
+                Transaction transaction = (Transaction)transactions.get(transactionIndex);
+
+                if(transaction.getDate().compareTo(date) > 0)
+                    break;
+
+                portfolio.addTransaction(transaction);
+                transactionIndex++;
+            }
+
+            try {
+                if(mode == MARKET_VALUE) {
+                    value.clear();
+                    portfolio.addValue(value, quoteBundle, dateOffset);
+                    values[i] = value.doubleValue();
+                }
+
+                else if(mode == CASH_VALUE)
+                    values[i] = portfolio.getCashValue(date).doubleValue();
+
+                else if(mode == SHARE_VALUE)
+                    values[i] = portfolio.getShareValue(quoteBundle, dateOffset).doubleValue();
+
+                else if(mode == RETURN_VALUE)
+                    values[i] = portfolio.getReturnValue(quoteBundle, dateOffset).doubleValue();
+
+                else if(mode == STOCKS_HELD)
+                    values[i] = portfolio.getStocksHeld().size();
+
+                else {
+                    assert mode == ACCOUNT_VALUE;
+                    values[i] = account.getValue(quoteBundle, dateOffset).doubleValue();
                 }
+            }
 
-                // OK - just skip that date
-                catch(MissingQuoteException e) { }
+            // OK - just skip that date
+            catch(MissingQuoteException e) {
+                values[i] = Double.NaN;
             }
         }
-        else
-            graphable = null;
+
+        return values;
     }
 
     public Graphable getGraphable() {
@@ -29,7 +29,8 @@ import org.safehaus.uuid.UUIDGenerator;
 
 /** 
  * This class keeps track of the running time of expressions which can forever 
- * The check is done per date
+ * The check is done per date. The guard is shared by all the threads
+ * evaluating expressions, so access to it is synchronized.
  * @author Mark Hummel
  */
 
@@ -64,7 +65,7 @@ public class AnalyserGuard {
      * exceeded doesn't trigger if some progress is being made.
      */
 
-    public boolean evaluationTimeElapsed(Expression expression, 
+    public synchronized boolean evaluationTimeElapsed(Expression expression, 
 					 UUID expressionID,
 					 Symbol symbol, int day) {
 	String key = getKey(expression, expressionID, symbol, day);
@@ -94,7 +95,7 @@ public class AnalyserGuard {
      * exceeded doesn't trigger if some progress is being made.
      */
 
-    public boolean stackDepthLimitExceeded(Expression expression, 
+    public synchronized boolean stackDepthLimitExceeded(Expression expression, 
 					   UUID expressionID,
 					   Symbol symbol, int day) {
 
@@ -124,7 +125,7 @@ public class AnalyserGuard {
      * exceeded doesn't trigger if some progress is being made.
      */
 
-    public void startLoop(Expression expression, UUID expressionID, 
+    public synchronized void startLoop(Expression expression, UUID expressionID, 
 			  Symbol symbol, int day) {
 	long now = System.currentTimeMillis();
 
@@ -145,7 +146,7 @@ public class AnalyserGuard {
      * @param day Integer offset of the quote bundle. Included so the limit
      * exceeded doesn't trigger if some progress is being made.
      */
-    public void finishLoop(Expression expression, UUID expressionID, 
+    public synchronized void finishLoop(Expression expression, UUID expressionID, 
 			   Symbol symbol, int day) {
 	String key = getKey(expression, expressionID, symbol, day);
 	
@@ -161,7 +162,7 @@ public class AnalyserGuard {
      * @param day Integer offset of the quote bundle. Included so the limit
      * exceeded doesn't trigger if some progress is being made.
      */
-    public void startFunction(Expression expression, 
+    public synchronized void startFunction(Expression expression, 
 			      UUID expressionID, 
 			      Symbol symbol, int day) {
 		
@@ -183,7 +184,7 @@ public class AnalyserGuard {
      * @param day Integer offset of the quote bundle. Included so the limit
      * exceeded doesn't trigger if some progress is being made.
      */
-    public void finishFunction(Expression expression, 
+    public synchronized void finishFunction(Expression expression, 
 			       UUID expressionID, 
 			       Symbol symbol, int day) {
 
@@ -0,0 +1,52 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.parser;
+
+import nz.org.venice.quote.QuoteBundle;
+import nz.org.venice.quote.Symbol;
+
+/**
+ * An expression whose result can be remembered by the {@link ExpressionCache}.
+ * These are expressions, such as the moving average, which are expensive to
+ * evaluate and which appear in many rules. The expression's
+ * {@link Expression#evaluate} method should pass itself to the expression cache,
+ * which will call {@link #evaluateUncached} if the result is not known.
+ *
+ * @author Andrew Leppard
+ * @see ExpressionCache
+ */
+public interface CacheableExpression extends Expression {
+
+    /**
+     * Evaluates the given expression and returns the result, without
+     * looking in the expression cache.
+     *
+     * @param   variables       variable storage area for expression
+     * @param	quoteBundle	the quote bundle containing quote data to use
+     * @param	symbol	the current symbol
+     * @param	day	current date in cache fast access format
+     * @return	the result of the expression
+     * @throws	EvaluationException if the expression performs an illegal
+     *          operation such as divide by zero.
+     */
+    public double evaluateUncached(Variables variables, QuoteBundle quoteBundle,
+                                   Symbol symbol, int day)
+	throws EvaluationException;
+}
@@ -94,6 +94,25 @@ public interface Expression extends Cloneable {
                            Symbol symbol, int day)
 	throws EvaluationException;
 
+    /**
+     * Evaluates the given expression for every day in a range and returns
+     * the results. The results are the same as calling
+     * {@link #evaluate} for each day in turn, but expressions which only
+     * depend on quotes can calculate the whole range at once.
+     *
+     * @param   variables       variable storage area for expression
+     * @param	quoteBundle	the quote bundle containing quote data to use
+     * @param	symbol	the current symbol
+     * @param	firstDay	first date in cache fast access format
+     * @param	lastDay	last date in cache fast access format
+     * @return	the results, the first of which is for <code>firstDay</code>
+     * @throws	EvaluationException if the expression performs an illegal
+     *          operation such as divide by zero.
+     */
+    public double[] evaluateSeries(Variables variables, QuoteBundle quoteBundle,
+                                   Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException;
+
     /**
      * Convert the given expression to a string.
      * 
@@ -0,0 +1,434 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nz.org.venice.parser.expression.AbstractExpression;
+import nz.org.venice.parser.expression.AlertExpression;
+import nz.org.venice.parser.expression.DefineParameterExpression;
+import nz.org.venice.parser.expression.DefineVariableExpression;
+import nz.org.venice.parser.expression.EvalFunctionExpression;
+import nz.org.venice.parser.expression.FunctionExpression;
+import nz.org.venice.parser.expression.GetVariableExpression;
+import nz.org.venice.parser.expression.HaltExpression;
+import nz.org.venice.parser.expression.IncludeExpression;
+import nz.org.venice.parser.expression.LoggingExpression;
+import nz.org.venice.parser.expression.RandomWithSeedExpression;
+import nz.org.venice.parser.expression.RandomWithoutSeedExpression;
+import nz.org.venice.parser.expression.SetVariableExpression;
+import nz.org.venice.quote.IDQuoteBundle;
+import nz.org.venice.quote.MixedQuoteBundle;
+import nz.org.venice.quote.QuoteBundle;
+import nz.org.venice.quote.Symbol;
+
+/**
+ * Remembers the results of expensive expressions such as
+ * <code>avg(close, 200)</code>. The same expressions appear in many buy and
+ * sell rules, expression columns, graphs and alerts, and in the population
+ * of the genetic programme. The cache means each of them is only
+ * calculated once for each symbol and date.
+ * <p>
+ * Results are keyed by the expression, using the {@link Expression#equals}
+ * method, the quote bundle, the symbol and the date. So an expression is
+ * only shared between windows that share the same quote bundle. Expressions
+ * which read or write variables, such as <code>avg(close, a)</code>,
+ * or which have side effects or random results are never cached.
+ * Neither are expressions evaluated over intra-day quotes, which can change.
+ * <p>
+ * The cache holds a fixed number of results, and when it is full the least
+ * recently used result is discarded. The cache is shared by all the threads
+ * evaluating expressions, e.g. paper trades run in parallel. So that these
+ * threads do not wait on each other, a large cache is split into stripes,
+ * each with its own lock and least recently used order. Whether an
+ * expression can be cached and its hash code are worked out once for each
+ * expression rather than on every evaluation.
+ *
+ * Example:
+ * <pre>
+ *      public double evaluate(Variables variables, QuoteBundle quoteBundle,
+ *                             Symbol symbol, int day)
+ *          throws EvaluationException {
+ *
+ *          return ExpressionCache.getInstance().evaluate(this, variables, quoteBundle,
+ *                                                        symbol, day);
+ *      }
+ * </pre>
+ *
+ * @author Andrew Leppard
+ * @see CacheableExpression
+ */
+public class ExpressionCache {
+
+    /** Default number of results to keep. */
+    public final static int DEFAULT_CAPACITY = 50000;
+
+    // Number of stripes a large cache is split into. Must be a power of two.
+    private final static int STRIPES = 16;
+
+    // Caches smaller than this are not split, so they keep exactly the
+    // most recently used results
+    private final static int MINIMUM_STRIPED_CAPACITY = STRIPES * 64;
+
+    // Singleton instance of this class
+    private static ExpressionCache instance = new ExpressionCache(DEFAULT_CAPACITY);
+
+    // Stripes of the cache, each holding its share of the results
+    private final Stripe[] stripes;
+
+    // Number of results to keep
+    private final int capacity;
+
+    // Whether results are being cached
+    private volatile boolean isEnabled = true;
+
+    // Incremented each time the cache is cleared
+    private volatile int generation = 0;
+
+    // Part of the cache with its own lock. Maps keys to results in least
+    // recently used order.
+    private static class Stripe extends LinkedHashMap {
+        private final int capacity;
+
+        // Statistics
+        private long hits = 0;
+        private long misses = 0;
+
+        public Stripe(int capacity) {
+            super(16, 0.75F, true);
+            this.capacity = capacity;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > capacity;
+        }
+    }
+
+    // Key of a cached result
+    private static class Key {
+        private final Expression expression;
+        private final QuoteBundle quoteBundle;
+        private final Symbol symbol;
+        private final int day;
+        private final int hashCode;
+
+        public Key(Expression expression, QuoteBundle quoteBundle, Symbol symbol, int day) {
+            this.expression = expression;
+            this.quoteBundle = quoteBundle;
+            this.symbol = symbol;
+            this.day = day;
+
+            hashCode = (getHashCode(expression) ^ System.identityHashCode(quoteBundle) ^
+                        (symbol != null ? symbol.hashCode() : 0) ^ (37 * day));
+        }
+
+        public boolean equals(Object object) {
+            if(!(object instanceof Key))
+                return false;
+
+            Key key = (Key)object;
+
+            return (key.hashCode == hashCode &&
+                    key.day == day &&
+                    key.quoteBundle == quoteBundle &&
+                    (key.symbol == null ? symbol == null : key.symbol.equals(symbol)) &&
+                    (key.expression == expression || key.expression.equals(expression)));
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Create a new expression cache.
+     *
+     * @param capacity the number of results to keep
+     */
+    public ExpressionCache(final int capacity) {
+        assert capacity >= 0;
+
+        this.capacity = capacity;
+
+        int stripeCount = capacity < MINIMUM_STRIPED_CAPACITY ? 1 : STRIPES;
+        stripes = new Stripe[stripeCount];
+
+        for(int i = 0; i < stripeCount; i++)
+            stripes[i] = new Stripe((capacity + stripeCount - 1) / stripeCount);
+    }
+
+    /**
+     * Return the singleton instance of the expression cache.
+     *
+     * @return the expression cache
+     */
+    public static ExpressionCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Evaluate the given expression, returning the cached result if the
+     * expression has already been evaluated for the same quote bundle,
+     * symbol and date.
+     *
+     * @param   expression      the expression to evaluate
+     * @param   variables       variable storage area for expression
+     * @param	quoteBundle	the quote bundle containing quote data to use
+     * @param	symbol	the current symbol
+     * @param	day	current date in cache fast access format
+     * @return	the result of the expression
+     * @throws	EvaluationException if the expression performs an illegal
+     *          operation such as divide by zero.
+     */
+    public double evaluate(CacheableExpression expression, Variables variables,
+                           QuoteBundle quoteBundle, Symbol symbol, int day)
+        throws EvaluationException {
+
+        if(!isEnabled || capacity == 0 || !isCacheable(quoteBundle) || !isCacheable(expression))
+            return expression.evaluateUncached(variables, quoteBundle, symbol, day);
+
+        Key key = new Key(expression, quoteBundle, symbol, day);
+        Stripe stripe = getStripe(key);
+        Double result;
+
+        synchronized(stripe) {
+            result = (Double)stripe.get(key);
+
+            if(result != null)
+                stripe.hits++;
+            else
+                stripe.misses++;
+        }
+
+        // Evaluate the expression outside of the lock so other threads can
+        // use the cache. Exceptions are not cached.
+        if(result == null) {
+            result = new Double(expression.evaluateUncached(variables, quoteBundle,
+                                                            symbol, day));
+
+            synchronized(stripe) {
+                stripe.put(key, result);
+            }
+        }
+
+        return result.doubleValue();
+    }
+
+    // Return the stripe holding the result with the given key
+    private Stripe getStripe(Key key) {
+        int hashCode = key.hashCode();
+
+        // Mix the high bits in as the low bits of nearby days are similar
+        hashCode ^= (hashCode >>> 16);
+
+        return stripes[hashCode & (stripes.length - 1)];
+    }
+
+    // Return the hash code of the expression, which is remembered by
+    // the expression so the tree is only walked once
+    private static int getHashCode(Expression expression) {
+        if(expression instanceof AbstractExpression)
+            return ((AbstractExpression)expression).getCacheHashCode();
+        else
+            return expression.hashCode();
+    }
+
+    /**
+     * Turn caching on or off. When caching is off every expression is
+     * evaluated, which is useful when measuring the speed of expressions.
+     *
+     * @param isEnabled <code>true</code> to cache results
+     */
+    public void setEnabled(boolean isEnabled) {
+        this.isEnabled = isEnabled;
+    }
+
+    /**
+     * Return whether results are being cached.
+     *
+     * @return <code>true</code> if results are cached
+     */
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * Remove all the results from the cache. This should be called when
+     * the quotes have changed, e.g. after an import.
+     */
+    public void clear() {
+        for(int i = 0; i < stripes.length; i++) {
+            synchronized(stripes[i]) {
+                stripes[i].clear();
+            }
+        }
+
+        generation++;
+    }
+
+    /**
+     * Return the number of times the cache has been cleared. Other caches of
+     * values calculated from the quotes, such as the quote function windows
+     * kept by expressions, compare this with the generation they were
+     * filled in to find out whether the quotes have changed.
+     *
+     * @return the generation of the cache
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Return the number of results in the cache.
+     *
+     * @return number of results
+     */
+    public int size() {
+        int size = 0;
+
+        for(int i = 0; i < stripes.length; i++) {
+            synchronized(stripes[i]) {
+                size += stripes[i].size();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Return the maximum number of results kept by the cache.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Return the number of times a result was found in the cache.
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        long hits = 0;
+
+        for(int i = 0; i < stripes.length; i++) {
+            synchronized(stripes[i]) {
+                hits += stripes[i].hits;
+            }
+        }
+
+        return hits;
+    }
+
+    /**
+     * Return the number of times a result was not found in the cache and
+     * the expression had to be evaluated.
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        long misses = 0;
+
+        for(int i = 0; i < stripes.length; i++) {
+            synchronized(stripes[i]) {
+                misses += stripes[i].misses;
+            }
+        }
+
+        return misses;
+    }
+
+    /**
+     * Reset the hit and miss statistics.
+     */
+    public void resetStatistics() {
+        for(int i = 0; i < stripes.length; i++) {
+            synchronized(stripes[i]) {
+                stripes[i].hits = stripes[i].misses = 0;
+            }
+        }
+    }
+
+    /**
+     * Return whether values calculated from the given quote bundle can be
+     * kept. Intra-day quotes can change between evaluations without the
+     * date offset changing.
+     *
+     * @param quoteBundle the quote bundle
+     * @return <code>true</code> if values calculated from the quotes can be kept
+     */
+    public static boolean isCacheable(QuoteBundle quoteBundle) {
+        return !(quoteBundle instanceof IDQuoteBundle ||
+                 quoteBundle instanceof MixedQuoteBundle);
+    }
+
+    /**
+     * Return whether the result of the given expression depends only on the
+     * quotes, symbol and date it is evaluated with. An expression is
+     * not cacheable if any part of it uses variables or functions, has
+     * side effects or returns random results. The answer is remembered
+     * by the expression.
+     *
+     * @param expression the expression
+     * @return <code>true</code> if the result of the expression can be cached
+     */
+    public static boolean isCacheable(Expression expression) {
+        if(expression instanceof AbstractExpression)
+            return ((AbstractExpression)expression).isCacheable();
+        else
+            return isCacheableUncached(expression);
+    }
+
+    /**
+     * Work out whether the result of the given expression can be cached,
+     * without using the answer remembered by the expression. Its children's
+     * remembered answers are used.
+     *
+     * @param expression the expression
+     * @return <code>true</code> if the result of the expression can be cached
+     * @see #isCacheable(Expression)
+     */
+    public static boolean isCacheableUncached(Expression expression) {
+        if(expression instanceof GetVariableExpression ||
+           expression instanceof SetVariableExpression ||
+           expression instanceof DefineVariableExpression ||
+           expression instanceof DefineParameterExpression ||
+           expression instanceof FunctionExpression ||
+           expression instanceof EvalFunctionExpression ||
+           expression instanceof IncludeExpression ||
+           expression instanceof RandomWithSeedExpression ||
+           expression instanceof RandomWithoutSeedExpression ||
+           expression instanceof AlertExpression ||
+           expression instanceof HaltExpression ||
+           expression instanceof LoggingExpression)
+            return false;
+
+        for(int i = 0; i < expression.getChildCount(); i++) {
+            Expression child = expression.getChild(i);
+
+            if(child == null || !isCacheable(child))
+                return false;
+        }
+
+        return true;
+    }
+}
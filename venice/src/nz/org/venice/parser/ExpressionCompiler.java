@@ -0,0 +1,768 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import nz.org.venice.parser.expression.AbsExpression;
+import nz.org.venice.parser.expression.AddExpression;
+import nz.org.venice.parser.expression.AndExpression;
+import nz.org.venice.parser.expression.CompiledExpression;
+import nz.org.venice.parser.expression.DivideExpression;
+import nz.org.venice.parser.expression.EqualThanExpression;
+import nz.org.venice.parser.expression.GreaterThanEqualExpression;
+import nz.org.venice.parser.expression.GreaterThanExpression;
+import nz.org.venice.parser.expression.IfExpression;
+import nz.org.venice.parser.expression.LessThanEqualExpression;
+import nz.org.venice.parser.expression.LessThanExpression;
+import nz.org.venice.parser.expression.MultiplyExpression;
+import nz.org.venice.parser.expression.NotEqualExpression;
+import nz.org.venice.parser.expression.NotExpression;
+import nz.org.venice.parser.expression.NumberExpression;
+import nz.org.venice.parser.expression.OrExpression;
+import nz.org.venice.parser.expression.PercentExpression;
+import nz.org.venice.parser.expression.SubtractExpression;
+
+/**
+ * Compiles an expression into a Java class. Evaluating an expression
+ * normally walks the expression tree, calling the evaluate method of
+ * every node. The compiled expression instead runs straight line Java
+ * byte code for the arithmetic, comparison and logic operators. Constant
+ * parts of the expression, such as <code>2 * 10</code>, are calculated
+ * when the expression is compiled.
+ * <p>
+ * All other expressions, such as <code>avg(close, 20, 0)</code>, are
+ * evaluated by calling the original expression. If the whole expression
+ * can't be compiled then the original expression is returned. The compiled
+ * expression always gives the same results as the original.
+ * <p>
+ * Each compiled expression is loaded by its own class loader, so it can be
+ * garbage collected with the expression.
+ *
+ * Example:
+ * <pre>
+ *      Expression expression = Parser.parse(variables, "close > open * 1.1");
+ *      Expression compiled = ExpressionCompiler.compile(expression);
+ *
+ *      double result = compiled.evaluate(variables, quoteBundle, symbol, day);
+ * </pre>
+ *
+ * @author Andrew Leppard
+ * @see CompiledExpression
+ * @see ExpressionEvaluator
+ */
+public class ExpressionCompiler {
+
+    // Version of the class file format. This version doesn't need stack map frames.
+    private final static int CLASS_FILE_VERSION = 49;
+
+    // Limits of the generated code
+    private final static int MAXIMUM_CODE_LENGTH = 32767;
+    private final static int MAXIMUM_LOCALS = 256;
+
+    // Local variables of the evaluate method
+    private final static int NODES_LOCAL = 1;
+    private final static int VARIABLES_LOCAL = 2;
+    private final static int QUOTE_BUNDLE_LOCAL = 3;
+    private final static int SYMBOL_LOCAL = 4;
+    private final static int DAY_LOCAL = 5;
+    private final static int FIRST_FREE_LOCAL = 6;
+
+    // Op codes used by the generated code
+    private final static int DCONST_0 = 0x0e;
+    private final static int DCONST_1 = 0x0f;
+    private final static int BIPUSH = 0x10;
+    private final static int SIPUSH = 0x11;
+    private final static int LDC2_W = 0x14;
+    private final static int ILOAD = 0x15;
+    private final static int DLOAD = 0x18;
+    private final static int ALOAD = 0x19;
+    private final static int ALOAD_0 = 0x2a;
+    private final static int AALOAD = 0x32;
+    private final static int DSTORE = 0x39;
+    private final static int DADD = 0x63;
+    private final static int DSUB = 0x67;
+    private final static int DMUL = 0x6b;
+    private final static int DDIV = 0x6f;
+    private final static int DCMPL = 0x97;
+    private final static int DCMPG = 0x98;
+    private final static int IFEQ = 0x99;
+    private final static int IFNE = 0x9a;
+    private final static int IFLT = 0x9b;
+    private final static int IFGE = 0x9c;
+    private final static int IFGT = 0x9d;
+    private final static int IFLE = 0x9e;
+    private final static int GOTO = 0xa7;
+    private final static int DRETURN = 0xaf;
+    private final static int RETURN = 0xb1;
+    private final static int INVOKESPECIAL = 0xb7;
+    private final static int INVOKESTATIC = 0xb8;
+    private final static int INVOKEINTERFACE = 0xb9;
+    private final static int ATHROW = 0xbf;
+
+    // Class names and method descriptors used by the generated code
+    private final static String EXPRESSION = "nz/org/venice/parser/Expression";
+    private final static String EVALUATOR = "nz/org/venice/parser/ExpressionEvaluator";
+    private final static String COMPILER = "nz/org/venice/parser/ExpressionCompiler";
+    private final static String EVALUATE_DESCRIPTOR =
+        "(Lnz/org/venice/parser/Variables;Lnz/org/venice/quote/QuoteBundle;" +
+        "Lnz/org/venice/quote/Symbol;I)D";
+    private final static String EVALUATOR_DESCRIPTOR =
+        "([Lnz/org/venice/parser/Expression;Lnz/org/venice/parser/Variables;" +
+        "Lnz/org/venice/quote/QuoteBundle;Lnz/org/venice/quote/Symbol;I)D";
+    private final static String DIVIDE_BY_ZERO_DESCRIPTOR =
+        "(Lnz/org/venice/parser/Expression;)Lnz/org/venice/parser/EvaluationException;";
+
+    // Number of classes generated, used to give each class a different name
+    private static int classCount = 0;
+
+    // This class cannot be instantiated
+    private ExpressionCompiler() {
+        assert false;
+    }
+
+    /**
+     * Compile the given expression. If the expression can't be compiled,
+     * the expression will be returned unchanged.
+     *
+     * @param expression the expression to compile
+     * @return the compiled expression or the original expression
+     */
+    public static Expression compile(Expression expression) {
+        // There is nothing to gain unless the top of the expression is compiled
+        if(!isCompiled(expression) || expression instanceof NumberExpression)
+            return expression;
+
+        // The compiled expression owns a copy of the original, as the
+        // original may be evaluated at the same time by another thread
+        Expression copy = (Expression)expression.clone();
+        Expression[] nodes = getNodes(copy);
+
+        try {
+            String className = "nz.org.venice.parser.CompiledExpression" + nextClassNumber();
+            byte[] classFile = new Generator(copy, nodes).generate(className);
+            Class evaluatorClass = new Loader().define(className, classFile);
+            ExpressionEvaluator evaluator = (ExpressionEvaluator)evaluatorClass.newInstance();
+
+            return new CompiledExpression(copy, evaluator, nodes,
+                                          expression.getParseMetadata());
+        }
+        catch(CompilerException e) {
+            return expression;
+        }
+        catch(LinkageError e) {
+            // Should not happen, but the original expression still works
+            assert false;
+            return expression;
+        }
+        catch(IllegalAccessException e) {
+            assert false;
+            return expression;
+        }
+        catch(InstantiationException e) {
+            assert false;
+            return expression;
+        }
+    }
+
+    /**
+     * Return the parts of the given expression that are called by its
+     * compiled code. These are the expressions that can't be compiled,
+     * and the divide expressions, which are needed to report a divide
+     * by zero.
+     *
+     * @param expression the expression
+     * @return the parts of the expression called by the compiled code
+     */
+    public static Expression[] getNodes(Expression expression) {
+        List nodes = new ArrayList();
+
+        addNodes(expression, nodes);
+        return (Expression[])nodes.toArray(new Expression[nodes.size()]);
+    }
+
+    /**
+     * Return the exception thrown when a divide expression divides by zero.
+     * This is called by the compiled code.
+     *
+     * @param expression the divide expression
+     * @return the exception to throw
+     */
+    public static EvaluationException divideByZero(Expression expression) {
+        EvaluationException e = EvaluationException.DIVIDE_BY_ZERO_EXCEPTION;
+        e.setMessage(expression, "", 0.0D);
+        return e;
+    }
+
+    private static void addNodes(Expression expression, List nodes) {
+        if(!isCompiled(expression))
+            nodes.add(expression);
+        else if(!isConstant(expression)) {
+            if(expression instanceof DivideExpression)
+                nodes.add(expression);
+
+            for(int i = 0; i < expression.getChildCount(); i++)
+                addNodes(expression.getChild(i), nodes);
+        }
+    }
+
+    // Return whether the top of the expression is compiled into byte code,
+    // rather than calling the expression
+    private static boolean isCompiled(Expression expression) {
+        return (expression instanceof NumberExpression ||
+                expression instanceof AddExpression ||
+                expression instanceof SubtractExpression ||
+                expression instanceof MultiplyExpression ||
+                expression instanceof DivideExpression ||
+                expression instanceof PercentExpression ||
+                expression instanceof AbsExpression ||
+                expression instanceof GreaterThanExpression ||
+                expression instanceof GreaterThanEqualExpression ||
+                expression instanceof LessThanExpression ||
+                expression instanceof LessThanEqualExpression ||
+                expression instanceof EqualThanExpression ||
+                expression instanceof NotEqualExpression ||
+                expression instanceof AndExpression ||
+                expression instanceof OrExpression ||
+                expression instanceof NotExpression ||
+                expression instanceof IfExpression);
+    }
+
+    // Return whether the expression only contains compiled operators
+    // on numbers and can be calculated without a divide by zero
+    private static boolean isConstant(Expression expression) {
+        if(expression instanceof NumberExpression)
+            return true;
+        else if(!isCompiled(expression))
+            return false;
+
+        for(int i = 0; i < expression.getChildCount(); i++)
+            if(!isConstant(expression.getChild(i)))
+                return false;
+
+        try {
+            expression.evaluate(null, null, null, 0);
+            return true;
+        }
+        catch(EvaluationException e) {
+            return false;
+        }
+    }
+
+    private static synchronized int nextClassNumber() {
+        return classCount++;
+    }
+
+    // Thrown when an expression is too big to compile
+    private static class CompilerException extends Exception {
+        public CompilerException() {
+            super();
+        }
+    }
+
+    // Loads a single compiled class
+    private static class Loader extends ClassLoader {
+        public Loader() {
+            super(ExpressionCompiler.class.getClassLoader());
+        }
+
+        public Class define(String className, byte[] classFile) {
+            return defineClass(className, classFile, 0, classFile.length);
+        }
+    }
+
+    // Generates the class file of a compiled expression
+    private static class Generator {
+        private Expression expression;
+
+        // Map of expressions called by the compiled code to their index
+        // in the array of nodes passed to the evaluate method
+        private IdentityHashMap nodeIndexes = new IdentityHashMap();
+
+        // Constant pool
+        private ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+        private DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+        private HashMap constants = new HashMap();
+        private int constantCount = 1;
+
+        // Code of the evaluate method
+        private byte[] code = new byte[256];
+        private int codeLength = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int locals = FIRST_FREE_LOCAL;
+
+        public Generator(Expression expression, Expression[] nodes) {
+            this.expression = expression;
+
+            for(int i = 0; i < nodes.length; i++)
+                nodeIndexes.put(nodes[i], new Integer(i));
+        }
+
+        public byte[] generate(String className) throws CompilerException {
+            if(nodeIndexes.size() > Short.MAX_VALUE)
+                throw new CompilerException();
+
+            try {
+                compile(expression);
+                op(DRETURN, -2);
+
+                if(codeLength > MAXIMUM_CODE_LENGTH)
+                    throw new CompilerException();
+
+                int thisClass = classConstant(className.replace('.', '/'));
+                int superClass = classConstant("java/lang/Object");
+                int evaluatorClass = classConstant(EVALUATOR);
+                int codeName = utf8Constant("Code");
+                int constructorName = utf8Constant("<init>");
+                int constructorDescriptor = utf8Constant("()V");
+                int superConstructor = methodConstant("java/lang/Object", "<init>", "()V");
+                int evaluateName = utf8Constant("evaluate");
+                int evaluateDescriptor = utf8Constant(EVALUATOR_DESCRIPTOR);
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(CLASS_FILE_VERSION);
+                out.writeShort(constantCount);
+                constantPoolBytes.writeTo(out);
+
+                // public final class implements ExpressionEvaluator
+                out.writeShort(0x0031);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(evaluatorClass);
+                out.writeShort(0);
+
+                // Constructor and evaluate method
+                out.writeShort(2);
+
+                byte[] constructorCode = {
+                    (byte)ALOAD_0,
+                    (byte)INVOKESPECIAL, (byte)(superConstructor >> 8), (byte)superConstructor,
+                    (byte)RETURN
+                };
+                writeMethod(out, constructorName, constructorDescriptor, codeName,
+                            1, 1, constructorCode, constructorCode.length);
+                writeMethod(out, evaluateName, evaluateDescriptor, codeName,
+                            maxStack, locals, code, codeLength);
+
+                out.writeShort(0);
+                out.flush();
+
+                return bytes.toByteArray();
+            }
+            catch(IOException e) {
+                // Can't happen writing to memory
+                assert false;
+                throw new CompilerException();
+            }
+        }
+
+        private void writeMethod(DataOutputStream out, int name, int descriptor, int codeName,
+                                 int maxStack, int maxLocals, byte[] code, int codeLength)
+            throws IOException {
+
+            // public method with a code attribute
+            out.writeShort(0x0001);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+
+            out.writeShort(codeName);
+            out.writeInt(12 + codeLength);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(codeLength);
+            out.write(code, 0, codeLength);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        // Generate code leaving the value of the expression on the stack
+        private void compile(Expression expression) throws CompilerException {
+            Expression left = (expression.getChildCount() > 0) ? expression.getChild(0) : null;
+            Expression right = (expression.getChildCount() > 1) ? expression.getChild(1) : null;
+
+            if(expression instanceof NumberExpression)
+                pushConstant(((NumberExpression)expression).getValue());
+
+            else if(!isCompiled(expression))
+                call(expression);
+
+            else if(isConstant(expression)) {
+                try {
+                    pushConstant(expression.evaluate(null, null, null, 0));
+                }
+                catch(EvaluationException e) {
+                    // isConstant() has checked this
+                    assert false;
+                    throw new CompilerException();
+                }
+            }
+
+            else if(expression instanceof AddExpression)
+                arithmetic(left, right, DADD);
+
+            else if(expression instanceof SubtractExpression)
+                arithmetic(left, right, DSUB);
+
+            else if(expression instanceof MultiplyExpression)
+                arithmetic(left, right, DMUL);
+
+            else if(expression instanceof DivideExpression)
+                divide(expression, left, right);
+
+            else if(expression instanceof PercentExpression) {
+                arithmetic(left, right, DMUL);
+                pushConstant(100.0D);
+                op(DDIV, -2);
+            }
+
+            else if(expression instanceof AbsExpression) {
+                compile(left);
+                invoke(INVOKESTATIC, methodConstant("java/lang/Math", "abs", "(D)D"), 0);
+            }
+
+            // Comparisons. DCMPL gives -1 and DCMPG gives 1 if either value
+            // is NaN, so that the comparison is false like in Java.
+            else if(expression instanceof GreaterThanExpression)
+                compare(left, right, DCMPL, IFLE);
+
+            else if(expression instanceof GreaterThanEqualExpression)
+                compare(left, right, DCMPL, IFLT);
+
+            else if(expression instanceof LessThanExpression)
+                compare(left, right, DCMPG, IFGE);
+
+            else if(expression instanceof LessThanEqualExpression)
+                compare(left, right, DCMPG, IFGT);
+
+            else if(expression instanceof EqualThanExpression)
+                compare(left, right, DCMPL, IFNE);
+
+            else if(expression instanceof NotEqualExpression)
+                compare(left, right, DCMPL, IFEQ);
+
+            // Logic
+            else if(expression instanceof AndExpression) {
+                condition(left);
+                int leftFalse = branch(IFLT, -1);
+                condition(right);
+                int rightFalse = branch(IFLT, -1);
+                booleanResult(new int[] {leftFalse, rightFalse});
+            }
+
+            else if(expression instanceof OrExpression) {
+                condition(left);
+                int leftTrue = branch(IFGE, -1);
+                condition(right);
+                int rightFalse = branch(IFLT, -1);
+                patch(leftTrue);
+                booleanResult(new int[] {rightFalse});
+            }
+
+            else if(expression instanceof NotExpression) {
+                condition(left);
+                int isTrue = branch(IFGE, -1);
+                booleanResult(new int[] {isTrue});
+            }
+
+            else {
+                assert expression instanceof IfExpression;
+
+                condition(left);
+                int isFalse = branch(IFLT, -1);
+                compile(right);
+                int end = branch(GOTO, 0);
+
+                // The else branch starts without the then value
+                stack -= 2;
+                patch(isFalse);
+                compile(expression.getChild(2));
+                patch(end);
+            }
+        }
+
+        private void arithmetic(Expression left, Expression right, int opcode)
+            throws CompilerException {
+
+            compile(left);
+            compile(right);
+            op(opcode, -2);
+        }
+
+        private void divide(Expression expression, Expression left, Expression right)
+            throws CompilerException {
+
+            // The right value is evaluated first and checked for zero
+            int local = locals;
+            locals += 2;
+            if(locals > MAXIMUM_LOCALS)
+                throw new CompilerException();
+
+            compile(right);
+            op(DSTORE, -2);
+            u1(local);
+            op(DLOAD, 2);
+            u1(local);
+            op(DCONST_0, 2);
+            op(DCMPL, -3);
+            int notZero = branch(IFNE, -1);
+            pushNode(expression);
+            invoke(INVOKESTATIC, methodConstant(COMPILER, "divideByZero",
+                                                DIVIDE_BY_ZERO_DESCRIPTOR), 0);
+            op(ATHROW, -1);
+
+            patch(notZero);
+            compile(left);
+            op(DLOAD, 2);
+            u1(local);
+            op(DDIV, -2);
+        }
+
+        private void compare(Expression left, Expression right, int compare, int ifFalse)
+            throws CompilerException {
+
+            compile(left);
+            compile(right);
+            op(compare, -3);
+            booleanResult(new int[] {branch(ifFalse, -1)});
+        }
+
+        // Generate code to compare the value of the expression with
+        // TRUE_LEVEL, leaving a negative number on the stack if the
+        // expression is false
+        private void condition(Expression expression) throws CompilerException {
+            compile(expression);
+            pushConstant(Expression.TRUE_LEVEL);
+            op(DCMPL, -3);
+        }
+
+        // Push TRUE, or FALSE if any of the given branches are taken
+        private void booleanResult(int[] falseBranches) {
+            op(DCONST_1, 2);
+            int end = branch(GOTO, 0);
+
+            // The false branch starts without the true value
+            stack -= 2;
+            for(int i = 0; i < falseBranches.length; i++)
+                patch(falseBranches[i]);
+
+            op(DCONST_0, 2);
+            patch(end);
+        }
+
+        // Call the original expression's evaluate method
+        private void call(Expression expression) {
+            pushNode(expression);
+            op(ALOAD, 1);
+            u1(VARIABLES_LOCAL);
+            op(ALOAD, 1);
+            u1(QUOTE_BUNDLE_LOCAL);
+            op(ALOAD, 1);
+            u1(SYMBOL_LOCAL);
+            op(ILOAD, 1);
+            u1(DAY_LOCAL);
+            op(INVOKEINTERFACE, -3);
+            u2(interfaceMethodConstant(EXPRESSION, "evaluate", EVALUATE_DESCRIPTOR));
+            u1(5);
+            u1(0);
+        }
+
+        // Push the given expression from the array of nodes
+        private void pushNode(Expression expression) {
+            int index = ((Integer)nodeIndexes.get(expression)).intValue();
+
+            op(ALOAD, 1);
+            u1(NODES_LOCAL);
+            op(SIPUSH, 1);
+            u2(index);
+            op(AALOAD, -1);
+        }
+
+        private void pushConstant(double value) {
+            if(Double.doubleToLongBits(value) == Double.doubleToLongBits(0.0D))
+                op(DCONST_0, 2);
+            else if(value == 1.0D)
+                op(DCONST_1, 2);
+            else {
+                op(LDC2_W, 2);
+                u2(doubleConstant(value));
+            }
+        }
+
+        private void invoke(int opcode, int method, int stackChange) {
+            op(opcode, stackChange);
+            u2(method);
+        }
+
+        private void op(int opcode, int stackChange) {
+            u1(opcode);
+            stack += stackChange;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        // Add a branch instruction and return its address
+        private int branch(int opcode, int stackChange) {
+            int address = codeLength;
+
+            op(opcode, stackChange);
+            u2(0);
+            return address;
+        }
+
+        // Set the branch instruction at the given address to jump to the
+        // next instruction
+        private void patch(int address) {
+            int offset = codeLength - address;
+
+            code[address + 1] = (byte)(offset >> 8);
+            code[address + 2] = (byte)offset;
+        }
+
+        private void u1(int value) {
+            if(codeLength == code.length) {
+                byte[] newCode = new byte[code.length * 2];
+                System.arraycopy(code, 0, newCode, 0, codeLength);
+                code = newCode;
+            }
+
+            code[codeLength++] = (byte)value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        private int utf8Constant(String text) {
+            Integer index = (Integer)constants.get("utf8:" + text);
+
+            if(index == null) {
+                try {
+                    constantPool.writeByte(1);
+                    constantPool.writeUTF(text);
+                }
+                catch(IOException e) {
+                    // Can't happen writing to memory
+                    assert false;
+                }
+                index = addConstant("utf8:" + text, 1);
+            }
+
+            return index.intValue();
+        }
+
+        private int classConstant(String className) {
+            Integer index = (Integer)constants.get("class:" + className);
+
+            if(index == null) {
+                int name = utf8Constant(className);
+
+                writeConstant(7, name, -1);
+                index = addConstant("class:" + className, 1);
+            }
+
+            return index.intValue();
+        }
+
+        private int methodConstant(String className, String name, String descriptor) {
+            return memberConstant(10, className, name, descriptor);
+        }
+
+        private int interfaceMethodConstant(String className, String name, String descriptor) {
+            return memberConstant(11, className, name, descriptor);
+        }
+
+        private int memberConstant(int tag, String className, String name, String descriptor) {
+            String key = tag + ":" + className + "." + name + descriptor;
+            Integer index = (Integer)constants.get(key);
+
+            if(index == null) {
+                int classIndex = classConstant(className);
+                int nameIndex = utf8Constant(name);
+                int descriptorIndex = utf8Constant(descriptor);
+
+                writeConstant(12, nameIndex, descriptorIndex);
+                int nameAndType = addConstant(key + ":nameAndType", 1).intValue();
+
+                writeConstant(tag, classIndex, nameAndType);
+                index = addConstant(key, 1);
+            }
+
+            return index.intValue();
+        }
+
+        private int doubleConstant(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            String key = "double:" + bits;
+            Integer index = (Integer)constants.get(key);
+
+            if(index == null) {
+                try {
+                    constantPool.writeByte(6);
+                    constantPool.writeLong(bits);
+                }
+                catch(IOException e) {
+                    // Can't happen writing to memory
+                    assert false;
+                }
+
+                // Doubles take two entries in the constant pool
+                index = addConstant(key, 2);
+            }
+
+            return index.intValue();
+        }
+
+        // Write a constant made of a tag and one or two indexes
+        private void writeConstant(int tag, int first, int second) {
+            try {
+                constantPool.writeByte(tag);
+                constantPool.writeShort(first);
+
+                if(second >= 0)
+                    constantPool.writeShort(second);
+            }
+            catch(IOException e) {
+                // Can't happen writing to memory
+                assert false;
+            }
+        }
+
+        private Integer addConstant(String key, int size) {
+            Integer index = new Integer(constantCount);
+
+            constants.put(key, index);
+            constantCount += size;
+            return index;
+        }
+    }
+}
@@ -28,9 +28,14 @@ import java.util.List;
 import java.util.HashMap;
 import java.util.Locale;
 
+import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.ExpressionFactory;
 import nz.org.venice.parser.ParseMetadata;
+import nz.org.venice.parser.Variables;
+import nz.org.venice.quote.QuoteBundle;
+import nz.org.venice.quote.Symbol;
 import nz.org.venice.util.VeniceLog;
 
 import org.safehaus.uuid.UUID;
@@ -65,6 +70,16 @@ public abstract class AbstractExpression implements Expression {
 
     private final String id;
 
+    // Whether the result of the expression can be cached, and its hash
+    // code, worked out the first time the expression cache needs them
+    private final static int CACHEABLE_UNKNOWN = 0;
+    private final static int CACHEABLE = 1;
+    private final static int NOT_CACHEABLE = 2;
+
+    private volatile int cacheable = CACHEABLE_UNKNOWN;
+    private volatile boolean isCacheHashCodeKnown = false;
+    private volatile int cacheHashCode;
+
     /**
      * Create a new expression with no children.
      *
@@ -202,9 +217,64 @@ public abstract class AbstractExpression implements Expression {
 	//When oldParent = this, this method is run recursively, so
 	//children[index] is null.
 	children[index] = child;
+
+	forgetCacheInfo();
 	
 	VeniceLog.getInstance().log("SetChild Exit");
     }
+
+    /**
+     * Return whether the result of this expression can be cached. This is
+     * only worked out the first time it is needed.
+     *
+     * @return <code>true</code> if the result of the expression can be cached
+     * @see ExpressionCache#isCacheable(Expression)
+     */
+    public boolean isCacheable() {
+	int cacheable = this.cacheable;
+
+	if(cacheable == CACHEABLE_UNKNOWN) {
+	    cacheable = (ExpressionCache.isCacheableUncached(this) ?
+			 CACHEABLE : NOT_CACHEABLE);
+	    this.cacheable = cacheable;
+	}
+
+	return cacheable == CACHEABLE;
+    }
+
+    /**
+     * Return the hash code of this expression used by the expression cache.
+     * Unlike {@link #hashCode} this is only calculated from the whole tree
+     * the first time it is needed.
+     *
+     * @return the hash code of the expression
+     */
+    public int getCacheHashCode() {
+	if(!isCacheHashCodeKnown) {
+	    cacheHashCode = hashCode();
+	    isCacheHashCodeKnown = true;
+	}
+
+	return cacheHashCode;
+    }
+
+    /**
+     * Forget whether this expression and the expressions containing it
+     * can be cached and their hash codes. This must be called whenever
+     * an expression is changed in place rather than replaced.
+     */
+    protected void forgetCacheInfo() {
+	for(Expression expression = this; expression != null;
+	    expression = expression.getParent()) {
+
+	    if(expression instanceof AbstractExpression) {
+		AbstractExpression abstractExpression = (AbstractExpression)expression;
+
+		abstractExpression.cacheable = CACHEABLE_UNKNOWN;
+		abstractExpression.isCacheHashCodeKnown = false;
+	    }
+	}
+    }
     
 
     /**
@@ -228,6 +298,72 @@ public abstract class AbstractExpression implements Expression {
 	return rv;
     }
 
+    public double[] evaluateSeries(Variables variables, QuoteBundle quoteBundle,
+                                   Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException {
+
+        // Expressions which only depend on quotes can calculate the whole
+        // series at once. If that fails, evaluate a day at a time so the
+        // same exception is thrown for the same day.
+        if(firstDay <= lastDay && ExpressionCache.isCacheable(this)) {
+            try {
+                double[] results = evaluatePureSeries(variables, quoteBundle, symbol,
+                                                      firstDay, lastDay);
+                if(results != null)
+                    return results;
+            }
+            catch(EvaluationException e) {
+                // Evaluate a day at a time below
+            }
+        }
+
+        double[] results = new double[Math.max(lastDay - firstDay + 1, 0)];
+
+        for(int day = firstDay; day <= lastDay; day++)
+            results[day - firstDay] = evaluate(variables, quoteBundle, symbol, day);
+
+        return results;
+    }
+
+    /**
+     * Calculate the results of the expression for every day in a range at
+     * once. This is only called if the result of the expression depends
+     * only on the quotes, symbol and date, so the children can be evaluated
+     * in any order. Expressions without a faster way of calculating
+     * the series return <code>null</code>.
+     *
+     * @param   variables       variable storage area for expression
+     * @param	quoteBundle	the quote bundle containing quote data to use
+     * @param	symbol	the current symbol
+     * @param	firstDay	first date in cache fast access format
+     * @param	lastDay	last date in cache fast access format
+     * @return	the results or <code>null</code>
+     * @throws	EvaluationException if the expression performs an illegal
+     *          operation on any day
+     */
+    protected double[] evaluatePureSeries(Variables variables, QuoteBundle quoteBundle,
+                                          Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException {
+
+        return null;
+    }
+
+    /**
+     * Return whether every value in the series is the same. Expressions
+     * such as <code>avg</code> can only slide over the series if their
+     * period and offset don't change.
+     *
+     * @param series the series
+     * @return <code>true</code> if the series is constant
+     */
+    protected static boolean isConstant(double[] series) {
+        for(int i = 1; i < series.length; i++)
+            if(series[i] != series[0])
+                return false;
+
+        return true;
+    }
+
     /**
      * Perform simplifications and optimisations on the expression tree.
      * For example, if the expression tree was <code>a and true</code> then the
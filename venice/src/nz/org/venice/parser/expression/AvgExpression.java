@@ -18,13 +18,14 @@
 
 package nz.org.venice.parser.expression;
 
+import nz.org.venice.parser.CacheableExpression;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.TypeMismatchException;
 import nz.org.venice.parser.Variables;
 import nz.org.venice.quote.QuoteBundle;
-import nz.org.venice.quote.QuoteBundleFunctionSource;
-import nz.org.venice.quote.QuoteFunctions;
+import nz.org.venice.quote.QuoteFunctionWindow;
 import nz.org.venice.quote.Symbol;
 
 /**
@@ -32,7 +33,11 @@ import nz.org.venice.quote.Symbol;
  *
  * @author Andrew Leppard
  */
-public class AvgExpression extends TernaryExpression {
+public class AvgExpression extends TernaryExpression
+    implements CacheableExpression {
+
+    // Quotes read when evaluating the previous days
+    private QuoteFunctionWindowCache windowCache = new QuoteFunctionWindowCache();
    
     /**
      * Create a new average expression for the given <code>quote</code> kind,
@@ -48,7 +53,13 @@ public class AvgExpression extends TernaryExpression {
 	super(quote, days, lag);
     }
 
-    public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day) 
+    public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
+	throws EvaluationException {
+
+        return ExpressionCache.getInstance().evaluate(this, variables, quoteBundle, symbol, day);
+    }
+
+    public double evaluateUncached(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
 	throws EvaluationException {
 
 	QuoteSymbol quoteChild = (QuoteSymbol)getChild(0);
@@ -75,10 +86,43 @@ public class AvgExpression extends TernaryExpression {
 	}
 
         // Calculate and return the average.
-        QuoteBundleFunctionSource source =
-            new QuoteBundleFunctionSource(quoteBundle, explicitSymbol, quoteKind, day, offset, period);
+        QuoteFunctionWindow source =
+            windowCache.getWindow(quoteBundle, explicitSymbol, quoteKind, day, offset, period);
+
+        return source.avg();
+    }
+
+    protected double[] evaluatePureSeries(Variables variables, QuoteBundle quoteBundle,
+                                          Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException {
+
+	QuoteSymbol quoteChild = (QuoteSymbol)getChild(0);
+        int quoteKind = quoteChild.getQuoteKind();
+	Symbol explicitSymbol = (quoteChild.getSymbol() != null) 
+	    ? quoteChild.getSymbol() : symbol;
+
+        // The window can only slide along the series if the period and
+        // offset don't change
+	double[] periods = getChild(1).evaluateSeries(variables, quoteBundle, symbol,
+						      firstDay, lastDay);
+	double[] offsets = getChild(2).evaluateSeries(variables, quoteBundle, explicitSymbol,
+						      firstDay, lastDay);
+	int period = (int)periods[0];
+	int offset = (int)offsets[0];
+
+	if(!isConstant(periods) || !isConstant(offsets) || period <= 0 || offset > 0)
+	    return null;
+
+	double[] results = periods;
+        QuoteFunctionWindow source =
+            windowCache.getWindow(quoteBundle, explicitSymbol, quoteKind, firstDay, offset, period);
+
+	for(int day = firstDay; day <= lastDay; day++) {
+	    source.moveTo(day);
+	    results[day - firstDay] = source.avg();
+	}
 
-        return QuoteFunctions.avg(source, period);
+	return results;
     }
 
     public String toString() {
@@ -18,12 +18,14 @@
 
 package nz.org.venice.parser.expression;
 
+import nz.org.venice.parser.CacheableExpression;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.TypeMismatchException;
 import nz.org.venice.parser.Variables;
 import nz.org.venice.quote.QuoteBundle;
-import nz.org.venice.quote.QuoteBundleFunctionSource;
+import nz.org.venice.quote.QuoteFunctionWindow;
 import nz.org.venice.quote.QuoteFunctions;
 import nz.org.venice.quote.Symbol;
 
@@ -32,7 +34,11 @@ import nz.org.venice.quote.Symbol;
  *
  * @author Alberto Nacher
  */
-public class BBUExpression extends TernaryExpression {
+public class BBUExpression extends TernaryExpression
+    implements CacheableExpression {
+
+    // Quotes read when evaluating the previous days
+    private QuoteFunctionWindowCache windowCache = new QuoteFunctionWindowCache();
 
     /**
      * Create a new Bollinger Band Upper expression for the given <code>quote</code> kind,
@@ -48,6 +54,12 @@ public class BBUExpression extends TernaryExpression {
 
     public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
 	throws EvaluationException {
+
+        return ExpressionCache.getInstance().evaluate(this, variables, quoteBundle, symbol, day);
+    }
+
+    public double evaluateUncached(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
+	throws EvaluationException {
 	
 	QuoteSymbol quoteChild = (QuoteSymbol)getChild(0);
 
@@ -74,13 +86,8 @@ public class BBUExpression extends TernaryExpression {
 	}
 
         // Calculate and return the BBU.
-        QuoteBundleFunctionSource source =
-            new QuoteBundleFunctionSource(quoteBundle, 
-					  explicitSymbol, 
-					  quoteKind, 
-					  day, 
-					  offset, 
-					  period);
+        QuoteFunctionWindow source =
+            windowCache.getWindow(quoteBundle, explicitSymbol, quoteKind, day, offset, period);
 
         return QuoteFunctions.bollingerUpper(source, period);
     }
@@ -0,0 +1,115 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.parser.expression;
+
+import nz.org.venice.parser.EvaluationException;
+import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCompiler;
+import nz.org.venice.parser.ExpressionEvaluator;
+import nz.org.venice.parser.ParseMetadata;
+import nz.org.venice.parser.TypeMismatchException;
+import nz.org.venice.parser.Variables;
+import nz.org.venice.quote.QuoteBundle;
+import nz.org.venice.quote.Symbol;
+
+/**
+ * An expression which has been compiled by the {@link ExpressionCompiler}.
+ * The compiled expression gives the same results as the original expression,
+ * which is kept as the only child of this expression.
+ *
+ * @author Andrew Leppard
+ * @see ExpressionCompiler
+ */
+public class CompiledExpression extends UnaryExpression {
+
+    // The compiled code
+    private ExpressionEvaluator evaluator;
+
+    // Parts of the original expression called by the compiled code
+    private Expression[] nodes;
+
+    // Parse information of the original expression, used for error
+    // messages and function bodies
+    private ParseMetadata metadata;
+
+    /**
+     * Create a new compiled expression.
+     *
+     * @param expression the original expression
+     * @param evaluator  the compiled code
+     * @param nodes      the parts of the original expression called by
+     *                   the compiled code
+     * @param metadata   the parse information of the original expression
+     */
+    public CompiledExpression(Expression expression, ExpressionEvaluator evaluator,
+                              Expression[] nodes, ParseMetadata metadata) {
+        super(expression);
+
+        this.evaluator = evaluator;
+        this.nodes = nodes;
+        this.metadata = metadata;
+    }
+
+    public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
+	throws EvaluationException {
+
+        return evaluator.evaluate(nodes, variables, quoteBundle, symbol, day);
+    }
+
+    protected double[] evaluatePureSeries(Variables variables, QuoteBundle quoteBundle,
+                                          Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException {
+
+        // Use the whole series implementations of the original expression
+        return getChild(0).evaluateSeries(variables, quoteBundle, symbol, firstDay, lastDay);
+    }
+
+    public ParseMetadata getParseMetadata() {
+        if(getParent() != null)
+            return getParent().getParseMetadata();
+        else
+            return metadata;
+    }
+
+    public Expression simplify() {
+        // The compiled code can't change
+        return this;
+    }
+
+    public String toString() {
+        return getChild(0).toString();
+    }
+
+    public int checkType() throws TypeMismatchException {
+        return getChild(0).checkType();
+    }
+
+    public int getType() {
+        return getChild(0).getType();
+    }
+
+    public Object clone() {
+        // The compiled code doesn't keep any state so it can be shared
+        Expression expression = (Expression)getChild(0).clone();
+
+        return new CompiledExpression(expression, evaluator,
+                                      ExpressionCompiler.getNodes(expression), metadata);
+    }
+}
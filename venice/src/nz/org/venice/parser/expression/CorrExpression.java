@@ -18,7 +18,9 @@
 
 package nz.org.venice.parser.expression;
 
+import nz.org.venice.parser.CacheableExpression;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.TypeMismatchException;
 import nz.org.venice.parser.Variables;
@@ -33,7 +35,8 @@ import nz.org.venice.quote.SymbolFormatException;
  *
  * @author Andrew Leppard
  */
-public class CorrExpression extends QuaternaryExpression {
+public class CorrExpression extends QuaternaryExpression
+    implements CacheableExpression {
    
     /**
      * Create a new correlation expression between the current stock quote, and
@@ -50,7 +53,13 @@ public class CorrExpression extends QuaternaryExpression {
 	super(symbol, quote, days, lag);
     }
 
-    public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day) 
+    public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
+	throws EvaluationException {
+
+        return ExpressionCache.getInstance().evaluate(this, variables, quoteBundle, symbol, day);
+    }
+
+    public double evaluateUncached(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
 	throws EvaluationException {
 
         // Get and check arguments
@@ -49,6 +49,24 @@ public class DivideExpression extends ArithmeticExpression {
 	}
     }
 
+    protected double[] evaluatePureSeries(Variables variables, QuoteBundle quoteBundle,
+                                          Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException {
+
+	double[] left = getChild(0).evaluateSeries(variables, quoteBundle, symbol, firstDay, lastDay);
+	double[] right = getChild(1).evaluateSeries(variables, quoteBundle, symbol, firstDay, lastDay);
+
+	for(int i = 0; i < left.length; i++) {
+	    // Let the day at a time evaluation report the division by zero
+	    if(right[i] == 0.0D)
+		return null;
+
+	    left[i] /= right[i];
+	}
+
+	return left;
+    }
+
     public Expression simplify() {
         // First perform arithmetic simplifications
         Expression simplified = super.simplify();
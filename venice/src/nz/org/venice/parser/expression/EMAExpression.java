@@ -18,12 +18,14 @@
 
 package nz.org.venice.parser.expression;
 
+import nz.org.venice.parser.CacheableExpression;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.TypeMismatchException;
 import nz.org.venice.parser.Variables;
 import nz.org.venice.quote.QuoteBundle;
-import nz.org.venice.quote.QuoteBundleFunctionSource;
+import nz.org.venice.quote.QuoteFunctionWindow;
 import nz.org.venice.quote.QuoteFunctions;
 import nz.org.venice.quote.Symbol;
 
@@ -32,7 +34,11 @@ import nz.org.venice.quote.Symbol;
  *
  * @author Alberto Nacher
  */
-public class EMAExpression extends QuaternaryExpression {
+public class EMAExpression extends QuaternaryExpression
+    implements CacheableExpression {
+
+    // Quotes read when evaluating the previous days
+    private QuoteFunctionWindowCache windowCache = new QuoteFunctionWindowCache();
 
     /**
      * Create a new exponential moving average expression for the given <code>quote</code> kind,
@@ -52,6 +58,12 @@ public class EMAExpression extends QuaternaryExpression {
     public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
 	throws EvaluationException {
 
+        return ExpressionCache.getInstance().evaluate(this, variables, quoteBundle, symbol, day);
+    }
+
+    public double evaluateUncached(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
+	throws EvaluationException {
+
 	QuoteSymbol quoteChild = (QuoteSymbol)getChild(0);
 
         // Extract arguments
@@ -87,17 +99,49 @@ public class EMAExpression extends QuaternaryExpression {
 	}
 
         // Calculate and return the average.
-        QuoteBundleFunctionSource source =
-            new QuoteBundleFunctionSource(quoteBundle, 
-					  explicitSymbol, 
-					  quoteKind, 
-					  day, 
-					  offset, 
-					  period);
+        QuoteFunctionWindow source =
+            windowCache.getWindow(quoteBundle, explicitSymbol, quoteKind, day, offset, period);
 
         return QuoteFunctions.ema(source, period, smoothing);
     }
 
+    protected double[] evaluatePureSeries(Variables variables, QuoteBundle quoteBundle,
+                                          Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException {
+
+	QuoteSymbol quoteChild = (QuoteSymbol)getChild(0);
+        int quoteKind = quoteChild.getQuoteKind();
+	Symbol explicitSymbol = (quoteChild.getSymbol() != null) 
+	    ? quoteChild.getSymbol() : symbol;
+
+        // The window can only slide along the series if the arguments
+        // don't change
+	double[] periods = getChild(1).evaluateSeries(variables, quoteBundle, explicitSymbol,
+						      firstDay, lastDay);
+	double[] offsets = getChild(2).evaluateSeries(variables, quoteBundle, explicitSymbol,
+						      firstDay, lastDay);
+	double[] smoothings = getChild(3).evaluateSeries(variables, quoteBundle, explicitSymbol,
+							 firstDay, lastDay);
+	int period = (int)periods[0];
+	int offset = (int)offsets[0];
+	double smoothing = smoothings[0];
+
+	if(!isConstant(periods) || !isConstant(offsets) || !isConstant(smoothings) ||
+	   period <= 0 || offset > 0 || smoothing < 0.01 || smoothing > 1.0)
+	    return null;
+
+	double[] results = periods;
+        QuoteFunctionWindow source =
+            windowCache.getWindow(quoteBundle, explicitSymbol, quoteKind, firstDay, offset, period);
+
+	for(int day = firstDay; day <= lastDay; day++) {
+	    source.moveTo(day);
+	    results[day - firstDay] = QuoteFunctions.ema(source, period, smoothing);
+	}
+
+	return results;
+    }
+
     public String toString() {
 	String rv = "";
 
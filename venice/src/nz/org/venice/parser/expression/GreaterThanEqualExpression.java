@@ -41,6 +41,19 @@ public class GreaterThanEqualExpression extends ComparisionExpression {
 	    return FALSE;
     }
 
+    protected double[] evaluatePureSeries(Variables variables, QuoteBundle quoteBundle,
+                                          Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException {
+
+	double[] left = getChild(0).evaluateSeries(variables, quoteBundle, symbol, firstDay, lastDay);
+	double[] right = getChild(1).evaluateSeries(variables, quoteBundle, symbol, firstDay, lastDay);
+
+	for(int i = 0; i < left.length; i++)
+	    left[i] = (left[i] >= right[i]) ? TRUE : FALSE;
+
+	return left;
+    }
+
     public Expression simplify() {
         // First perform comparision simplifications
         Expression simplified = super.simplify();
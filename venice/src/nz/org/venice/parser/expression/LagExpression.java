@@ -64,6 +64,36 @@ public class LagExpression extends BinaryExpression {
 	    ? quoteChild.getSymbol() : symbol;
 	int quoteKind = quoteChild.getQuoteKind();
 	
+	return getQuote(quoteBundle, explicitSymbol, symbol, quoteKind, day, lag);
+    }
+
+    protected double[] evaluatePureSeries(Variables variables, QuoteBundle quoteBundle,
+                                          Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException {
+
+	QuoteSymbol quoteChild = (QuoteSymbol)getChild(0);
+
+	double[] lags = getChild(1).evaluateSeries(variables, quoteBundle, symbol, firstDay, lastDay);
+	if(!isConstant(lags) || (int)lags[0] > 0)
+	    return null;
+
+	int lag = (int)lags[0];
+	Symbol explicitSymbol = (quoteChild.getSymbol() != null) 
+	    ? quoteChild.getSymbol() : symbol;
+	int quoteKind = quoteChild.getQuoteKind();
+	double[] results = lags;
+
+	for(int day = firstDay; day <= lastDay; day++)
+	    results[day - firstDay] = getQuote(quoteBundle, explicitSymbol, symbol,
+					       quoteKind, day, lag);
+
+	return results;
+    }
+
+    private double getQuote(QuoteBundle quoteBundle, Symbol explicitSymbol, Symbol symbol,
+			    int quoteKind, int day, int lag)
+	throws EvaluationException {
+
         try {
             return quoteBundle.getQuote(explicitSymbol, quoteKind, day, lag);
         }
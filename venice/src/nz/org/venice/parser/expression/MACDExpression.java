@@ -18,8 +18,10 @@
 
 package nz.org.venice.parser.expression;
 
+import nz.org.venice.parser.CacheableExpression;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.TypeMismatchException;
 import nz.org.venice.parser.Variables;
 import nz.org.venice.quote.QuoteBundle;
@@ -32,7 +34,8 @@ import nz.org.venice.quote.Symbol;
  *
  * @author Alberto Nacher
  */
-public class MACDExpression extends BinaryExpression {
+public class MACDExpression extends BinaryExpression
+    implements CacheableExpression {
     
     final public static int PERIOD_SLOW = 26;
     final public static int PERIOD_FAST = 12;
@@ -52,6 +55,12 @@ public class MACDExpression extends BinaryExpression {
     public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
 	throws EvaluationException {
 
+        return ExpressionCache.getInstance().evaluate(this, variables, quoteBundle, symbol, day);
+    }
+
+    public double evaluateUncached(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
+	throws EvaluationException {
+
 	QuoteSymbol quoteChild = (QuoteSymbol)getChild(0);
 
         // Extract arguments
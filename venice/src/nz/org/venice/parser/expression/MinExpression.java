@@ -18,7 +18,9 @@
 
 package nz.org.venice.parser.expression;
 
+import nz.org.venice.parser.CacheableExpression;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.TypeMismatchException;
 import nz.org.venice.parser.Variables;
@@ -31,7 +33,8 @@ import nz.org.venice.quote.Symbol;
  *
  * @author Andrew Leppard
  */
-public class MinExpression extends TernaryExpression {
+public class MinExpression extends TernaryExpression
+    implements CacheableExpression {
 
     /**
      * Create a new minimum expression for the given <code>quote</code> kind,
@@ -47,7 +50,13 @@ public class MinExpression extends TernaryExpression {
 	super(quote, days, lag);
     }
 
-    public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day) 
+    public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
+	throws EvaluationException {
+
+        return ExpressionCache.getInstance().evaluate(this, variables, quoteBundle, symbol, day);
+    }
+
+    public double evaluateUncached(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
 	throws EvaluationException {
 
 	QuoteSymbol quoteChild = (QuoteSymbol)getChild(0);
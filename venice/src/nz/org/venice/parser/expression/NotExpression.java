@@ -40,6 +40,18 @@ public class NotExpression extends UnaryExpression {
 	    return TRUE;
     }
 
+    protected double[] evaluatePureSeries(Variables variables, QuoteBundle quoteBundle,
+                                          Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException {
+
+	double[] results = getChild(0).evaluateSeries(variables, quoteBundle, symbol, firstDay, lastDay);
+
+	for(int i = 0; i < results.length; i++)
+	    results[i] = (results[i] >= Expression.TRUE_LEVEL) ? FALSE : TRUE;
+
+	return results;
+    }
+
     public Expression simplify() {
 	// First simplify all the child arguments
 	Expression simplified = super.simplify();
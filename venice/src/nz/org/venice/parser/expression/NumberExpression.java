@@ -19,6 +19,7 @@
 package nz.org.venice.parser.expression;
 
 import java.text.NumberFormat;
+import java.util.Arrays;
 
 import nz.org.venice.parser.Expression;
 import nz.org.venice.parser.Variables;
@@ -70,6 +71,13 @@ public class NumberExpression extends TerminalExpression {
 	return value;
     }
 
+    protected double[] evaluatePureSeries(Variables variables, QuoteBundle quoteBundle,
+                                          Symbol symbol, int firstDay, int lastDay) {
+	double[] results = new double[lastDay - firstDay + 1];
+	Arrays.fill(results, value);
+	return results;
+    }
+
     public static String toString(int type, double value) {
         switch(type) {
         case BOOLEAN_TYPE:
@@ -154,6 +162,7 @@ public class NumberExpression extends TerminalExpression {
      */
     public void setValue(double value) {
         this.value = value;
+        forgetCacheInfo();
     }
 
     /**
@@ -18,8 +18,10 @@
 
 package nz.org.venice.parser.expression;
 
+import nz.org.venice.parser.CacheableExpression;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.TypeMismatchException;
 import nz.org.venice.parser.Variables;
 import nz.org.venice.quote.Quote;
@@ -34,7 +36,8 @@ import nz.org.venice.util.VeniceLog;
  *
  * @author Alberto Nacher
  */
-public class OBVExpression extends TernaryExpression {
+public class OBVExpression extends TernaryExpression
+    implements CacheableExpression {
 
     /**
      * Create a new On Balance Volume (OBV) expression for the given <code>quote</code> kind,
@@ -51,6 +54,12 @@ public class OBVExpression extends TernaryExpression {
     public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
 	throws EvaluationException {
 
+        return ExpressionCache.getInstance().evaluate(this, variables, quoteBundle, symbol, day);
+    }
+
+    public double evaluateUncached(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
+	throws EvaluationException {
+
         // Extract arguments
 	int period = (int)getChild(0).evaluate(variables, quoteBundle, symbol, day);
         if(period <= 0) {	    
@@ -40,6 +40,19 @@ public class OrExpression extends LogicExpression {
 	    return FALSE;
     }
 
+    protected double[] evaluatePureSeries(Variables variables, QuoteBundle quoteBundle,
+                                          Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException {
+
+	double[] left = getChild(0).evaluateSeries(variables, quoteBundle, symbol, firstDay, lastDay);
+	double[] right = getChild(1).evaluateSeries(variables, quoteBundle, symbol, firstDay, lastDay);
+
+	for(int i = 0; i < left.length; i++)
+	    left[i] = (left[i] >= TRUE_LEVEL || right[i] >= TRUE_LEVEL) ? TRUE : FALSE;
+
+	return left;
+    }
+
     public Expression simplify() {
         // First simplify all the child arguments
 	
@@ -115,6 +115,21 @@ public class QuoteExpression
         }
     }
 
+    public boolean equals(Object object) {
+        if(object instanceof QuoteExpression) {
+            QuoteExpression expression = (QuoteExpression)object;
+
+            if(expression.getQuoteKind() == getQuoteKind())
+                return true;
+        }
+
+        return false;
+    }
+
+    public int hashCode() {
+	return getClass().hashCode() ^ (getQuoteKind() * 37);
+    }
+
     public Object clone() {
         return new QuoteExpression(quoteKind);
     }
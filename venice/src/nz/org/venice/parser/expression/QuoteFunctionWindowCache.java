@@ -0,0 +1,104 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.parser.expression;
+
+import java.util.HashMap;
+
+import nz.org.venice.parser.EvaluationException;
+import nz.org.venice.parser.ExpressionCache;
+import nz.org.venice.quote.QuoteBundle;
+import nz.org.venice.quote.QuoteFunctionWindow;
+import nz.org.venice.quote.Symbol;
+
+/**
+ * Keeps a {@link QuoteFunctionWindow} for each symbol an expression is
+ * evaluated on. Expressions such as <code>avg</code> are evaluated for the
+ * same symbol over consecutive days, so keeping the window lets the
+ * expression read a single new quote each day rather than the whole period.
+ * <p>
+ * A window assumes the quotes behind a date offset don't change. So windows
+ * are never kept for intra-day quotes, and all the windows are discarded
+ * whenever the {@link ExpressionCache} is cleared, which happens when the
+ * quotes change, e.g. after an import.
+ * <p>
+ * Each expression has its own cache, so like expressions, this class is
+ * not thread safe.
+ *
+ * @author Andrew Leppard
+ * @see QuoteFunctionWindow
+ */
+class QuoteFunctionWindowCache {
+
+    // Map of symbols to windows
+    private HashMap windows = new HashMap();
+
+    // Generation of the expression cache when the windows were created
+    private int generation = ExpressionCache.getInstance().getGeneration();
+
+    /**
+     * Create a new empty cache.
+     */
+    public QuoteFunctionWindowCache() {
+        // nothing to do
+    }
+
+    /**
+     * Return a window over the given quotes, moved to the given day.
+     *
+     * @param quoteBundle the quote bundle containing the quotes
+     * @param symbol the symbol of the quotes
+     * @param quoteKind the quote kind
+     * @param day fast access date offset of the current day
+     * @param offset offset of the last date in the window from the current day
+     * @param period number of quote dates in the window
+     * @return the window
+     * @exception EvaluationException if the quote bundle does not allow access
+     *            to a quote. See {@link nz.org.venice.analyser.gp.GPQuoteBundle}.
+     */
+    public QuoteFunctionWindow getWindow(QuoteBundle quoteBundle, Symbol symbol, int quoteKind,
+                                         int day, int offset, int period)
+        throws EvaluationException {
+
+        QuoteFunctionWindow window;
+
+        if(!ExpressionCache.isCacheable(quoteBundle)) {
+            window = new QuoteFunctionWindow(quoteBundle, symbol, quoteKind, offset, period);
+            window.moveTo(day);
+            return window;
+        }
+
+        int currentGeneration = ExpressionCache.getInstance().getGeneration();
+
+        if(generation != currentGeneration) {
+            windows.clear();
+            generation = currentGeneration;
+        }
+
+        window = (QuoteFunctionWindow)windows.get(symbol);
+
+        if(window == null || !window.isSame(quoteBundle, quoteKind, offset, period)) {
+            window = new QuoteFunctionWindow(quoteBundle, symbol, quoteKind, offset, period);
+            windows.put(symbol, window);
+        }
+
+        window.moveTo(day);
+        return window;
+    }
+}
@@ -133,6 +133,22 @@ public class QuoteSymbolExpression
         }
     }
 
+    public boolean equals(Object object) {
+        if(object instanceof QuoteSymbolExpression) {
+            QuoteSymbolExpression expression = (QuoteSymbolExpression)object;
+
+            if(expression.getQuoteKind() == getQuoteKind() &&
+               super.equals(expression))
+                return true;
+        }
+
+        return false;
+    }
+
+    public int hashCode() {
+	return super.hashCode() ^ (getQuoteKind() * 37);
+    }
+
     public Object clone() {
         return new QuoteSymbolExpression(quoteKind, (Expression)getChild(0).clone());
     }
@@ -18,14 +18,14 @@
 
 package nz.org.venice.parser.expression;
 
+import nz.org.venice.parser.CacheableExpression;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.TypeMismatchException;
 import nz.org.venice.parser.Variables;
 import nz.org.venice.quote.Quote;
-import nz.org.venice.quote.QuoteBundleFunctionSource;
-import nz.org.venice.quote.QuoteFunctions;
-import nz.org.venice.quote.QuoteFunctions.RSIData;
+import nz.org.venice.quote.QuoteFunctionWindow;
 import nz.org.venice.quote.QuoteBundle;
 import nz.org.venice.quote.Symbol;
 
@@ -34,7 +34,11 @@ import nz.org.venice.quote.Symbol;
  *
  * @author Andrew Leppard
  */
-public class RSIExpression extends TernaryExpression {
+public class RSIExpression extends TernaryExpression
+    implements CacheableExpression {
+
+    // Quotes read when evaluating the previous days
+    private QuoteFunctionWindowCache windowCache = new QuoteFunctionWindowCache();
 
     public RSIExpression(Expression days, Expression lag, Expression smoothed) {
         super(days, lag, smoothed);
@@ -43,6 +47,12 @@ public class RSIExpression extends TernaryExpression {
     public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
 	throws EvaluationException {
 
+        return ExpressionCache.getInstance().evaluate(this, variables, quoteBundle, symbol, day);
+    }
+
+    public double evaluateUncached(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
+	throws EvaluationException {
+
         // Extract arguments
 	int period = (int)getChild(0).evaluate(variables, quoteBundle, symbol, day);
         if(period <= 0) {
@@ -63,24 +73,54 @@ public class RSIExpression extends TernaryExpression {
         // Calculate and return the RSI. We start the offset one day before the actual offset
         // and increase the period by one day, as the RSI calculation needs an extra day
         // over the period.
-	QuoteBundleFunctionSource source = 
-	    new QuoteBundleFunctionSource(quoteBundle, symbol, Quote.DAY_CLOSE, day, offset - 1,
-					  period - 1);
+	QuoteFunctionWindow source =
+            windowCache.getWindow(quoteBundle, symbol, Quote.DAY_CLOSE, day, offset - 1, period - 1);
 	double rv;
 	//FIXME - Currently there's no mechanism for a Gondola expression
 	//in analysis mode to access the results of a previous evaluation
 	//So the smoothed RSI will return the same values as "vanilla" RSI
 	if (smoothed) {
-	    //Null paremeter is a placeholder for the results of a previous
-	    //RSISmooth call. Since this the first, there isn't one
-	    RSIData data = QuoteFunctions.smoothRSI(source, period - 1, null);
-	    rv = data.rsi;
+	    //There are no results of a previous RSISmooth call, so this
+	    //is the first
+	    rv = source.smoothRSI();
 	} else {
-	    rv = QuoteFunctions.rsi(source, period - 1);
+	    rv = source.rsi();
 	}
 	return rv;
     }
 
+    protected double[] evaluatePureSeries(Variables variables, QuoteBundle quoteBundle,
+                                          Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException {
+
+        // The window can only slide along the series if the arguments
+        // don't change
+	double[] periods = getChild(0).evaluateSeries(variables, quoteBundle, symbol,
+						      firstDay, lastDay);
+	double[] offsets = getChild(1).evaluateSeries(variables, quoteBundle, symbol,
+						      firstDay, lastDay);
+	double[] smoothFlags = getChild(2).evaluateSeries(variables, quoteBundle, symbol,
+							  firstDay, lastDay);
+	int period = (int)periods[0];
+	int offset = (int)offsets[0];
+	boolean smoothed = ((int)smoothFlags[0] == 1) ? true : false;
+
+	if(!isConstant(periods) || !isConstant(offsets) || !isConstant(smoothFlags) ||
+	   period <= 0 || offset > 0)
+	    return null;
+
+	double[] results = periods;
+	QuoteFunctionWindow source =
+            windowCache.getWindow(quoteBundle, symbol, Quote.DAY_CLOSE, firstDay, offset - 1, period - 1);
+
+	for(int day = firstDay; day <= lastDay; day++) {
+	    source.moveTo(day);
+	    results[day - firstDay] = smoothed ? source.smoothRSI() : source.rsi();
+	}
+
+	return results;
+    }
+
     public String toString() {
         Expression periodExpression = getChild(0);
         Expression lagExpression = getChild(1);
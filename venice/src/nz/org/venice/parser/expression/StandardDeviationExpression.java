@@ -18,12 +18,14 @@
 
 package nz.org.venice.parser.expression;
 
+import nz.org.venice.parser.CacheableExpression;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.TypeMismatchException;
 import nz.org.venice.parser.Variables;
 import nz.org.venice.quote.QuoteBundle;
-import nz.org.venice.quote.QuoteBundleFunctionSource;
+import nz.org.venice.quote.QuoteFunctionWindow;
 import nz.org.venice.quote.QuoteFunctions;
 import nz.org.venice.quote.Symbol;
 
@@ -32,7 +34,11 @@ import nz.org.venice.quote.Symbol;
  *
  * @author Andrew Leppard
  */
-public class StandardDeviationExpression extends TernaryExpression {
+public class StandardDeviationExpression extends TernaryExpression
+    implements CacheableExpression {
+
+    // Quotes read when evaluating the previous days
+    private QuoteFunctionWindowCache windowCache = new QuoteFunctionWindowCache();
    
     /**
      * Create a new standard deviation expression for the given <code>quote</code> kind,
@@ -48,7 +54,13 @@ public class StandardDeviationExpression extends TernaryExpression {
 	super(quote, days, lag);
     }
 
-    public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day) 
+    public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
+	throws EvaluationException {
+
+        return ExpressionCache.getInstance().evaluate(this, variables, quoteBundle, symbol, day);
+    }
+
+    public double evaluateUncached(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
 	throws EvaluationException {
 
 	QuoteSymbol quoteChild = (QuoteSymbol)getChild(0);
@@ -78,13 +90,8 @@ public class StandardDeviationExpression extends TernaryExpression {
 	}
 
         // Calculate and return the standard deviation.
-        QuoteBundleFunctionSource source =
-            new QuoteBundleFunctionSource(quoteBundle, 
-					  explicitSymbol, 
-					  quoteKind, 
-					  day, 
-					  offset, 
-					  period);
+        QuoteFunctionWindow source =
+            windowCache.getWindow(quoteBundle, explicitSymbol, quoteKind, day, offset, period);
 
         return QuoteFunctions.sd(source, period);
     }
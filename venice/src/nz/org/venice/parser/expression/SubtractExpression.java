@@ -37,6 +37,19 @@ public class SubtractExpression extends ArithmeticExpression {
 	    getChild(1).evaluate(variables, quoteBundle, symbol, day);
     }
 
+    protected double[] evaluatePureSeries(Variables variables, QuoteBundle quoteBundle,
+                                          Symbol symbol, int firstDay, int lastDay)
+	throws EvaluationException {
+
+	double[] left = getChild(0).evaluateSeries(variables, quoteBundle, symbol, firstDay, lastDay);
+	double[] right = getChild(1).evaluateSeries(variables, quoteBundle, symbol, firstDay, lastDay);
+
+	for(int i = 0; i < left.length; i++)
+	    left[i] -= right[i];
+
+	return left;
+    }
+
     public Expression simplify() {
         // First perform arithmetic simplifications
         Expression simplified = super.simplify();
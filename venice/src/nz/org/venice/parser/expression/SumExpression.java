@@ -19,7 +19,9 @@
 
 package nz.org.venice.parser.expression;
 
+import nz.org.venice.parser.CacheableExpression;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.TypeMismatchException;
 import nz.org.venice.parser.Variables;
@@ -32,7 +34,8 @@ import nz.org.venice.quote.Symbol;
  *
  * @author Andrew Leppard
  */
-public class SumExpression extends TernaryExpression {
+public class SumExpression extends TernaryExpression
+    implements CacheableExpression {
    
     /**
      * Create a new sum expression for the given <code>quote</code> kind,
@@ -48,7 +51,13 @@ public class SumExpression extends TernaryExpression {
 	super(quote, days, lag);
     }
 
-    public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day) 
+    public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
+	throws EvaluationException {
+
+        return ExpressionCache.getInstance().evaluate(this, variables, quoteBundle, symbol, day);
+    }
+
+    public double evaluateUncached(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
 	throws EvaluationException {
 	
 	QuoteSymbol quoteChild = (QuoteSymbol)getChild(0);
@@ -18,8 +18,10 @@
 
 package nz.org.venice.parser.expression;
 
+import nz.org.venice.parser.CacheableExpression;
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.parser.TypeMismatchException;
 import nz.org.venice.parser.Variables;
 import nz.org.venice.quote.QuoteBundle;
@@ -32,7 +34,8 @@ import nz.org.venice.quote.Symbol;
  *
  * @author Mark Hummel
  */
-public class TrendExpression extends TernaryExpression {
+public class TrendExpression extends TernaryExpression
+    implements CacheableExpression {
 
     /**
      * Create a new trend expression for the given <code>quote</code> kind,
@@ -50,6 +53,12 @@ public class TrendExpression extends TernaryExpression {
     public double evaluate(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
 	throws EvaluationException {
 
+        return ExpressionCache.getInstance().evaluate(this, variables, quoteBundle, symbol, day);
+    }
+
+    public double evaluateUncached(Variables variables, QuoteBundle quoteBundle, Symbol symbol, int day)
+	throws EvaluationException {
+
 	QuoteSymbol quoteChild = (QuoteSymbol)getChild(0);	
 	Symbol explicitSymbol = (quoteChild.getSymbol() != null) 
 	    ? quoteChild.getSymbol() : symbol;
@@ -22,6 +22,7 @@ import nz.org.venice.quote.MissingQuoteException;
 import nz.org.venice.quote.EODQuoteBundle;
 import nz.org.venice.util.Currency;
 import nz.org.venice.util.Money;
+import nz.org.venice.util.MoneyAccumulator;
 import nz.org.venice.util.TradingDate;
 
 /**
@@ -73,6 +74,17 @@ public interface Account {
     public Money getValue(EODQuoteBundle quoteBundle, TradingDate date)
 	throws MissingQuoteException;
 
+    /**
+     * Add the value of this account on the given day to the given sum.
+     * The sum must be in the same currency as the account.
+     *
+     * @param	value	the sum to add the value to
+     * @param	quoteBundle	the quote bundle
+     * @param	dateOffset fast date offset
+     */
+    public void addValue(MoneyAccumulator value, EODQuoteBundle quoteBundle, int dateOffset)
+	throws MissingQuoteException;
+
     /**
      * Return the currency of the account.
      *
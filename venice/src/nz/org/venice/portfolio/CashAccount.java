@@ -20,6 +20,7 @@ package nz.org.venice.portfolio;
 
 import nz.org.venice.util.Currency;
 import nz.org.venice.util.Money;
+import nz.org.venice.util.MoneyAccumulator;
 import nz.org.venice.util.TradingDate;
 
 import nz.org.venice.quote.EODQuoteBundle;
@@ -32,7 +33,11 @@ import nz.org.venice.quote.EODQuoteBundle;
 public class CashAccount extends AbstractAccount implements Cloneable {
 
     // Amount of cash available
-    private Money capital;
+    private MoneyAccumulator capital;
+
+    // The amount of cash available as money. This is only created when
+    // it is asked for after the amount changes.
+    private Money capitalMoney;
 
     // Currency of the cash account.
     private Currency currency;
@@ -49,7 +54,7 @@ public class CashAccount extends AbstractAccount implements Cloneable {
     public CashAccount(String name, Currency currency) {
 	this.name = name;
         this.currency = currency;
-	this.capital = new Money(currency, 0.0D);
+	this.capital = new MoneyAccumulator(currency);
     }
 
     /**
@@ -68,37 +73,39 @@ public class CashAccount extends AbstractAccount implements Cloneable {
 	if(type == Transaction.WITHDRAWAL ||
 	   type == Transaction.FEE) {
             assert transaction.getAmount().getCurrency().equals(currency);
-	    capital = capital.subtract(transaction.getAmount());
+	    capital.subtract(transaction.getAmount());
 	}
 	else if(type == Transaction.DEPOSIT ||
 		type == Transaction.INTEREST ||
 		type == Transaction.DIVIDEND) {
             assert transaction.getAmount().getCurrency().equals(currency);
-	    capital = capital.add(transaction.getAmount());
+	    capital.add(transaction.getAmount());
 	}
 	else if(type == Transaction.ACCUMULATE) {
             assert transaction.getAmount().getCurrency().equals(currency);
             assert transaction.getTradeCost().getCurrency().equals(currency);
-	    capital = capital.subtract(transaction.getAmount());
-            capital = capital.subtract(transaction.getTradeCost());
+	    capital.subtract(transaction.getAmount());
+            capital.subtract(transaction.getTradeCost());
 	}
 	else if(type == Transaction.REDUCE) {
             assert transaction.getAmount().getCurrency().equals(currency);
             assert transaction.getTradeCost().getCurrency().equals(currency);
-	    capital = capital.add(transaction.getAmount());
-            capital = capital.subtract(transaction.getTradeCost());
+	    capital.add(transaction.getAmount());
+            capital.subtract(transaction.getTradeCost());
 	}
 	else if(type == Transaction.TRANSFER) {
             assert transaction.getAmount().getCurrency().equals(currency);
 
 	    // Are we transfering to or from this account?
 	    if(transaction.getCashAccount() == this) {
-		capital = capital.subtract(transaction.getAmount()); // from
+		capital.subtract(transaction.getAmount()); // from
 	    }
 	    else {
-		capital = capital.add(transaction.getAmount()); // to
+		capital.add(transaction.getAmount()); // to
 	    }
 	}
+
+        capitalMoney = null;
     }
 
     /**
@@ -135,11 +142,16 @@ public class CashAccount extends AbstractAccount implements Cloneable {
     }
 
     public Money getValue(EODQuoteBundle quoteBundle, int dateOffset) {
-	return capital;
+	return getValue();
     }
 
     public Money getValue(EODQuoteBundle quoteBundle, TradingDate date) {
-	return capital;
+	return getValue();
+    }
+
+    public void addValue(MoneyAccumulator value, EODQuoteBundle quoteBundle, int dateOffset) {
+        assert value.getCurrency().equals(currency);
+        value.add(capital);
     }
 
     /**
@@ -148,7 +160,10 @@ public class CashAccount extends AbstractAccount implements Cloneable {
      * omitted.
      */
     public Money getValue() {
-	return capital;
+        if(capitalMoney == null)
+            capitalMoney = capital.toMoney();
+
+	return capitalMoney;
     }
 
     public Currency getCurrency() {
@@ -156,7 +171,8 @@ public class CashAccount extends AbstractAccount implements Cloneable {
     }
 
     public void removeAllTransactions() {
-	capital = new Money(currency, 0.0D);
+	capital.clear();
+        capitalMoney = null;
     }
 
     public int getType() {
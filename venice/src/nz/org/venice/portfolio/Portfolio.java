@@ -27,6 +27,7 @@ import nz.org.venice.quote.WeekendDateException;
 import nz.org.venice.util.Currency;
 import nz.org.venice.util.ExchangeRateCache;
 import nz.org.venice.util.Money;
+import nz.org.venice.util.MoneyAccumulator;
 import nz.org.venice.util.MoneyFormatException;
 import nz.org.venice.util.TradingDate;
 import nz.org.venice.util.TradingDateFormatException;
@@ -74,6 +75,10 @@ public class Portfolio implements Cloneable {
     // Local reference to the exchange rate cache
     private ExchangeRateCache exchangeRateCache;
 
+    // Flattened positions of the accounts, built when the portfolio is
+    // valued and discarded whenever the accounts change
+    private PortfolioLedger ledger;
+
     /**
      * Create a new empty portfolio using the given currency.
      *
@@ -157,6 +162,7 @@ public class Portfolio implements Cloneable {
      */
     public void addAccount(Account account) {
 	accounts.add(account);
+        ledger = null;
     }
 
     /**
@@ -205,6 +211,7 @@ public class Portfolio implements Cloneable {
 	else {
 	    // Record history of transactions
 	    transactions.add(transaction);
+            ledger = null;
 
 	    // Now update accounts
 	    for(Iterator iterator = accounts.iterator(); iterator.hasNext();) {
@@ -443,6 +450,7 @@ public class Portfolio implements Cloneable {
     public void removeAllTransactions() {
 	transactions.clear();
         deposits = new Money(currency, 0.0D);
+        ledger = null;
 
 	// A portfolio with no transactions has no value or stock so
 	// remove them from accounts
@@ -465,16 +473,16 @@ public class Portfolio implements Cloneable {
     public Money getValue(EODQuoteBundle quoteBundle, TradingDate date)
  	throws MissingQuoteException {
         
-        Money value = new Money(currency, 0.0D);
+        MoneyAccumulator value = new MoneyAccumulator(currency);
         
         for(Iterator iterator = accounts.iterator(); iterator.hasNext();) {
  	    Account account = (Account)iterator.next();
             
             // Convert the value into the portoflio's default currency if necessary
- 	    value = exchangeRateCache.add(date, value, account.getValue(quoteBundle, date));
+ 	    exchangeRateCache.add(date, value, account.getValue(quoteBundle, date));
         }
 
-        return value;
+        return value.toMoney();
     }
     
     /**
@@ -490,19 +498,75 @@ public class Portfolio implements Cloneable {
      public Money getValue(EODQuoteBundle quoteBundle, int dateOffset)
  	throws MissingQuoteException {
 
-         TradingDate date = EODQuoteCache.getInstance().offsetToDate(dateOffset);
-         Money value = new Money(currency, 0.0D);
-
-         for(Iterator iterator = accounts.iterator(); iterator.hasNext();) {
- 	    Account account = (Account)iterator.next();
+         MoneyAccumulator value = new MoneyAccumulator(currency);
 
-            // Convert the value into the default portoflio's currency if necessary
- 	    value = exchangeRateCache.add(date, value, account.getValue(quoteBundle, dateOffset));
-         }
-	
-         return value;
+         addValue(value, quoteBundle, dateOffset);
+         return value.toMoney();
      }
 
+    /**
+     * Add the value of the portfolio on the given day to the given sum.
+     * This is the same as {@link #getValue(EODQuoteBundle, int)}, but it
+     * doesn't create any money objects unless the accounts are in a
+     * different currency from the sum. The paper trade calls this every day.
+     *
+     * @param	value	the sum to add the value to
+     * @param	quoteBundle	the quote bundle
+     * @param	dateOffset fast date offset
+     */
+    public void addValue(MoneyAccumulator value, EODQuoteBundle quoteBundle, int dateOffset)
+        throws MissingQuoteException {
+
+        // The ledger only holds the positions in the portfolio's currency
+        if(value.getCurrency().equals(currency)) {
+            PortfolioLedger ledger = getLedger();
+
+            ledger.addCashValue(value);
+            ledger.addShareValue(value, quoteBundle, dateOffset);
+            addValue(value, ledger.getForeignAccounts(), quoteBundle, dateOffset);
+        }
+        else
+            addValue(value, accounts, quoteBundle, dateOffset);
+    }
+
+    /**
+     * Add the value of the given accounts on the given day to the given sum.
+     *
+     * @param	value	the sum to add the value to
+     * @param	accounts	the accounts to value
+     * @param	quoteBundle	the quote bundle
+     * @param	dateOffset fast date offset
+     */
+    private void addValue(MoneyAccumulator value, List accounts,
+                          EODQuoteBundle quoteBundle, int dateOffset)
+        throws MissingQuoteException {
+
+        for(Iterator iterator = accounts.iterator(); iterator.hasNext();) {
+            Account account = (Account)iterator.next();
+
+            if(account.getCurrency().equals(value.getCurrency()))
+                account.addValue(value, quoteBundle, dateOffset);
+            else {
+                // Convert the value into the sum's currency
+                TradingDate date = EODQuoteCache.getInstance().offsetToDate(dateOffset);
+                exchangeRateCache.add(date, value, account.getValue(quoteBundle, dateOffset));
+            }
+        }
+    }
+
+    /**
+     * Return the ledger of the positions held in the portfolio, building
+     * it if the accounts have changed since it was last built.
+     *
+     * @return	the ledger
+     */
+    private PortfolioLedger getLedger() {
+        if(ledger == null)
+            ledger = new PortfolioLedger(currency, accounts);
+
+        return ledger;
+    }
+
     /**
      * Return a list of all the stocks currently held in the portfolio.
      *
@@ -531,7 +595,7 @@ public class Portfolio implements Cloneable {
      * @return	the value
      */
     public Money getCashValue(TradingDate date) {
-        Money value = new Money(currency, 0.0D);
+        MoneyAccumulator value = new MoneyAccumulator(currency);
 
         for(Iterator iterator = accounts.iterator(); iterator.hasNext();) {
 	    Account account = (Account)iterator.next();
@@ -540,11 +604,11 @@ public class Portfolio implements Cloneable {
                 CashAccount cashAccount = (CashAccount)account;
 
                 // Convert the cash value into the default portoflio's currency if necessary
-                value = exchangeRateCache.add(date, value, cashAccount.getValue());
+                exchangeRateCache.add(date, value, cashAccount.getValue());
             }
 	}
 	
-        return value;
+        return value.toMoney();
     }
 
     /**
@@ -556,17 +620,44 @@ public class Portfolio implements Cloneable {
      */
     public Money getShareValue(EODQuoteBundle quoteBundle, TradingDate date)
 	throws MissingQuoteException {
-        Money value = new Money(currency, 0.0D);
+        MoneyAccumulator value = new MoneyAccumulator(currency);
 
         for(Iterator iterator = accounts.iterator(); iterator.hasNext();) {
             Account account = (Account)iterator.next();
 
             if(account.getType() == Account.SHARE_ACCOUNT)
                 // Convert the share value into the default portoflio's currency if necessary
-                value = exchangeRateCache.add(date, value, account.getValue(quoteBundle, date));
+                exchangeRateCache.add(date, value, account.getValue(quoteBundle, date));
         }
 
-	return value;
+	return value.toMoney();
+    }
+
+    /**
+     * Get the share value of the Portfolio on the current day.
+     *
+     * @param	quoteBundle	the quote bundle
+     * @param	dateOffset fast date offset
+     * @return	the value
+     */
+    public Money getShareValue(EODQuoteBundle quoteBundle, int dateOffset)
+	throws MissingQuoteException {
+        PortfolioLedger ledger = getLedger();
+        MoneyAccumulator value = new MoneyAccumulator(currency);
+
+        ledger.addShareValue(value, quoteBundle, dateOffset);
+
+        for(Iterator iterator = ledger.getForeignAccounts().iterator(); iterator.hasNext();) {
+            Account account = (Account)iterator.next();
+
+            if(account.getType() == Account.SHARE_ACCOUNT) {
+                // Convert the share value into the default portoflio's currency
+                TradingDate date = EODQuoteCache.getInstance().offsetToDate(dateOffset);
+                exchangeRateCache.add(date, value, account.getValue(quoteBundle, dateOffset));
+            }
+        }
+
+	return value.toMoney();
     }
 
     /**
@@ -586,6 +677,23 @@ public class Portfolio implements Cloneable {
 	return value;
     }
 
+    /**
+     * Get the return of the Portfolio on the current day.
+     *
+     * @param	quoteBundle	the quote bundle
+     * @param	dateOffset fast date offset
+     * @return	the value
+     */
+    public Money getReturnValue(EODQuoteBundle quoteBundle, int dateOffset)
+	throws MissingQuoteException {
+
+        MoneyAccumulator value = new MoneyAccumulator(currency);
+
+        addValue(value, quoteBundle, dateOffset);
+        value.subtract(deposits);
+	return value.toMoney();
+    }
+
     /**
      * Return an iterator that iterates over every day from the date of
      * the first transaction to whenever the user chooses to stop
@@ -0,0 +1,138 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.portfolio;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import nz.org.venice.quote.EODQuoteBundle;
+import nz.org.venice.quote.MissingQuoteException;
+import nz.org.venice.quote.Quote;
+import nz.org.venice.util.Currency;
+import nz.org.venice.util.MoneyAccumulator;
+
+/**
+ * A ledger of the positions held in a portfolio. Valuing a portfolio
+ * means asking each of its accounts for its value, and each share account
+ * in turn going through its map of stock holdings. The paper trade and the
+ * portfolio graphs value the portfolio every day, while the accounts only
+ * change when there is a transaction. The ledger flattens the accounts into
+ * the cash held and an array of stock holdings, so valuing the portfolio
+ * only needs to look up the day's close of each holding.
+ * <p>
+ * Only accounts in the ledger's currency are flattened, the accounts in
+ * other currencies still need their value exchanged each day. The ledger
+ * must be rebuilt whenever the accounts change.
+ *
+ * @author Andrew Leppard
+ * @see Portfolio
+ */
+class PortfolioLedger {
+
+    // Currency of the ledger
+    private Currency currency;
+
+    // Cash held in the cash accounts in the ledger's currency
+    private MoneyAccumulator cash;
+
+    // Stock holdings of the share accounts in the ledger's currency
+    private StockHolding[] holdings;
+
+    // Accounts in other currencies
+    private List foreignAccounts;
+
+    /**
+     * Create a ledger of the given accounts.
+     *
+     * @param currency the currency of the ledger
+     * @param accounts the accounts
+     */
+    public PortfolioLedger(Currency currency, List accounts) {
+        this.currency = currency;
+
+        cash = new MoneyAccumulator(currency);
+        foreignAccounts = new ArrayList();
+
+        List holdingList = new ArrayList();
+
+        for(Iterator iterator = accounts.iterator(); iterator.hasNext();) {
+            Account account = (Account)iterator.next();
+
+            if(!account.getCurrency().equals(currency))
+                foreignAccounts.add(account);
+            else if(account.getType() == Account.CASH_ACCOUNT)
+                cash.add(((CashAccount)account).getValue());
+            else {
+                assert account.getType() == Account.SHARE_ACCOUNT;
+                holdingList.addAll(((ShareAccount)account).getStockHoldings().values());
+            }
+        }
+
+        holdings = (StockHolding[])holdingList.toArray(new StockHolding[holdingList.size()]);
+    }
+
+    /**
+     * Return the currency of the ledger.
+     *
+     * @return the currency
+     */
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * Return the accounts which are not in the ledger's currency. Their
+     * values are not included in the ledger.
+     *
+     * @return the accounts in other currencies
+     */
+    public List getForeignAccounts() {
+        return foreignAccounts;
+    }
+
+    /**
+     * Add the value of the cash held in the ledger's accounts to the given sum.
+     *
+     * @param value the sum to add the value to
+     */
+    public void addCashValue(MoneyAccumulator value) {
+        value.add(cash);
+    }
+
+    /**
+     * Add the value of the stock held in the ledger's accounts on the given
+     * day to the given sum. The value of each holding is rounded the same
+     * way as {@link ShareAccount#getValue}.
+     *
+     * @param value the sum to add the value to
+     * @param quoteBundle the quote bundle
+     * @param dateOffset fast date offset
+     * @exception MissingQuoteException if a quote of a stock held is missing
+     */
+    public void addShareValue(MoneyAccumulator value, EODQuoteBundle quoteBundle, int dateOffset)
+        throws MissingQuoteException {
+
+        for(int i = 0; i < holdings.length; i++)
+            value.add(quoteBundle.getQuote(holdings[i].getSymbol(), Quote.DAY_CLOSE,
+                                           dateOffset) *
+                      holdings[i].getShares());
+    }
+}
@@ -20,10 +20,10 @@ package nz.org.venice.portfolio;
 
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Set;
 
 import nz.org.venice.util.Currency;
 import nz.org.venice.util.Money;
+import nz.org.venice.util.MoneyAccumulator;
 import nz.org.venice.util.TradingDate;
 import nz.org.venice.quote.MissingQuoteException;
 import nz.org.venice.quote.EODQuoteBundle;
@@ -114,20 +114,24 @@ public class ShareAccount extends AbstractAccount implements Cloneable {
     public Money getValue(EODQuoteBundle quoteBundle, int dateOffset)
 	throws MissingQuoteException {
 
-	Set set = stockHoldings.keySet();
-	Iterator iterator = set.iterator();
-        Money value = new Money(currency, 0.0D);
+        MoneyAccumulator value = new MoneyAccumulator(currency);
 
-	while(iterator.hasNext()) {
-	    Symbol symbol = (Symbol)iterator.next();
-	    StockHolding holding = (StockHolding)stockHoldings.get(symbol);
+        addValue(value, quoteBundle, dateOffset);
+	return value.toMoney();
+    }
+
+    public void addValue(MoneyAccumulator value, EODQuoteBundle quoteBundle, int dateOffset)
+	throws MissingQuoteException {
 
-	    value = value.add(quoteBundle.getQuote(holding.getSymbol(),
-                                                   Quote.DAY_CLOSE, dateOffset) *
-                              holding.getShares());
+        assert value.getCurrency().equals(currency);
+
+	for(Iterator iterator = stockHoldings.values().iterator(); iterator.hasNext();) {
+	    StockHolding holding = (StockHolding)iterator.next();
+
+	    value.add(quoteBundle.getQuote(holding.getSymbol(),
+                                           Quote.DAY_CLOSE, dateOffset) *
+                      holding.getShares());
 	}
-	
-	return value;
     }
 
     public void transaction(Transaction transaction) {
@@ -103,6 +103,9 @@ public class PreferencesManager {
     /** Indicates the quote source is accessing the internal database. */
     public static int INTERNAL = 3;
 
+    /** Indicates the quote source is accessing quotes in a mapped quote file. */
+    public static int MAPPED = 4;
+
     /** Web proxy preferences fields. */
     public class ProxyPreferences {
 
@@ -585,6 +588,92 @@ public class PreferencesManager {
 	return prefs.getInt("expiryTime", defaultLifetime);
     }
 
+    /**
+     * Load the users preference for whether the quote cache uses the
+     * columnar storage.
+     *
+     * @return <code>true</code> if the quote cache should store quotes in
+     *         columns per symbol.
+     */
+    public static boolean getColumnarQuoteCacheEnabled() {
+	Preferences prefs = getUserNode("/cache");
+	return prefs.getBoolean("columnarStorage", false);
+    }
+
+    /**
+     * Save the users preference for whether the quote cache uses the
+     * columnar storage.
+     *
+     * @param columnar If true, the quote cache will store quotes in
+     *                 columns per symbol.
+     */
+    public static void putColumnarQuoteCacheEnabled(boolean columnar) {
+	Preferences prefs = getUserNode("/cache");
+	prefs.putBoolean("columnarStorage", columnar);
+    }
+
+    /**
+     * Load the number of threads the analysers use to paper trade.
+     *
+     * @return the number of threads, by default the number of processors.
+     */
+    public static int getAnalyserThreads() {
+	Preferences prefs = getUserNode("/cache");
+	return prefs.getInt("analyserThreads", Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Save the number of threads the analysers use to paper trade.
+     *
+     * @param threads the number of threads.
+     */
+    public static void putAnalyserThreads(int threads) {
+	Preferences prefs = getUserNode("/cache");
+	prefs.putInt("analyserThreads", threads);
+    }
+
+    /**
+     * Load the number of intra-day quote times kept in memory.
+     *
+     * @return the number of times, by default a day of one minute quotes.
+     */
+    public static int getIntraDayQuoteRetention() {
+	Preferences prefs = getUserNode("/cache");
+	return prefs.getInt("intraDayRetention", 60 * 24);
+    }
+
+    /**
+     * Save the number of intra-day quote times kept in memory.
+     *
+     * @param retention the number of times.
+     */
+    public static void putIntraDayQuoteRetention(int retention) {
+	Preferences prefs = getUserNode("/cache");
+	prefs.putInt("intraDayRetention", retention);
+    }
+
+    /**
+     * Load the users preference for whether intra-day quotes that no
+     * longer fit in memory are written to disk.
+     *
+     * @return <code>true</code> if older intra-day quotes are kept on disk.
+     */
+    public static boolean getIntraDayQuoteSpillEnabled() {
+	Preferences prefs = getUserNode("/cache");
+	return prefs.getBoolean("intraDaySpill", false);
+    }
+
+    /**
+     * Save the users preference for whether intra-day quotes that no
+     * longer fit in memory are written to disk.
+     *
+     * @param spill If true, older intra-day quotes are kept on disk.
+     */
+    public static void putIntraDayQuoteSpillEnabled(boolean spill) {
+	Preferences prefs = getUserNode("/cache");
+	prefs.putBoolean("intraDaySpill", spill);
+    }
+
     /**
      * Return a list of the names of all the watch screens.
      *
@@ -1467,7 +1556,8 @@ public class PreferencesManager {
     /**
      * Get quote source setting.
      *
-     * @return quote source, one of {@link #DATABASE}, {@link #FILES} or {@link #SAMPLES}.
+     * @return quote source, one of {@link #DATABASE}, {@link #INTERNAL}, {@link #MAPPED}
+     *         or {@link #SAMPLES}.
      */
     public static int getQuoteSource() {
 	Preferences prefs = getUserNode("/quote_source");
@@ -1480,6 +1570,8 @@ public class PreferencesManager {
 	    return INTERNAL;
 	else if(quoteSource.equals("database"))
 	    return DATABASE;
+	else if(quoteSource.equals("mapped"))
+	    return MAPPED;
 	else
         return INTERNAL;
     }
@@ -1487,11 +1579,12 @@ public class PreferencesManager {
     /**
      * Set quote source setting.
      *
-     * @param quoteSource the quote source, one of {@link #DATABASE}, {@link #INTERNAL} or
-     *                    {@link #SAMPLES}.
+     * @param quoteSource the quote source, one of {@link #DATABASE}, {@link #INTERNAL},
+     *                    {@link #MAPPED} or {@link #SAMPLES}.
      */
     public static void putQuoteSource(int quoteSource) {
-        assert(quoteSource == DATABASE || quoteSource == SAMPLES || quoteSource == INTERNAL);
+        assert(quoteSource == DATABASE || quoteSource == SAMPLES || quoteSource == INTERNAL ||
+               quoteSource == MAPPED);
 
 	    Preferences prefs = getUserNode("/quote_source");
             String source;
@@ -1500,6 +1593,8 @@ public class PreferencesManager {
 	        source = "samples";
 	    else if(quoteSource == DATABASE)
 	        source = "database";
+	    else if(quoteSource == MAPPED)
+	        source = "mapped";
 	    else
             source = "internal";
 
@@ -1566,6 +1661,94 @@ public class PreferencesManager {
         return databaseFileName;
     }
 
+    /**
+     * Load the file name of the mapped quote file.
+     *
+     * @return mapped quote file name
+     */
+    public static String getMappedQuoteFileName() {
+        Preferences prefs = getUserNode("/quote_source/mapped");
+        String defaultFileName = new File(getDatabaseHome(), "Quotes.vmq").getPath();
+
+        return prefs.get("fileName", defaultFileName);
+    }
+
+    /**
+     * Save the file name of the mapped quote file.
+     *
+     * @param fileName the mapped quote file name
+     */
+    public static void putMappedQuoteFileName(String fileName) {
+        Preferences prefs = getUserNode("/quote_source/mapped");
+        prefs.put("fileName", fileName);
+    }
+
+    /**
+     * Load the number of quotes read from the database at a time when
+     * loading quotes.
+     *
+     * @return the number of rows fetched at a time
+     */
+    public static int getDatabaseFetchSize() {
+        Preferences prefs = getUserNode("/quote_source/database");
+        return prefs.getInt("fetchSize", 1000);
+    }
+
+    /**
+     * Save the number of quotes read from the database at a time when
+     * loading quotes.
+     *
+     * @param fetchSize the number of rows fetched at a time
+     */
+    public static void putDatabaseFetchSize(int fetchSize) {
+        Preferences prefs = getUserNode("/quote_source/database");
+        prefs.putInt("fetchSize", fetchSize);
+    }
+
+    /**
+     * Load the number of database connections used to load a large range
+     * of quotes in parallel.
+     *
+     * @return the number of connections, by default one.
+     */
+    public static int getDatabaseLoadConnections() {
+        Preferences prefs = getUserNode("/quote_source/database");
+        return prefs.getInt("loadConnections", 1);
+    }
+
+    /**
+     * Save the number of database connections used to load a large range
+     * of quotes in parallel.
+     *
+     * @param connections the number of connections
+     */
+    public static void putDatabaseLoadConnections(int connections) {
+        Preferences prefs = getUserNode("/quote_source/database");
+        prefs.putInt("loadConnections", connections);
+    }
+
+    /**
+     * Load the number of quotes written to the database in each batch
+     * when importing quotes.
+     *
+     * @return the number of quotes in each batch, at least one
+     */
+    public static int getDatabaseImportBatchSize() {
+        Preferences prefs = getUserNode("/quote_source/database");
+        return Math.max(1, prefs.getInt("importBatchSize", 1000));
+    }
+
+    /**
+     * Save the number of quotes written to the database in each batch
+     * when importing quotes.
+     *
+     * @param batchSize the number of quotes in each batch
+     */
+    public static void putDatabaseImportBatchSize(int batchSize) {
+        Preferences prefs = getUserNode("/quote_source/database");
+        prefs.putInt("importBatchSize", batchSize);
+    }
+
     /**
      * Load display settings.
      *
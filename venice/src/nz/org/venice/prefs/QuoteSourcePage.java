@@ -23,6 +23,10 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.Vector;
+import javax.swing.JButton;
 import javax.swing.BoxLayout;
 import javax.swing.ButtonGroup;
 import javax.swing.JComboBox;
@@ -46,14 +50,16 @@ import nz.org.venice.prefs.PreferencesManager;
 import nz.org.venice.quote.DatabaseQuoteSource;
 import nz.org.venice.quote.DatabaseManager;
 import nz.org.venice.quote.DatabaseAccessManager;
+import nz.org.venice.quote.MappedQuoteSource;
+import nz.org.venice.quote.QuoteSourceFactory;
 import nz.org.venice.quote.QuoteSourceManager;
 import nz.org.venice.quote.EODQuoteCache;
 import nz.org.venice.util.Locale;
 
 /** 
  * Provides a preferences page to let the user modify the quote source.
- * The quote source can be from a database (internal or external) or
- * sample quotes.
+ * The quote source can be from a database (internal or external),
+ * a mapped quote file or sample quotes.
  *
  * @author Andrew Leppard
  */
@@ -84,6 +90,11 @@ public class QuoteSourcePage extends JPanel implements PreferencesPage
     private JTextField internetUsername;
     private JPasswordField internetPassword;
 
+    // Widgets from mapped pane
+    private JRadioButton useMapped;
+    private JTextField mappedFileName;
+    private JComboBox mappedConvertSource;
+
     // Widgets from the samples pane
     private JRadioButton useSamples;
 
@@ -94,6 +105,7 @@ public class QuoteSourcePage extends JPanel implements PreferencesPage
     private final static int SAMPLES  = 0;
     private final static int INTERNAL = 1;
     private final static int DATABASE = 2;
+    private final static int MAPPED   = 3;
 
     // Database enumeration
     private final static int MYSQL      = 0;
@@ -138,12 +150,16 @@ public class QuoteSourcePage extends JPanel implements PreferencesPage
                     createInternalPanel(quoteSource, buttonGroup));
         pane.addTab(Locale.getString("DATABASE"), 
 		    createDatabasePanel(quoteSource, buttonGroup));
+        pane.addTab(Locale.getString("MAPPED"),
+		    createMappedPanel(quoteSource, buttonGroup));
 
 	// Raise the select source's pane
         if(quoteSource == PreferencesManager.INTERNAL)
 	    pane.setSelectedIndex(INTERNAL);
         else if(quoteSource == PreferencesManager.DATABASE)
 	    pane.setSelectedIndex(DATABASE);
+        else if(quoteSource == PreferencesManager.MAPPED)
+	    pane.setSelectedIndex(MAPPED);
 	else
 	    pane.setSelectedIndex(SAMPLES);
 
@@ -371,6 +387,107 @@ public class QuoteSourcePage extends JPanel implements PreferencesPage
         return database;
     }
 
+    private JPanel createMappedPanel(int quoteSource, ButtonGroup buttonGroup) {
+        useMapped = new JRadioButton(Locale.getString("USE_MAPPED"), true);
+        buttonGroup.add(useMapped);
+        useMapped.setToolTipText(Locale.getString("QUOTESOURCE_MAPPED_TOOLTIP"));
+
+        useMapped.setSelected(quoteSource == PreferencesManager.MAPPED);
+
+        TitledBorder titled = new TitledBorder(Locale.getString("MAPPED_PREFERENCES"));
+        JPanel preferencesPanel = new JPanel();
+        preferencesPanel.setBorder(titled);
+        preferencesPanel.setLayout(new BorderLayout());
+        JPanel borderPanel = new JPanel();
+
+        GridBagLayout gridbag = new GridBagLayout();
+        GridBagConstraints c = new GridBagConstraints();
+        borderPanel.setLayout(gridbag);
+
+        c.weightx = 1.0;
+        c.ipadx = 5;
+        c.anchor = GridBagConstraints.WEST;
+
+        mappedFileName = GridBagHelper.addTextRow(borderPanel,
+                                                  Locale.getString("FILE_NAME"),
+                                                  PreferencesManager.getMappedQuoteFileName(),
+                                                  gridbag, c, 25);
+        mappedFileName.setToolTipText(Locale.getString("QUOTESOURCE_MAPPED_FILE_TOOLTIP"));
+
+        Vector sources = new Vector();
+        sources.add(Locale.getString("INTERNAL"));
+        sources.add(Locale.getString("DATABASE"));
+        mappedConvertSource = GridBagHelper.addComboBox(borderPanel,
+                                                        Locale.getString("CONVERT_FROM"),
+                                                        sources, gridbag, c);
+
+        JButton convertButton = GridBagHelper.addButtonRow(borderPanel,
+                                                           Locale.getString("CONVERT"),
+                                                           gridbag, c);
+        convertButton.setToolTipText(Locale.getString("QUOTESOURCE_MAPPED_CONVERT_TOOLTIP"));
+        convertButton.addActionListener(new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    convertToMapped();
+                }
+            });
+
+        preferencesPanel.add(borderPanel, BorderLayout.NORTH);
+
+        JPanel mapped = new JPanel();
+        mapped.setLayout(new BorderLayout());
+        mapped.add(useMapped, BorderLayout.NORTH);
+        mapped.add(preferencesPanel, BorderLayout.CENTER);
+
+        return mapped;
+    }
+
+    // Convert the quotes in the selected database to a mapped quote file.
+    // This can take a while so it is done in its own thread.
+    private void convertToMapped() {
+        final File fileName = new File(mappedFileName.getText());
+        final int sourceType =
+            (mappedConvertSource.getSelectedIndex() == 0?
+             PreferencesManager.INTERNAL : PreferencesManager.DATABASE);
+
+        Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    // Reuse the current quote source if it is the one being
+                    // converted, the internal database can only be opened once.
+                    boolean isCurrentSource = (PreferencesManager.getQuoteSource() == sourceType);
+                    DatabaseQuoteSource source;
+
+                    if(isCurrentSource)
+                        source = (DatabaseQuoteSource)QuoteSourceManager.getSource();
+                    else if(sourceType == PreferencesManager.INTERNAL)
+                        source = QuoteSourceFactory.createInternalQuoteSource();
+                    else
+                        source = QuoteSourceFactory.createDatabaseQuoteSource();
+
+                    try {
+                        int quotes = MappedQuoteSource.convert(source, fileName);
+
+                        // The database has already reported any problems
+                        if(quotes >= 0)
+                            JOptionPane.showInternalMessageDialog(desktop,
+                                                                  Locale.getString("CONVERSION_COMPLETE",
+                                                                                   Integer.toString(quotes)),
+                                                                  Locale.getString("CONVERSION_COMPLETE_TITLE"),
+                                                                  JOptionPane.INFORMATION_MESSAGE);
+                    }
+                    catch(IOException e) {
+                        DesktopManager.showErrorMessage(Locale.getString("ERROR_WRITING_TO_FILE",
+                                                                         fileName.getPath()));
+                    }
+                    finally {
+                        if(!isCurrentSource)
+                            source.shutdown();
+                    }
+                }
+            });
+
+        thread.start();
+    }
+
     /** 
      * Sets the databaseDriver dropdown to contain the list of valid drivers
      * for the currently selected software
@@ -484,6 +601,10 @@ public class QuoteSourcePage extends JPanel implements PreferencesPage
 	}
 	else if (useInternal.isSelected())
 	    quoteSource = PreferencesManager.INTERNAL;
+	else if (useMapped.isSelected()) {
+	    quoteSource = PreferencesManager.MAPPED;
+	    PreferencesManager.putMappedQuoteFileName(mappedFileName.getText());
+	}
 	else
 	    quoteSource = PreferencesManager.SAMPLES;
 
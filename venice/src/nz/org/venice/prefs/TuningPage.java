@@ -34,6 +34,7 @@ import javax.swing.JButton;
 import javax.swing.JOptionPane;
 
 
+import nz.org.venice.quote.EODQuoteBundleCache;
 import nz.org.venice.quote.EODQuoteCache;
 import nz.org.venice.ui.GridBagHelper;
 import nz.org.venice.util.Locale;
@@ -47,8 +48,13 @@ public class TuningPage extends JPanel implements PreferencesPage, ActionListene
     private JDesktopPane desktop;
     private JTextField maxCachedQuotesTextField;
     private JLabel currentCachedQuotesLabel;
+    private JLabel quoteBundleCacheLabel;
     private JTextField maxCacheAgeTextField;
     private JCheckBox enableCacheExpiryButton;
+    private JCheckBox columnarQuoteCacheButton;
+    private JTextField analyserThreadsTextField;
+    private JTextField intraDayRetentionTextField;
+    private JCheckBox intraDaySpillButton;
     private JButton flushCacheButton;
 
     /**
@@ -86,6 +92,11 @@ public class TuningPage extends JPanel implements PreferencesPage, ActionListene
                                   Integer.toString(currentCachedQuotes),
                                   gridbag, c);
 
+        quoteBundleCacheLabel = GridBagHelper.addLabelRow(borderPanel,
+                                  Locale.getString("QUOTE_BUNDLE_CACHE"),
+                                  getQuoteBundleCacheStatistics(),
+                                  gridbag, c);
+
         int maximumCachedQuotes = PreferencesManager.getMaximumCachedQuotes();
         maxCachedQuotesTextField = 
             GridBagHelper.addTextRow(borderPanel, 
@@ -119,6 +130,42 @@ public class TuningPage extends JPanel implements PreferencesPage, ActionListene
 	    maxCacheAgeTextField.setEnabled(false);
 	}
 
+	boolean columnarQuoteCache = PreferencesManager.getColumnarQuoteCacheEnabled();
+	columnarQuoteCacheButton = 
+	    GridBagHelper.addCheckBoxRow(borderPanel, 
+					 Locale.getString("COLUMNAR_QUOTE_CACHE"), 
+					 columnarQuoteCache,
+					 gridbag, c);
+
+	columnarQuoteCacheButton.setToolTipText(Locale.getString("TUNING_COLUMNAR_QUOTE_CACHE_TOOLTIP"));
+
+	int analyserThreads = PreferencesManager.getAnalyserThreads();
+	analyserThreadsTextField = 
+	    GridBagHelper.addTextRow(borderPanel, 
+                                     Locale.getString("ANALYSER_THREADS"), 
+                                     Integer.toString(analyserThreads),
+                                     gridbag, c, 10);
+
+	analyserThreadsTextField.setToolTipText(Locale.getString("TUNING_ANALYSER_THREADS_TOOLTIP"));
+
+	int intraDayRetention = PreferencesManager.getIntraDayQuoteRetention();
+	intraDayRetentionTextField = 
+	    GridBagHelper.addTextRow(borderPanel, 
+                                     Locale.getString("INTRA_DAY_RETENTION"), 
+                                     Integer.toString(intraDayRetention),
+                                     gridbag, c, 10);
+
+	intraDayRetentionTextField.setToolTipText(Locale.getString("TUNING_INTRA_DAY_RETENTION_TOOLTIP"));
+
+	boolean intraDaySpill = PreferencesManager.getIntraDayQuoteSpillEnabled();
+	intraDaySpillButton = 
+	    GridBagHelper.addCheckBoxRow(borderPanel, 
+					 Locale.getString("INTRA_DAY_SPILL"), 
+					 intraDaySpill,
+					 gridbag, c);
+
+	intraDaySpillButton.setToolTipText(Locale.getString("TUNING_INTRA_DAY_SPILL_TOOLTIP"));
+
 	flushCacheButton = 
 	    GridBagHelper.addButtonRow(borderPanel, 
 				       Locale.getString("FLUSH_CACHE"), 
@@ -144,11 +191,15 @@ public class TuningPage extends JPanel implements PreferencesPage, ActionListene
     public void save() {
         int maximumCachedQuotes = 0;
 	int maximumCacheAge = 60 * 8; //Default of 8 hours
+	int analyserThreads = 0;
+	int intraDayRetention = 0;
 	boolean cacheExpires = false;
 
         try {
             maximumCachedQuotes = Integer.parseInt(maxCachedQuotesTextField.getText());
 	    maximumCacheAge = Integer.parseInt(maxCacheAgeTextField.getText());
+	    analyserThreads = Integer.parseInt(analyserThreadsTextField.getText());
+	    intraDayRetention = Integer.parseInt(intraDayRetentionTextField.getText());
         }
         catch(NumberFormatException e) {
             // ignore
@@ -162,6 +213,25 @@ public class TuningPage extends JPanel implements PreferencesPage, ActionListene
 	PreferencesManager.putCacheExpiryEnabled(cacheExpires);
 	if (maximumCacheAge > 0) 
 	    PreferencesManager.putCacheExpiryTime(maximumCacheAge);
+
+	if (analyserThreads > 0)
+	    PreferencesManager.putAnalyserThreads(analyserThreads);
+
+	// The intra-day quote cache reads these when it is created
+	if (intraDayRetention > 0)
+	    PreferencesManager.putIntraDayQuoteRetention(intraDayRetention);
+
+	PreferencesManager.putIntraDayQuoteSpillEnabled(intraDaySpillButton.isSelected());
+
+	// The quote cache storage is chosen when the cache is created, so
+	// a change of storage only takes effect once the cache is rebuilt.
+	boolean columnarQuoteCache = columnarQuoteCacheButton.isSelected();
+	if (columnarQuoteCache != PreferencesManager.getColumnarQuoteCacheEnabled()) {
+	    PreferencesManager.putColumnarQuoteCacheEnabled(columnarQuoteCache);
+
+	    if (EODQuoteCache.isInstantiated())
+		EODQuoteCache.expire();
+	}
     }
 
     public void actionPerformed(ActionEvent e) {
@@ -185,7 +255,22 @@ public class TuningPage extends JPanel implements PreferencesPage, ActionListene
 
 		currentCachedQuotesLabel.
 		    setText(Integer.toString(currentCachedQuotes));
+		quoteBundleCacheLabel.setText(getQuoteBundleCacheStatistics());
 	    }
 	}
     }
+
+    // Returns the hit rate, evictions and reloads of the quote bundle cache
+    private String getQuoteBundleCacheStatistics() {
+	// Don't create the caches just to display their statistics
+	if (!EODQuoteCache.isInstantiated())
+	    return Locale.getString("QUOTE_BUNDLE_CACHE_STATISTICS", 0, 0, 0);
+
+	EODQuoteBundleCache quoteBundleCache = EODQuoteBundleCache.getInstance();
+
+	return Locale.getString("QUOTE_BUNDLE_CACHE_STATISTICS",
+				(int)Math.round(quoteBundleCache.getHitRate()),
+				quoteBundleCache.getEvictions(),
+				quoteBundleCache.getReloads());
+    }
 }
@@ -0,0 +1,344 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import nz.org.venice.util.TradingDate;
+
+/**
+ * A compact quote cache storage for large caches. Rather than storing a
+ * hashmap of quote objects per trading day, this storage keeps one set of
+ * dense primitive arrays per symbol, one array for each of the open, high,
+ * low, close and volume. The arrays are indexed by date, and a bitmap
+ * records which days actually have a quote.
+ * <p>
+ * Looking up a quote costs a single hash lookup of the symbol followed by
+ * an array access. Consecutive days for the same symbol sit next to each
+ * other in memory, which suits the way the analysers and quote functions
+ * walk through the quotes of a symbol one day after another. It also
+ * avoids the per-quote object and hash entry overhead of
+ * {@link HashEODQuoteCacheStorage}.
+ * <p>
+ * Readers never lock the storage. A column never changes size, instead
+ * a bigger copy of the column replaces it in the map. A quote's bit is set
+ * in the bitmap only after its values have been written, so a reader that
+ * sees the bit also sees the values.
+ *
+ * @see EODQuoteCache
+ */
+class ColumnarEODQuoteCacheStorage implements EODQuoteCacheStorage {
+
+    // Map of symbols to their columns
+    private Map columns;
+
+    // Number of dates covered by the storage
+    private int dateCount = 0;
+
+    // Number of dates inserted that are newer than the newest date
+    // at the time the storage was created. Columns are indexed by a
+    // position which does not change when newer dates are inserted:
+    // position = -dateOffset - newerDateCount.
+    private volatile int newerDateCount = 0;
+
+    /**
+     * The quotes of a single symbol. Element <code>i</code> of each array
+     * holds the quote at position <code>first + i</code>.
+     */
+    private class SymbolColumn {
+        public final int first;
+        public int quoteCount = 0;
+
+        public final AtomicLongArray present;
+        public final long[] day_volume;
+        public final float[] day_low;
+        public final float[] day_high;
+        public final float[] day_open;
+        public final float[] day_close;
+
+        public SymbolColumn(int first, int length) {
+            this.first = first;
+
+            present = new AtomicLongArray((length + 63) >> 6);
+            day_volume = new long[length];
+            day_low = new float[length];
+            day_high = new float[length];
+            day_open = new float[length];
+            day_close = new float[length];
+        }
+
+        public int length() {
+            return day_close.length;
+        }
+
+        public boolean isPresent(int index) {
+            return (index >= 0 && index < day_close.length &&
+                    (present.get(index >> 6) & (1L << index)) != 0);
+        }
+
+        public double getQuote(int index, int quote) {
+            switch(quote) {
+            case(Quote.DAY_OPEN):
+                return (double)day_open[index];
+            case(Quote.DAY_CLOSE):
+                return (double)day_close[index];
+            case(Quote.DAY_LOW):
+                return (double)day_low[index];
+            case(Quote.DAY_HIGH):
+                return (double)day_high[index];
+            case(Quote.DAY_VOLUME):
+                return (double)day_volume[index];
+            default:
+                assert false;
+                return 0.0D;
+            }
+        }
+
+        // Returns whether any quote is present between the two indices (inclusive).
+        public boolean containsQuotes(int firstIndex, int lastIndex) {
+            firstIndex = Math.max(firstIndex, 0);
+            lastIndex = Math.min(lastIndex, day_close.length - 1);
+
+            if(firstIndex > lastIndex)
+                return false;
+
+            int firstWord = firstIndex >> 6;
+            int lastWord = lastIndex >> 6;
+
+            for(int word = firstWord; word <= lastWord; word++) {
+                long mask = -1L;
+
+                if(word == firstWord)
+                    mask &= -1L << firstIndex;
+                if(word == lastWord)
+                    mask &= -1L >>> (63 - (lastIndex & 63));
+
+                if((present.get(word) & mask) != 0)
+                    return true;
+            }
+
+            return false;
+        }
+
+        // Store the quote. Returns true if there wasn't a quote stored at the index.
+        public boolean set(int index, long day_volume, float day_low, float day_high,
+                           float day_open, float day_close) {
+            boolean isNew = !isPresent(index);
+
+            this.day_volume[index] = day_volume;
+            this.day_low[index] = day_low;
+            this.day_high[index] = day_high;
+            this.day_open[index] = day_open;
+            this.day_close[index] = day_close;
+
+            // Only set the bit after the quote has been written. Only one
+            // thread writes at a time so we don't need to compare and set.
+            if(isNew) {
+                present.set(index >> 6, present.get(index >> 6) | (1L << index));
+                quoteCount++;
+            }
+
+            return isNew;
+        }
+
+        // Remove the quote. Returns true if there was a quote stored at the index.
+        public boolean clear(int index) {
+            if(isPresent(index)) {
+                present.set(index >> 6, present.get(index >> 6) & ~(1L << index));
+                quoteCount--;
+                return true;
+            }
+            return false;
+        }
+
+        // Returns a copy of the column which covers the positions from
+        // newFirst for newLength positions.
+        public SymbolColumn resize(int newFirst, int newLength) {
+            SymbolColumn column = new SymbolColumn(newFirst, newLength);
+            int oldLength = day_close.length;
+            int shift = first - newFirst;
+            assert shift >= 0 && shift + oldLength <= newLength;
+
+            System.arraycopy(day_volume, 0, column.day_volume, shift, oldLength);
+            System.arraycopy(day_low, 0, column.day_low, shift, oldLength);
+            System.arraycopy(day_high, 0, column.day_high, shift, oldLength);
+            System.arraycopy(day_open, 0, column.day_open, shift, oldLength);
+            System.arraycopy(day_close, 0, column.day_close, shift, oldLength);
+
+            for(int i = 0; i < oldLength; i++)
+                if(isPresent(i))
+                    column.present.set((i + shift) >> 6,
+                                       column.present.get((i + shift) >> 6) |
+                                       (1L << (i + shift)));
+
+            column.quoteCount = quoteCount;
+            return column;
+        }
+    }
+
+    /**
+     * Create a new empty storage.
+     */
+    public ColumnarEODQuoteCacheStorage() {
+        columns = new ConcurrentHashMap();
+    }
+
+    public double getQuote(Symbol symbol, int quoteType, int dateOffset)
+        throws QuoteNotLoadedException {
+
+        SymbolColumn column = (SymbolColumn)columns.get(symbol);
+
+        if(column != null) {
+            int index = toPosition(dateOffset) - column.first;
+
+            if(column.isPresent(index))
+                return column.getQuote(index, quoteType);
+        }
+
+        throw QuoteNotLoadedException.getInstance();
+    }
+
+    public EODQuote getQuote(Symbol symbol, TradingDate date, int dateOffset)
+        throws QuoteNotLoadedException {
+
+        SymbolColumn column = (SymbolColumn)columns.get(symbol);
+
+        if(column != null) {
+            int index = toPosition(dateOffset) - column.first;
+
+            if(column.isPresent(index))
+                return new EODQuote(symbol,
+                                    date,
+                                    column.day_volume[index],
+                                    (double)column.day_low[index],
+                                    (double)column.day_high[index],
+                                    (double)column.day_open[index],
+                                    (double)column.day_close[index]);
+        }
+
+        throw QuoteNotLoadedException.getInstance();
+    }
+
+    public boolean containsQuote(Symbol symbol, int dateOffset) {
+        assert dateOffset <= 0;
+
+        SymbolColumn column = (SymbolColumn)columns.get(symbol);
+
+        return (column != null &&
+                column.isPresent(toPosition(dateOffset) - column.first));
+    }
+
+    public void addSymbols(Set symbols, int firstDateOffset, int lastDateOffset) {
+        // The first date is the oldest date, so it has the highest position
+        int firstPosition = toPosition(lastDateOffset);
+        int lastPosition = toPosition(firstDateOffset);
+
+        for(Iterator iterator = columns.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry)iterator.next();
+            SymbolColumn column = (SymbolColumn)entry.getValue();
+
+            if(column.containsQuotes(firstPosition - column.first,
+                                     lastPosition - column.first))
+                symbols.add(entry.getKey());
+        }
+    }
+
+    public boolean load(Symbol symbol, int dateOffset, long day_volume, float day_low,
+                        float day_high, float day_open, float day_close) {
+        assert dateOffset <= 0 && dateOffset > -dateCount;
+
+        int position = toPosition(dateOffset);
+        SymbolColumn column = (SymbolColumn)columns.get(symbol);
+
+        if(column == null) {
+            column = new SymbolColumn(position, 1);
+            columns.put(symbol, column);
+        }
+        else {
+            SymbolColumn resizedColumn = ensureCapacity(column, position);
+
+            if(resizedColumn != column) {
+                column = resizedColumn;
+                columns.put(symbol, column);
+            }
+        }
+
+        return column.set(position - column.first, day_volume, day_low, day_high,
+                          day_open, day_close);
+    }
+
+    public boolean free(Symbol symbol, int dateOffset) {
+        SymbolColumn column = (SymbolColumn)columns.get(symbol);
+
+        if(column != null && column.clear(toPosition(dateOffset) - column.first)) {
+            // Drop the columns as soon as the symbol has no quotes left,
+            // otherwise freeing quotes would not release any memory.
+            if(column.quoteCount == 0)
+                columns.remove(symbol);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    public void addDate() {
+        dateCount++;
+    }
+
+    public void insertDate() {
+        dateCount++;
+        newerDateCount++;
+    }
+
+    // Convert a fast access date offset to a column position
+    private int toPosition(int dateOffset) {
+        return -dateOffset - newerDateCount;
+    }
+
+    // Make sure the column covers the given position. Returns the column
+    // if it already covers the position, otherwise a bigger copy of the column.
+    // The column at least doubles in size each time it grows, but it never grows
+    // beyond the dates in the storage.
+    private SymbolColumn ensureCapacity(SymbolColumn column, int position) {
+        int first = column.first;
+        int last = first + column.length() - 1;
+
+        if(position >= first && position <= last)
+            return column;
+
+        int minimumPosition = -newerDateCount;
+        int maximumPosition = dateCount - newerDateCount - 1;
+        int growth = Math.max(column.length(), 1);
+
+        if(position < first) {
+            first = Math.max(Math.min(position, first - growth), minimumPosition);
+        }
+        else {
+            last = Math.min(Math.max(position, last + growth), maximumPosition);
+        }
+
+        return column.resize(first, last - first + 1);
+    }
+}
@@ -21,6 +21,7 @@ package nz.org.venice.quote;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
 import java.sql.Statement;
@@ -200,6 +201,10 @@ public class DatabaseManager
     //Map containing the db resources used by queries in the above map
     private HashMap transactionResourcesMap;
 
+    // HSQLDB log size to restore after a bulk load, or -1 if there
+    // isn't a bulk load in progress
+    private int bulkLoadLogSize = -1;
+
     /**
      * Creates a new database connection.
      *
@@ -274,23 +279,7 @@ public class DatabaseManager
             // Resolve the classname
             Class.forName(driver);
             
-            // We can operate the HSQLDB mode in one of three different wayys.
-            // Construct connection string depending on mode
-            String connectionURL = null;
-	    
-            // Set up the conection
-            if (mode == INTERNAL && software.equals(HSQLDB_SOFTWARE)) 
-                connectionURL = new String("jdbc:hsqldb:file:/" + fileName);
-            else {
-                connectionURL = new String("jdbc:" + software +"://"+ host +
-                                           ":" + port +
-                                           "/"+ database);
-                if (username != null)
-                    connectionURL += new String("?user=" + username +
-                                                "&password=" + password);
-            }
-
-            connection = DriverManager.getConnection(connectionURL);
+            connection = DriverManager.getConnection(getConnectionURL());
 	    
         } 
         catch (ClassNotFoundException e) {	    
@@ -313,6 +302,42 @@ public class DatabaseManager
         return true;
     }
 
+    // Return the JDBC URL of the database
+    private String getConnectionURL() {
+        // We can operate the HSQLDB mode in one of three different wayys.
+        // Construct connection string depending on mode
+        String connectionURL = null;
+
+        // Set up the conection
+        if (mode == INTERNAL && software.equals(HSQLDB_SOFTWARE)) 
+            connectionURL = new String("jdbc:hsqldb:file:/" + fileName);
+        else {
+            connectionURL = new String("jdbc:" + software +"://"+ host +
+                                       ":" + port +
+                                       "/"+ database);
+            if (username != null)
+                connectionURL += new String("?user=" + username +
+                                            "&password=" + password);
+        }
+
+        return connectionURL;
+    }
+
+    /**
+     * Open another connection to the database. This lets several threads
+     * query the database at the same time. The caller should close the
+     * connection when it has finished. {@link #getConnection} must have
+     * succeeded first, so the driver is loaded and the tables exist.
+     *
+     * @return the new connection
+     * @exception SQLException if the connection could not be opened
+     */
+    public Connection openConnection() throws SQLException {
+        assert connection != null;
+
+        return DriverManager.getConnection(getConnectionURL());
+    }
+
     // This function creates a new thread that monitors the current thread
     // for the interrupt call. If the current thread is interrupted it
     // will cancel the given SQL statement. If cancelOnInterrupt() is called,
@@ -815,6 +840,188 @@ public class DatabaseManager
 	}
     }
 
+    /**
+     * Create a statement for a query returning many rows. The rows are
+     * read from the database a few at a time as the result set is read,
+     * rather than all being read into memory when the query is executed.
+     *
+     * @param connection the connection to the database
+     * @param fetchSize  the number of rows to read at a time
+     * @return the statement
+     * @exception SQLException if the statement could not be created
+     * @see #isStreamingInTransaction
+     */
+    public Statement createStreamingStatement(Connection connection, int fetchSize)
+        throws SQLException {
+
+        Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                                                         ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(fetchSize);
+        return statement;
+    }
+
+    /**
+     * Create a statement on the shared connection for a query returning many
+     * rows.
+     *
+     * @param fetchSize the number of rows to read at a time
+     * @return the statement
+     * @exception SQLException if the statement could not be created
+     * @see #createStreamingStatement(Connection, int)
+     */
+    public Statement createStreamingStatement(int fetchSize) throws SQLException {
+	assert connection != null;
+
+        return createStreamingStatement(connection, fetchSize);
+    }
+
+    /**
+     * Return whether a streaming statement must be executed with auto commit
+     * turned off. PostgreSQL only uses a cursor to read rows a few at a
+     * time inside a transaction.
+     *
+     * @return <code>true</code> if auto commit must be off
+     */
+    public boolean isStreamingInTransaction() {
+        return software.equals(POSTGRESQL_SOFTWARE);
+    }
+
+    /**
+     * Create a prepared statement on the shared connection.
+     *
+     * @param SQLString the SQL statement with parameters
+     * @return the prepared statement
+     * @exception SQLException if the statement could not be prepared
+     */
+    public PreparedStatement prepareStatement(String SQLString) throws SQLException {
+	assert connection != null;
+
+        return connection.prepareStatement(SQLString);
+    }
+
+    /**
+     * Return the SQL statement which inserts a quote into the share table
+     * unless the table already has a quote for the same date and symbol.
+     * The parameters are the fields of the quote in column order. Executing
+     * the statement changes one row if the quote was inserted, and none if
+     * it was already there.
+     *
+     * @return the SQL statement, or <code>null</code> if the database can't
+     *         skip existing quotes when inserting
+     */
+    protected String buildInsertNewQuoteQuery() {
+        if(software.equals(MYSQL_SOFTWARE))
+            return new String("INSERT IGNORE INTO " + SHARE_TABLE_NAME +
+                              " VALUES (?, ?, ?, ?, ?, ?, ?)");
+        else if(software.equals(POSTGRESQL_SOFTWARE))
+            return new String("INSERT INTO " + SHARE_TABLE_NAME +
+                              " VALUES (?, ?, ?, ?, ?, ?, ?) ON CONFLICT (" +
+                              DATE_FIELD + ", " + SYMBOL_FIELD + ") DO NOTHING");
+        else
+            return null;
+    }
+
+    /**
+     * Return the SQL statement which inserts a quote into the share table.
+     * The parameters are the fields of the quote in column order.
+     *
+     * @return the SQL statement
+     */
+    protected String buildInsertQuoteQuery() {
+        return new String("INSERT INTO " + SHARE_TABLE_NAME +
+                          " VALUES (?, ?, ?, ?, ?, ?, ?)");
+    }
+
+    /**
+     * Return the SQL statement which updates a quote already in the share
+     * table. The parameters are the day open, close, high, low and volume
+     * followed by the date and symbol of the quote. Executing the statement
+     * changes one row if the quote was there, and none otherwise.
+     *
+     * @return the SQL statement
+     */
+    protected String buildUpdateQuoteQuery() {
+        return new String("UPDATE " + SHARE_TABLE_NAME + " SET " +
+                          DAY_OPEN_FIELD + " = ?, " +
+                          DAY_CLOSE_FIELD + " = ?, " +
+                          DAY_HIGH_FIELD + " = ?, " +
+                          DAY_LOW_FIELD + " = ?, " +
+                          DAY_VOLUME_FIELD + " = ? WHERE " +
+                          DATE_FIELD + " = ? AND " +
+                          SYMBOL_FIELD + " = ?");
+    }
+
+    /**
+     * Return the SQL statement which finds whether the share table has a
+     * quote. The parameters are the date and symbol of the quote. The
+     * statement returns a row if the quote is there, and none otherwise.
+     *
+     * @return the SQL statement
+     */
+    protected String buildQuoteExistsQuery() {
+        return new String("SELECT " + DATE_FIELD + " FROM " + SHARE_TABLE_NAME +
+                          " WHERE " + DATE_FIELD + " = ? AND " +
+                          SYMBOL_FIELD + " = ?");
+    }
+
+    /**
+     * Prepare the database for loading a large number of quotes. HSQLDB
+     * logs every change and checkpoints the database whenever the log
+     * grows too large, which happens repeatedly during a long load. The
+     * automatic checkpoints are turned off until {@link #endBulkLoad}
+     * is called. HSQLDB 1.8 can't turn the log off altogether. Nothing
+     * needs to be done for the other databases.
+     *
+     * @exception SQLException if the database could not be prepared
+     */
+    public void startBulkLoad() throws SQLException {
+	assert connection != null;
+
+        if(software.equals(HSQLDB_SOFTWARE) && bulkLoadLogSize == -1) {
+            Statement statement = connection.createStatement();
+
+            try {
+                ResultSet RS =
+                    statement.executeQuery("SELECT PROPERTY_VALUE FROM " +
+                                           "INFORMATION_SCHEMA.SYSTEM_PROPERTIES " +
+                                           "WHERE PROPERTY_NAME = 'hsqldb.log_size'");
+                int logSize = RS.next() ? RS.getInt(1) : 200;
+                RS.close();
+
+                statement.executeUpdate("SET LOGSIZE 0");
+                bulkLoadLogSize = logSize;
+            }
+            finally {
+                statement.close();
+            }
+        }
+    }
+
+    /**
+     * Finish loading a large number of quotes. For HSQLDB the database is
+     * checkpointed once, which writes the loaded quotes to the data file
+     * and empties the log, and the automatic checkpoints are turned back on.
+     *
+     * @exception SQLException if the database could not be restored
+     * @see #startBulkLoad
+     */
+    public void endBulkLoad() throws SQLException {
+	assert connection != null;
+
+        if(bulkLoadLogSize != -1) {
+            Statement statement = connection.createStatement();
+
+            try {
+                statement.execute("CHECKPOINT");
+                statement.executeUpdate("SET LOGSIZE " + bulkLoadLogSize);
+            }
+            finally {
+                bulkLoadLogSize = -1;
+                statement.close();
+            }
+        }
+    }
+
     /**
      * Return a date string that can be used as part of an SQL query.
      * E.g. 2000-12-03.
@@ -18,6 +18,10 @@
 
 package nz.org.venice.quote;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
 import java.sql.Statement;
@@ -77,6 +81,16 @@ public class DatabaseQuoteSource implements QuoteSource
     // SOURCE_CURRENCY_COLUMN
     // DESTINATION_CURRENCY_COLUMN
     private final static int EXCHANGE_RATE_COLUMN = 4;
+
+    // Number of quotes passed to the quote cache at a time
+    private final static int BATCH_SIZE = 1000;
+
+    // Minimum number of quotes imported at once for the database to be
+    // prepared for a bulk load
+    private final static int MINIMUM_BULK_LOAD_SIZE = 10000;
+
+    // Minimum number of dates or symbols in each range loaded in parallel
+    private final static int MINIMUM_PARTITION_SIZE = 20;
     
 
     
@@ -343,7 +357,10 @@ public class DatabaseQuoteSource implements QuoteSource
     }
 
     /**
-     * Load the given quote range into the quote cache.
+     * Load the given quote range into the quote cache. The quotes are read
+     * from the database a few at a time and passed to the cache in
+     * batches. If the preferences allow more than one connection, a large
+     * quote range is split into smaller ranges which are loaded in parallel.
      *
      * @param	quoteRange	the range of quotes to load
      * @return  <code>TRUE</code> if the operation suceeded
@@ -352,69 +369,371 @@ public class DatabaseQuoteSource implements QuoteSource
      */
     public boolean loadQuoteRange(EODQuoteRange quoteRange) {
 
-	String queryString = buildSQLString(quoteRange);
-        boolean success;
-	
+	if(!manager.getConnection())
+            return false;
+
 	// This query might take a while...
         ProgressDialog progress = ProgressDialogManager.getProgressDialog();
         progress.setNote(Locale.getString("LOADING_QUOTES"));
         progress.setIndeterminate(true);
-	
-	success = executeSQLString(progress, queryString);
+
+        boolean success;
+        TradingDate firstDate = quoteRange.getFirstDate();
+        TradingDate lastDate = quoteRange.getLastDate();
+
+        // ... all dates?
+        if(firstDate == null) {
+            firstDate = getFirstDate();
+            lastDate = getLastDate();
+        }
+
+        // Convert the newest and oldest dates first so the cache won't have
+        // to insert any newer dates while loading, which would shift the
+        // date offsets the loaders have calculated.
+        if(firstDate != null) {
+            EODQuoteCache quoteCache = EODQuoteCache.getInstance();
+
+            toOffset(quoteCache, lastDate);
+            toOffset(quoteCache, firstDate);
+        }
+
+        List partitions = partition(quoteRange, firstDate, lastDate,
+                                    PreferencesManager.getDatabaseLoadConnections());
+
+        if(partitions.size() > 1)
+            success = loadPartitions(partitions);
+        else {
+            try {
+                Statement statement =
+                    manager.createStreamingStatement(PreferencesManager.getDatabaseFetchSize());
+                success = loadQuotes(statement, buildSQLString(quoteRange),
+                                     Thread.currentThread());
+            }
+            catch(SQLException e) {
+                DesktopManager.showErrorMessage(Locale.getString("ERROR_TALKING_TO_DATABASE",
+                                                                 e.getMessage()));
+                success = false;
+            }
+        }
+
         ProgressDialogManager.closeProgressDialog(progress);
-	
+
         return success;
     }
 
     /**
-     * This function takes an SQL query statement that should return a list of
-     * quotes. This function executes the statement and stores the quotes into
-     * database. 
+     * Execute the SQL query, which should return a list of quotes, and
+     * load the quotes into the quote cache. The quotes are loaded as
+     * they are read, rather than after the whole query has been read.
+     * The statement is closed afterwards.
      *
+     * @param statement the statement to execute the query
+     * @param SQLString the query
+     * @param thread    the thread which is interrupted to cancel loading
      * @return <code>true</code> iff this function was successful.
      */
-    private boolean executeSQLString(ProgressDialog progress, String SQLString) {
+    private boolean loadQuotes(Statement statement, String SQLString, Thread thread) {
+        Thread monitor = cancelOnInterrupt(statement, thread);
+        boolean success = false;
 
-	if(manager.getConnection()) {
-	    try {
-		Statement statement = manager.createStatement();	
-                Thread monitor = cancelOnInterrupt(statement);
-                Thread thread = Thread.currentThread();
-		ResultSet RS = statement.executeQuery(SQLString);
-
-                // Monitor thread is no longer needed
-                monitor.interrupt();
-
-                if(!thread.isInterrupted()) {
-                    EODQuoteCache quoteCache = EODQuoteCache.getInstance();
-
-                    while (RS.next()) {
-                        quoteCache.load(Symbol.find(RS.getString(DatabaseManager.SYMBOL_COLUMN).trim()),
-                                        new TradingDate(RS.getDate(DatabaseManager.DATE_COLUMN)),
-                                        RS.getLong(DatabaseManager.DAY_VOLUME_COLUMN),
-                                        RS.getFloat(DatabaseManager.DAY_LOW_COLUMN),
-                                        RS.getFloat(DatabaseManager.DAY_HIGH_COLUMN),
-                                        RS.getFloat(DatabaseManager.DAY_OPEN_COLUMN),
-                                        RS.getFloat(DatabaseManager.DAY_CLOSE_COLUMN));
+        try {
+            Connection connection = statement.getConnection();
+            boolean autoCommit = connection.getAutoCommit();
+
+            if(autoCommit && manager.isStreamingInTransaction())
+                connection.setAutoCommit(false);
+
+            try {
+                ResultSet RS = statement.executeQuery(SQLString);
+                QuoteLoader loader = new QuoteLoader(EODQuoteCache.getInstance());
+
+                while(!thread.isInterrupted() && RS.next())
+                    loader.add(RS);
+
+                loader.flush();
+
+                // Clean up after ourselves
+                RS.close();
+                success = !thread.isInterrupted();
+            }
+            finally {
+                if(autoCommit && manager.isStreamingInTransaction())
+                    connection.setAutoCommit(true);
+
+                statement.close();
+            }
+        }
+        catch(SQLException e) {
+            DesktopManager.showErrorMessage(Locale.getString("ERROR_TALKING_TO_DATABASE",
+                                                             e.getMessage()));
+        }
+        catch(SymbolFormatException e2) {
+            DesktopManager.showErrorMessage(Locale.getString("DATABASE_BADLY_FORMATTED_SYMBOL",
+                                                             e2.getMessage()));
+        }
+        finally {
+            // Monitor thread is no longer needed
+            monitor.interrupt();
+        }
+
+        return success;
+    }
+
+    // Load each quote range in its own thread with its own connection to
+    // the database. Returns TRUE if every range was loaded.
+    private boolean loadPartitions(List partitions) {
+        final boolean[] success = new boolean[partitions.size()];
+        final int fetchSize = PreferencesManager.getDatabaseFetchSize();
+        Thread[] loaders = new Thread[partitions.size()];
+
+        for(int i = 0; i < partitions.size(); i++) {
+            final int index = i;
+            final String SQLString = buildSQLString((EODQuoteRange)partitions.get(i));
+
+            loaders[i] = new Thread(new Runnable() {
+                    public void run() {
+                        Connection connection = null;
+
+                        try {
+                            connection = manager.openConnection();
+                            Statement statement =
+                                manager.createStreamingStatement(connection, fetchSize);
+                            success[index] = loadQuotes(statement, SQLString,
+                                                        Thread.currentThread());
+                        }
+                        catch(SQLException e) {
+                            DesktopManager.showErrorMessage(Locale.getString("ERROR_TALKING_TO_DATABASE",
+                                                                             e.getMessage()));
+                        }
+                        finally {
+                            try {
+                                if(connection != null)
+                                    connection.close();
+                            }
+                            catch(SQLException e) {
+                                // It's not a big deal if we can't close it
+                            }
+                        }
                     }
-                }                    
+                });
+            loaders[i].start();
+        }
 
-		// Clean up after ourselves
-		RS.close();
-		statement.close();
-                return !thread.isInterrupted();
-	    }
-	    catch(SQLException e) {
-                DesktopManager.showErrorMessage(Locale.getString("ERROR_TALKING_TO_DATABASE",
-								 e.getMessage()));
-	    }
-            catch(SymbolFormatException e2) {
-                DesktopManager.showErrorMessage(Locale.getString("DATABASE_BADLY_FORMATTED_SYMBOL",
-								 e2.getMessage()));
+        // If we are interrupted, pass the interrupt on to the loaders so
+        // they cancel their queries, and keep waiting for them to finish.
+        // Our interrupt flag is cleared when join() throws, so it is set
+        // again once every loader has finished.
+        boolean interrupted = false;
+
+        for(int i = 0; i < loaders.length;) {
+            try {
+                loaders[i].join();
+                i++;
             }
-	}
+            catch(InterruptedException e) {
+                interrupted = true;
 
-        return false;
+                for(int j = i; j < loaders.length; j++)
+                    loaders[j].interrupt();
+            }
+        }
+
+        if(interrupted)
+            Thread.currentThread().interrupt();
+
+        boolean allLoaded = true;
+        for(int i = 0; i < success.length; i++)
+            allLoaded = allLoaded && success[i];
+
+        return allLoaded && !interrupted;
+    }
+
+    // Split the quote range into at most the given number of ranges which
+    // can be loaded in parallel. A range of dates is split into smaller
+    // ranges of dates, while a single date of given symbols is split by
+    // symbol. Small ranges aren't split.
+    private List partition(EODQuoteRange quoteRange, TradingDate firstDate,
+                           TradingDate lastDate, int partitions) {
+        List ranges = new ArrayList();
+
+        if(partitions > 1 && firstDate != null) {
+            List dates = TradingDate.dateRangeToList(firstDate, lastDate);
+
+            if(dates.size() >= partitions * MINIMUM_PARTITION_SIZE) {
+                for(int i = 0; i < partitions; i++) {
+                    int first = dates.size() * i / partitions;
+                    int last = dates.size() * (i + 1) / partitions - 1;
+                    EODQuoteRange range = (EODQuoteRange)quoteRange.clone();
+
+                    range.setFirstDate((TradingDate)dates.get(first));
+                    range.setLastDate((TradingDate)dates.get(last));
+                    ranges.add(range);
+                }
+
+                return ranges;
+            }
+            else if(dates.size() == 1 &&
+                    quoteRange.getType() == EODQuoteRange.GIVEN_SYMBOLS &&
+                    quoteRange.getAllSymbols().size() >= partitions * MINIMUM_PARTITION_SIZE) {
+                List symbols = quoteRange.getAllSymbols();
+
+                for(int i = 0; i < partitions; i++) {
+                    int first = symbols.size() * i / partitions;
+                    int last = symbols.size() * (i + 1) / partitions;
+
+                    ranges.add(new EODQuoteRange(symbols.subList(first, last),
+                                                 firstDate, lastDate));
+                }
+
+                return ranges;
+            }
+        }
+
+        ranges.add(quoteRange);
+        return ranges;
+    }
+
+    // Return the fast access offset of the given date, or 1 if the date
+    // falls on a weekend.
+    private static int toOffset(EODQuoteCache quoteCache, TradingDate date) {
+        // Loaders in other threads may be converting dates as well
+        synchronized(quoteCache) {
+            try {
+                return quoteCache.dateToOffset(date);
+            }
+            catch(WeekendDateException e) {
+                return 1;
+            }
+        }
+    }
+
+    /**
+     * Reads quotes from a result set and loads them into the quote cache
+     * in batches. Symbols and dates are decoded once and then remembered,
+     * as each appears in many quotes.
+     */
+    private class QuoteLoader {
+
+        private EODQuoteCache quoteCache;
+
+        // Map of symbol strings to symbols
+        private HashMap symbols = new HashMap();
+
+        // Map of SQL dates to fast access date offsets
+        private HashMap dateOffsets = new HashMap();
+
+        // Quotes waiting to be loaded
+        private Symbol[] quoteSymbols = new Symbol[BATCH_SIZE];
+        private int[] quoteDateOffsets = new int[BATCH_SIZE];
+        private long[] day_volume = new long[BATCH_SIZE];
+        private float[] day_low = new float[BATCH_SIZE];
+        private float[] day_high = new float[BATCH_SIZE];
+        private float[] day_open = new float[BATCH_SIZE];
+        private float[] day_close = new float[BATCH_SIZE];
+        private int count = 0;
+
+        public QuoteLoader(EODQuoteCache quoteCache) {
+            this.quoteCache = quoteCache;
+        }
+
+        // Add the quote in the current row of the result set to the batch
+        public void add(ResultSet RS) throws SQLException, SymbolFormatException {
+            String symbolString = RS.getString(DatabaseManager.SYMBOL_COLUMN);
+            Symbol symbol = (Symbol)symbols.get(symbolString);
+
+            if(symbol == null) {
+                symbol = Symbol.find(symbolString.trim());
+                symbols.put(symbolString, symbol);
+            }
+
+            Date date = RS.getDate(DatabaseManager.DATE_COLUMN);
+            Integer dateOffset = (Integer)dateOffsets.get(date);
+
+            if(dateOffset == null) {
+                dateOffset = new Integer(toOffset(quoteCache, new TradingDate(date)));
+                dateOffsets.put(date, dateOffset);
+            }
+
+            quoteSymbols[count] = symbol;
+            quoteDateOffsets[count] = dateOffset.intValue();
+            day_volume[count] = RS.getLong(DatabaseManager.DAY_VOLUME_COLUMN);
+            day_low[count] = RS.getFloat(DatabaseManager.DAY_LOW_COLUMN);
+            day_high[count] = RS.getFloat(DatabaseManager.DAY_HIGH_COLUMN);
+            day_open[count] = RS.getFloat(DatabaseManager.DAY_OPEN_COLUMN);
+            day_close[count] = RS.getFloat(DatabaseManager.DAY_CLOSE_COLUMN);
+
+            if(++count == BATCH_SIZE)
+                flush();
+        }
+
+        // Load the batch into the quote cache
+        public void flush() {
+            quoteCache.load(quoteSymbols, quoteDateOffsets, day_volume, day_low,
+                            day_high, day_open, day_close, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * Export every quote in the database to the given mapped quote file
+     * writer. The quotes are read in a single query ordered by symbol and
+     * date, which is the order the writer needs.
+     *
+     * @param writer the writer to receive the quotes
+     * @return <code>true</code> iff this function was successful.
+     * @exception IOException if the quotes could not be written
+     */
+    boolean exportQuotes(MappedQuoteFileWriter writer) throws IOException {
+	if(!manager.getConnection())
+            return false;
+
+        String queryString =
+            "SELECT * FROM " + DatabaseManager.SHARE_TABLE_NAME +
+            " ORDER BY " + DatabaseManager.SYMBOL_FIELD + ", " + DatabaseManager.DATE_FIELD;
+
+        ProgressDialog progress = ProgressDialogManager.getProgressDialog();
+        progress.setNote(Locale.getString("LOADING_QUOTES"));
+        progress.setIndeterminate(true);
+
+        boolean success = false;
+
+        try {
+            Statement statement = manager.createStatement();
+            Thread monitor = cancelOnInterrupt(statement);
+            Thread thread = Thread.currentThread();
+            ResultSet RS = statement.executeQuery(queryString);
+
+            // Monitor thread is no longer needed
+            monitor.interrupt();
+
+            while(!thread.isInterrupted() && RS.next()) {
+                writer.write(Symbol.find(RS.getString(DatabaseManager.SYMBOL_COLUMN).trim()),
+                             new TradingDate(RS.getDate(DatabaseManager.DATE_COLUMN)),
+                             RS.getLong(DatabaseManager.DAY_VOLUME_COLUMN),
+                             RS.getFloat(DatabaseManager.DAY_LOW_COLUMN),
+                             RS.getFloat(DatabaseManager.DAY_HIGH_COLUMN),
+                             RS.getFloat(DatabaseManager.DAY_OPEN_COLUMN),
+                             RS.getFloat(DatabaseManager.DAY_CLOSE_COLUMN));
+            }
+
+            // Clean up after ourselves
+            RS.close();
+            statement.close();
+            success = !thread.isInterrupted();
+        }
+        catch(SQLException e) {
+            DesktopManager.showErrorMessage(Locale.getString("ERROR_TALKING_TO_DATABASE",
+                                                             e.getMessage()));
+        }
+        catch(SymbolFormatException e2) {
+            DesktopManager.showErrorMessage(Locale.getString("DATABASE_BADLY_FORMATTED_SYMBOL",
+                                                             e2.getMessage()));
+        }
+        finally {
+            ProgressDialogManager.closeProgressDialog(progress);
+        }
+
+        return success;
     }
 
     // This function creates a new thread that monitors the current thread
@@ -422,8 +741,12 @@ public class DatabaseQuoteSource implements QuoteSource
     // will cancel the given SQL statement. If cancelOnInterrupt() is called,
     // once the SQL statement has finished, you should make sure the
     // thread is terminated by calling "interrupt" on the returned thread.
-    private Thread cancelOnInterrupt(final Statement statement) {
-        final Thread sqlThread = Thread.currentThread();
+    private Thread cancelOnInterrupt(Statement statement) {
+        return cancelOnInterrupt(statement, Thread.currentThread());
+    }
+
+    // As above, but cancel the statement when the given thread is interrupted.
+    private Thread cancelOnInterrupt(final Statement statement, final Thread sqlThread) {
 
         Thread thread = new Thread(new Runnable() {
                 public void run() {
@@ -566,161 +889,256 @@ public class DatabaseQuoteSource implements QuoteSource
     
     
     /**
-     * Import quotes into the database.
+     * Import quotes into the database. Quotes which are already in the
+     * database are replaced. The quotes are written in batches using
+     * prepared statements, and each batch is committed as it is written.
      *
      * @param quotes list of quotes to import
-     * @return the number of quotes imported
+     * @return the number of quotes imported which weren't already in the database
      */
     public int importQuotes(List quotes) {
         // TODO: This function should probably update the cached firstDate and lastDate.
         int quotesImported = 0;
 
         if(quotes.size() > 0 && manager.getConnection()) {
+            boolean bulkLoad = quotes.size() >= MINIMUM_BULK_LOAD_SIZE;
 
-            // Query the database to see which of these quotes is present
-            List existingQuotes = findMatchingQuotes(quotes);
-
-            // Remove duplicates
-            List newQuotes = new ArrayList();
-            for(Iterator iterator = quotes.iterator(); iterator.hasNext();) {
-                EODQuote quote = (EODQuote)iterator.next();
+            try {
+                if(bulkLoad)
+                    manager.startBulkLoad();
 
-                if(!containsQuote(existingQuotes, quote))
-                    newQuotes.add(quote);
+                try {
+                    quotesImported = importQuoteBatches(quotes,
+                                                        PreferencesManager.getDatabaseImportBatchSize());
+                }
+                finally {
+                    if(bulkLoad)
+                        manager.endBulkLoad();
+                }
+            }
+            catch (SQLException e) {
+                DesktopManager.showErrorMessage(Locale.getString("ERROR_TALKING_TO_DATABASE",
+                                                                 e.getMessage()));
             }
-
-            if(newQuotes.size() > 0) {
-                if(manager.supportForSingleRowUpdatesOnly()) {
-                    quotesImported = importQuoteMultipleStatements(newQuotes);
-		} else {
-                    quotesImported = importQuoteSingleStatement(newQuotes);
-		}
-	    }
         }
 
         return quotesImported;
     }
 
     /**
-     * Searches the list of quotes for the given quote. A match only
-     * requires the symbol and date fields to match.
+     * Import quotes into the database in batches. If the database can skip
+     * quotes which are already there when inserting, the quotes are
+     * inserted and then the quotes which were skipped are updated.
+     * Otherwise the quotes are updated and then the quotes which weren't
+     * there are inserted. Each batch is written in its own transaction.
      *
-     * @param quotes the list of quotes to search
-     * @param quote the quote to search for
-     * @return <code>true</code> if the quote is in the list, <code>false</code> otherwise
+     * @param quotes list of quotes to import
+     * @param batchSize number of quotes in each batch
+     * @return the number of quotes imported which weren't already in the database
+     * @exception SQLException if the quotes could not be written
      */
-    private boolean containsQuote(List quotes, EODQuote quote) {
-        for(Iterator iterator = quotes.iterator(); iterator.hasNext();) {
-            EODQuote containedQuote = (EODQuote)iterator.next();
+    private int importQuoteBatches(List quotes, int batchSize) throws SQLException {
+        String insertNewQuery = manager.buildInsertNewQuoteQuery();
+        boolean insertFirst = (insertNewQuery != null);
+        PreparedStatement insertStatement =
+            manager.prepareStatement(insertFirst? insertNewQuery :
+                                     manager.buildInsertQuoteQuery());
+        PreparedStatement updateStatement =
+            manager.prepareStatement(manager.buildUpdateQuoteQuery());
+        Connection connection = insertStatement.getConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        int quotesImported = 0;
 
-            if(containedQuote.getSymbol().equals(quote.getSymbol()) &&
-               containedQuote.getDate().equals(quote.getDate()))
-                return true;
+        try {
+            connection.setAutoCommit(false);
+
+            // A batch size below one would never finish
+            batchSize = Math.max(1, batchSize);
+
+            for(int first = 0; first < quotes.size(); first += batchSize) {
+                List batch = quotes.subList(first, Math.min(first + batchSize, quotes.size()));
+                boolean[] existing;
+
+                try {
+                    if(insertFirst) {
+                        int[] inserted = executeBatch(insertStatement, batch, null, true);
+
+                        // If the driver didn't say which quotes were skipped,
+                        // undo the insert, look the quotes up and insert
+                        // only the new ones.
+                        if(isUnknown(inserted)) {
+                            connection.rollback();
+                            existing = findExisting(batch, inserted, true);
+                            executeBatch(insertStatement, batch, not(existing), true);
+                        }
+                        else
+                            existing = findExisting(batch, inserted, true);
+
+                        executeBatch(updateStatement, batch, existing, false);
+                    }
+                    else {
+                        // An update never adds a quote, so any quote the
+                        // driver didn't report on can be looked up afterwards
+                        int[] updated = executeBatch(updateStatement, batch, null, false);
+                        existing = findExisting(batch, updated, false);
+                        executeBatch(insertStatement, batch, not(existing), true);
+                    }
+
+                    connection.commit();
+                }
+                catch(SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+
+                quotesImported += batch.size() - count(existing);
+            }
+        }
+        finally {
+            connection.setAutoCommit(autoCommit);
+            insertStatement.close();
+            updateStatement.close();
         }
 
-        return false;
+        return quotesImported;
     }
 
     /**
-     * Import quotes into the database using a separate insert statement for
-     * each row. Use this function when the database does not support
-     * multi-row inserts.
+     * Write a batch of quotes to the database using the given insert or
+     * update statement.
      *
-     * @param	quotes list of quotes to import
-     * @return the number of quotes imported
+     * @param statement the insert or update statement
+     * @param quotes the batch of quotes
+     * @param include which quotes to write, or <code>null</code> to write
+     *                them all
+     * @param insert <code>true</code> for an insert statement, <code>false</code>
+     *               for an update statement
+     * @return the number of rows changed by each quote, 0 for quotes which
+     *         weren't written, or {@link Statement#SUCCESS_NO_INFO} if the
+     *         driver didn't say
+     * @exception SQLException if the quotes could not be written
      */
-    private int importQuoteMultipleStatements(List quotes) {
-        int quotesImported = 0;
+    private int[] executeBatch(PreparedStatement statement, List quotes,
+                               boolean[] include, boolean insert) throws SQLException {
+        int[] counts = new int[quotes.size()];
+        int[] batchIndex = new int[quotes.size()];
+        int batchSize = 0;
+
+        for(int i = 0; i < quotes.size(); i++) {
+            if(include != null && !include[i])
+                continue;
+
+            EODQuote quote = (EODQuote)quotes.get(i);
+            Date date = Date.valueOf(manager.toSQLDateString(quote.getDate()));
+            int column = 1;
+
+            if(insert) {
+                statement.setDate(column++, date);
+                statement.setString(column++, quote.getSymbol().toString());
+            }
 
-        // Iterate through the quotes and import them one-by-one.
-        Iterator iterator = quotes.iterator();
-        
-        try {
-            while(iterator.hasNext()) {
-                EODQuote quote = (EODQuote)iterator.next();
-                
-                String insertQuery = new String("INSERT INTO " + 
-						DatabaseManager.SHARE_TABLE_NAME +
-                                                " VALUES (" +
-                                                "'" + manager.
-						toSQLDateString(quote
-								.getDate()) 
-						+ "', " +
-                                                "'" + quote.getSymbol()
-						+ "', " +
-                                                "'" + quote.getDayOpen()
-						+ "', " +
-                                                "'" + quote.getDayClose()
-						+ "', " +
-                                                "'" + quote.getDayHigh()
-						+ "', " +
-                                                "'" + quote.getDayLow()
-						+ "', " +
-                                                "'" + quote.getDayVolume()
-						+ "')");
-                
-                // Now insert the quote into database
-                Statement statement = manager.createStatement();
-                statement.executeUpdate(insertQuery);
-                quotesImported++;
+            statement.setDouble(column++, quote.getDayOpen());
+            statement.setDouble(column++, quote.getDayClose());
+            statement.setDouble(column++, quote.getDayHigh());
+            statement.setDouble(column++, quote.getDayLow());
+            statement.setLong(column++, quote.getDayVolume());
+
+            if(!insert) {
+                statement.setDate(column++, date);
+                statement.setString(column++, quote.getSymbol().toString());
             }
+
+            statement.addBatch();
+            batchIndex[batchSize++] = i;
         }
-        catch (SQLException e) {
-            DesktopManager.showErrorMessage(Locale.getString("ERROR_TALKING_TO_DATABASE",
-                                                             e.getMessage()));
+
+        if(batchSize > 0) {
+            int[] updateCounts = statement.executeBatch();
+
+            for(int i = 0; i < batchSize; i++)
+                counts[batchIndex[i]] = updateCounts[i];
         }
 
-        return quotesImported;
+        return counts;
     }
 
     /**
-     * Import quotes into the database using a single insert statement for
-     * all rows. Use this function when the database supports
-     * multi-row inserts.
+     * Work out which quotes of a batch were already in the database from the
+     * row counts of an insert or update. Quotes whose count is unknown are
+     * looked up in the database.
      *
-     * @param	quotes list of quotes to import
-     * @return the number of quotes imported
+     * @param quotes the batch of quotes
+     * @param counts the number of rows changed by each quote
+     * @param insert <code>true</code> if the counts are from an insert which
+     *               skips existing quotes, <code>false</code> if they are from
+     *               an update
+     * @return which quotes were already in the database
+     * @exception SQLException if the quotes could not be looked up
      */
-    private int importQuoteSingleStatement(List quotes) {
-        int quotesImported = 0;
-        StringBuffer insertString = new StringBuffer();
-        boolean firstQuote = true;
-        
-        // Build single query to insert stocks for a whole day into
-        for(Iterator iterator = quotes.iterator(); iterator.hasNext();) {
-            EODQuote quote = (EODQuote)iterator.next();
-            
-            if(firstQuote) {
-                insertString.append("INSERT INTO " + 
-				    DatabaseManager.SHARE_TABLE_NAME +
-                                    " VALUES (");
-                firstQuote = false;
-            }
-            else
-                insertString.append(", (");
-            
-            // Add new quote
-            insertString.append("'" + manager.toSQLDateString(quote.getDate()) 
-				+ "', " +
-                                "'" + quote.getSymbol()                + "', " +
-                                "'" + quote.getDayOpen()               + "', " +
-                                "'" + quote.getDayClose()              + "', " +
-                                "'" + quote.getDayHigh()               + "', " +
-                                "'" + quote.getDayLow()                + "', " +
-                                "'" + quote.getDayVolume()             + "')");
-        }
-        
+    private boolean[] findExisting(List quotes, int[] counts, boolean insert)
+        throws SQLException {
+
+        boolean[] existing = new boolean[quotes.size()];
+        PreparedStatement existsStatement = null;
+
         try {
-            Statement statement = manager.createStatement();
-            statement.executeUpdate(insertString.toString());
-            quotesImported = quotes.size();
+            for(int i = 0; i < quotes.size(); i++) {
+                if(counts[i] == Statement.SUCCESS_NO_INFO) {
+                    EODQuote quote = (EODQuote)quotes.get(i);
+
+                    if(existsStatement == null)
+                        existsStatement =
+                            manager.prepareStatement(manager.buildQuoteExistsQuery());
+
+                    existsStatement.setDate(1, Date.valueOf(manager.toSQLDateString(quote.getDate())));
+                    existsStatement.setString(2, quote.getSymbol().toString());
+
+                    ResultSet RS = existsStatement.executeQuery();
+                    existing[i] = RS.next();
+                    RS.close();
+                }
+                else if(insert)
+                    existing[i] = (counts[i] == 0);
+                else
+                    existing[i] = (counts[i] > 0);
+            }
         }
-        catch (SQLException e) {
-            DesktopManager.showErrorMessage(Locale.getString("ERROR_TALKING_TO_DATABASE",
-                                                             e.getMessage()));
+        finally {
+            if(existsStatement != null)
+                existsStatement.close();
         }
 
-        return quotesImported;
+        return existing;
+    }
+
+    // Return whether the driver didn't report the row count of any statement
+    private static boolean isUnknown(int[] counts) {
+        for(int i = 0; i < counts.length; i++)
+            if(counts[i] == Statement.SUCCESS_NO_INFO)
+                return true;
+
+        return false;
+    }
+
+    // Return an array with every value negated
+    private static boolean[] not(boolean[] values) {
+        boolean[] result = new boolean[values.length];
+
+        for(int i = 0; i < values.length; i++)
+            result[i] = !values[i];
+
+        return result;
+    }
+
+    // Return the number of true values in the array
+    private static int count(boolean[] values) {
+        int count = 0;
+
+        for(int i = 0; i < values.length; i++)
+            if(values[i])
+                count++;
+
+        return count;
     }
 
     /**
@@ -1131,146 +1549,6 @@ public class DatabaseQuoteSource implements QuoteSource
 
 
     
-    /**
-     * The database is very slow at taking an arbitrary list of symbol and date pairs
-     * and finding whether they exist in the database. This is unfortuante because
-     * we need this functionality so we don't try to import quotes that are already
-     * in the database. If we try to import a quote that is already present, we
-     * get a constraint violation error. We can't just ignore this error because
-     * we can't tell errors apart and we don't want to ignore all import errors.
-     * <p>
-     * This function examines the list of quotes and optimises the query for returning
-     * matching quotes. This basically works by seeing if all the quotes are on
-     * the same date or have the same symbol.
-     * <p>
-     * CAUTION: This function will return all matches, but it may return some false ones too.
-     * The SQL query returned will only return the symbol and date fields.
-     * Don't call this function if the quote list is empty.
-     *
-     * @param quotes the quote list.
-     * @return SQL query statement
-     */
-    private String buildMatchingQuoteQuery(List quotes) {
-        boolean sameSymbol = true;
-        boolean sameDate = true;
-        Symbol symbol = null;
-        TradingDate date = null;
-        TradingDate startDate = null;
-        TradingDate endDate = null;
-
-        // This function should only be called if there are any quotes to match
-        assert quotes.size() > 0;
-
-        StringBuffer buffer = new StringBuffer();
-        buffer.append("SELECT " + DatabaseManager.SYMBOL_FIELD + "," + 
-		      DatabaseManager.DATE_FIELD + " FROM " +
-                      DatabaseManager.SHARE_TABLE_NAME + " WHERE ");
-        
-        // Check if all the quotes have the same symbol or fall on the same date.
-        for(Iterator iterator = quotes.iterator(); iterator.hasNext();) {
-            EODQuote quote = (EODQuote)iterator.next();
-
-            if(symbol == null || date == null) {
-                symbol = quote.getSymbol();
-                startDate = endDate = date = quote.getDate();
-            }
-            else {
-                if(!symbol.equals(quote.getSymbol()))
-                    sameSymbol = false;
-                if(!date.equals(quote.getDate()))
-                    sameDate = false;
-
-                // Keep a track of the date range in case we do a symbol query, as if
-                // they are importing a single symbol, we don't want to pull in every date
-                // to check!
-                if(quote.getDate().before(startDate))
-                    startDate = quote.getDate();
-                if(quote.getDate().after(endDate))
-                    endDate = quote.getDate();
-            }
-        }
-
-        // 1. All quotes have the same symbol.
-        if(sameSymbol)
-            buffer.append(DatabaseManager.SYMBOL_FIELD + " = '" + 
-			  symbol.toString() + "' AND " +
-                          DatabaseManager.DATE_FIELD + " >= '" + 
-			  manager.toSQLDateString(startDate) + "' AND " +
-                          DatabaseManager.DATE_FIELD + " <= '" + 
-			  manager.toSQLDateString(endDate) + "' ");
-
-        // 2. All quotes are on the same date.
-        else if(sameDate)
-            buffer.append(DatabaseManager.DATE_FIELD + " = '" + 
-			  manager.toSQLDateString(date) + "'");
-
-        // 3. The quotes contain a mixture of symbols and dates. Bite the bullet
-        // and do a slow SQL query which checks each one individually.
-        else {
-            for(Iterator iterator = quotes.iterator(); iterator.hasNext();) {
-                EODQuote quote = (EODQuote)iterator.next();
-                buffer.append("(" + DatabaseManager.SYMBOL_FIELD + " = '" + 
-			      quote.getSymbol() + "' AND " +
-                              DatabaseManager.DATE_FIELD + " = '" + 
-			      manager.toSQLDateString(quote.getDate()) + "')");
-		
-                if(iterator.hasNext())
-                    buffer.append(" OR ");
-            }
-        }
-
-        return buffer.toString();
-    }
-
-    /**
-     * Return a list of all the quotes in the database that match the input list.
-     * This function is used during import to find out which quotes are already
-     * in the database.
-     * <p>
-     * CAUTION: This function will return all matches, but it may return some false ones too.
-     * The SQL query returned will only return the symbol and date fields.
-     *
-     * @param quotes quotes to query
-     * @return matching quotes
-     */
-    private List findMatchingQuotes(List quotes) {
-        List matchingQuotes = new ArrayList();
-        
-	if(manager.getConnection() && quotes.size() > 0) {
-            // Since this is part of import, don't bother with progress dialog
-            try {
-                // Construct query from list
-                Statement statement = manager.createStatement();
-                String query = buildMatchingQuoteQuery(quotes);
-                ResultSet RS = statement.executeQuery(query);
-
-                // Retrieve matching quotes
-                while(RS.next()) {
-                    try {
-                        matchingQuotes.add(new EODQuote(Symbol.find(RS.getString(DatabaseManager.SYMBOL_FIELD)),
-                                                        new TradingDate(RS.getDate(DatabaseManager.DATE_FIELD)),
-                                                        0, 0.0, 0.0, 0.0, 0.0));
-                    }
-                    catch(SymbolFormatException e) {
-                        // This can't happen because we are only matching already known
-                        // valid symbols.
-                        assert false;
-                    }
-                }
-
-                // Clean up after ourselves
-                RS.close();
-                statement.close();
-            }
-            catch(SQLException e2) {
-		DesktopManager.showErrorMessage(Locale.getString("ERROR_TALKING_TO_DATABASE",
-								 e2.getMessage()));
-            }
-        }
-
-        return matchingQuotes;
-    }
-
     /**
      * This function shows an error message if there are no quotes in the
      * database. We generally only care about this when trying to get the
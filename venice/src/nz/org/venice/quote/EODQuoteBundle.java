@@ -76,6 +76,10 @@ public class EODQuoteBundle implements QuoteBundle {
     private int firstDateOffset = 1;
     private int lastDateOffset = 1;
 
+    // Number of newer dates inserted into the quote cache when the
+    // date offsets were found
+    private int insertedDateCount = 0;
+
     /**
      * Create a new end-of-day quote bundle that represents the quotes in the given
      * quote range.
@@ -529,6 +533,8 @@ public class EODQuoteBundle implements QuoteBundle {
      * @see EODQuoteCache
      */
     public int getFirstOffset() {
+        checkOffsets();
+
 	if(firstDateOffset == 1) {
 	    try {
 		firstDateOffset = quoteCache.dateToOffset(getFirstDate());
@@ -564,6 +570,8 @@ public class EODQuoteBundle implements QuoteBundle {
      * @see EODQuoteCache
      */
     public int getLastOffset() {
+        checkOffsets();
+
 	if(lastDateOffset == 1) {
 	    try {
 		lastDateOffset = quoteCache.dateToOffset(getLastDate());
@@ -592,6 +600,17 @@ public class EODQuoteBundle implements QuoteBundle {
 	return lastDateOffset;
     }
 
+    // Forget the date offsets if newer dates have been inserted into the
+    // quote cache since they were found, as the offsets will have shifted.
+    private void checkOffsets() {
+        int insertedDateCount = quoteCache.getInsertedDateCount();
+
+        if(this.insertedDateCount != insertedDateCount) {
+            firstDateOffset = lastDateOffset = 1;
+            this.insertedDateCount = insertedDateCount;
+        }
+    }
+
     /**
      * Convert between a fast access date offset to an actual date.
      *
@@ -631,6 +650,25 @@ public class EODQuoteBundle implements QuoteBundle {
         return quoteRange.toString();
     }
 
+    /**
+     * Stop the quotes in this quote bundle being freed from the quote cache
+     * to make room for other quotes. Analysers pin their quote bundle while
+     * they run, so that opening a chart doesn't force them to reload their
+     * quotes. Each call must be followed by a call to {@link #unpin}.
+     */
+    public void pin() {
+        quoteBundleCache.pin(this);
+    }
+
+    /**
+     * Allow the quotes in this quote bundle to be freed again.
+     *
+     * @see #pin
+     */
+    public void unpin() {
+        quoteBundleCache.unpin(this);
+    }
+
     /**
      * If we know the given quote is not in the quote cache, this function will reload this
      * quote bundle.
@@ -640,10 +678,14 @@ public class EODQuoteBundle implements QuoteBundle {
     private boolean tryReload() {
         boolean success = false;
 
-        // Perhaps our quote packet is not loaded - if so load
-        if(!quoteBundleCache.isLoaded(this)) {
-            quoteBundleCache.load(this);
-            success = true;
+        // Several analyser threads can share a quote bundle, so make sure
+        // only one of them reloads it.
+        synchronized(quoteBundleCache) {
+            // Perhaps our quote packet is not loaded - if so load
+            if(!quoteBundleCache.isLoaded(this)) {
+                quoteBundleCache.load(this);
+                success = true;
+            }
         }
 
         return success;
@@ -661,27 +703,32 @@ public class EODQuoteBundle implements QuoteBundle {
      */
     private boolean tryExpand(Symbol symbol, int dateOffset) {
         boolean success = false;
-        EODQuoteRange expandedQuoteRange = (EODQuoteRange)getQuoteRange().clone();
+
+        // Take the lock before looking at the quote range, as another
+        // thread sharing this bundle might be expanding it.
+        synchronized(quoteBundleCache) {
+            EODQuoteRange expandedQuoteRange = (EODQuoteRange)getQuoteRange().clone();
         
-        // We can expand a quote range by expanding it to cover an older date
-        if(getQuoteRange().getFirstDate() != null && dateOffset < getFirstOffset()) {
+            // We can expand a quote range by expanding it to cover an older date
+            if(getQuoteRange().getFirstDate() != null && dateOffset < getFirstOffset()) {
 
-            TradingDate date = quoteCache.offsetToDate(dateOffset);
-            expandedQuoteRange.setFirstDate(date);
-            success = true;
-        }
+                TradingDate date = quoteCache.offsetToDate(dateOffset);
+                expandedQuoteRange.setFirstDate(date);
+                success = true;
+            }
         
-        // Expand a list of symbols to include another
-        if(getQuoteRange().getType() == EODQuoteRange.GIVEN_SYMBOLS &&
-           !getQuoteRange().containsSymbol(symbol)) {
+            // Expand a list of symbols to include another
+            if(getQuoteRange().getType() == EODQuoteRange.GIVEN_SYMBOLS &&
+               !getQuoteRange().containsSymbol(symbol)) {
             
-            expandedQuoteRange.addSymbol(symbol);
-            success = true;
-        }   
+                expandedQuoteRange.addSymbol(symbol);
+                success = true;
+            }   
 
-        // Load expanded quote cache
-        if(success)
-            quoteBundleCache.expand(this, expandedQuoteRange);
+            // Load expanded quote cache
+            if(success)
+                quoteBundleCache.expand(this, expandedQuoteRange);
+        }
 
         return success;
     }
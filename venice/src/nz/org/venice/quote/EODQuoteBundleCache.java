@@ -20,8 +20,12 @@ package nz.org.venice.quote;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import nz.org.venice.prefs.PreferencesManager;
 
@@ -34,11 +38,19 @@ import nz.org.venice.prefs.PreferencesManager;
  * <p>
  * When this class loads quotes into the quote cache, it will check to make sure the
  * quote cache hasn't got too big. If it has, it will free up the quotes used only by
- * the oldest quote caches.
+ * the least recently used quote bundles. If two quote bundles were last used at the
+ * same time, the bigger one is freed first. Quote bundles that are pinned by an
+ * active analyser (see {@link #pin}) are never freed.
  * <p>
- * Its possible that the oldest quote bundle is still in use, in which case when the
+ * Its possible that a freed quote bundle is still in use, in which case when the
  * quote bundle tries to access the cache it might not find its quote.
  * If thats the case, it will call <code>load()</code> again to reload the quotes.
+ * <p>
+ * Each quote in the cache keeps a count of the loaded quote bundles that contain
+ * it, so freeing a quote bundle only needs to look at each of its quotes once.
+ * <p>
+ * Quote bundles are loaded and expanded one at a time, so that analyser
+ * threads sharing a quote bundle don't load the same quotes twice.
  *
  * @see EODQuote
  * @see EODQuoteBundle
@@ -53,13 +65,59 @@ public class EODQuoteBundleCache {
     // Loaded quote bundle stack
     private List loadedQuoteBundles;
 
+    // Map of loaded quote bundles to their usage. Checking whether a
+    // quote bundle is loaded happens a lot, so it doesn't lock.
+    private Map usages;
+
+    // Map of pinned quote bundles to the number of times they are pinned
+    private Map pins;
+
+    // Quote bundles that have been freed, to count how many are reloaded
+    private Map freedQuoteBundles;
+
+    // Map of symbols to the number of loaded quote bundles that contain
+    // the symbol's quote on each date. The counts are indexed by -dateOffset.
+    private Map referenceCounts;
+
+    // Number of newer dates inserted into the quote cache when the reference
+    // counts were last lined up with the date offsets
+    private int insertedDateCount;
+
+    // Increases each time a quote bundle is loaded or expanded. Used to find
+    // the least recently used quote bundle.
+    private volatile int clock = 0;
+
+    // Statistics
+    private int hits = 0;
+    private int misses = 0;
+    private int evictions = 0;
+    private int reloads = 0;
+
     // For speed reasons keep copy of quote cache instance
     private EODQuoteCache quoteCache;
 
+    // Usage of a loaded quote bundle
+    private static class Usage {
+        // Value of the clock when the quote bundle was last used
+        public volatile int lastUsed;
+
+        // Number of quotes in the quote bundle
+        public int size = 0;
+
+        public Usage(int lastUsed) {
+            this.lastUsed = lastUsed;
+        }
+    }
+
     // Class should only be constructed once by this class
     private EODQuoteBundleCache() {
 	quoteCache = EODQuoteCache.getInstance();
 	loadedQuoteBundles = Collections.synchronizedList(new ArrayList());
+        usages = new ConcurrentHashMap();
+        pins = new HashMap();
+        freedQuoteBundles = new WeakHashMap();
+        referenceCounts = new HashMap();
+        insertedDateCount = quoteCache.getInsertedDateCount();
     }
 
     /**
@@ -88,21 +146,36 @@ public class EODQuoteBundleCache {
      * @param quoteBundle        the quote bundle to expand
      * @param expandedQuoteRange the quote bundles new quote range
      */
-    public void expand(EODQuoteBundle quoteBundle, EODQuoteRange expandedQuoteRange) {
+    public synchronized void expand(EODQuoteBundle quoteBundle, EODQuoteRange expandedQuoteRange) {
+        EODQuoteRange previousQuoteRange = null;
+        int previousFirstOffset = 0;
+        int previousLastOffset = 0;
+
+        alignReferenceCounts();
+
         // If the quote bundle is already loaded, then clip the expanded quote range
         // so we don't try and re-load any of the load symbols.
-        if(isLoaded(quoteBundle)) 
-            expandedQuoteRange = quoteBundle.getQuoteRange().clip(expandedQuoteRange);
+        if(isLoaded(quoteBundle)) {
+            previousQuoteRange = quoteBundle.getQuoteRange();
+            previousFirstOffset = quoteBundle.getFirstOffset();
+            previousLastOffset = quoteBundle.getLastOffset();
+
+            expandedQuoteRange = previousQuoteRange.clip(expandedQuoteRange);
+            touch(quoteBundle);
+        }
 
         // Otherwise place the quote bundle in the list as we will now load it.
         else
-            loadedQuoteBundles.add(quoteBundle);
+            add(quoteBundle);
 
         // Load the quotes from the expanded quote bundle
         forceLoad(expandedQuoteRange);
 
         // Update quote range
         quoteBundle.setQuoteRange(expandedQuoteRange);
+
+        reference(quoteBundle, previousQuoteRange, previousFirstOffset, previousLastOffset);
+        evict(quoteBundle);
     }
 
     /** 
@@ -111,12 +184,18 @@ public class EODQuoteBundleCache {
      * @param quoteBundle       the quote bundle to load
      * @see EODQuoteCache
      */
-    public void load(EODQuoteBundle quoteBundle) {
+    public synchronized void load(EODQuoteBundle quoteBundle) {
 	if(!isLoaded(quoteBundle)) {
-            loadedQuoteBundles.add(quoteBundle);
+            add(quoteBundle);
 	    
-            if(!forceLoad(quoteBundle.getQuoteRange()))
+            if(forceLoad(quoteBundle.getQuoteRange())) {
+                reference(quoteBundle, null, 0, 0);
+                evict(quoteBundle);
+            }
+            else {
                 loadedQuoteBundles.remove(quoteBundle);
+                usages.remove(quoteBundle);
+            }
         }
     }
     
@@ -138,26 +217,54 @@ public class EODQuoteBundleCache {
             }
         }
         
-        if(!quoteRange.isEmpty()) { 
-            // Load the quote range into the quote cache. Return immediately if
-            // we couldn't load it.
+        if(quoteRange.isEmpty()) {
+            hits++;
+            return true;
+        }
 
-            if(!QuoteSourceManager.getSource().loadQuoteRange(quoteRange))
-                return false;
+        // Load the quote range into the quote cache. Return immediately if
+        // we couldn't load it.
+        misses++;
+
+        return QuoteSourceManager.getSource().loadQuoteRange(quoteRange);
+    }
+
+    // If the quote cache has too many quotes then keep freeing the least
+    // recently used quote bundle - but don't free the given quote bundle,
+    // since that is the one we are loading, or any pinned quote bundles.
+    private void evict(EODQuoteBundle loadingQuoteBundle) {
+        int maximumCachedQuotes = PreferencesManager.getMaximumCachedQuotes();
+
+        while(quoteCache.size() > maximumCachedQuotes) {
+            EODQuoteBundle leastRecentlyUsed = null;
+            Usage leastRecentlyUsedUsage = null;
 
-            // If the quote cache has too many quotes then keep
-            // freeing the oldest bundle - but don't free the
-            // newest bundle, since that is the one we are loading.
-            int maximumCachedQuotes = PreferencesManager.getMaximumCachedQuotes();
-	    
             synchronized(loadedQuoteBundles) {
-                while(quoteCache.size() > maximumCachedQuotes &&
-                      loadedQuoteBundles.size() > 1) {
-                    free((EODQuoteBundle)loadedQuoteBundles.get(0));
+                for(Iterator iterator = loadedQuoteBundles.iterator(); iterator.hasNext();) {
+                    EODQuoteBundle quoteBundle = (EODQuoteBundle)iterator.next();
+                    Usage usage = (Usage)usages.get(quoteBundle);
+
+                    if(quoteBundle == loadingQuoteBundle || pins.containsKey(quoteBundle))
+                        continue;
+
+                    if(leastRecentlyUsed == null ||
+                       usage.lastUsed < leastRecentlyUsedUsage.lastUsed ||
+                       (usage.lastUsed == leastRecentlyUsedUsage.lastUsed &&
+                        usage.size > leastRecentlyUsedUsage.size)) {
+                        leastRecentlyUsed = quoteBundle;
+                        leastRecentlyUsedUsage = usage;
+                    }
                 }
             }
+
+            // Everything else is in use
+            if(leastRecentlyUsed == null)
+                break;
+
+            free(leastRecentlyUsed);
+            freedQuoteBundles.put(leastRecentlyUsed, Boolean.TRUE);
+            evictions++;
         }
-        return true;
     }
 
     /**
@@ -167,7 +274,139 @@ public class EODQuoteBundleCache {
      * @return <code>true</code> if the quote bundle is loaded
      */
     public boolean isLoaded(EODQuoteBundle quoteBundle) {
-        return loadedQuoteBundles.contains(quoteBundle);
+        Usage usage = (Usage)usages.get(quoteBundle);
+
+        if(usage == null)
+            return false;
+
+        // Quote bundles call this whenever they are used. Avoid writing
+        // when nothing has changed, as several threads can share the
+        // quote bundle.
+        int clock = this.clock;
+
+        if(usage.lastUsed != clock)
+            usage.lastUsed = clock;
+
+        return true;
+    }
+
+    /**
+     * Pin the quote bundle so that its quotes are not freed while an analyser
+     * is using it. A quote bundle can be pinned several times, and stays pinned
+     * until it has been unpinned the same number of times.
+     *
+     * @param quoteBundle       the quote bundle to pin
+     * @see #unpin
+     */
+    public synchronized void pin(EODQuoteBundle quoteBundle) {
+        int[] count = (int[])pins.get(quoteBundle);
+
+        if(count == null) {
+            count = new int[1];
+            pins.put(quoteBundle, count);
+        }
+
+        count[0]++;
+    }
+
+    /**
+     * Unpin a quote bundle that was pinned by {@link #pin}.
+     *
+     * @param quoteBundle       the quote bundle to unpin
+     */
+    public synchronized void unpin(EODQuoteBundle quoteBundle) {
+        int[] count = (int[])pins.get(quoteBundle);
+
+        if(count != null && --count[0] == 0)
+            pins.remove(quoteBundle);
+    }
+
+    /**
+     * Return the percentage of quote bundle loads that didn't need to load
+     * any quotes from the quote source.
+     *
+     * @return hit rate between 0 and 100
+     */
+    public synchronized double getHitRate() {
+        if(hits + misses == 0)
+            return 0.0D;
+        else
+            return 100.0D * hits / (hits + misses);
+    }
+
+    /**
+     * Return the number of quote bundles freed to make room for other
+     * quote bundles.
+     *
+     * @return number of evictions
+     */
+    public synchronized int getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Return the number of freed quote bundles that were loaded again.
+     *
+     * @return number of reloads
+     */
+    public synchronized int getReloads() {
+        return reloads;
+    }
+
+    // Add the quote bundle to the list of loaded quote bundles
+    private void add(EODQuoteBundle quoteBundle) {
+        loadedQuoteBundles.add(quoteBundle);
+        usages.put(quoteBundle, new Usage(++clock));
+
+        if(freedQuoteBundles.remove(quoteBundle) != null)
+            reloads++;
+    }
+
+    // Record that the quote bundle was just used
+    private void touch(EODQuoteBundle quoteBundle) {
+        Usage usage = (Usage)usages.get(quoteBundle);
+        usage.lastUsed = ++clock;
+    }
+
+    // Count the quote bundle as a user of each of its quotes. If the quote
+    // bundle was expanded, its quotes in the previous quote range have
+    // already been counted.
+    private void reference(EODQuoteBundle quoteBundle, EODQuoteRange previousQuoteRange,
+                           int previousFirstOffset, int previousLastOffset) {
+        // Loading the quotes may have inserted newer dates
+        int shift = alignReferenceCounts();
+        previousFirstOffset -= shift;
+        previousLastOffset -= shift;
+
+        EODQuoteRange quoteRange = quoteBundle.getQuoteRange();
+        Usage usage = (Usage)usages.get(quoteBundle);
+        int firstDateOffset = quoteBundle.getFirstOffset();
+        int lastDateOffset = quoteBundle.getLastOffset();
+
+        for(int dateOffset = firstDateOffset; dateOffset <= lastDateOffset; dateOffset++) {
+            List symbols = getSymbols(quoteRange, dateOffset);
+
+            for(Iterator iterator = symbols.iterator(); iterator.hasNext();) {
+                Symbol symbol = (Symbol)iterator.next();
+
+                if(previousQuoteRange != null &&
+                   dateOffset >= previousFirstOffset && dateOffset <= previousLastOffset &&
+                   previousQuoteRange.containsSymbol(symbol))
+                    continue;
+
+                int[] counts = getReferenceCounts(symbol, dateOffset);
+
+                // If no quote bundle has counted this quote yet, the quote
+                // has just been loaded. Other quote bundles loaded earlier may
+                // still contain it, so count them all.
+                if(counts[-dateOffset] == 0)
+                    counts[-dateOffset] = countQuoteBundles(symbol, dateOffset);
+                else
+                    counts[-dateOffset]++;
+
+                usage.size++;
+            }
+        }
     }
 
     /**
@@ -178,49 +417,121 @@ public class EODQuoteBundleCache {
      * @param quoteBundle       the quote bundle to free
      */
     private void free(EODQuoteBundle quoteBundle) {
-	// Now traverse each quote in bundle, check to see if its used by any other
-	// bundle. If not, then free.
+        alignReferenceCounts();
+
+	// Now traverse each quote in bundle. If no other bundle uses it,
+        // then free.
+        EODQuoteRange quoteRange = quoteBundle.getQuoteRange();
 	int firstDateOffset = quoteBundle.getFirstOffset();
 	int lastDateOffset = quoteBundle.getLastOffset();
 
 	for(int dateOffset = firstDateOffset; dateOffset <= lastDateOffset; dateOffset++) {
 
-	    List symbols = quoteBundle.getSymbols(dateOffset);
+	    List symbols = getSymbols(quoteRange, dateOffset);
 	    Iterator iterator = symbols.iterator();
 
 	    while(iterator.hasNext()) {	    
 		Symbol symbol = (Symbol)iterator.next();
+                int[] counts = (int[])referenceCounts.get(symbol);
+
+                if(counts != null && -dateOffset < counts.length &&
+                   counts[-dateOffset] > 1)
+                    counts[-dateOffset]--;
+                else {
+                    if(counts != null && -dateOffset < counts.length)
+                        counts[-dateOffset] = 0;
 
-		if(!isQuoteUsedElsewhere(symbol, dateOffset))
 		    quoteCache.free(symbol, dateOffset);
+                }
 	    }
 	}
 
-	// Finally remove from list of loaded quote bundles. We can't do this
-        // earlier because when we call getSymbols() on the QuoteBundle it
-        // will check to make sure its loaded. If we removed it earlier, it
-        // would then request to be loaded again! 
 	loadedQuoteBundles.remove(quoteBundle);
+        usages.remove(quoteBundle);
     }
 
-    // Checks all loaded quote bundles (except the first one!) to see whether
-    // it contains the given symbol quote on the given date. The first one isn't
-    // checked since that is the one that is about to be free'd and will always
-    // contain the given quote.
-    private boolean isQuoteUsedElsewhere(Symbol symbol, int dateOffset) {
-	Iterator iterator = loadedQuoteBundles.iterator();
+    // Returns the symbols in the quote range which have a quote in the cache
+    // on the given date.
+    private List getSymbols(EODQuoteRange quoteRange, int dateOffset) {
+        List symbols;
 
-        // Don't check first quote bundle.
-        if(iterator.hasNext())
-            iterator.next();
+        if(quoteRange.getType() == EODQuoteRange.GIVEN_SYMBOLS) {
+            symbols = new ArrayList();
 
-	while(iterator.hasNext()) {
-	    EODQuoteBundle quoteBundle = (EODQuoteBundle)iterator.next();
+            for(Iterator iterator = quoteRange.getAllSymbols().iterator(); iterator.hasNext();) {
+                Symbol symbol = (Symbol)iterator.next();
 
-	    if(quoteBundle.containsQuote(symbol, dateOffset))
-		return true;
-	}
+                if(quoteCache.containsQuote(symbol, dateOffset))
+                    symbols.add(symbol);
+            }
+        }
+        else {
+            symbols = quoteCache.getSymbols(dateOffset);
+
+            if(quoteRange.getType() != EODQuoteRange.ALL_SYMBOLS)
+                for(Iterator iterator = symbols.iterator(); iterator.hasNext();)
+                    if(!quoteRange.containsSymbol((Symbol)iterator.next()))
+                        iterator.remove();
+        }
+
+        return symbols;
+    }
+
+    // Inserting newer dates into the quote cache shifts the date offsets of
+    // every quote, so shift the reference counts to match. Returns the
+    // number of dates inserted since the counts were last lined up.
+    private int alignReferenceCounts() {
+        int shift = quoteCache.getInsertedDateCount() - insertedDateCount;
+
+        if(shift != 0) {
+            for(Iterator iterator = referenceCounts.entrySet().iterator(); iterator.hasNext();) {
+                Map.Entry entry = (Map.Entry)iterator.next();
+                int[] counts = (int[])entry.getValue();
+                int[] newCounts = new int[counts.length + shift];
+
+                System.arraycopy(counts, 0, newCounts, shift, counts.length);
+                entry.setValue(newCounts);
+            }
+
+            insertedDateCount += shift;
+        }
+
+        return shift;
+    }
+
+    // Returns the reference counts of the given symbol, making sure there
+    // is room for a count at the given date.
+    private int[] getReferenceCounts(Symbol symbol, int dateOffset) {
+        int[] counts = (int[])referenceCounts.get(symbol);
+
+        if(counts == null || -dateOffset >= counts.length) {
+            int length = Math.max(-dateOffset + 1, counts == null ? 0 : counts.length * 2);
+            int[] newCounts = new int[length];
+
+            if(counts != null)
+                System.arraycopy(counts, 0, newCounts, 0, counts.length);
+
+            counts = newCounts;
+            referenceCounts.put(symbol, counts);
+        }
+
+        return counts;
+    }
+
+    // Returns the number of loaded quote bundles that contain the given quote
+    private int countQuoteBundles(Symbol symbol, int dateOffset) {
+        int count = 0;
+
+        synchronized(loadedQuoteBundles) {
+            for(Iterator iterator = loadedQuoteBundles.iterator(); iterator.hasNext();) {
+                EODQuoteBundle quoteBundle = (EODQuoteBundle)iterator.next();
+
+                if(quoteBundle.containsQuote(symbol, dateOffset))
+                    count++;
+            }
+        }
 
-	return false;
+        assert count > 0;
+        return count;
     }
 }
@@ -19,11 +19,13 @@
 package nz.org.venice.quote;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.prefs.PreferencesManager;
 import nz.org.venice.util.TradingDate;
 import nz.org.venice.util.TradingTime;
@@ -47,6 +49,17 @@ import nz.org.venice.util.TradingDateComparator;
  * (i.e. not a weekend) has offset -1, the previous one to that -2 etc.
  * You can convert to and from fast access dates using {@link #dateToOffset} and
  * {@link #offsetToDate}.
+ * <p>
+ * The quotes themselves are kept in an {@link EODQuoteCacheStorage}. By default
+ * quotes are kept in a hashmap per trading day, but the user can select a
+ * columnar storage which keeps dense arrays of quotes per symbol. The columnar
+ * storage uses far less memory when a lot of quotes are cached.
+ * <p>
+ * Many analyser threads read quotes from the cache at the same time, so reading
+ * never takes a lock. Only loading and freeing quotes, and adding dates, lock the
+ * cache. The dates are kept in an array which is never modified once it has been
+ * published. Adding dates publishes a new copy of the array, so a reader always
+ * sees a consistent set of dates. The storages publish their quotes in the same way.
  *
  * @author Andrew Leppard
  * @see EODQuote
@@ -54,15 +67,21 @@ import nz.org.venice.util.TradingDateComparator;
  * @see EODQuoteBundleCache
  */
 public class EODQuoteCache {
-    // Cache is organised by a list of hashmaps, each hashmap
-    // corresponds to a trading day. The hashmap's keys are stock symbols.
-    private List cache;
+    // Storage of the quotes in the cache. The storage is organised by
+    // symbol and fast access date offset.
+    private EODQuoteCacheStorage storage;
 
-    // Keep list of dates in cache
-    private List dates;
+    // Dates in the cache, the newest date first. The array is never modified
+    // after it has been published, instead a new array is published when
+    // dates are added.
+    private volatile TradingDate[] dates;
 
     // Number of quotes in cache
-    private int size = 0;
+    private volatile int size = 0;
+
+    // Number of dates inserted that were newer than every date in the
+    // cache. Each insert shifts the fast access date offsets.
+    private volatile int insertedDateCount = 0;
 
     // When the cache was instantiated. 
     private TradingTime instanceTimeStamp;
@@ -71,84 +90,35 @@ public class EODQuoteCache {
     //Practically earliest that new EOD date would be available.
     private static int expiryTime = 60 * 60 * 8; 
 
-    // Singleton instance of this class
-    private static EODQuoteCache instance = null;
+    // Don't check whether the cache has expired more than once a second.
+    // Checking reads the preferences, which is much too slow to do on
+    // every quote access.
+    private final static long EXPIRY_CHECK_INTERVAL = 1000;
 
-    /**
-     * This class is used to store quotes in the quote cache. We do not use
-     * {@link EODQuote} directly because it would take more space.
-     *
-     * This class provides a more compact representation because it does not
-     * store the {@link Symbol} or {@link TradingDate} as this information
-     * would be redundant here. It also further saves space by storing quote values
-     * as <code>float</code>s instead of <code>double</code>s.
-     */
-    private class EODQuoteCacheQuote {
-        // Floats have more than enough precision to hold quotes. So we
-        // store them as floats rather than doubles to reduce memory.
-        public long day_volume;
-        public float day_low;
-        public float day_high;
-        public float day_open;
-        public float day_close;
-
-        public EODQuoteCacheQuote(long day_volume, float day_low, float day_high,
-                                  float day_open, float day_close) {
-            this.day_volume = day_volume;
-            this.day_low = day_low;
-            this.day_high = day_high;
-            this.day_open = day_open;
-            this.day_close = day_close;
-        }
-
-        public double getQuote(int quote) {
-            switch(quote) {
-            case(Quote.DAY_OPEN):
-                return (double)day_open;
-            case(Quote.DAY_CLOSE):
-                return (double)day_close;
-            case(Quote.DAY_LOW):
-                return (double)day_low;
-            case(Quote.DAY_HIGH):
-                return (double)day_high;
-            case(Quote.DAY_VOLUME):
-                return (double)day_volume;
-            default:
-                assert false;
-                return 0.0D;
-            }
-        }
+    // System time after which we need to check whether the cache has expired
+    private static volatile long nextExpiryCheck = 0;
 
-        public EODQuote toQuote(Symbol symbol, TradingDate date) {
-            return new EODQuote(symbol,
-                                date,
-                                day_volume,
-                                (double)day_low,
-                                (double)day_high,
-                                (double)day_open,
-                                (double)day_close);
-        }
+    // Comparator for searching the dates, which are sorted newest first
+    private final static TradingDateComparator comparator =
+        new TradingDateComparator(TradingDateComparator.BACKWARDS);
 
-        public boolean equals(long day_volume, float day_low, float day_high,
-                              float day_open, float day_close) {
-            return (day_volume == this.day_volume &&
-                    day_low == this.day_low &&
-                    day_high == this.day_high &&
-                    day_open == this.day_open &&
-                    day_close == this.day_close);
-        }
-    }
+    // Singleton instance of this class
+    private static volatile EODQuoteCache instance = null;
 
     // Class should only be constructed once by this class
     private EODQuoteCache() {
-        cache = new ArrayList();
-        dates = new ArrayList();	
+        if(PreferencesManager.getColumnarQuoteCacheEnabled())
+            storage = new ColumnarEODQuoteCacheStorage();
+        else
+            storage = new HashEODQuoteCacheStorage();
+
+        dates = new TradingDate[0];
 	instanceTimeStamp = new TradingTime();
 
         TradingDate lastDate = QuoteSourceManager.getSource().getLastDate();
 
         if(lastDate != null)
-            addDate(lastDate);
+            expandToDate(lastDate);
     }
 
     /**
@@ -156,7 +126,19 @@ public class EODQuoteCache {
      *
      * @return  singleton instance of this class
      */
-    public static synchronized EODQuoteCache getInstance() {
+    public static EODQuoteCache getInstance() {
+        // Fast path taken by almost every call. Don't lock unless the
+        // cache needs creating or it is time to check for expiry.
+        EODQuoteCache cache = instance;
+
+        if(cache != null && System.currentTimeMillis() < nextExpiryCheck)
+            return cache;
+        else
+            return getInstanceChecked();
+    }
+
+    // Create the singleton instance or check whether it has expired
+    private static synchronized EODQuoteCache getInstanceChecked() {
 	if(instance == null) {
 	    instance = new EODQuoteCache();
 	} else {		
@@ -173,6 +155,7 @@ public class EODQuoteCache {
 		}
 	    }
 	}
+        nextExpiryCheck = System.currentTimeMillis() + EXPIRY_CHECK_INTERVAL;
         return instance;
     }
 
@@ -180,6 +163,7 @@ public class EODQuoteCache {
 	instance = new EODQuoteCache();				
 	EODQuoteBundleCache.expire();
 	QuoteSourceManager.getSource().cacheExpiry();
+	ExpressionCache.getInstance().clear();
     }
 
     /**
@@ -209,13 +193,10 @@ public class EODQuoteCache {
     public double getQuote(Symbol symbol, int quoteType, int dateOffset)
 	throws QuoteNotLoadedException {
 
-	// Get the quote cache quote for the given symbol + date
-	EODQuoteCacheQuote quote = getQuoteCacheQuote(symbol, dateOffset);
-
-	if(quote != null)
-            return quote.getQuote(quoteType);
-        else
+	if(dateOffset <= -dates.length)
 	    throw QuoteNotLoadedException.getInstance();
+
+        return storage.getQuote(symbol, quoteType, dateOffset);
     }
 
 
@@ -230,13 +211,10 @@ public class EODQuoteCache {
     public EODQuote getQuote(Symbol symbol, int dateOffset)
 	throws QuoteNotLoadedException {
 
-	// Get the quote cache quote for the given symbol + date
-	EODQuoteCacheQuote quote = getQuoteCacheQuote(symbol, dateOffset);
-
-	if(quote != null)
-            return quote.toQuote(symbol, offsetToDate(dateOffset));
-        else
+	if(dateOffset <= -dates.length)
 	    throw QuoteNotLoadedException.getInstance();
+
+        return storage.getQuote(symbol, offsetToDate(dateOffset), dateOffset);
     }
 
     /**
@@ -246,17 +224,7 @@ public class EODQuoteCache {
      * @return list of symbols
      */
     public List getSymbols(int dateOffset) {
-        HashMap quotesForDate;
-
-	try {
-	    quotesForDate = getQuotesForDate(dateOffset);
-	}
-	catch(QuoteNotLoadedException e) {
-	    // no symbols loaded on date
-	    quotesForDate = new HashMap(0);
-	}
-	
-	return new ArrayList(quotesForDate.keySet());
+        return getSymbols(dateOffset, dateOffset);
     }
 
     /**
@@ -268,23 +236,18 @@ public class EODQuoteCache {
      * @return list of symbols
      */
     public List getSymbols(int firstDateOffset, int lastDateOffset) {
-        HashMap allSymbols = new HashMap();
-
-        // Go through each day, collecting symbols. We put them all in
-        // a hashmap to quickly weed out the numerous duplicates. We
-        // don't call getSymbols() for each day because unrolling the
-        // call is much, much faster.
-        for(int dateOffset = firstDateOffset; dateOffset <= lastDateOffset; dateOffset++) {
-            try {
-                HashMap todaySymbols = getQuotesForDate(dateOffset);
-                allSymbols.putAll(todaySymbols);
-            }
-            catch(QuoteNotLoadedException e) {
-                // no symbols loaded on date
-            }
-        }
+        // Collect the symbols in a set to quickly weed out the numerous
+        // duplicates.
+        Set allSymbols = new HashSet();
 
-        return new ArrayList(allSymbols.keySet());
+        // Clip the range to the dates in the cache
+        firstDateOffset = Math.max(firstDateOffset, getFirstDateOffset());
+        lastDateOffset = Math.min(lastDateOffset, 0);
+
+        if(firstDateOffset <= lastDateOffset)
+            storage.addSymbols(allSymbols, firstDateOffset, lastDateOffset);
+
+        return new ArrayList(allSymbols);
     }
 
     /**
@@ -297,45 +260,7 @@ public class EODQuoteCache {
     public boolean containsQuote(Symbol symbol, int dateOffset) {
 	assert dateOffset <= 0;
 
-	if(dateOffset > -dates.size()) {
-            HashMap symbols = (HashMap)cache.get(-dateOffset);
-
-            if(symbols != null) {
-                EODQuoteCacheQuote quote = (EODQuoteCacheQuote)symbols.get(symbol);
-                if (quote != null)
-                    return true;
-            }
-        }
-        return false;
-    }
-
-    // Returns the quote cache object for the given date
-    private EODQuoteCacheQuote getQuoteCacheQuote(Symbol symbol, int dateOffset)
-        throws QuoteNotLoadedException {
-
-	// First get the hash map for the given date
-	HashMap symbols = getQuotesForDate(dateOffset);
-	assert symbols != null;
-
-	// Second get the quote for the given symbol on the given date
-	return  (EODQuoteCacheQuote)symbols.get(symbol);
-    }
-
-    // Returns a HashMap containing quotes for that date
-    private HashMap getQuotesForDate(int dateOffset)
-	throws QuoteNotLoadedException {
-
-	assert dateOffset <= 0;
-
-	if(dateOffset <= -dates.size())
-	    throw QuoteNotLoadedException.getInstance();
-	
-	HashMap quotesForDate = (HashMap)cache.get(-dateOffset);
-
-	if(quotesForDate == null)
-	    throw QuoteNotLoadedException.getInstance();
-
-	return quotesForDate;
+	return (dateOffset > -dates.length && storage.containsQuote(symbol, dateOffset));
     }
 
     /**
@@ -377,47 +302,76 @@ public class EODQuoteCache {
             return;
         }
 
-        // Get hash of quotes for that date
-        HashMap quotesForDate;
+        // If the quote wasn't already there then increase size counter
+        if(storage.load(symbol, dateOffset, day_volume, day_low, day_high,
+                        day_open, day_close))
+            size++;
+    }
 
-        try {
-            quotesForDate = getQuotesForDate(dateOffset);
-        }
-        catch(QuoteNotLoadedException e) {
-            // The dateToOffset() call above should have expanded
-            // the quote range so this shouldn't happen
-            assert false;
+    /**
+     * Load a run of quotes for the given symbol into the cache. This is
+     * faster than loading each quote individually as the caller has
+     * already converted the dates to fast access date offsets and the
+     * cache is only locked once. Quotes with a positive date offset
+     * (i.e. weekend dates) are skipped.
+     *
+     * @param symbol      symbol of the quotes
+     * @param dateOffsets fast access date offsets of the quotes
+     * @param day_volume  day volumes
+     * @param day_low     day lows
+     * @param day_high    day highs
+     * @param day_open    day opens
+     * @param day_close   day closes
+     * @param count       number of quotes to load from the arrays
+     */
+    public synchronized void load(Symbol symbol, int[] dateOffsets, long[] day_volume,
+                                  float[] day_low, float[] day_high, float[] day_open,
+                                  float[] day_close, int count) {
+        for(int i = 0; i < count; i++) {
+            int dateOffset = dateOffsets[i];
 
-            quotesForDate = new HashMap(0);
-        }
+            assert dateOffset > -dates.length;
 
-        // Lots of stocks don't change between days, so check to see if
-        // this stock's quote is identical to yesterdays. If so then
-        // just use that
-        EODQuoteCacheQuote yesterdayQuote = null;
-        EODQuoteCacheQuote todayQuote = null;
+            if(dateOffset > 0)
+                continue;
 
-        try {
-            yesterdayQuote = getQuoteCacheQuote(symbol, dateOffset - 1);
-        }
-        catch(QuoteNotLoadedException e) {
-            // OK
+            if(storage.load(symbol, dateOffset, day_volume[i], day_low[i], day_high[i],
+                            day_open[i], day_close[i]))
+                size++;
         }
+    }
 
-        if(yesterdayQuote != null &&
-           yesterdayQuote.equals(day_volume, day_low, day_high, day_open, day_close))
-            todayQuote = yesterdayQuote;
-        else
-            todayQuote = new EODQuoteCacheQuote(day_volume, day_low, day_high,
-                                                day_open, day_close);
+    /**
+     * Load a batch of quotes into the cache. Like the batch load of a single
+     * symbol, the caller has already converted the dates to fast access
+     * date offsets and the cache is only locked once, but each quote
+     * can be for a different symbol. Quotes with a positive date offset
+     * (i.e. weekend dates) are skipped.
+     *
+     * @param symbols     symbols of the quotes
+     * @param dateOffsets fast access date offsets of the quotes
+     * @param day_volume  day volumes
+     * @param day_low     day lows
+     * @param day_high    day highs
+     * @param day_open    day opens
+     * @param day_close   day closes
+     * @param count       number of quotes to load from the arrays
+     */
+    public synchronized void load(Symbol[] symbols, int[] dateOffsets, long[] day_volume,
+                                  float[] day_low, float[] day_high, float[] day_open,
+                                  float[] day_close, int count) {
+        for(int i = 0; i < count; i++) {
+            int dateOffset = dateOffsets[i];
 
-        // Put stock in map and remove symbol and date to reduce memory
-        // (they are our indices so we already know them)
-        Object previousQuote = quotesForDate.put(symbol, todayQuote);
+            assert dateOffset > -dates.length;
 
-        // If the quote wasn't already there then increase size counter
-        if(previousQuote == null) 
-            size++;
+            if(dateOffset > 0)
+                continue;
+
+            if(storage.load(symbols[i], dateOffset, day_volume[i], day_low[i], day_high[i],
+                            day_open[i], day_close[i]))
+                size++;
+        }
     }
 
     /**
@@ -427,33 +381,20 @@ public class EODQuoteCache {
      * @param dateOffset the fast access date offset of the quote to remove
      */
     public synchronized void free(Symbol symbol, int dateOffset) {
-	try {
-	    HashMap quotesForDate = getQuotesForDate(dateOffset);
-	    Object quote = quotesForDate.remove(symbol);
-
-	    // If we actually deleted a quote, then reduce our quote counter.
-	    // We have to check that we actually did remove something from
-	    // the cache, so that our size count is correct. Its OK for the caller
-            // to try to delete a quote that's not in the cache - if it wasn't
-            // then the quote bundles would have to keep track of holidays etc...
-	    if(quote != null) {
-		size--;
-
-                // If the hashmap is empty then resize it to the minimum size.
-                // Otherwise we may have 1,000s of large hash maps taking up
-                // a *LOT* of memory.
-                if(quotesForDate.isEmpty())
-                    cache.set(-dateOffset, new HashMap());
-            }
-
-	    assert size >= 0;
-	}
-	catch(QuoteNotLoadedException e) {
-	    // This means we've never had any quotes on the given date that
-	    // the caller was trying to free. This sounds like something
-	    // wonky is going on.
-	    assert false;
-	}
+	// If the date isn't in the cache it means we've never had any quotes
+	// on the given date that the caller was trying to free. This sounds
+	// like something wonky is going on.
+	assert dateOffset <= 0 && dateOffset > -dates.length;
+
+	// If we actually deleted a quote, then reduce our quote counter.
+	// We have to check that we actually did remove something from
+	// the cache, so that our size count is correct. Its OK for the caller
+	// to try to delete a quote that's not in the cache - if it wasn't
+	// then the quote bundles would have to keep track of holidays etc...
+	if(dateOffset > -dates.length && storage.free(symbol, dateOffset))
+	    size--;
+
+	assert size >= 0;
     }
 
     /**
@@ -467,19 +408,17 @@ public class EODQuoteCache {
     public int dateToOffset(TradingDate date)
 	throws WeekendDateException {
 
-        TradingDateComparator comparator =
-            new TradingDateComparator(TradingDateComparator.BACKWARDS);
-
-	int dateOffset = -Collections.binarySearch(dates, date, comparator);
+        TradingDate[] dates = this.dates;
+	int dateOffset = -Arrays.binarySearch(dates, date, comparator);
 
 	// If the date isn't yet in the cache because its too old, then binary search
 	// will return the negative size of dates.
         // If the date isn't yet in the cache because its too new, then binary search
         // will return 1.
         // In either case expand the cache.
-	if(dateOffset > dates.size() || dateOffset == 1) {
-	    expandToDate(date);
-	    dateOffset = -Collections.binarySearch(dates, date, comparator);
+	if(dateOffset > dates.length || dateOffset == 1) {
+	    dates = expandToDate(date);
+	    dateOffset = -Arrays.binarySearch(dates, date, comparator);
 	}
 
 	// Only possible reason date isn't in cache now is because it falls
@@ -499,13 +438,13 @@ public class EODQuoteCache {
     public TradingDate offsetToDate(int dateOffset) {
 	assert dateOffset <= 0;
 
+        TradingDate[] dates = this.dates;
+
 	// If the date isn't in the cache then expand it
-	while(dateOffset <= -dates.size()) {
-	    TradingDate date = getFirstDate().previous(1);
-	    addDate(date);
-	}
+	if(dateOffset <= -dates.length)
+            dates = expandToOffset(dateOffset);
 
-	return (TradingDate)dates.get(-dateOffset);
+	return dates[-dateOffset];
     }
 
     /**
@@ -517,14 +456,29 @@ public class EODQuoteCache {
 	return size;
     }
 
+    /**
+     * Return the number of dates that have been inserted into the cache
+     * that were newer than every other date in the cache. Inserting a
+     * newer date shifts the fast access date offsets of all the existing
+     * dates back by one, so anything that keeps date offsets can compare
+     * this count to find out whether its offsets are still valid.
+     *
+     * @return the number of newer dates inserted
+     */
+    public int getInsertedDateCount() {
+        return insertedDateCount;
+    }
+
     /**
      * Get the oldest date in the cache.
      *
      * @return the oldest date in cache or <code>null</code> if the cache is empty.
      */
     public TradingDate getFirstDate() {
-        if(dates.size() > 0)
-            return (TradingDate)dates.get(dates.size() - 1);
+        TradingDate[] dates = this.dates;
+
+        if(dates.length > 0)
+            return dates[dates.length - 1];
         else
             return null;
     }
@@ -535,8 +489,10 @@ public class EODQuoteCache {
      * @return the newest date in cache or <code>null</code> if the cache is empty.
      */
     public TradingDate getLastDate() {
-        if(dates.size() > 0)
-            return (TradingDate)dates.get(0);
+        TradingDate[] dates = this.dates;
+
+        if(dates.length > 0)
+            return dates[0];
         else
             return null;
     }
@@ -548,51 +504,53 @@ public class EODQuoteCache {
      *         are no dates in the cache.
      */
     public int getFirstDateOffset() {
-        return -(dates.size() - 1);
+        return -(dates.length - 1);
     }
 
-    // Add one date to cache. The date should be one trading day older than the
-    // oldest date in the cache.
-    private void addDate(TradingDate date) {
-	// Create a map with 0 initial capacity. I.e. we create an empty one
-	// because we might not even use it
-	HashMap map = new HashMap(0);
-	cache.add(map);
-	dates.add(date);	
-    }
+    // Expand the quote cache so that it covers the given fast access date
+    // offset. Returns the expanded dates.
+    private synchronized TradingDate[] expandToOffset(int dateOffset) {
+        // Another thread may have already expanded the cache
+        if(dateOffset > -dates.length)
+            return dates;
+
+        List olderDates = new ArrayList();
+        TradingDate firstDate = getFirstDate();
+
+        for(int i = dates.length; i <= -dateOffset; i++) {
+            firstDate = firstDate.previous(1);
+            olderDates.add(firstDate);
+        }
 
-    // This function is used to insert a date into the cache that is newer
-    // (i.e. more recent) than any other dates in the cache. It's pretty
-    // slow as it needs to shift two arrays but it's only used for import
-    // so it doesn't matter
-    private void insertDate(TradingDate date) {
-	// Create a map with 0 initial capacity. I.e. we create an empty one
-	// because we might not even use it
-	HashMap map = new HashMap(0);
-	cache.add(0, map);
-	dates.add(0, date);
+        addDates(olderDates);
+        return dates;
     }
 
-    // Expand the quote cache to encompass the given date
-    private void expandToDate(TradingDate date) {
+    // Expand the quote cache to encompass the given date. Returns the
+    // expanded dates.
+    private synchronized TradingDate[] expandToDate(TradingDate date) {
 
         assert date != null;
 
         TradingDate firstDate = getFirstDate();
         TradingDate lastDate = getLastDate();
+        List newDates = new ArrayList();
 
         // There are four cases to consider, first there are no dates
         // in the cache
-        if(firstDate == null)
-            addDate(date);
+        if(firstDate == null) {
+            newDates.add(date);
+            addDates(newDates);
+        }
 
         // Second is that the new date to add is before the first date
         // in our cache. This is common and we can handle this quickly
         else if(date.before(firstDate)) {
             while(date.before(firstDate)) {
                 firstDate = firstDate.previous(1);
-                addDate(firstDate);
+                newDates.add(firstDate);
             }
+            addDates(newDates);
         }
 
         // The third case is that this date is newer than our newest
@@ -601,12 +559,52 @@ public class EODQuoteCache {
         else if(date.after(lastDate)) {
             while(date.after(lastDate)) {
                 lastDate = lastDate.next(1);
-                insertDate(lastDate);
+                newDates.add(lastDate);
             }
+            insertDates(newDates);
         }
 
         // The remaining case is the date is already in our range...
+        return dates;
     }
-}
 
+    // Add dates to the cache. Each date should be one trading day older
+    // than the date before it, and the first should be one trading day
+    // older than the oldest date in the cache.
+    private void addDates(List olderDates) {
+        TradingDate[] newDates = new TradingDate[dates.length + olderDates.size()];
+
+        System.arraycopy(dates, 0, newDates, 0, dates.length);
+
+        for(int i = 0; i < olderDates.size(); i++) {
+            storage.addDate();
+            newDates[dates.length + i] = (TradingDate)olderDates.get(i);
+        }
+
+        // Publish the dates only once the storage covers them
+        dates = newDates;
+    }
+
+    // This function is used to insert dates into the cache that are newer
+    // (i.e. more recent) than any other dates in the cache. Each date should
+    // be one trading day newer than the date before it. Inserting dates
+    // shifts the fast access date offsets of all the quotes, so readers
+    // holding an offset will see the wrong quotes. This is only used by
+    // import so it doesn't matter, but the quote bundles and the quote
+    // bundle cache adjust their offsets, see getInsertedDateCount().
+    private void insertDates(List newerDates) {
+        int count = newerDates.size();
+        TradingDate[] newDates = new TradingDate[dates.length + count];
+
+        System.arraycopy(dates, 0, newDates, count, dates.length);
+
+        for(int i = 0; i < count; i++) {
+            storage.insertDate();
+            newDates[count - i - 1] = (TradingDate)newerDates.get(i);
+        }
+
+        dates = newDates;
+        insertedDateCount += count;
+    }
+}
 
@@ -0,0 +1,127 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.util.Set;
+
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Defines how the {@link EODQuoteCache} physically stores its quotes. The
+ * quote cache itself keeps track of the dates it covers and the number of
+ * quotes it holds, while the storage keeps the quote values for each
+ * symbol and fast access date offset.
+ * <p>
+ * The storage is told whenever the quote cache grows to include an older
+ * date (see {@link #addDate}) or a newer date (see {@link #insertDate}).
+ * Newer dates shift the fast access date offsets of all the existing dates
+ * back by one.
+ * <p>
+ * The quote cache only writes to the storage on one thread at a time, but
+ * any number of threads may read from the storage while it is being written.
+ * Readers do not lock, so a storage must publish its writes such that a reader
+ * either sees the whole quote or no quote at all.
+ *
+ * @see EODQuoteCache
+ * @see HashEODQuoteCacheStorage
+ * @see ColumnarEODQuoteCacheStorage
+ */
+interface EODQuoteCacheStorage {
+
+    /**
+     * Get a quote value.
+     *
+     * @param symbol    the symbol
+     * @param quoteType the quote type, one of {@link Quote#DAY_OPEN}, {@link Quote#DAY_CLOSE},
+     *                  {@link Quote#DAY_LOW}, {@link Quote#DAY_HIGH}, {@link Quote#DAY_VOLUME}
+     * @param dateOffset fast access date offset
+     * @return the quote value
+     * @exception QuoteNotLoadedException if the quote is not stored
+     */
+    public double getQuote(Symbol symbol, int quoteType, int dateOffset)
+        throws QuoteNotLoadedException;
+
+    /**
+     * Get a quote.
+     *
+     * @param symbol     the symbol
+     * @param date       the date of the fast access date offset
+     * @param dateOffset fast access date offset
+     * @return the quote
+     * @exception QuoteNotLoadedException if the quote is not stored
+     */
+    public EODQuote getQuote(Symbol symbol, TradingDate date, int dateOffset)
+        throws QuoteNotLoadedException;
+
+    /**
+     * Return whether a quote is stored for the given symbol and date.
+     *
+     * @param symbol     the symbol
+     * @param dateOffset fast access date offset
+     * @return <code>true</code> if the quote is stored
+     */
+    public boolean containsQuote(Symbol symbol, int dateOffset);
+
+    /**
+     * Add all the symbols that have a quote between the two dates (inclusive)
+     * to the given set.
+     *
+     * @param symbols         the set to add the symbols to
+     * @param firstDateOffset fast access offset of first date
+     * @param lastDateOffset  fast access offset of last date
+     */
+    public void addSymbols(Set symbols, int firstDateOffset, int lastDateOffset);
+
+    /**
+     * Store a quote, replacing any quote already stored for the symbol and date.
+     *
+     * @param symbol     the symbol
+     * @param dateOffset fast access date offset
+     * @param day_volume day volume
+     * @param day_low    day low
+     * @param day_high   day high
+     * @param day_open   day open
+     * @param day_close  day close
+     * @return <code>true</code> if there was no quote stored for the symbol and date
+     */
+    public boolean load(Symbol symbol, int dateOffset, long day_volume, float day_low,
+                        float day_high, float day_open, float day_close);
+
+    /**
+     * Remove a quote. It's OK if the quote isn't stored.
+     *
+     * @param symbol     the symbol
+     * @param dateOffset fast access date offset
+     * @return <code>true</code> if a quote was removed
+     */
+    public boolean free(Symbol symbol, int dateOffset);
+
+    /**
+     * Grow the storage to include a date one trading day older than the
+     * oldest date stored.
+     */
+    public void addDate();
+
+    /**
+     * Grow the storage to include a date one trading day newer than the
+     * newest date stored. All existing date offsets move back by one.
+     */
+    public void insertDate();
+}
@@ -0,0 +1,309 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import nz.org.venice.util.TradingDate;
+
+/**
+ * The original quote cache storage. Quotes are organised by a list of hashmaps,
+ * each hashmap corresponds to a trading day. The hashmap's keys are stock symbols.
+ * <p>
+ * This storage is cheap for caches that hold a small number of symbols over
+ * a small number of days. See {@link ColumnarEODQuoteCacheStorage} for a more
+ * compact storage for large caches.
+ * <p>
+ * The hashmaps are concurrent hashmaps so that readers never need to lock them.
+ * The array of hashmaps is copied when it grows, and the copy is only
+ * published once it is complete.
+ *
+ * @author Andrew Leppard
+ * @see EODQuoteCache
+ */
+class HashEODQuoteCacheStorage implements EODQuoteCacheStorage {
+
+    // Hashmaps, one per trading day, indexed by -dateOffset. Only the
+    // first dateCount entries are used, the rest is room to grow.
+    private volatile AtomicReferenceArray cache;
+
+    // Number of trading days in the storage
+    private int dateCount = 0;
+
+    // Minimum number of days to allocate room for
+    private final static int MINIMUM_CAPACITY = 16;
+
+    /**
+     * This class is used to store quotes in the quote cache. We do not use
+     * {@link EODQuote} directly because it would take more space.
+     *
+     * This class provides a more compact representation because it does not
+     * store the {@link Symbol} or {@link TradingDate} as this information
+     * would be redundant here. It also further saves space by storing quote values
+     * as <code>float</code>s instead of <code>double</code>s.
+     */
+    private class EODQuoteCacheQuote {
+        // Floats have more than enough precision to hold quotes. So we
+        // store them as floats rather than doubles to reduce memory.
+        public final long day_volume;
+        public final float day_low;
+        public final float day_high;
+        public final float day_open;
+        public final float day_close;
+
+        public EODQuoteCacheQuote(long day_volume, float day_low, float day_high,
+                                  float day_open, float day_close) {
+            this.day_volume = day_volume;
+            this.day_low = day_low;
+            this.day_high = day_high;
+            this.day_open = day_open;
+            this.day_close = day_close;
+        }
+
+        public double getQuote(int quote) {
+            switch(quote) {
+            case(Quote.DAY_OPEN):
+                return (double)day_open;
+            case(Quote.DAY_CLOSE):
+                return (double)day_close;
+            case(Quote.DAY_LOW):
+                return (double)day_low;
+            case(Quote.DAY_HIGH):
+                return (double)day_high;
+            case(Quote.DAY_VOLUME):
+                return (double)day_volume;
+            default:
+                assert false;
+                return 0.0D;
+            }
+        }
+
+        public EODQuote toQuote(Symbol symbol, TradingDate date) {
+            return new EODQuote(symbol,
+                                date,
+                                day_volume,
+                                (double)day_low,
+                                (double)day_high,
+                                (double)day_open,
+                                (double)day_close);
+        }
+
+        public boolean equals(long day_volume, float day_low, float day_high,
+                              float day_open, float day_close) {
+            return (day_volume == this.day_volume &&
+                    day_low == this.day_low &&
+                    day_high == this.day_high &&
+                    day_open == this.day_open &&
+                    day_close == this.day_close);
+        }
+    }
+
+    /**
+     * Create a new empty storage.
+     */
+    public HashEODQuoteCacheStorage() {
+        cache = new AtomicReferenceArray(MINIMUM_CAPACITY);
+    }
+
+    public double getQuote(Symbol symbol, int quoteType, int dateOffset)
+        throws QuoteNotLoadedException {
+
+        EODQuoteCacheQuote quote = getQuoteCacheQuote(symbol, dateOffset);
+
+        if(quote != null)
+            return quote.getQuote(quoteType);
+        else
+            throw QuoteNotLoadedException.getInstance();
+    }
+
+    public EODQuote getQuote(Symbol symbol, TradingDate date, int dateOffset)
+        throws QuoteNotLoadedException {
+
+        EODQuoteCacheQuote quote = getQuoteCacheQuote(symbol, dateOffset);
+
+        if(quote != null)
+            return quote.toQuote(symbol, date);
+        else
+            throw QuoteNotLoadedException.getInstance();
+    }
+
+    public boolean containsQuote(Symbol symbol, int dateOffset) {
+        assert dateOffset <= 0;
+
+        AtomicReferenceArray cache = this.cache;
+
+        if(dateOffset > -cache.length()) {
+            Map symbols = (Map)cache.get(-dateOffset);
+
+            if(symbols != null) {
+                EODQuoteCacheQuote quote = (EODQuoteCacheQuote)symbols.get(symbol);
+                if (quote != null)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    public void addSymbols(Set symbols, int firstDateOffset, int lastDateOffset) {
+        for(int dateOffset = firstDateOffset; dateOffset <= lastDateOffset; dateOffset++) {
+            try {
+                symbols.addAll(getQuotesForDate(dateOffset).keySet());
+            }
+            catch(QuoteNotLoadedException e) {
+                // no symbols loaded on date
+            }
+        }
+    }
+
+    public boolean load(Symbol symbol, int dateOffset, long day_volume, float day_low,
+                        float day_high, float day_open, float day_close) {
+        // Get hash of quotes for that date
+        Map quotesForDate;
+
+        try {
+            quotesForDate = getQuotesForDate(dateOffset);
+        }
+        catch(QuoteNotLoadedException e) {
+            // The quote cache should have expanded the quote range
+            // so this shouldn't happen
+            assert false;
+
+            return false;
+        }
+
+        // Lots of stocks don't change between days, so check to see if
+        // this stock's quote is identical to yesterdays. If so then
+        // just use that
+        EODQuoteCacheQuote yesterdayQuote = null;
+        EODQuoteCacheQuote todayQuote = null;
+
+        try {
+            yesterdayQuote = getQuoteCacheQuote(symbol, dateOffset - 1);
+        }
+        catch(QuoteNotLoadedException e) {
+            // OK
+        }
+
+        if(yesterdayQuote != null &&
+           yesterdayQuote.equals(day_volume, day_low, day_high, day_open, day_close))
+            todayQuote = yesterdayQuote;
+        else
+            todayQuote = new EODQuoteCacheQuote(day_volume, day_low, day_high,
+                                                day_open, day_close);
+
+        // Put stock in map and remove symbol and date to reduce memory
+        // (they are our indices so we already know them)
+        Object previousQuote = quotesForDate.put(symbol, todayQuote);
+
+        return previousQuote == null;
+    }
+
+    public boolean free(Symbol symbol, int dateOffset) {
+        try {
+            Map quotesForDate = getQuotesForDate(dateOffset);
+            Object quote = quotesForDate.remove(symbol);
+
+            // If the hashmap is empty then resize it to the minimum size.
+            // Otherwise we may have 1,000s of large hash maps taking up
+            // a *LOT* of memory.
+            if(quote != null && quotesForDate.isEmpty())
+                cache.set(-dateOffset, new ConcurrentHashMap());
+
+            return quote != null;
+        }
+        catch(QuoteNotLoadedException e) {
+            // This means we've never had any quotes on the given date that
+            // the caller was trying to free. This sounds like something
+            // wonky is going on.
+            assert false;
+            return false;
+        }
+    }
+
+    public void addDate() {
+        AtomicReferenceArray cache = this.cache;
+
+        // Grow the array if there's no room left. Readers can keep using
+        // the old array as the hashmaps are shared.
+        if(dateCount == cache.length()) {
+            cache = copy(cache, 0, cache.length() * 2);
+            this.cache = cache;
+        }
+
+        // Create a map with 0 initial capacity. I.e. we create an empty one
+        // because we might not even use it
+        cache.set(dateCount++, new ConcurrentHashMap(0));
+    }
+
+    public void insertDate() {
+        // It's pretty slow as it needs to copy the array but it's only used
+        // for import so it doesn't matter
+        AtomicReferenceArray cache = copy(this.cache, 1,
+                                          Math.max(this.cache.length(), dateCount + 1));
+        cache.set(0, new ConcurrentHashMap(0));
+        dateCount++;
+        this.cache = cache;
+    }
+
+    // Copy the used entries of the array into a new array of the given length,
+    // shifting the entries by the given amount.
+    private AtomicReferenceArray copy(AtomicReferenceArray cache, int shift, int length) {
+        AtomicReferenceArray copy = new AtomicReferenceArray(length);
+
+        for(int i = 0; i < dateCount; i++)
+            copy.set(i + shift, cache.get(i));
+
+        return copy;
+    }
+
+    // Returns the quote cache object for the given date
+    private EODQuoteCacheQuote getQuoteCacheQuote(Symbol symbol, int dateOffset)
+        throws QuoteNotLoadedException {
+
+        // First get the hash map for the given date
+        Map symbols = getQuotesForDate(dateOffset);
+        assert symbols != null;
+
+        // Second get the quote for the given symbol on the given date
+        return (EODQuoteCacheQuote)symbols.get(symbol);
+    }
+
+    // Returns a Map containing quotes for that date
+    private Map getQuotesForDate(int dateOffset)
+        throws QuoteNotLoadedException {
+
+        assert dateOffset <= 0;
+
+        AtomicReferenceArray cache = this.cache;
+
+        if(dateOffset <= -cache.length())
+            throw QuoteNotLoadedException.getInstance();
+
+        Map quotesForDate = (Map)cache.get(-dateOffset);
+
+        if(quotesForDate == null)
+            throw QuoteNotLoadedException.getInstance();
+
+        return quotesForDate;
+    }
+}
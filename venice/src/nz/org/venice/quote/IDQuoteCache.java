@@ -18,16 +18,20 @@
 
 package nz.org.venice.quote;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.EventListener;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.swing.event.EventListenerList;
 
+import nz.org.venice.prefs.PreferencesManager;
 import nz.org.venice.util.TradingDate;
 import nz.org.venice.util.TradingTime;
 
@@ -44,10 +48,16 @@ import nz.org.venice.util.TradingTime;
  * access time offset. The fast access time offset is used when lots of quotes have
  * to be queried as fast as possible.
  * <p>
- * The earliest time in the cache has an offset of 0. The next trading time has an
+ * The earliest time loaded into the cache has an offset of 0. The next trading time has an
  * offset of 1, the next 2, etc. This is different from the {@link EODQuoteCache} which
  * numbers the latest quote at 0. You can convert to and from fast access times
  * using {@link #timeToOffset} and {@link #offsetToTime}.
+ * <p>
+ * Only the most recent times are kept in memory, see
+ * {@link PreferencesManager#getIntraDayQuoteRetention}. Older quotes are either
+ * discarded or, if enabled, written to a spill file on disk. The offset of a time
+ * never changes, so {@link #getFirstTimeOffset} increases as old quotes are
+ * discarded.
  *
  * @author Andrew Leppard
  * @see IDQuote
@@ -55,12 +65,28 @@ import nz.org.venice.util.TradingTime;
  */
 public class IDQuoteCache {
 
-    // Cache is organised by a list of hashmaps, each hashmap
-    // corresponds to a trading time. The hashmap's keys are stock symbols.
-    private List cache;
+    // Initial number of quotes stored for each symbol
+    private final static int INITIAL_CAPACITY = 16;
+
+    // Maximum number of times kept in memory
+    private int retention;
+
+    // Time for each fast access time offset in memory. This is a ring
+    // buffer indexed by the offset modulo the retention.
+    private TradingTime[] times;
+
+    // Offset of the oldest time in memory
+    private int firstTimeOffset = 0;
 
-    // Time for each cache entry
-    private List times;
+    // Offset that will be given to the next time loaded
+    private int nextTimeOffset = 0;
+
+    // Quotes for each symbol. The keys are stock symbols and the
+    // values are IDQuoteCacheQuotes.
+    private HashMap quotes;
+
+    // Quotes pushed out of memory, or null if they are discarded
+    private IDQuoteSpillFile spillFile = null;
 
     // Date of all quotes in cache
     private TradingDate date;
@@ -72,86 +98,257 @@ public class IDQuoteCache {
     private EventListenerList quoteListeners;
 
     /**
-     * This class contains a single intra-day quote in the quote cache. We use
-     * this class over the {@link IDQuote} class because it uses less space.
-     * This is because due to the way the cache is organised, we do not need to
-     * store the date and time of each individual quote. We can also further
-     * save space by storing the quotes as floats rather than doubles.
+     * This class contains all the intra-day quotes of a single symbol in the
+     * quote cache. We use this class over a list of {@link IDQuote}s because
+     * it uses less space. The quotes are stored in a ring buffer of parallel
+     * arrays ordered by time, so there is no object per quote, and we don't
+     * need to store the symbol, date and time of each individual quote. We can
+     * also further save space by storing the quotes as floats rather than doubles.
      */
     private class IDQuoteCacheQuote {
-        public long day_volume;
-        public float day_low;
-        public float day_high;
-        public float day_open;
-        public float day_close;
-        public float bid;
-        public float ask;
-
-        public IDQuoteCacheQuote(long day_volume, 
-                                 float day_low, float day_high, float day_open, float day_close,
-                                 float bid, float ask) {
-            this.day_volume = day_volume;
-            this.day_low = day_low;
-            this.day_high = day_high;
-            this.day_open = day_open;
-            this.day_close = day_close;
-            this.bid = bid;
-            this.ask = ask;
+        private int[] timeOffsets;
+        private long[] day_volume;
+        private float[] day_low;
+        private float[] day_high;
+        private float[] day_open;
+        private float[] day_close;
+        private float[] bid;
+        private float[] ask;
+
+        // Index of oldest quote and number of quotes in the ring buffer
+        private int start = 0;
+        private int size = 0;
+
+        public IDQuoteCacheQuote() {
+            allocate(Math.min(INITIAL_CAPACITY, retention));
+        }
+
+        private void allocate(int capacity) {
+            timeOffsets = new int[capacity];
+            day_volume = new long[capacity];
+            day_low = new float[capacity];
+            day_high = new float[capacity];
+            day_open = new float[capacity];
+            day_close = new float[capacity];
+            bid = new float[capacity];
+            ask = new float[capacity];
+        }
+
+        // Unwrap the ring buffer into larger arrays
+        private void grow() {
+            int[] oldTimeOffsets = timeOffsets;
+            long[] oldDayVolume = day_volume;
+            float[] oldDayLow = day_low;
+            float[] oldDayHigh = day_high;
+            float[] oldDayOpen = day_open;
+            float[] oldDayClose = day_close;
+            float[] oldBid = bid;
+            float[] oldAsk = ask;
+
+            allocate(Math.min(oldTimeOffsets.length * 2, retention));
+
+            for(int i = 0; i < size; i++) {
+                int index = (start + i) % oldTimeOffsets.length;
+                timeOffsets[i] = oldTimeOffsets[index];
+                day_volume[i] = oldDayVolume[index];
+                day_low[i] = oldDayLow[index];
+                day_high[i] = oldDayHigh[index];
+                day_open[i] = oldDayOpen[index];
+                day_close[i] = oldDayClose[index];
+                bid[i] = oldBid[index];
+                ask[i] = oldAsk[index];
+            }
+
+            start = 0;
+        }
+
+        public void add(int timeOffset, long day_volume,
+                        float day_low, float day_high, float day_open, float day_close,
+                        float bid, float ask) {
+            int index;
+
+            // A symbol repeated in a time slice replaces the earlier quote
+            if(size > 0 && timeOffsets[getIndex(size - 1)] == timeOffset)
+                index = getIndex(size - 1);
+            else {
+                if(size == timeOffsets.length)
+                    grow();
+
+                index = getIndex(size++);
+            }
+
+            this.timeOffsets[index] = timeOffset;
+            this.day_volume[index] = day_volume;
+            this.day_low[index] = day_low;
+            this.day_high[index] = day_high;
+            this.day_open[index] = day_open;
+            this.day_close[index] = day_close;
+            this.bid[index] = bid;
+            this.ask[index] = ask;
+        }
+
+        /**
+         * Return whether the newest quote has the given values.
+         *
+         * @return <code>true</code> if there is a quote and it has the same values
+         */
+        public boolean equalsNewest(long day_volume, float day_low, float day_high,
+                                    float day_open, float day_close, float bid,
+                                    float ask) {
+            if(size == 0)
+                return false;
+
+            int index = getIndex(size - 1);
+
+            return (day_volume == this.day_volume[index] &&
+                    day_low == this.day_low[index] &&
+                    day_high == this.day_high[index] &&
+                    day_open == this.day_open[index] &&
+                    day_close == this.day_close[index] &&
+                    bid == this.bid[index] &&
+                    ask == this.ask[index]);
+        }
+
+        // Returns the index in the arrays of the nth oldest quote
+        private int getIndex(int n) {
+            return (start + n) % timeOffsets.length;
+        }
+
+        /**
+         * Return the index in the arrays of the quote at the given time.
+         *
+         * @param timeOffset fast access time offset
+         * @return the index or -1 if there is no quote at that time
+         */
+        public int find(int timeOffset) {
+            // Most lookups are of the latest quote
+            if(size > 0 && timeOffsets[getIndex(size - 1)] == timeOffset)
+                return getIndex(size - 1);
+
+            int low = 0;
+            int high = size - 1;
+
+            while(low <= high) {
+                int middle = (low + high) >>> 1;
+                int middleTimeOffset = timeOffsets[getIndex(middle)];
+
+                if(middleTimeOffset < timeOffset)
+                    low = middle + 1;
+                else if(middleTimeOffset > timeOffset)
+                    high = middle - 1;
+                else
+                    return getIndex(middle);
+            }
+
+            return -1;
         }
 
-        public double getQuote(int quote) {
+        /**
+         * Remove all quotes before the given time, writing them to the
+         * spill file if there is one.
+         *
+         * @param symbol     the symbol of these quotes
+         * @param timeOffset fast access time offset of the oldest quote to keep
+         */
+        public void removeBefore(Symbol symbol, int timeOffset) {
+            while(size > 0 && timeOffsets[start] < timeOffset) {
+                if(spillFile != null)
+                    spillFile.write(symbol, timeOffsets[start],
+                                    times[timeOffsets[start] % retention],
+                                    day_volume[start], day_low[start], day_high[start],
+                                    day_open[start], day_close[start], bid[start], ask[start]);
+
+                start = (start + 1) % timeOffsets.length;
+                size--;
+            }
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public double getQuote(int index, int quote) {
             switch(quote) {
             case(Quote.DAY_OPEN):
-                return (double)day_open;
+                return (double)day_open[index];
             case(Quote.DAY_CLOSE):
-                return (double)day_close;
+                return (double)day_close[index];
             case(Quote.DAY_LOW):
-                return (double)day_low;
+                return (double)day_low[index];
             case(Quote.DAY_HIGH):
-                return (double)day_high;
+                return (double)day_high[index];
             case(Quote.DAY_VOLUME):
-                return (double)day_volume;
+                return (double)day_volume[index];
             case(Quote.BID):
-                return (double)bid;
+                return (double)bid[index];
             case(Quote.ASK):
-                return (double)ask;
+                return (double)ask[index];
             default:
                 assert false;
                 return 0.0D;
             }
         }
 
-        public IDQuote toQuote(Symbol symbol, TradingDate date, TradingTime time) {
+        public IDQuote toQuote(int index, Symbol symbol, TradingDate date, TradingTime time) {
             return new IDQuote(symbol,
                                date,
                                time,
-                               day_volume,
-                               (double)day_low,
-                               (double)day_high,
-                               (double)day_open,
-                               (double)day_close,
-                               (double)bid,
-                               (double)ask);
-        }
-
-        public boolean equals(long day_volume, float day_low, float day_high,
-                              float day_open, float day_close, float bid,
-                              float ask) {
-            return (day_volume == this.day_volume &&
-                    day_low == this.day_low &&
-                    day_high == this.day_high &&
-                    day_open == this.day_open &&
-                    day_close == this.day_close &&
-                    bid == this.bid &&
-                    ask == this.ask);
+                               day_volume[index],
+                               (double)day_low[index],
+                               (double)day_high[index],
+                               (double)day_open[index],
+                               (double)day_close[index],
+                               (double)bid[index],
+                               (double)ask[index]);
         }
     }
 
     // Class should only be constructed once by this class
     private IDQuoteCache() {
-        cache = new ArrayList();
-        times = new ArrayList();
+        this(PreferencesManager.getIntraDayQuoteRetention(),
+             createSpillFileName());
+    }
+
+    /**
+     * Create a new quote cache. This is only used for testing, otherwise
+     * use {@link #getInstance}.
+     *
+     * @param retention the number of times to keep in memory
+     * @param spillFileName the file to write older quotes to or
+     *                      <code>null</code> to discard them
+     */
+    IDQuoteCache(int retention, File spillFileName) {
+        assert retention > 0;
+
+        this.retention = retention;
+        times = new TradingTime[retention];
+        quotes = new HashMap();
         quoteListeners = new EventListenerList();
+
+        if(spillFileName != null) {
+            try {
+                spillFile = new IDQuoteSpillFile(spillFileName);
+            }
+            catch(IOException e) {
+                // Discard older quotes instead
+            }
+        }
+    }
+
+    // Returns a temporary file for the spill file if the user has enabled it
+    private static File createSpillFileName() {
+        if(PreferencesManager.getIntraDayQuoteSpillEnabled()) {
+            try {
+                File spillFileName = File.createTempFile("venice", ".idq");
+                spillFileName.deleteOnExit();
+                return spillFileName;
+            }
+            catch(IOException e) {
+                // Discard older quotes instead
+            }
+        }
+
+        return null;
     }
 
     /**
@@ -177,15 +374,17 @@ public class IDQuoteCache {
      * @return the quote
      * @exception QuoteNotLoadedException if the quote was not in the cache
      */
-    public double getQuote(Symbol symbol, int quoteType, int timeOffset)
+    public synchronized double getQuote(Symbol symbol, int quoteType, int timeOffset)
         throws QuoteNotLoadedException {
-        
+
+        assert timeOffset >= 0;
+
+        if(timeOffset < firstTimeOffset)
+            return getSpilledQuote(symbol, timeOffset).getQuote(quoteType);
+
         // Get the quote cache quote for the given symbol + time
-        IDQuoteCacheQuote quote = getQuoteCacheQuote(symbol, timeOffset);
-        if(quote != null)
-            return quote.getQuote(quoteType);
-        else
-            throw QuoteNotLoadedException.getInstance();
+        IDQuoteCacheQuote symbolQuotes = getQuoteCacheQuote(symbol, timeOffset);
+        return symbolQuotes.getQuote(symbolQuotes.find(timeOffset), quoteType);
     }
 
     /**
@@ -196,86 +395,147 @@ public class IDQuoteCache {
      * @return the quote
      * @exception QuoteNotLoadedException if the quote was not in the cache
      */
-    public IDQuote getQuote(Symbol symbol, int timeOffset)
+    public synchronized IDQuote getQuote(Symbol symbol, int timeOffset)
         throws QuoteNotLoadedException {
-        
+
+        assert timeOffset >= 0;
+
+        if(timeOffset < firstTimeOffset)
+            return getSpilledQuote(symbol, timeOffset);
+
         // Get the quote cache quote for the given symbol + time
-        IDQuoteCacheQuote quote = getQuoteCacheQuote(symbol, timeOffset);
-        if(quote != null)
-            return quote.toQuote(symbol, date, offsetToTime(timeOffset));
-        else
-            throw QuoteNotLoadedException.getInstance();
+        IDQuoteCacheQuote symbolQuotes = getQuoteCacheQuote(symbol, timeOffset);
+        return symbolQuotes.toQuote(symbolQuotes.find(timeOffset), symbol, date,
+                                    offsetToTime(timeOffset));
     }
-    
-    // Returns the quote cache object for the given time
+
+    // Returns the quote cache object of the symbol if it has a quote
+    // for the given time
     private IDQuoteCacheQuote getQuoteCacheQuote(Symbol symbol, int timeOffset)
         throws QuoteNotLoadedException {
 
- 	// First get the hash map for the given time
-        HashMap symbols = getQuotesForTime(timeOffset);
-        assert symbols != null;
+        if(timeOffset >= nextTimeOffset)
+ 	    throw QuoteNotLoadedException.getInstance();
 
- 	// Second get the quote for the given symbol on the given time
- 	return (IDQuoteCacheQuote)symbols.get(symbol);
-    }
+        IDQuoteCacheQuote symbolQuotes = (IDQuoteCacheQuote)quotes.get(symbol);
 
-    // Returns a HashMap containing quotes for the given time
-    private HashMap getQuotesForTime(int timeOffset)
- 	throws QuoteNotLoadedException {
-        
-        assert timeOffset >= 0;
-        
-        if(timeOffset >= cache.size())
- 	    throw QuoteNotLoadedException.getInstance();
-	
- 	HashMap quotesForTime = (HashMap)cache.get(timeOffset);
-        
- 	if(quotesForTime == null)
+ 	if(symbolQuotes == null || symbolQuotes.find(timeOffset) == -1)
  	    throw QuoteNotLoadedException.getInstance();
-        
- 	return quotesForTime;
+
+ 	return symbolQuotes;
     }
-    
+
+    // Returns a quote that has been pushed out of memory
+    private IDQuote getSpilledQuote(Symbol symbol, int timeOffset)
+        throws QuoteNotLoadedException {
+
+        IDQuote quote = null;
+
+        if(spillFile != null) {
+            try {
+                quote = spillFile.read(symbol, date, timeOffset);
+            }
+            catch(IOException e) {
+                // Treat as not loaded
+            }
+        }
+
+        if(quote == null)
+            throw QuoteNotLoadedException.getInstance();
+
+        return quote;
+    }
+
     /**
      * Load a time slice of intra-day quotes into the cache. Each of these quotes will
      * be given the same fast time offset and thus considerd as a group in time, even
-     * if their given times are slightly different.
+     * if their given times are slightly different. If the cache is full, the quotes
+     * of the oldest time in memory are discarded or spilled to disk.
      *
      * @param quotes list of quotes to cache
      */
     public void load(List quotes) {
         if(quotes.size() > 0) {
-            // Get the most recent time of any of the quotes. All the quotes will be
-            // assigned this time.
-            TradingTime time = getNewestTime(quotes);
-
-            // Get date of first quote
-            IDQuote firstQuote = (IDQuote)quotes.get(0);
-            TradingDate date = firstQuote.getDate();
-
-            if(this.date == null)
-                this.date = date;
-
-            // Convert each quote to a QuoteCacheQuote and add to a Map
-            Map map = new HashMap();
-            for(Iterator iterator = quotes.iterator(); iterator.hasNext();) {
-                IDQuote quote = (IDQuote)iterator.next();
-                map.put(quote.getSymbol(),
-                        new IDQuoteCacheQuote(quote.getDayVolume(),
-                                              (float)quote.getDayLow(),
-                                              (float)quote.getDayHigh(),
-                                              (float)quote.getDayOpen(),
-                                              (float)quote.getDayClose(),
-                                              (float)quote.getBid(),
-                                              (float)quote.getAsk()));
+            // Symbols whose quotes have changed since their last quote
+            Set changedSymbols = new HashSet();
+
+            synchronized(this) {
+                // Get the most recent time of any of the quotes. All the quotes will be
+                // assigned this time.
+                TradingTime time = getNewestTime(quotes);
+
+                // Get date of first quote
+                IDQuote firstQuote = (IDQuote)quotes.get(0);
+                TradingDate date = firstQuote.getDate();
+
+                if(this.date == null)
+                    this.date = date;
+
+                // Make room for the new time
+                int timeOffset = nextTimeOffset++;
+                if(nextTimeOffset - firstTimeOffset > retention)
+                    removeOldestTime();
+
+                times[timeOffset % retention] = time;
+
+                // Add each quote to its symbol's quote cache quote
+                for(Iterator iterator = quotes.iterator(); iterator.hasNext();) {
+                    IDQuote quote = (IDQuote)iterator.next();
+                    IDQuoteCacheQuote symbolQuotes =
+                        (IDQuoteCacheQuote)this.quotes.get(quote.getSymbol());
+
+                    if(symbolQuotes == null) {
+                        symbolQuotes = new IDQuoteCacheQuote();
+                        this.quotes.put(quote.getSymbol(), symbolQuotes);
+                    }
+
+                    long day_volume = quote.getDayVolume();
+                    float day_low = (float)quote.getDayLow();
+                    float day_high = (float)quote.getDayHigh();
+                    float day_open = (float)quote.getDayOpen();
+                    float day_close = (float)quote.getDayClose();
+                    float bid = (float)quote.getBid();
+                    float ask = (float)quote.getAsk();
+
+                    if(!symbolQuotes.equalsNewest(day_volume, day_low, day_high, day_open,
+                                                  day_close, bid, ask))
+                        changedSymbols.add(quote.getSymbol());
+
+                    symbolQuotes.add(timeOffset, day_volume, day_low, day_high, day_open,
+                                     day_close, bid, ask);
+                }
             }
 
-            // Add hash map to cache
-            cache.add(map);
-            times.add(time);
-
             // Signal to listeners that there are new quotes
-            fireQuotesAdded();
+            fireQuotesAdded(Collections.unmodifiableSet(changedSymbols));
+        }
+    }
+
+    // Remove the quotes of the oldest time in memory, spilling them to
+    // disk if enabled
+    private void removeOldestTime() {
+        firstTimeOffset++;
+
+        for(Iterator iterator = quotes.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry)iterator.next();
+            IDQuoteCacheQuote symbolQuotes = (IDQuoteCacheQuote)entry.getValue();
+
+            symbolQuotes.removeBefore((Symbol)entry.getKey(), firstTimeOffset);
+
+            // Forget symbols that are no longer being synced
+            if(symbolQuotes.isEmpty())
+                iterator.remove();
+        }
+
+        if(spillFile != null) {
+            try {
+                spillFile.flush();
+            }
+            catch(IOException e) {
+                // Give up spilling, older quotes are discarded from now on
+                spillFile.close();
+                spillFile = null;
+            }
         }
     }
 
@@ -286,9 +546,33 @@ public class IDQuoteCache {
      * @param time the time
      * @return fast access time offset
      */
-    public int timeToOffset(TradingTime time) {
-        return Collections.binarySearch(times, time);
-     }
+    public synchronized int timeToOffset(TradingTime time) {
+        int low = firstTimeOffset;
+        int high = nextTimeOffset - 1;
+
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = times[middle % retention].compareTo(time);
+
+            if(compare < 0)
+                low = middle + 1;
+            else if(compare > 0)
+                high = middle - 1;
+            else
+                return middle;
+        }
+
+        if(spillFile != null && low == firstTimeOffset) {
+            try {
+                return spillFile.getTimeOffset(time);
+            }
+            catch(IOException e) {
+                // Treat as not in the cache
+            }
+        }
+
+        return -1;
+    }
 
     /**
      * Convert between a fast access time offset and a time. Returns <code>null</code> if the
@@ -297,13 +581,21 @@ public class IDQuoteCache {
      * @param timeOffset fast access time offset
      * @return the time
      */
-    public TradingTime offsetToTime(int timeOffset) {
+    public synchronized TradingTime offsetToTime(int timeOffset) {
  	assert timeOffset >= 0;
 
         TradingTime time = null;
-        
-        if(timeOffset < times.size())
-            time = (TradingTime)times.get(timeOffset);
+
+        if(timeOffset >= firstTimeOffset && timeOffset < nextTimeOffset)
+            time = times[timeOffset % retention];
+        else if(timeOffset < firstTimeOffset && spillFile != null) {
+            try {
+                time = spillFile.getTime(timeOffset);
+            }
+            catch(IOException e) {
+                // Treat as not in the cache
+            }
+        }
 
         return time;
     }
@@ -314,11 +606,13 @@ public class IDQuoteCache {
      * @return the fast access time offset of the oldest time in cache or -1 if there
      *         are no times in the cache.
      */
-    public int getFirstTimeOffset() {
-        if(times.size() == 0)
+    public synchronized int getFirstTimeOffset() {
+        if(nextTimeOffset == 0)
             return -1;
+        else if(spillFile != null && spillFile.getFirstTimeOffset() != -1)
+            return spillFile.getFirstTimeOffset();
         else
-            return 0;
+            return firstTimeOffset;
     }
 
     /**
@@ -327,8 +621,8 @@ public class IDQuoteCache {
      * @return the fast access time offset of the oldest time in cache or -1 if there
      *         are no times in the cache.
      */
-    public int getLastTimeOffset() {
-        return times.size() - 1;
+    public synchronized int getLastTimeOffset() {
+        return nextTimeOffset - 1;
     }
     
     /**
@@ -352,10 +646,12 @@ public class IDQuoteCache {
     /**
      * Fire a notification to all classes waiting for notification when new quotes
      * have arrived, that the quotes are now available.
+     *
+     * @param symbols the symbols whose quotes have changed
      */
-    private void fireQuotesAdded() {
+    private void fireQuotesAdded(Set symbols) {
         EventListener[] listeners = quoteListeners.getListeners(QuoteListener.class);
-        QuoteEvent event = new QuoteEvent(this);
+        QuoteEvent event = new QuoteEvent(this, symbols);
 
         for(int i = 0; i < listeners.length; i++) {
             QuoteListener listener = (QuoteListener)listeners[i];
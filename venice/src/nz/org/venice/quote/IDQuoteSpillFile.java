@@ -0,0 +1,299 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package nz.org.venice.quote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import nz.org.venice.util.TradingDate;
+import nz.org.venice.util.TradingTime;
+
+/**
+ * An append-only file of intra-day quotes that have been pushed out of the
+ * {@link IDQuoteCache}. Each quote is stored in a fixed size record, and
+ * the records are written in fast access time offset order, so a quote or
+ * a time can be found with a binary search of the file.
+ *
+ * @author Andrew Leppard
+ * @see IDQuoteCache
+ */
+class IDQuoteSpillFile {
+
+    // Each record contains the time offset, the time in seconds since
+    // midnight, the symbol, the day volume and six float quotes
+    private final static int RECORD_SIZE = 4 + 4 + Symbol.MAXIMUM_SYMBOL_LENGTH + 8 + 6 * 4;
+
+    private RandomAccessFile file;
+
+    // Records waiting to be appended to the file
+    private ByteBuffer pending;
+
+    // Number of records in the file
+    private int recordCount = 0;
+
+    // Range of time offsets in the file, -1 if the file is empty
+    private int firstTimeOffset = -1;
+    private int lastTimeOffset = -1;
+
+    /**
+     * Create a new spill file. Any existing file will be overwritten.
+     *
+     * @param fileName the file to write
+     * @exception IOException if the file could not be created
+     */
+    public IDQuoteSpillFile(File fileName) throws IOException {
+        file = new RandomAccessFile(fileName, "rw");
+        file.setLength(0);
+        pending = ByteBuffer.allocate(RECORD_SIZE * 64);
+    }
+
+    /**
+     * Queue the given quote to be appended to the file. The quote is not
+     * written until {@link #flush} is called. Quotes must be written in
+     * time offset order.
+     *
+     * @param symbol     symbol of quote
+     * @param timeOffset fast access time offset of quote
+     * @param time       time of quote
+     * @param day_volume day volume
+     * @param day_low    day low
+     * @param day_high   day high
+     * @param day_open   day open
+     * @param day_close  day close
+     * @param bid        bid
+     * @param ask        ask
+     */
+    public void write(Symbol symbol, int timeOffset, TradingTime time, long day_volume,
+                      float day_low, float day_high, float day_open, float day_close,
+                      float bid, float ask) {
+        assert timeOffset >= lastTimeOffset;
+
+        if(pending.remaining() < RECORD_SIZE) {
+            ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+
+        pending.putInt(timeOffset);
+        pending.putInt(toSeconds(time));
+        pending.put(toBytes(symbol));
+        pending.putLong(day_volume);
+        pending.putFloat(day_low);
+        pending.putFloat(day_high);
+        pending.putFloat(day_open);
+        pending.putFloat(day_close);
+        pending.putFloat(bid);
+        pending.putFloat(ask);
+
+        if(firstTimeOffset == -1)
+            firstTimeOffset = timeOffset;
+        lastTimeOffset = timeOffset;
+    }
+
+    /**
+     * Append all the queued quotes to the end of the file.
+     *
+     * @exception IOException if the quotes could not be written
+     */
+    public void flush() throws IOException {
+        if(pending.position() > 0) {
+            file.seek((long)recordCount * RECORD_SIZE);
+            file.write(pending.array(), 0, pending.position());
+            recordCount += pending.position() / RECORD_SIZE;
+            pending.clear();
+        }
+    }
+
+    /**
+     * Close the file.
+     */
+    public void close() {
+        try {
+            file.close();
+        }
+        catch(IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Return the fast access time offset of the oldest quote in the file.
+     *
+     * @return the fast access time offset or -1 if the file is empty
+     */
+    public int getFirstTimeOffset() {
+        return recordCount > 0 ? firstTimeOffset : -1;
+    }
+
+    /**
+     * Return the fast access time offset of the newest quote in the file.
+     *
+     * @return the fast access time offset or -1 if the file is empty
+     */
+    public int getLastTimeOffset() {
+        return recordCount > 0 ? lastTimeOffset : -1;
+    }
+
+    /**
+     * Read a quote from the file.
+     *
+     * @param symbol     the symbol of the quote
+     * @param date       the date of the quote
+     * @param timeOffset fast access time offset of the quote
+     * @return the quote or <code>null</code> if it is not in the file
+     * @exception IOException if the file could not be read
+     */
+    public IDQuote read(Symbol symbol, TradingDate date, int timeOffset) throws IOException {
+        if(timeOffset < getFirstTimeOffset() || timeOffset > getLastTimeOffset())
+            return null;
+
+        // All the quotes with the same time offset are next to each other
+        int start = findFirstRecord(timeOffset);
+        int end = findFirstRecord(timeOffset + 1);
+
+        ByteBuffer records = readRecords(start, end - start);
+        byte[] symbolBytes = toBytes(symbol);
+        byte[] recordSymbolBytes = new byte[symbolBytes.length];
+
+        for(int record = start; record < end; record++) {
+            int recordTimeOffset = records.getInt();
+            int seconds = records.getInt();
+            records.get(recordSymbolBytes);
+
+            if(Arrays.equals(symbolBytes, recordSymbolBytes)) {
+                assert recordTimeOffset == timeOffset;
+
+                long day_volume = records.getLong();
+                float day_low = records.getFloat();
+                float day_high = records.getFloat();
+                float day_open = records.getFloat();
+                float day_close = records.getFloat();
+                float bid = records.getFloat();
+                float ask = records.getFloat();
+
+                return new IDQuote(symbol, date, toTime(seconds), day_volume,
+                                   (double)day_low, (double)day_high,
+                                   (double)day_open, (double)day_close,
+                                   (double)bid, (double)ask);
+            }
+
+            records.position(records.position() + 8 + 6 * 4);
+        }
+
+        return null;
+    }
+
+    /**
+     * Convert between a fast access time offset and a time.
+     *
+     * @param timeOffset fast access time offset
+     * @return the time or <code>null</code> if the time is not in the file
+     * @exception IOException if the file could not be read
+     */
+    public TradingTime getTime(int timeOffset) throws IOException {
+        if(timeOffset < getFirstTimeOffset() || timeOffset > getLastTimeOffset())
+            return null;
+
+        ByteBuffer record = readRecords(findFirstRecord(timeOffset), 1);
+        record.getInt();
+        return toTime(record.getInt());
+    }
+
+    /**
+     * Convert between a time and its fast access time offset.
+     *
+     * @param time the time
+     * @return fast access time offset or -1 if the time is not in the file
+     * @exception IOException if the file could not be read
+     */
+    public int getTimeOffset(TradingTime time) throws IOException {
+        int seconds = toSeconds(time);
+        int low = 0;
+        int high = recordCount - 1;
+
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            ByteBuffer record = readRecords(middle, 1);
+            int timeOffset = record.getInt();
+            int middleSeconds = record.getInt();
+
+            if(middleSeconds < seconds)
+                low = middle + 1;
+            else if(middleSeconds > seconds)
+                high = middle - 1;
+            else
+                return timeOffset;
+        }
+
+        return -1;
+    }
+
+    // Returns the first record with a time offset of at least the given
+    // time offset, or the number of records if there isn't one
+    private int findFirstRecord(int timeOffset) throws IOException {
+        int low = 0;
+        int high = recordCount;
+
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+
+            if(readRecords(middle, 1).getInt() < timeOffset)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        return low;
+    }
+
+    private ByteBuffer readRecords(int record, int count) throws IOException {
+        byte[] buffer = new byte[count * RECORD_SIZE];
+        file.seek((long)record * RECORD_SIZE);
+        file.readFully(buffer);
+        return ByteBuffer.wrap(buffer);
+    }
+
+    private static byte[] toBytes(Symbol symbol) {
+        byte[] bytes = new byte[Symbol.MAXIMUM_SYMBOL_LENGTH];
+        String string = symbol.toString();
+
+        // Symbols are always short and plain ASCII
+        for(int i = 0; i < string.length(); i++)
+            bytes[i] = (byte)string.charAt(i);
+
+        return bytes;
+    }
+
+    private static int toSeconds(TradingTime time) {
+        return (time.getHour() * TradingTime.MINUTES_IN_HOUR + time.getMinute()) *
+            TradingTime.SECONDS_IN_MINUTE + time.getSecond();
+    }
+
+    private static TradingTime toTime(int seconds) {
+        return new TradingTime(seconds / (TradingTime.MINUTES_IN_HOUR *
+                                          TradingTime.SECONDS_IN_MINUTE),
+                               (seconds / TradingTime.SECONDS_IN_MINUTE) %
+                               TradingTime.MINUTES_IN_HOUR,
+                               seconds % TradingTime.SECONDS_IN_MINUTE);
+    }
+}
@@ -104,6 +104,10 @@ public class ImportQuoteModule extends JPanel implements Module {
     private IFileEODQuoteFilter filter;
     private File files[];
 
+    // Number of quotes written to the database and how long it took
+    private int quotesWritten;
+    private long importTime;
+
     // Web site combo box entry indeces.
     private final static int GOOGLE_SITE = 0; // finance.google.com
     private final static int YAHOO_SITE  = 1; // finance.yahoo.com
@@ -343,6 +347,9 @@ public class ImportQuoteModule extends JPanel implements Module {
         // Only save configuration if user imports with it
         saveConfiguration();
 
+        quotesWritten = 0;
+        importTime = 0;
+
         // Performing the quote import in a separate thread will
         // prevent the application appearing to "lock up"
         Thread thread = new Thread() {
@@ -362,6 +369,24 @@ public class ImportQuoteModule extends JPanel implements Module {
         thread.start();
     }
 
+    /**
+     * Import the quotes into the database, keeping track of how quickly
+     * the database writes them.
+     *
+     * @param database database to store quotes
+     * @param quotes   quotes to import
+     * @return number of quotes imported
+     */
+    private int importQuotes(DatabaseQuoteSource database, List quotes) {
+        long startTime = System.currentTimeMillis();
+        int quotesImported = database.importQuotes(quotes);
+
+        importTime += System.currentTimeMillis() - startTime;
+        quotesWritten += quotes.size();
+
+        return quotesImported;
+    }
+
     /**
      * Save the configuration on screen to the preferences file
      */
@@ -451,7 +476,7 @@ public class ImportQuoteModule extends JPanel implements Module {
 
                 // Import into database
                 if(quotes.size() > 0)
-                    quotesImported += database.importQuotes(quotes);
+                    quotesImported += importQuotes(database, quotes);
             }
 
             importer.close();
@@ -560,7 +585,7 @@ public class ImportQuoteModule extends JPanel implements Module {
                 if(quotes.size() > 0) {
 
                     // remove the symbol argument
-                    int symbolQuotesImported = database.importQuotes(quotes);
+                    int symbolQuotesImported = importQuotes(database, quotes);
                     report.addMessage(Locale.getString("YAHOO_DISPLAY_URL") + ":" + symbol + ": " +
                                       Locale.getString("IMPORTED_QUOTES",
                                                        symbolQuotesImported));
@@ -628,7 +653,7 @@ public class ImportQuoteModule extends JPanel implements Module {
                 if(quotes.size() > 0) {
 
                     // remove the symbol argument
-                    int symbolQuotesImported = database.importQuotes(quotes);
+                    int symbolQuotesImported = importQuotes(database, quotes);
                     report.addMessage(Locale.getString("GOOGLE_DISPLAY_URL") + ":" + symbol + ": " +
                                       Locale.getString("IMPORTED_QUOTES",
                                                        symbolQuotesImported));
@@ -690,7 +715,7 @@ public class ImportQuoteModule extends JPanel implements Module {
                 List quotes = FloatEODQuoteImport.importDate(report, date);
 
                 // Import into database
-                int dateQuotesImported = database.importQuotes(quotes);
+                int dateQuotesImported = importQuotes(database, quotes);
                 report.addMessage(Locale.getString("FLOAT_DISPLAY_URL") + ":" + date + ": " +
                                   Locale.getString("IMPORTED_QUOTES",
                                                    dateQuotesImported));
@@ -786,6 +811,10 @@ public class ImportQuoteModule extends JPanel implements Module {
      * @param quotesImported the number of quotes imported
      */
     private void displayReport(final Report report, final int quotesImported) {
+        if(importTime > 0)
+            report.addMessage(Locale.getString("IMPORT_RATE", quotesWritten,
+                                               (int)(quotesWritten * 1000L / importTime)));
+
         SwingUtilities.invokeLater(new Runnable() {
                 public void run() {
                     String message = Locale.getString("IMPORTED_QUOTES", quotesImported);
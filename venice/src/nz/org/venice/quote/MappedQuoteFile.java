@@ -0,0 +1,327 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Provides read access to a mapped quote file. A mapped quote file stores
+ * end-of-day quotes in a compact binary columnar format which is memory
+ * mapped, so reading quotes does not need any parsing and only touches the
+ * pages of the file that hold the requested quotes.
+ * <p>
+ * The file is laid out as follows. All values are big-endian.
+ * <pre>
+ * Header      int magic, int version, int date count, int symbol count,
+ *             long date table position, long symbol table position
+ * Quote data  for each symbol, the columns of its quotes in date order:
+ *             int date[n], float open[n], float high[n], float low[n],
+ *             float close[n], long volume[n]
+ * Date table  int date[date count], every date with a quote in ascending order
+ * Symbol table for each symbol, sorted by symbol:
+ *             byte symbol[12], int quote count n, long quote data position
+ * </pre>
+ * Dates are stored as integers of the form <code>yyyymmdd</code>.
+ *
+ * @see MappedQuoteFileWriter
+ * @see MappedQuoteSource
+ */
+class MappedQuoteFile {
+
+    /** Magic number identifying a mapped quote file ("VNQ1"). */
+    public final static int MAGIC = 0x564e5131;
+
+    /** Version of the file format. */
+    public final static int VERSION = 1;
+
+    /** Size of the header in bytes. */
+    public final static int HEADER_SIZE = 32;
+
+    /** Size of a symbol table entry in bytes. */
+    public final static int SYMBOL_ENTRY_SIZE = Symbol.MAXIMUM_SYMBOL_LENGTH + 4 + 8;
+
+    /** Size of a single quote across all of its columns in bytes. */
+    public final static int QUOTE_SIZE = 4 + 4 * 4 + 8;
+
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+
+    // Every date with a quote, in ascending order
+    private int[] dates;
+
+    // Symbols in the file and their location of their quote data
+    private List symbols;
+    private HashMap symbolEntries;
+
+    // Location of the quotes of a symbol in the file
+    private class SymbolEntry {
+        public int quoteCount;
+        public int position;
+
+        public SymbolEntry(int quoteCount, int position) {
+            this.quoteCount = quoteCount;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Open and map the given mapped quote file.
+     *
+     * @param fileName the file to open
+     * @exception IOException if the file could not be read or is not a
+     *            mapped quote file
+     */
+    public MappedQuoteFile(File fileName) throws IOException {
+        file = new RandomAccessFile(fileName, "r");
+
+        try {
+            FileChannel channel = file.getChannel();
+
+            // A single buffer can only map up to 2GB.
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Mapped quote file is larger than 2GB");
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            readTables();
+        }
+        catch(IOException e) {
+            close();
+            throw e;
+        }
+        catch(RuntimeException e) {
+            // Thrown by the buffer if the tables point outside the file
+            close();
+            throw new IOException("Mapped quote file is corrupt");
+        }
+    }
+
+    // Read the header, date table and symbol table
+    private void readTables() throws IOException {
+        if(buffer.capacity() < HEADER_SIZE ||
+           buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a mapped quote file");
+
+        if(buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported mapped quote file version");
+
+        int dateCount = buffer.getInt(8);
+        int symbolCount = buffer.getInt(12);
+        int datePosition = (int)buffer.getLong(16);
+        int symbolPosition = (int)buffer.getLong(24);
+
+        dates = new int[dateCount];
+        ByteBuffer view = buffer.duplicate();
+        view.position(datePosition);
+        view.asIntBuffer().get(dates);
+
+        symbols = new ArrayList(symbolCount);
+        symbolEntries = new HashMap(symbolCount);
+        byte[] symbolBytes = new byte[Symbol.MAXIMUM_SYMBOL_LENGTH];
+        view.position(symbolPosition);
+
+        for(int i = 0; i < symbolCount; i++) {
+            view.get(symbolBytes);
+            int quoteCount = view.getInt();
+            int position = (int)view.getLong();
+
+            int length = 0;
+            while(length < symbolBytes.length && symbolBytes[length] != 0)
+                length++;
+
+            try {
+                Symbol symbol = Symbol.find(new String(symbolBytes, 0, length, "US-ASCII"));
+                symbols.add(symbol);
+                symbolEntries.put(symbol, new SymbolEntry(quoteCount, position));
+            }
+            catch(SymbolFormatException e) {
+                throw new IOException("Mapped quote file contains an invalid symbol");
+            }
+        }
+    }
+
+    /**
+     * Close the file. The mapping stays valid until this object is garbage
+     * collected, so a reader that is still using the file can finish
+     * reading its quotes.
+     */
+    public void close() {
+        try {
+            if(file != null)
+                file.close();
+        }
+        catch(IOException e) {
+            // Nothing we can do
+        }
+
+        file = null;
+    }
+
+    /**
+     * Return every date that has a quote in the file. The dates are in
+     * ascending order and of the form <code>yyyymmdd</code>. The returned
+     * array must not be modified.
+     *
+     * @return the dates
+     */
+    public int[] getDates() {
+        return dates;
+    }
+
+    /**
+     * Return all the symbols in the file, sorted.
+     *
+     * @return list of symbols
+     */
+    public List getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Return whether the file contains quotes for the given symbol.
+     *
+     * @param symbol the symbol
+     * @return <code>true</code> if the file contains the symbol
+     */
+    public boolean containsSymbol(Symbol symbol) {
+        return symbolEntries.containsKey(symbol);
+    }
+
+    /**
+     * Return the number of quotes stored for the given symbol.
+     *
+     * @param symbol the symbol
+     * @return the number of quotes, or 0 if the symbol is not in the file
+     */
+    public int getQuoteCount(Symbol symbol) {
+        SymbolEntry entry = (SymbolEntry)symbolEntries.get(symbol);
+
+        return (entry != null? entry.quoteCount : 0);
+    }
+
+    /**
+     * Find the index of the first quote of the given symbol that is on or
+     * after the given date.
+     *
+     * @param symbol the symbol
+     * @param date   the date of the form <code>yyyymmdd</code>
+     * @return the index of the quote, this equals the number of quotes of
+     *         the symbol if all its quotes are before the date
+     */
+    public int findDate(Symbol symbol, int date) {
+        SymbolEntry entry = (SymbolEntry)symbolEntries.get(symbol);
+
+        if(entry == null)
+            return 0;
+
+        int low = 0;
+        int high = entry.quoteCount;
+
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+
+            if(buffer.getInt(entry.position + 4 * middle) < date)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        return low;
+    }
+
+    /**
+     * Read a run of quotes of the given symbol. The quotes are copied in bulk
+     * from the mapped file into the given arrays.
+     *
+     * @param symbol the symbol
+     * @param first  index of the first quote to read
+     * @param count  number of quotes to read
+     * @param quoteDates  array to receive the quote dates (<code>yyyymmdd</code>)
+     * @param day_volume array to receive the day volumes
+     * @param day_low    array to receive the day lows
+     * @param day_high   array to receive the day highs
+     * @param day_open   array to receive the day opens
+     * @param day_close  array to receive the day closes
+     */
+    public void read(Symbol symbol, int first, int count, int[] quoteDates,
+                     long[] day_volume, float[] day_low, float[] day_high,
+                     float[] day_open, float[] day_close) {
+        SymbolEntry entry = (SymbolEntry)symbolEntries.get(symbol);
+
+        assert entry != null && first >= 0 && first + count <= entry.quoteCount;
+
+        int n = entry.quoteCount;
+        ByteBuffer view = buffer.duplicate();
+
+        view.position(entry.position + 4 * first);
+        view.asIntBuffer().get(quoteDates, 0, count);
+        view.position(entry.position + 4 * n + 4 * first);
+        view.asFloatBuffer().get(day_open, 0, count);
+        view.position(entry.position + 8 * n + 4 * first);
+        view.asFloatBuffer().get(day_high, 0, count);
+        view.position(entry.position + 12 * n + 4 * first);
+        view.asFloatBuffer().get(day_low, 0, count);
+        view.position(entry.position + 16 * n + 4 * first);
+        view.asFloatBuffer().get(day_close, 0, count);
+        view.position(entry.position + 20 * n + 8 * first);
+        view.asLongBuffer().get(day_volume, 0, count);
+    }
+
+    /**
+     * Return the index of the given date in the date table.
+     *
+     * @param date the date of the form <code>yyyymmdd</code>
+     * @return the index of the date, or a negative value if the file has
+     *         no quotes on the date. See {@link Arrays#binarySearch(int[], int)}.
+     */
+    public int findDate(int date) {
+        return Arrays.binarySearch(dates, date);
+    }
+
+    /**
+     * Convert a date to the form stored in the file.
+     *
+     * @param date the date
+     * @return the date as <code>yyyymmdd</code>
+     */
+    public static int toInt(TradingDate date) {
+        return date.getYear() * 10000 + date.getMonth() * 100 + date.getDay();
+    }
+
+    /**
+     * Convert a date stored in the file to a trading date.
+     *
+     * @param date the date as <code>yyyymmdd</code>
+     * @return the trading date
+     */
+    public static TradingDate toTradingDate(int date) {
+        return new TradingDate(date / 10000, (date / 100) % 100, date % 100);
+    }
+}
@@ -0,0 +1,257 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Writes a mapped quote file. All the quotes of a symbol must be written
+ * together and in date order, which is the order the quotes are stored in
+ * the file. Quotes are buffered for a single symbol at a time, so
+ * arbitrarily large quote sources can be converted.
+ *
+ * @see MappedQuoteFile
+ */
+class MappedQuoteFileWriter {
+
+    // Initial number of quotes buffered for a symbol
+    private final static int INITIAL_CAPACITY = 1024;
+
+    private File fileName;
+    private DataOutputStream output;
+
+    // Position in the file that will be written next
+    private long position;
+
+    // Every date with a quote, as yyyymmdd integers
+    private TreeSet dates = new TreeSet();
+
+    // Symbol table entries written so far. Maps each symbol to its
+    // quote count and the position of its quotes.
+    private TreeMap symbols = new TreeMap();
+
+    // Quotes of the symbol currently being written
+    private Symbol symbol = null;
+    private int quoteCount = 0;
+    private int[] quoteDates = new int[INITIAL_CAPACITY];
+    private long[] day_volume = new long[INITIAL_CAPACITY];
+    private float[] day_low = new float[INITIAL_CAPACITY];
+    private float[] day_high = new float[INITIAL_CAPACITY];
+    private float[] day_open = new float[INITIAL_CAPACITY];
+    private float[] day_close = new float[INITIAL_CAPACITY];
+
+    // Total number of quotes written
+    private int totalQuoteCount = 0;
+
+    /**
+     * Create a new mapped quote file. Any existing file will be overwritten.
+     *
+     * @param fileName the file to write
+     * @exception IOException if the file could not be created
+     */
+    public MappedQuoteFileWriter(File fileName) throws IOException {
+        this.fileName = fileName;
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+
+        // Reserve the header, it is written when the file is closed
+        output.write(new byte[MappedQuoteFile.HEADER_SIZE]);
+        position = MappedQuoteFile.HEADER_SIZE;
+    }
+
+    /**
+     * Write the given quote.
+     *
+     * @param quote the quote
+     * @exception IOException if the quote could not be written or is out of order
+     */
+    public void write(EODQuote quote) throws IOException {
+        write(quote.getSymbol(),
+              quote.getDate(),
+              quote.getDayVolume(),
+              (float)quote.getDayLow(),
+              (float)quote.getDayHigh(),
+              (float)quote.getDayOpen(),
+              (float)quote.getDayClose());
+    }
+
+    /**
+     * Write the given quote.
+     *
+     * @param symbol symbol of quote
+     * @param date   quote date
+     * @param day_volume day volume
+     * @param day_low day low
+     * @param day_high day high
+     * @param day_open day open
+     * @param day_close day close
+     * @exception IOException if the quote could not be written or is out of order
+     */
+    public void write(Symbol symbol, TradingDate date, long day_volume, float day_low,
+                      float day_high, float day_open, float day_close)
+        throws IOException {
+
+        int intDate = MappedQuoteFile.toInt(date);
+
+        if(!symbol.equals(this.symbol)) {
+            flushSymbol();
+
+            if(symbols.containsKey(symbol))
+                throw new IOException("Quotes are not grouped by symbol");
+
+            this.symbol = symbol;
+        }
+        else if(intDate <= quoteDates[quoteCount - 1]) {
+            // Silently skip duplicate quotes
+            if(intDate == quoteDates[quoteCount - 1])
+                return;
+
+            throw new IOException("Quotes are not sorted by date");
+        }
+
+        if(quoteCount == quoteDates.length)
+            grow();
+
+        quoteDates[quoteCount] = intDate;
+        this.day_volume[quoteCount] = day_volume;
+        this.day_low[quoteCount] = day_low;
+        this.day_high[quoteCount] = day_high;
+        this.day_open[quoteCount] = day_open;
+        this.day_close[quoteCount] = day_close;
+        quoteCount++;
+    }
+
+    /**
+     * Finish writing the file and close it.
+     *
+     * @return the number of quotes written
+     * @exception IOException if the file could not be written
+     */
+    public int close() throws IOException {
+        flushSymbol();
+
+        // Date table
+        long datePosition = position;
+        for(Iterator iterator = dates.iterator(); iterator.hasNext();)
+            output.writeInt(((Integer)iterator.next()).intValue());
+        position += 4 * dates.size();
+
+        // Symbol table
+        long symbolPosition = position;
+        for(Iterator iterator = symbols.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry)iterator.next();
+            long[] location = (long[])entry.getValue();
+
+            byte[] symbolBytes = new byte[Symbol.MAXIMUM_SYMBOL_LENGTH];
+            byte[] bytes = entry.getKey().toString().getBytes("US-ASCII");
+            System.arraycopy(bytes, 0, symbolBytes, 0,
+                             Math.min(bytes.length, symbolBytes.length));
+
+            output.write(symbolBytes);
+            output.writeInt((int)location[0]);
+            output.writeLong(location[1]);
+        }
+        position += MappedQuoteFile.SYMBOL_ENTRY_SIZE * symbols.size();
+        output.close();
+
+        if(position > Integer.MAX_VALUE)
+            throw new IOException("Mapped quote file is larger than 2GB");
+
+        // Now we know where everything is, fill in the header
+        RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+
+        try {
+            file.writeInt(MappedQuoteFile.MAGIC);
+            file.writeInt(MappedQuoteFile.VERSION);
+            file.writeInt(dates.size());
+            file.writeInt(symbols.size());
+            file.writeLong(datePosition);
+            file.writeLong(symbolPosition);
+        }
+        finally {
+            file.close();
+        }
+
+        return totalQuoteCount;
+    }
+
+    // Write the buffered quotes of the current symbol
+    private void flushSymbol() throws IOException {
+        if(symbol == null || quoteCount == 0)
+            return;
+
+        symbols.put(symbol, new long[] {quoteCount, position});
+
+        for(int i = 0; i < quoteCount; i++) {
+            output.writeInt(quoteDates[i]);
+            dates.add(new Integer(quoteDates[i]));
+        }
+        for(int i = 0; i < quoteCount; i++)
+            output.writeFloat(day_open[i]);
+        for(int i = 0; i < quoteCount; i++)
+            output.writeFloat(day_high[i]);
+        for(int i = 0; i < quoteCount; i++)
+            output.writeFloat(day_low[i]);
+        for(int i = 0; i < quoteCount; i++)
+            output.writeFloat(day_close[i]);
+        for(int i = 0; i < quoteCount; i++)
+            output.writeLong(day_volume[i]);
+
+        position += (long)MappedQuoteFile.QUOTE_SIZE * quoteCount;
+        totalQuoteCount += quoteCount;
+        quoteCount = 0;
+    }
+
+    // Double the size of the quote buffers
+    private void grow() {
+        int capacity = quoteDates.length * 2;
+
+        int[] newDates = new int[capacity];
+        long[] newVolume = new long[capacity];
+        float[] newLow = new float[capacity];
+        float[] newHigh = new float[capacity];
+        float[] newOpen = new float[capacity];
+        float[] newClose = new float[capacity];
+
+        System.arraycopy(quoteDates, 0, newDates, 0, quoteCount);
+        System.arraycopy(day_volume, 0, newVolume, 0, quoteCount);
+        System.arraycopy(day_low, 0, newLow, 0, quoteCount);
+        System.arraycopy(day_high, 0, newHigh, 0, quoteCount);
+        System.arraycopy(day_open, 0, newOpen, 0, quoteCount);
+        System.arraycopy(day_close, 0, newClose, 0, quoteCount);
+
+        quoteDates = newDates;
+        day_volume = newVolume;
+        day_low = newLow;
+        day_high = newHigh;
+        day_open = newOpen;
+        day_close = newClose;
+    }
+}
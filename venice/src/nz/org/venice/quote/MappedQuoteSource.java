@@ -0,0 +1,606 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import nz.org.venice.util.Currency;
+import nz.org.venice.util.Locale;
+import nz.org.venice.util.TradingDate;
+import nz.org.venice.prefs.PreferencesManager;
+import nz.org.venice.ui.DesktopManager;
+import nz.org.venice.ui.ProgressDialog;
+import nz.org.venice.ui.ProgressDialogManager;
+
+/**
+ * Provides functionality to obtain stock quotes from a memory mapped quote
+ * file. The quotes of each symbol are stored as contiguous columns in the
+ * file, so a quote range can be loaded by copying the columns straight
+ * into the quote cache without any parsing or database queries.
+ * <p>
+ * A mapped quote file is created by converting the quotes of another
+ * quote source, see {@link #convert}. A file that is mapped can't be
+ * deleted or replaced on some platforms until the mapping has been garbage
+ * collected, and Java has no way of releasing it sooner. So rather than
+ * replacing the file, each conversion writes a new version of the file,
+ * named by adding a version number to the file name, e.g.
+ * <code>quotes.vmq.2</code>. The quote source reads the newest version
+ * and deletes the older versions once they can be deleted.
+ *
+ * @see MappedQuoteFile
+ * @see EODQuoteRange
+ * @see EODQuoteCache
+ */
+public class MappedQuoteSource implements QuoteSource
+{
+    // File containing the quotes
+    private File fileName;
+
+    // The mapped file, opened when first needed
+    private MappedQuoteFile file = null;
+
+    // Set if the file could not be opened, so the problem is only
+    // reported once
+    private boolean failed = false;
+
+    /**
+     * Creates a new quote source using the given mapped quote file.
+     *
+     * @param fileName the mapped quote file
+     */
+    public MappedQuoteSource(File fileName) {
+        this.fileName = fileName;
+    }
+
+    // Return the mapped file, opening it if necessary. Returns null if the
+    // file cannot be opened or contains no quotes. Callers must use the
+    // returned file rather than the field, as the field is cleared when
+    // the cache expires. A closed file can still be read, so a caller
+    // can finish reading even if the file is closed underneath it.
+    private synchronized MappedQuoteFile getFile() {
+        if(failed)
+            return null;
+
+        if(file == null) {
+            int version = getNewestVersion(fileName);
+            File versionFile = getVersionFile(fileName, version);
+
+            try {
+                file = new MappedQuoteFile(versionFile);
+            }
+            catch(IOException e) {
+                failed = true;
+                DesktopManager.showErrorMessage(Locale.getString("ERROR_READING_FROM_FILE",
+                                                                 versionFile.getPath()));
+                return null;
+            }
+
+            deleteOlderVersions(fileName, version);
+
+            if(file.getDates().length == 0) {
+                file.close();
+                file = null;
+                failed = true;
+                DesktopManager.showErrorMessage(Locale.getString("NO_QUOTES_FOUND"));
+                return null;
+            }
+        }
+
+        return file;
+    }
+
+    /**
+     * Returns the company name associated with the given symbol. Not
+     * implemented for the mapped quote source.
+     *
+     * @param	symbol	the stock symbol.
+     * @return	always <code>null</code>.
+     */
+    public String getSymbolName(Symbol symbol) {
+	return null;
+    }
+
+    /**
+     * Returns the symbol associated with the given company. Not
+     * implemented for the mapped quote source.
+     *
+     * @param	partialCompanyName	a partial company name.
+     * @return	always <code>null</code>.
+     */
+    public Symbol getSymbol(String partialCompanyName) {
+	return null;
+    }
+
+    /**
+     * Returns whether we have any quotes for the given symbol.
+     *
+     * @param	symbol	the symbol we are searching for.
+     * @return	whether the symbol was found or not.
+     */
+    public boolean symbolExists(Symbol symbol) {
+        MappedQuoteFile file = getFile();
+
+        return file != null && file.containsSymbol(symbol);
+    }
+
+    /**
+     * Return the earliest date we have any stock quotes for.
+     *
+     * @return	the oldest quote date
+     */
+    public TradingDate getFirstDate() {
+        MappedQuoteFile file = getFile();
+
+        if(file != null)
+            return MappedQuoteFile.toTradingDate(file.getDates()[0]);
+        else
+            return null;
+    }
+
+    /**
+     * Return the latest date we have any stock quotes for.
+     *
+     * @return	the most recent quote date.
+     */
+    public TradingDate getLastDate() {
+        MappedQuoteFile file = getFile();
+
+        if(file != null) {
+            int[] dates = file.getDates();
+            return MappedQuoteFile.toTradingDate(dates[dates.length - 1]);
+        }
+        else
+            return null;
+    }
+
+    /**
+     * Returns whether the source contains any quotes for the given date.
+     *
+     * @param date the date
+     * @return wehther the source contains the given date
+     */
+    public boolean containsDate(TradingDate date) {
+        MappedQuoteFile file = getFile();
+
+        return file != null && file.findDate(MappedQuoteFile.toInt(date)) >= 0;
+    }
+
+    /**
+     * Return all the dates which we have quotes for.
+     *
+     * @return a list of dates
+     */
+    public List getDates() {
+        List dates = new ArrayList();
+        MappedQuoteFile file = getFile();
+
+        if(file != null) {
+            int[] intDates = file.getDates();
+
+            for(int i = 0; i < intDates.length; i++)
+                dates.add(MappedQuoteFile.toTradingDate(intDates[i]));
+        }
+
+        return dates;
+    }
+
+    /**
+     * Load the given quote range into the quote cache.
+     *
+     * @param	quoteRange	the range of quotes to load
+     * @return  <code>TRUE</code> if the operation suceeded
+     * @see EODQuote
+     * @see EODQuoteCache
+     */
+    public boolean loadQuoteRange(EODQuoteRange quoteRange) {
+        MappedQuoteFile file = getFile();
+
+        if(file == null)
+            return false;
+
+        // This needs to be before the progress dialog otherwise
+        // we might end up (during an import) trying to open 3
+        // progress dialogs within one thread which is illegal.
+        EODQuoteCache quoteCache = EODQuoteCache.getInstance();
+
+        int[] dates = file.getDates();
+        int firstIndex = 0;
+        int lastIndex = dates.length - 1;
+
+        // Work out which dates of the file are in the quote range
+        if(quoteRange.getFirstDate() != null) {
+            firstIndex = findDateIndex(file, MappedQuoteFile.toInt(quoteRange.getFirstDate()));
+            lastIndex = findDateIndex(file, MappedQuoteFile.toInt(quoteRange.getLastDate()) + 1) - 1;
+        }
+
+        if(firstIndex > lastIndex)
+            return true;
+
+        // Convert each date to its fast access offset up front. Converting the
+        // newest date first makes sure the cache won't have to insert any
+        // newer dates later, which would shift the offsets we have calculated.
+        int[] dateOffsets = new int[lastIndex - firstIndex + 1];
+        toOffset(quoteCache, dates[lastIndex]);
+        toOffset(quoteCache, dates[firstIndex]);
+
+        for(int i = firstIndex; i <= lastIndex; i++)
+            dateOffsets[i - firstIndex] = toOffset(quoteCache, dates[i]);
+
+        List symbols = getSymbols(file, quoteRange);
+
+        // This query might take a while...
+        Thread thread = Thread.currentThread();
+        ProgressDialog progress = ProgressDialogManager.getProgressDialog();
+        progress.setNote(Locale.getString("LOADING_QUOTES"));
+
+        if(symbols.size() > 1) {
+            progress.setMaximum(symbols.size());
+            progress.setProgress(0);
+            progress.setIndeterminate(false);
+        }
+        else {
+            progress.setIndeterminate(true);
+        }
+
+        QuoteBuffer buffer = new QuoteBuffer(dateOffsets.length);
+
+        for(Iterator iterator = symbols.iterator(); iterator.hasNext();) {
+            Symbol symbol = (Symbol)iterator.next();
+            int count = buffer.read(file, symbol, dates[firstIndex], dates[lastIndex]);
+
+            // Match each quote's date to its offset. Both the quotes and the
+            // date table are in date order so a single pass is enough.
+            int dateIndex = firstIndex;
+            for(int i = 0; i < count; i++) {
+                while(dates[dateIndex] < buffer.quoteDates[i])
+                    dateIndex++;
+
+                buffer.dateOffsets[i] = dateOffsets[dateIndex - firstIndex];
+            }
+
+            quoteCache.load(symbol, buffer.dateOffsets, buffer.day_volume, buffer.day_low,
+                            buffer.day_high, buffer.day_open, buffer.day_close, count);
+
+            if(thread.isInterrupted())
+                break;
+
+            if(symbols.size() > 1)
+                progress.increment();
+        }
+
+        ProgressDialogManager.closeProgressDialog(progress);
+
+        return !thread.isInterrupted();
+    }
+
+    // Return the index of the first date in the date table that is on or
+    // after the given date.
+    private int findDateIndex(MappedQuoteFile file, int date) {
+        int index = file.findDate(date);
+
+        return (index >= 0? index : -(index + 1));
+    }
+
+    // Return the fast access offset of the given date, or 1 if the date
+    // falls on a weekend.
+    private int toOffset(EODQuoteCache quoteCache, int date) {
+        try {
+            return quoteCache.dateToOffset(MappedQuoteFile.toTradingDate(date));
+        }
+        catch(WeekendDateException e) {
+            return 1;
+        }
+    }
+
+    // Return the symbols in the file that are in the given quote range
+    private List getSymbols(MappedQuoteFile file, EODQuoteRange quoteRange) {
+        List symbols = new ArrayList();
+
+        if(quoteRange.getType() == EODQuoteRange.GIVEN_SYMBOLS) {
+            for(Iterator iterator = quoteRange.getAllSymbols().iterator(); iterator.hasNext();) {
+                Symbol symbol = (Symbol)iterator.next();
+
+                if(file.containsSymbol(symbol))
+                    symbols.add(symbol);
+            }
+        }
+        else {
+            for(Iterator iterator = file.getSymbols().iterator(); iterator.hasNext();) {
+                Symbol symbol = (Symbol)iterator.next();
+
+                if(quoteRange.containsSymbol(symbol))
+                    symbols.add(symbol);
+            }
+        }
+
+        return symbols;
+    }
+
+    /**
+     * Is the given symbol a market index?
+     *
+     * @param	symbol to test
+     * @return	yes or no
+     */
+    public boolean isMarketIndex(Symbol symbol) {
+        return PreferencesManager.isMarketIndex(symbol);
+    }
+
+    /**
+     * Return the advance/decline for the given date. This returns the number
+     * of all ordinary stocks that rose (day close > day open) - the number of all
+     * ordinary stocks that fell.
+     *
+     * @param date the date
+     * @exception throws MissingQuoteException if the date wasn't in the source
+     */
+    public int getAdvanceDecline(TradingDate date)
+        throws MissingQuoteException {
+
+        MappedQuoteFile file = getFile();
+
+        if(file == null)
+            return 0;
+
+        int dateIndex = file.findDate(MappedQuoteFile.toInt(date));
+
+        if(dateIndex < 0)
+            throw MissingQuoteException.getInstance();
+
+        return getAdvanceDecline(file, dateIndex, dateIndex)[0];
+    }
+
+    /**
+     * Return the advance/decline for each date in the given range that the
+     * source has quotes for.
+     *
+     * @param firstDate the first date
+     * @param lastDate the last date
+     * @return map of dates to the advance/decline on that date
+     */
+    public HashMap getAdvanceDecline(TradingDate firstDate, TradingDate lastDate)
+        throws MissingQuoteException {
+
+        HashMap advanceDeclines = new HashMap();
+        MappedQuoteFile file = getFile();
+
+        if(file == null)
+            return advanceDeclines;
+
+        int[] dates = file.getDates();
+        int firstIndex = findDateIndex(file, MappedQuoteFile.toInt(firstDate));
+        int lastIndex = findDateIndex(file, MappedQuoteFile.toInt(lastDate) + 1) - 1;
+
+        if(firstIndex <= lastIndex) {
+            int[] advanceDecline = getAdvanceDecline(file, firstIndex, lastIndex);
+
+            for(int i = firstIndex; i <= lastIndex; i++)
+                advanceDeclines.put(MappedQuoteFile.toTradingDate(dates[i]),
+                                    new Integer(advanceDecline[i - firstIndex]));
+        }
+
+        return advanceDeclines;
+    }
+
+    // Calculate the advance/decline of all ordinary stocks for each date
+    // in the date table between the given indices (inclusive).
+    private int[] getAdvanceDecline(MappedQuoteFile file, int firstIndex, int lastIndex) {
+        int[] dates = file.getDates();
+        int[] advanceDecline = new int[lastIndex - firstIndex + 1];
+        EODQuoteRange quoteRange = new EODQuoteRange(EODQuoteRange.ALL_ORDINARIES);
+        List symbols = getSymbols(file, quoteRange);
+        QuoteBuffer buffer = new QuoteBuffer(advanceDecline.length);
+
+        for(Iterator iterator = symbols.iterator(); iterator.hasNext();) {
+            Symbol symbol = (Symbol)iterator.next();
+            int count = buffer.read(file, symbol, dates[firstIndex], dates[lastIndex]);
+
+            int dateIndex = firstIndex;
+            for(int i = 0; i < count; i++) {
+                while(dates[dateIndex] < buffer.quoteDates[i])
+                    dateIndex++;
+
+                if(buffer.day_close[i] > buffer.day_open[i])
+                    advanceDecline[dateIndex - firstIndex]++;
+                else if(buffer.day_close[i] < buffer.day_open[i])
+                    advanceDecline[dateIndex - firstIndex]--;
+            }
+        }
+
+        return advanceDecline;
+    }
+
+    /**
+     * Return all the stored exchange rates between the two currencies.
+     *
+     * @param sourceCurrency the currency to convert from
+     * @param destinationCurrency the currency to convert to
+     * @return the exchange rate being the number of destinationCurrency that you can buy per
+     *         sourceCurrency
+     */
+    public List getExchangeRates(Currency sourceCurrency, Currency destinationCurrency) {
+        // We do not store the exchange rates in mapped files
+        return new ArrayList();
+    }
+
+    public synchronized void shutdown() {
+        if(file != null) {
+            file.close();
+            file = null;
+        }
+    }
+
+    /**
+     * Close the mapped file, forcing this quote source to re-open it.
+     */
+    public void cacheExpiry() {
+        shutdown();
+    }
+
+    // Close the mapped file and clear any failure, so the newest version
+    // of the file is opened when quotes are next read.
+    private synchronized void reopen() {
+        shutdown();
+        failed = false;
+    }
+
+    // Return the version number of the newest version of the given mapped
+    // quote file, or 0 if the only version is the file itself.
+    static int getNewestVersion(File fileName) {
+        File directory = fileName.getAbsoluteFile().getParentFile();
+        String prefix = fileName.getName() + ".";
+        String[] names = (directory != null? directory.list() : null);
+        int newestVersion = 0;
+
+        if(names != null) {
+            for(int i = 0; i < names.length; i++) {
+                if(names[i].startsWith(prefix)) {
+                    try {
+                        int version = Integer.parseInt(names[i].substring(prefix.length()));
+
+                        if(version > newestVersion)
+                            newestVersion = version;
+                    }
+                    catch(NumberFormatException e) {
+                        // Not a version, e.g. a temporary file
+                    }
+                }
+            }
+        }
+
+        return newestVersion;
+    }
+
+    // Return the file containing the given version of the mapped quote file
+    static File getVersionFile(File fileName, int version) {
+        if(version == 0)
+            return fileName;
+        else
+            return new File(fileName.getPath() + "." + version);
+    }
+
+    // Delete the versions of the mapped quote file older than the given
+    // version. A version that is still mapped may not be deleted, in which
+    // case it is deleted the next time the file is opened.
+    private static void deleteOlderVersions(File fileName, int version) {
+        for(int i = version - 1; i >= 0; i--) {
+            File versionFile = getVersionFile(fileName, i);
+
+            if(versionFile.exists())
+                versionFile.delete();
+        }
+    }
+
+    // Install a newly written mapped quote file as the next version of the
+    // given file. The current version isn't touched until the new version
+    // is in place. If the current quote source reads the file, it switches
+    // to the new version.
+    static void install(File temporaryFile, File fileName) throws IOException {
+        File versionFile = getVersionFile(fileName, getNewestVersion(fileName) + 1);
+
+        if(!temporaryFile.renameTo(versionFile))
+            throw new IOException("Cannot rename " + temporaryFile.getPath());
+
+        QuoteSource currentSource = QuoteSourceManager.getSource();
+
+        if(currentSource instanceof MappedQuoteSource &&
+           ((MappedQuoteSource)currentSource).fileName.getAbsoluteFile().equals(fileName.getAbsoluteFile()))
+            ((MappedQuoteSource)currentSource).reopen();
+        else
+            deleteOlderVersions(fileName, getNewestVersion(fileName));
+    }
+
+    /**
+     * Convert all the quotes in the given database quote source to a
+     * mapped quote file. The quotes are written as a new version of the
+     * file, see the class description, so an existing file is never
+     * modified or deleted while it may be mapped. If the current quote
+     * source reads the file, it will map the new version when it next
+     * reads quotes.
+     *
+     * @param source   the quote source to convert
+     * @param fileName the mapped quote file to create
+     * @return the number of quotes written, or -1 if the quotes could not
+     *         be read from the database or the conversion was cancelled
+     * @exception IOException if the file could not be written
+     */
+    public static int convert(DatabaseQuoteSource source, File fileName) throws IOException {
+        File temporaryFile = new File(fileName.getPath() + ".tmp");
+        MappedQuoteFileWriter writer = new MappedQuoteFileWriter(temporaryFile);
+        boolean success = false;
+        int quotes;
+
+        try {
+            success = source.exportQuotes(writer);
+        }
+        finally {
+            quotes = writer.close();
+        }
+
+        if(!success) {
+            temporaryFile.delete();
+            return -1;
+        }
+
+        install(temporaryFile, fileName);
+        return quotes;
+    }
+
+    // Buffers for reading a run of quotes of a symbol from the file
+    private class QuoteBuffer {
+        public int[] quoteDates;
+        public int[] dateOffsets;
+        public long[] day_volume;
+        public float[] day_low;
+        public float[] day_high;
+        public float[] day_open;
+        public float[] day_close;
+
+        public QuoteBuffer(int capacity) {
+            quoteDates = new int[capacity];
+            dateOffsets = new int[capacity];
+            day_volume = new long[capacity];
+            day_low = new float[capacity];
+            day_high = new float[capacity];
+            day_open = new float[capacity];
+            day_close = new float[capacity];
+        }
+
+        // Read the quotes of the symbol between the given dates (inclusive)
+        // and return the number of quotes read.
+        public int read(MappedQuoteFile file, Symbol symbol, int firstDate, int lastDate) {
+            int first = file.findDate(symbol, firstDate);
+            int count = file.findDate(symbol, lastDate + 1) - first;
+
+            // A symbol has at most one quote per date so the buffers will
+            // always be big enough.
+            assert count <= quoteDates.length;
+
+            file.read(symbol, first, count, quoteDates, day_volume, day_low,
+                      day_high, day_open, day_close);
+            return count;
+        }
+    }
+}
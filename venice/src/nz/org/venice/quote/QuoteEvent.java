@@ -19,7 +19,7 @@
 package nz.org.venice.quote;
 
 import java.util.EventObject;
-import java.util.List;
+import java.util.Set;
 
 /**
  * Representation of an event indicating that a new intra-day
@@ -31,12 +31,27 @@ import java.util.List;
  */
 public class QuoteEvent extends EventObject {
 
+    // Symbols whose quotes have changed
+    private Set symbols;
+
     /**
      * Create a new quote event based on the given module.
      *
      * @param quoteCache The intra-day quote cache
+     * @param symbols    The symbols whose quotes have changed
      */
-    public QuoteEvent(IDQuoteCache quoteCache) {
+    public QuoteEvent(IDQuoteCache quoteCache, Set symbols) {
         super(quoteCache);
+        this.symbols = symbols;
+    }
+
+    /**
+     * Return the symbols whose latest quotes are new or different from their
+     * previous quotes. Symbols whose quotes have not changed are not included.
+     *
+     * @return set of {@link Symbol}s
+     */
+    public Set getSymbols() {
+        return symbols;
     }
 }
\ No newline at end of file
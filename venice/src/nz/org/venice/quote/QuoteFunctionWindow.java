@@ -0,0 +1,378 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import nz.org.venice.parser.EvaluationException;
+
+/**
+ * A quote function source which slides over the quotes of a single symbol
+ * a day at a time. Quote functions such as the moving average are usually
+ * evaluated for the same symbol on consecutive days, and each time they
+ * read the whole period of quotes from the quote bundle. This class keeps
+ * the last period of quotes, so moving to the next day only needs a single
+ * quote to be read.
+ * <p>
+ * The average and RSI are also kept as running sums, so they can be found
+ * without looking at the whole period. They are only used when the sums
+ * are known to be exact, i.e. when every value in the window is a multiple
+ * of the smallest unit of precision of the values and the sums are small
+ * enough to be represented exactly. Since quotes are stored with single
+ * precision this is almost always the case. Otherwise the functions in
+ * {@link QuoteFunctions} are used over the kept quotes. Either way the
+ * results are identical to those functions.
+ * <p>
+ * This class is not thread safe.
+ *
+ * Example:
+ * <pre>
+ *      QuoteFunctionWindow window =
+ *          new QuoteFunctionWindow(quoteBundle, symbol, Quote.DAY_CLOSE, 0, 200);
+ *
+ *      for(int day = firstDay; day <= lastDay; day++) {
+ *          window.moveTo(day);
+ *          double average = window.avg();
+ *      }
+ * </pre>
+ *
+ * @author Andrew Leppard
+ * @see QuoteFunctions
+ * @see QuoteBundleFunctionSource
+ */
+public class QuoteFunctionWindow implements QuoteFunctionSource {
+
+    // Number of bits of precision in a double
+    private final static int PRECISION = 53;
+
+    // The quote bundle containing the quotes
+    private QuoteBundle quoteBundle;
+
+    // The symbol of the quotes to access
+    private Symbol symbol;
+
+    // The quote kind, one of {@link Quote#DAY_OPEN}, {@link Quote#DAY_CLOSE},
+    // {@link Quote#DAY_LOW}, {@link Quote#DAY_HIGH}, {@link Quote#DAY_VOLUME}
+    private int quoteKind;
+
+    // Offset of the last date in the window from the current day
+    private int offset;
+
+    // Number of quote dates in the window
+    private int period;
+
+    // The current day, only valid if isValid is set
+    private int day;
+    private boolean isValid = false;
+
+    // Quotes in the window, with missing quotes as NaN. The earliest
+    // quote is at the start index and the rest follow it around the array.
+    private double[] values;
+    private int start;
+
+    // Running sum and number of quotes in the window
+    private double sum;
+    private int count;
+
+    // Running sum of the gains and losses between consecutive quotes
+    // in the window, used by the RSI
+    private double sumGain;
+    private double sumLoss;
+    private int numberGains;
+    private int numberLosses;
+
+    // The latest quote in the window, or NaN if there are no quotes
+    private double last;
+
+    // The largest exponent and the lowest bit set of all the quotes
+    // that have been in the window since it was filled
+    private int maximumExponent;
+    private int lowestBit;
+
+    /**
+     * Create a new window over the quotes of the given symbol.
+     *
+     * @param quoteBundle the quote bundle containing the quotes
+     * @param symbol the symbol of the quotes
+     * @param quoteKind the quote kind, one of {@link Quote#DAY_OPEN}, {@link Quote#DAY_CLOSE},
+     *                  {@link Quote#DAY_LOW}, {@link Quote#DAY_HIGH}, {@link Quote#DAY_VOLUME}
+     * @param offset offset of the last date in the window from the current day
+     * @param period number of quote dates in the window
+     */
+    public QuoteFunctionWindow(QuoteBundle quoteBundle, Symbol symbol, int quoteKind,
+                               int offset, int period) {
+        assert period >= 0 && offset <= 0;
+
+        this.quoteBundle = quoteBundle;
+        this.symbol = symbol;
+        this.quoteKind = quoteKind;
+        this.offset = offset;
+        this.period = period;
+
+        values = new double[period];
+    }
+
+    /**
+     * Return whether this window covers the same quotes as a window created
+     * with the given arguments.
+     *
+     * @param quoteBundle the quote bundle containing the quotes
+     * @param quoteKind the quote kind
+     * @param offset offset of the last date in the window from the current day
+     * @param period number of quote dates in the window
+     * @return <code>true</code> if the window covers the same quotes
+     */
+    public boolean isSame(QuoteBundle quoteBundle, int quoteKind, int offset, int period) {
+        return (this.quoteBundle == quoteBundle && this.quoteKind == quoteKind &&
+                this.offset == offset && this.period == period);
+    }
+
+    /**
+     * Move the window so that it contains the quotes for the given day. If the
+     * day is shortly after the current day, the window slides forward and only
+     * the new quotes are read. Otherwise all the quotes in the window are read.
+     *
+     * @param day fast access date offset of the current day
+     * @exception EvaluationException if the quote bundle does not allow access
+     *            to a quote. See {@link nz.org.venice.analyser.gp.GPQuoteBundle}.
+     */
+    public void moveTo(int day) throws EvaluationException {
+        if(isValid && day == this.day)
+            return;
+
+        // Make sure the window is left empty if we can't read a quote
+        boolean canSlide = isValid && day > this.day && day - this.day < period;
+        isValid = false;
+
+        if(canSlide) {
+            for(int nextDay = this.day + 1; nextDay <= day; nextDay++)
+                slide(nextDay);
+        }
+        else
+            fill(day);
+
+        this.day = day;
+        isValid = true;
+    }
+
+    public double getValue(int index) {
+        assert isValid && index >= 0 && index < period;
+
+        return values[getPosition(index)];
+    }
+
+    /**
+     * Return the average of the quotes in the window. See
+     * {@link QuoteFunctions#avg}.
+     *
+     * @return the average
+     */
+    public double avg() throws EvaluationException {
+        assert isValid;
+
+        if(!isExact())
+            return QuoteFunctions.avg(this, period);
+
+        double avg = sum;
+
+        if(count > 1)
+            avg /= count;
+
+        return avg;
+    }
+
+    /**
+     * Return the RSI of the quotes in the window. See
+     * {@link QuoteFunctions#rsi}.
+     *
+     * @return the RSI
+     */
+    public double rsi() throws EvaluationException {
+        assert isValid;
+
+        if(!isExact())
+            return QuoteFunctions.rsi(this, period);
+
+        if(count < 2)
+            return 50.0D;
+        else if(numberLosses == 0 && numberGains == 0)
+            return 50.0D;
+        else
+            return relativeStrength();
+    }
+
+    /**
+     * Return the smoothed RSI of the quotes in the window, when there is no
+     * previous RSI. See {@link QuoteFunctions#smoothRSI}.
+     *
+     * @return the RSI
+     */
+    public double smoothRSI() throws EvaluationException {
+        assert isValid;
+
+        if(!isExact())
+            return QuoteFunctions.smoothRSI(this, period, null).rsi;
+
+        if(count < 2)
+            return 50.0D;
+        else
+            return relativeStrength();
+    }
+
+    // Calculate the RSI from the sums of the gains and losses, in the same way as
+    // QuoteFunctions does
+    private double relativeStrength() {
+        double avgLoss = (numberLosses > 0) ? sumLoss / numberLosses : 0.0;
+        double avgGain = (numberGains > 0) ? sumGain / numberGains : 0.0;
+
+        // If avg loss is 0, then RSI returns 100 by definition.
+        if(numberLosses == 0 || avgLoss == 0.0D)
+            return 100.0D;
+        else {
+            double RS = avgGain / avgLoss;
+            return 100.0D - 100.0D / (1.0D + RS);
+        }
+    }
+
+    // Read all the quotes for the given day
+    private void fill(int day) throws EvaluationException {
+        start = 0;
+        sum = sumGain = sumLoss = 0.0D;
+        count = numberGains = numberLosses = 0;
+        last = Double.NaN;
+        maximumExponent = Integer.MIN_VALUE;
+        lowestBit = Integer.MAX_VALUE;
+
+        for(int index = 0; index < period; index++) {
+            double value = getQuote(day, index - period + offset + 1);
+
+            values[index] = value;
+            add(value);
+        }
+    }
+
+    // Move the window forward to the given day, which must be the day
+    // after the current day
+    private void slide(int day) throws EvaluationException {
+        double value = getQuote(day, offset);
+
+        remove(values[start]);
+        values[start] = value;
+        start = (start + 1 < period) ? start + 1 : 0;
+        add(value);
+    }
+
+    // Add the given quote to the end of the window
+    private void add(double value) {
+        if(Double.isNaN(value))
+            return;
+
+        if(count > 0)
+            addChange(last, value, 1);
+
+        sum += value;
+        count++;
+        last = value;
+
+        // Keep track of the precision of the quotes
+        if(value != 0.0D) {
+            int exponent = Math.getExponent(value);
+
+            if(exponent < Double.MIN_EXPONENT) {
+                // Subnormal numbers are not worth the trouble
+                lowestBit = Integer.MIN_VALUE;
+            }
+            else {
+                long mantissa = ((Double.doubleToRawLongBits(value) & 0x000FFFFFFFFFFFFFL) |
+                                 0x0010000000000000L);
+
+                maximumExponent = Math.max(maximumExponent, exponent);
+                lowestBit = Math.min(lowestBit, exponent - (PRECISION - 1) +
+                                     Long.numberOfTrailingZeros(mantissa));
+            }
+        }
+    }
+
+    // Remove the given quote from the start of the window. The quote
+    // must still be at the start of the values array.
+    private void remove(double value) {
+        if(Double.isNaN(value))
+            return;
+
+        count--;
+        sum -= value;
+
+        if(count == 0)
+            last = Double.NaN;
+
+        // Remove the change to the next quote
+        else {
+            for(int index = 1; index < period; index++) {
+                double next = values[getPosition(index)];
+
+                if(!Double.isNaN(next)) {
+                    addChange(value, next, -1);
+                    break;
+                }
+            }
+        }
+    }
+
+    // Add or remove the change between the two consecutive quotes
+    private void addChange(double previous, double value, int sign) {
+        if(value > previous) {
+            sumGain += sign * (value - previous);
+            numberGains += sign;
+        }
+        else if(value < previous) {
+            sumLoss += sign * (previous - value);
+            numberLosses += sign;
+        }
+    }
+
+    // Return whether the running sums are exact. This is true if every
+    // value is a multiple of the lowest bit, and the sum of the absolute
+    // values and changes of the quotes in the window, plus the next quote,
+    // can be represented with double precision.
+    private boolean isExact() {
+        if(maximumExponent == Integer.MIN_VALUE)
+            return true;
+        else if(lowestBit == Integer.MIN_VALUE)
+            return false;
+
+        // Each change is less than 2^(maximumExponent + 2)
+        int periodBits = 32 - Integer.numberOfLeadingZeros(period);
+
+        return (periodBits + maximumExponent + 2 <= PRECISION + lowestBit);
+    }
+
+    // Return the position in the values array of the quote at the given index
+    private int getPosition(int index) {
+        index += start;
+        return (index < period) ? index : index - period;
+    }
+
+    private double getQuote(int day, int offset) throws EvaluationException {
+        try {
+            return quoteBundle.getQuote(symbol, quoteKind, day, offset);
+        }
+        catch(MissingQuoteException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -18,6 +18,7 @@
 
 package nz.org.venice.quote;
 
+import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
@@ -47,6 +48,18 @@ public class QuoteSourceFactory {
 	return new DatabaseQuoteSource(dbm);
     }
 
+    /**
+     * Create a mapped quote source using the mapped quote file given
+     * in the user preferences.
+     *
+     * @return the mapped quote source
+     */
+    public static MappedQuoteSource createMappedQuoteSource() {
+        String fileName = PreferencesManager.getMappedQuoteFileName();
+
+        return new MappedQuoteSource(new File(fileName));
+    }
+
     /**
      * Create A file quote source directly using the in-built sample files
      * as the quotes.
@@ -18,6 +18,7 @@
 
 package nz.org.venice.quote;
 
+import nz.org.venice.parser.ExpressionCache;
 import nz.org.venice.prefs.PreferencesManager;
 
 /**
@@ -56,6 +57,7 @@ public class QuoteSourceManager {
             sourceInstance.shutdown();
 
         sourceInstance = source;
+        ExpressionCache.getInstance().clear();
     }
     
     /**
@@ -67,6 +69,9 @@ public class QuoteSourceManager {
             sourceInstance.shutdown();
             sourceInstance = null;
         }
+
+        // Any remembered results may use the old quotes
+        ExpressionCache.getInstance().clear();
     }
     
     /**
@@ -92,6 +97,8 @@ public class QuoteSourceManager {
                 sourceInstance = QuoteSourceFactory.createDatabaseQuoteSource();
             else if(quoteSource == PreferencesManager.INTERNAL)
                 sourceInstance = QuoteSourceFactory.createInternalQuoteSource();
+            else if(quoteSource == PreferencesManager.MAPPED)
+                sourceInstance = QuoteSourceFactory.createMappedQuoteSource();
             else {
                 assert quoteSource == PreferencesManager.SAMPLES;
                 sourceInstance = QuoteSourceFactory.createSamplesQuoteSource();
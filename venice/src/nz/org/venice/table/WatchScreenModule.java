@@ -26,6 +26,7 @@ import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -143,10 +144,10 @@ public class WatchScreenModule extends AbstractTable implements Module, ActionLi
                 }
 	    });
 
-        // Update the table on new intra-day quotes
+        // Update the rows of symbols with new intra-day quotes
         IDQuoteCache.getInstance().addQuoteListener(new QuoteListener() {
                public void newQuotes(QuoteEvent event) {
-		   updateTable();
+		   updateTable(event.getSymbols());
                 }
             });
     }
@@ -596,11 +597,31 @@ public class WatchScreenModule extends AbstractTable implements Module, ActionLi
 
     /**
      * This function is called when new intra-day quotes have been downloaded
-     * and we should update the table.
+     * and we should update the table. Only the rows of the given symbols are
+     * updated, the other rows keep their quotes.
+     *
+     * @param symbols the symbols whose quotes have changed
      */
-    private void updateTable() {
-        model.setQuotes(getQuotes());
-        model.fireTableDataChanged();
+    private void updateTable(Set symbols) {
+        List quotes = new ArrayList();
+        Set watchedSymbols = new HashSet(watchScreen.getSymbols());
+        int dateOffset = quoteBundle.getLastOffset();
+
+        for(Iterator iterator = symbols.iterator(); iterator.hasNext();) {
+            Symbol symbol = (Symbol)iterator.next();
+
+            if(watchedSymbols.contains(symbol)) {
+                try {
+                    quotes.add(quoteBundle.getQuote(symbol, dateOffset));
+                }
+                catch(MissingQuoteException e) {
+                    // Keep the quote we have, the symbol will be
+                    // updated when its quote next changes.
+                }
+            }
+        }
+
+        model.updateQuotes(quotes);
     }
 
     public Settings getSettings() {
@@ -18,12 +18,20 @@
 
 package nz.org.venice.ui;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 
 import nz.org.venice.parser.EvaluationException;
+import nz.org.venice.quote.Quote;
 import nz.org.venice.quote.QuoteBundle;
 import nz.org.venice.util.Locale;
 
@@ -51,6 +59,11 @@ public abstract class AbstractQuoteModel extends AbstractTableModel {
 
     // Array of expression columns
     private ExpressionColumn[] expressionColumns;
+
+    // Rows updated since the table was last notified, and whether a
+    // notification has been queued
+    private BitSet updatedRows = new BitSet();
+    private boolean isUpdateQueued = false;
     
     /**
      * Create a new quote table model with no columns.
@@ -166,6 +179,93 @@ public abstract class AbstractQuoteModel extends AbstractTableModel {
         fireTableDataChanged();                       
     }
 
+    /**
+     * Replace the quotes of some of the symbols in the table. Only the expressions
+     * of the replaced quotes are recalculated, and the table is only told about the
+     * rows that changed.
+     *
+     * @param changedQuotes New quotes. Quotes of symbols that are not in the table
+     *                      are ignored.
+     */
+    public void updateQuotes(List changedQuotes) {
+        // Find the row of each symbol
+        Map rows = new HashMap();
+        for(int row = 0; row < quotes.size(); row++)
+            rows.put(((Quote)quotes.get(row)).getSymbol(), new Integer(row));
+
+        // Replace a copy of the quote list as the table may be reading it
+        List quotes = new ArrayList(this.quotes);
+        Set symbols = new HashSet();
+        BitSet changedRows = new BitSet();
+
+        for(Iterator iterator = changedQuotes.iterator(); iterator.hasNext();) {
+            Quote quote = (Quote)iterator.next();
+            Integer row = (Integer)rows.get(quote.getSymbol());
+
+            if(row != null) {
+                quotes.set(row.intValue(), quote);
+                symbols.add(quote.getSymbol());
+                changedRows.set(row.intValue());
+            }
+        }
+
+        if(symbols.isEmpty())
+            return;
+
+        this.quotes = quotes;
+
+        // Recalculate the expressions for the changed quotes
+        for(int i = 0; i < expressionColumns.length; i++) {
+            try {
+                expressionColumns[i].calculate(quoteBundle, quotes, symbols);
+            }
+            catch(EvaluationException e) {
+                displayErrorMessage(e.getReason());
+            }
+        }
+
+        queueRowsUpdated(changedRows);
+    }
+
+    /**
+     * Queue a notification to the table that the given rows have been updated.
+     * Rows updated before the event dispatch thread gets to the notification
+     * are sent along with it, as one event for each run of adjacent rows.
+     *
+     * @param rows The updated rows.
+     */
+    private synchronized void queueRowsUpdated(BitSet rows) {
+        updatedRows.or(rows);
+
+        if(!isUpdateQueued) {
+            isUpdateQueued = true;
+
+            SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        fireQueuedRowsUpdated();
+                    }
+                });
+        }
+    }
+
+    // Notify the table of all the rows updated since the last notification
+    private void fireQueuedRowsUpdated() {
+        BitSet rows;
+
+        synchronized(this) {
+            rows = updatedRows;
+            updatedRows = new BitSet();
+            isUpdateQueued = false;
+        }
+
+        for(int firstRow = rows.nextSetBit(0); firstRow >= 0;) {
+            int lastRow = rows.nextClearBit(firstRow) - 1;
+
+            fireTableRowsUpdated(firstRow, lastRow);
+            firstRow = rows.nextSetBit(lastRow + 1);
+        }
+    }
+
     /**
      * Return the number of rows in the table.
      *
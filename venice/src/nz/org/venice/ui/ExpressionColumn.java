@@ -22,6 +22,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import nz.org.venice.parser.EvaluationException;
 import nz.org.venice.parser.Expression;
@@ -134,43 +135,90 @@ public class ExpressionColumn extends Column implements Cloneable {
         results = new HashMap();
 
         if(expression != null) {
-            for(Iterator iterator = quotes.iterator(); iterator.hasNext();) {
-                Quote quote = (Quote)iterator.next();
-                
-                try {		   
-                    int offset = quoteBundle.getOffset(quote);
-
-                    double result = expression.evaluate(new Variables(), 
-                                                        quoteBundle, quote.getSymbol(), 
-                                                        offset);
-                    results.put(quote.getSymbol().toString() + quote.getDate().toString(),
-                                new ExpressionResult(expression.getType(), result));
-                }
-                catch(WeekendDateException e) {
-                    // Shouldn't happen
-                    assert false;
+            for(Iterator iterator = quotes.iterator(); iterator.hasNext();)
+                calculate(quoteBundle, (Quote)iterator.next(), results);
+        }
+    }
+
+    /**
+     * Execute the expression and calculate the result for the quotes of the given
+     * symbols. The results of the other quotes are kept from the last calculation,
+     * so when only a few quotes have changed, only their results are recalculated.
+     *
+     * @param quoteBundle Quote Bundle containing quotes
+     * @param quotes      A list of {@link Quote}s which contain the symbols and dates
+     *                    of every result to keep.
+     * @param symbols     The {@link Symbol}s whose results should be recalculated.
+     * @throws EvaluationException If the evaluation was halted.
+     * @see Quote
+     */
+    public void calculate(QuoteBundle quoteBundle, List quotes, Set symbols)
+        throws EvaluationException {
+
+        // Build a new map rather than modifying the current one, as the
+        // table may be reading the current results.
+        Map results = new HashMap();
+
+        if(expression != null) {
+            try {
+                for(Iterator iterator = quotes.iterator(); iterator.hasNext();) {
+                    Quote quote = (Quote)iterator.next();
+
+                    if(symbols.contains(quote.getSymbol()))
+                        calculate(quoteBundle, quote, results);
+                    else {
+                        String key = quote.getSymbol().toString() + quote.getDate().toString();
+                        Object result = this.results.get(key);
+
+                        if(result != null)
+                            results.put(key, result);
+                    }
                 }
-		catch (EvaluationException e) {
-		    //Some expressions evaluation will be undefined for
-		    //the parameters. (e.g. the expression evaluations to 
-		    //determining the maximum of the empty set. )
-		    //This could because of the applied date range 
-		    //doesn't contain any data.
-		    //We don't want to halt the application of equations
-		    //for all instances. 
-		    double result = 0.0;
-		    results.put(quote.getSymbol().toString() + quote.getDate().toString(),
-                                new ExpressionResult(expression.getType(), result));
-
-		    //But if a halt command is received, throw the exception
-		    //so the evaluation is halted as the user expects
-		    if (e == EvaluationException.EVALUATION_HALTED_EXCEPTION) {
-			throw e;
-		    }
-
-		}
+            }
+            finally {
+                this.results = results;
             }
         }
+        else
+            this.results = results;
+    }
+
+    // Calculate the result of the expression for the given quote and add
+    // it to the given map of results
+    private void calculate(QuoteBundle quoteBundle, Quote quote, Map results)
+        throws EvaluationException {
+
+        try {
+            int offset = quoteBundle.getOffset(quote);
+
+            double result = expression.evaluate(new Variables(), 
+                                                quoteBundle, quote.getSymbol(), 
+                                                offset);
+            results.put(quote.getSymbol().toString() + quote.getDate().toString(),
+                        new ExpressionResult(expression.getType(), result));
+        }
+        catch(WeekendDateException e) {
+            // Shouldn't happen
+            assert false;
+        }
+	catch (EvaluationException e) {
+	    //Some expressions evaluation will be undefined for
+	    //the parameters. (e.g. the expression evaluations to 
+	    //determining the maximum of the empty set. )
+	    //This could because of the applied date range 
+	    //doesn't contain any data.
+	    //We don't want to halt the application of equations
+	    //for all instances. 
+	    double result = 0.0;
+	    results.put(quote.getSymbol().toString() + quote.getDate().toString(),
+                        new ExpressionResult(expression.getType(), result));
+
+	    //But if a halt command is received, throw the exception
+	    //so the evaluation is halted as the user expects
+	    if (e == EvaluationException.EVALUATION_HALTED_EXCEPTION) {
+		throw e;
+	    }
+	}
     }
    
     /**
@@ -26,10 +26,12 @@ import java.awt.event.InputEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.TreeSet;
 
 import javax.swing.ImageIcon;
@@ -444,6 +446,27 @@ public class SortedTable extends JTable
             }
 	}
 
+	// Given a range of rows of the original unsorted data, what rows
+	// are they in the sorted data? Returns a list of Integers.
+	public List getSortedRows(int firstUnsortedRow, int lastUnsortedRow)
+	{
+	    List sortedRows = new ArrayList();
+
+	    // If the table size has changed then we need to resort first
+	    if(sortIndex.size() != getRowCount())
+		sort(currentSortColumn, currentSortDirection);
+
+	    int sortedRow = 0;
+	    for(Iterator iterator = sortIndex.iterator(); iterator.hasNext(); sortedRow++) {
+		int unsortedRow = ((TableElement)iterator.next()).getIndex();
+
+		if(unsortedRow >= firstUnsortedRow && unsortedRow <= lastUnsortedRow)
+		    sortedRows.add(new Integer(sortedRow));
+	    }
+
+	    return sortedRows;
+	}
+
 	public TableModel getUserModel()
 	{
 	    return userModel;
@@ -707,5 +730,28 @@ public class SortedTable extends JTable
         else
             return model.getSortedRow(unsortedRow);
     }
+
+    // Tables listen to the user's model directly, whose rows are in the
+    // unsorted order. Repaint updated rows where they appear in the sorted
+    // table, anything else is handled as before.
+    public void tableChanged(TableModelEvent e)
+    {
+	if(model != null && e.getSource() == model.getUserModel() &&
+	   e.getType() == TableModelEvent.UPDATE &&
+	   e.getFirstRow() != TableModelEvent.HEADER_ROW &&
+	   e.getLastRow() != Integer.MAX_VALUE) {
+
+	    List sortedRows = model.getSortedRows(e.getFirstRow(), e.getLastRow());
+
+	    for(Iterator iterator = sortedRows.iterator(); iterator.hasNext();) {
+		int sortedRow = ((Integer)iterator.next()).intValue();
+		Rectangle rowRectangle = getCellRect(sortedRow, 0, true);
+
+		repaint(0, rowRectangle.y, getWidth(), rowRectangle.height);
+	    }
+	}
+	else
+	    super.tableChanged(e);
+    }
 }
 
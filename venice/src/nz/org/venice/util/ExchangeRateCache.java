@@ -165,6 +165,23 @@ public class ExchangeRateCache {
         return destinationMoney.add(sourceMoney);        
     }
 
+    /**
+     * Add the given money to the given sum of money. This function will perform
+     * currency conversion if necessary.
+     *
+     * @param date             the date for the exchange
+     * @param destinationMoney the "destination" sum of money, which is updated
+     * @param sourceMoney      the "source" money
+     */
+    public void add(TradingDate date, MoneyAccumulator destinationMoney, Money sourceMoney) {
+        if(!destinationMoney.getCurrency().equals(sourceMoney.getCurrency()))
+            sourceMoney = sourceMoney.exchange(destinationMoney.getCurrency(),
+                                               getRate(date,
+                                                       sourceMoney.getCurrency(),
+                                                       destinationMoney.getCurrency()));
+        destinationMoney.add(sourceMoney);
+    }
+
     /**
      * Subtract the two given monies. The "source" money will be subtracted from
      * the "destination" money. This function will perform currency conversion
@@ -72,7 +72,7 @@ public class Money implements Cloneable, Comparable {
      *                   from a double to a long representation.
      * @param amount     the amount of money.
      */
-    private Money(Currency currency, double conversion, long amount) {
+    Money(Currency currency, double conversion, long amount) {
         this.currency = currency;
         this.conversion = conversion;
         this.amount = amount;
@@ -140,6 +140,15 @@ public class Money implements Cloneable, Comparable {
         return currency;
     }
 
+    /**
+     * Return the <code>long</code> representation of this money.
+     *
+     * @return the amount of money multiplied by the conversion value
+     */
+    long getAmount() {
+        return amount;
+    }
+
     /**
      * Add the given money to this money.
      * 
@@ -353,7 +362,7 @@ public class Money implements Cloneable, Comparable {
      * @param currency the currency
      * @return the conversion value
      */
-    private static double calculateConversion(Currency currency) {
+    static double calculateConversion(Currency currency) {
         return Math.pow(10.0D, (double)currency.getDefaultFractionDigits());
     }
 
@@ -367,7 +376,7 @@ public class Money implements Cloneable, Comparable {
      * @param conversion the conversion value
      * @return the resultant <code>double</code> value
      */
-    private static double toDouble(long value, double conversion) {
+    static double toDouble(long value, double conversion) {
         return ((double)value) / conversion;
     }
 
@@ -381,7 +390,7 @@ public class Money implements Cloneable, Comparable {
      * @param conversion the conversion value
      * @return the resultant <code>long</code> value
      */
-    private static long toLong(double value, double conversion) {
+    static long toLong(double value, double conversion) {
         return Math.round(value * conversion);
     }
 
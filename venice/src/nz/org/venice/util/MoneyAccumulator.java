@@ -0,0 +1,185 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.util;
+
+/**
+ * A mutable sum of money. Every calculation on {@link Money} creates a new
+ * object, which adds up when summing the value of a portfolio on every
+ * day of a paper trade. This class adds and subtracts money in place
+ * instead, and is used wherever a lot of money in the same currency
+ * is summed. The result is exactly the same as doing the calculation
+ * with <code>Money</code>, and can be turned back into
+ * <code>Money</code> when the calculation is done.
+ *
+ * @author Andrew Leppard
+ * @see Money
+ */
+public class MoneyAccumulator {
+
+    // The currency of the money
+    private Currency currency;
+
+    // The number we need to multiply the double representation of
+    // money to store it as a long, see Money
+    private double conversion;
+
+    // The sum of the money, stored the same way as Money stores it
+    private long amount;
+
+    /**
+     * Create a new sum of zero money in the given currency.
+     *
+     * @param currency the currency of the money
+     */
+    public MoneyAccumulator(Currency currency) {
+        this.currency = currency;
+        this.conversion = Money.calculateConversion(currency);
+        this.amount = 0;
+    }
+
+    /**
+     * Return the currency of the money.
+     *
+     * @return the currency
+     */
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * Set the sum to zero.
+     */
+    public void clear() {
+        amount = 0;
+    }
+
+    /**
+     * Set the sum to the given money.
+     *
+     * @param money the money
+     */
+    public void set(Money money) {
+        assert currency.equals(money.getCurrency());
+
+        amount = money.getAmount();
+    }
+
+    /**
+     * Add the given money to the sum.
+     *
+     * @param money the money to add
+     */
+    public void add(Money money) {
+        assert currency.equals(money.getCurrency());
+
+        amount += money.getAmount();
+    }
+
+    /**
+     * Add the given sum of money to this sum.
+     *
+     * @param money the sum of money to add
+     */
+    public void add(MoneyAccumulator money) {
+        assert currency.equals(money.currency);
+
+        amount += money.amount;
+    }
+
+    /**
+     * Add the given money to the sum.
+     *
+     * @param money the money to add
+     */
+    public void add(double money) {
+        amount += Money.toLong(money, conversion);
+    }
+
+    /**
+     * Subtract the given money from the sum.
+     *
+     * @param money the money to subtract
+     */
+    public void subtract(Money money) {
+        assert currency.equals(money.getCurrency());
+
+        amount -= money.getAmount();
+    }
+
+    /**
+     * Divide the sum by the given number.
+     *
+     * @param number the number to divide by
+     */
+    public void divide(int number) {
+        amount /= number;
+    }
+
+    /**
+     * Return whether the sum is less than or equal to the given money.
+     *
+     * @param money the money to compare with
+     * @return <code>true</code> if the sum is less than or equal to the given money
+     */
+    public boolean isLessThanEqual(Money money) {
+        assert currency.equals(money.getCurrency());
+
+        return (amount <= money.getAmount());
+    }
+
+    /**
+     * Return whether the sum is greater than the given money.
+     *
+     * @param money the money to compare with
+     * @return <code>true</code> if the sum is greater than the given money
+     */
+    public boolean isGreaterThan(Money money) {
+        assert currency.equals(money.getCurrency());
+
+        return (amount > money.getAmount());
+    }
+
+    /**
+     * Return the value of the sum as a <code>double</code>.
+     *
+     * @return the sum
+     */
+    public double doubleValue() {
+        return Money.toDouble(amount, conversion);
+    }
+
+    /**
+     * Return the sum as <code>Money</code>.
+     *
+     * @return the sum
+     */
+    public Money toMoney() {
+        return new Money(currency, conversion, amount);
+    }
+
+    /**
+     * Returns a <code>String</code> object representing the sum.
+     *
+     * @return the string representation.
+     */
+    public String toString() {
+        return toMoney().toString();
+    }
+}
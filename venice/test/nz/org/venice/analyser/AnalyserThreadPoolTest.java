@@ -0,0 +1,89 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.analyser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import junit.framework.TestCase;
+
+/**
+ * Verify that the analyser thread pool returns the results of its tasks
+ * in task order, whether or not it has worker threads.
+ *
+ * @see AnalyserThreadPool
+ */
+public class AnalyserThreadPoolTest extends TestCase {
+
+    public void testInline() {
+        checkOrder(new AnalyserThreadPool("Test", 1));
+    }
+
+    public void testThreaded() {
+        checkOrder(new AnalyserThreadPool("Test", 4));
+    }
+
+    public void testFailure() {
+        AnalyserThreadPool pool = new AnalyserThreadPool("Test", 4);
+        List tasks = new ArrayList();
+
+        tasks.add(new Callable() {
+                public Object call() {
+                    throw new IllegalStateException();
+                }
+            });
+
+        try {
+            pool.invokeAll(tasks, null);
+            fail();
+        }
+        catch(IllegalStateException e) {
+            // expected
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private void checkOrder(AnalyserThreadPool pool) {
+        List tasks = new ArrayList();
+
+        for(int i = 0; i < 100; i++) {
+            final int value = i;
+
+            tasks.add(new Callable() {
+                    public Object call() throws InterruptedException {
+                        // Finish the early tasks last
+                        Thread.sleep((100 - value) % 7);
+                        return new Integer(value);
+                    }
+                });
+        }
+
+        List results = pool.invokeAll(tasks, null);
+        pool.shutdown();
+
+        assertEquals(100, results.size());
+
+        for(int i = 0; i < 100; i++)
+            assertEquals(new Integer(i), results.get(i));
+    }
+}
@@ -0,0 +1,181 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.analyser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.parser.EvaluationException;
+import nz.org.venice.parser.Expression;
+import nz.org.venice.parser.ExpressionException;
+import nz.org.venice.parser.ImplicitVariables;
+import nz.org.venice.parser.Parser;
+import nz.org.venice.parser.Variables;
+import nz.org.venice.portfolio.Portfolio;
+import nz.org.venice.quote.EODQuote;
+import nz.org.venice.quote.EODQuoteBundle;
+import nz.org.venice.quote.EODQuoteCache;
+import nz.org.venice.quote.EODQuoteRange;
+import nz.org.venice.quote.GeneratedQuoteSource;
+import nz.org.venice.quote.QuoteSourceManager;
+import nz.org.venice.quote.Symbol;
+import nz.org.venice.quote.SymbolFormatException;
+import nz.org.venice.util.Money;
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Verify that paper trading with precalculated buy and sell signals gives
+ * exactly the same portfolio as evaluating the rules as it goes.
+ *
+ * @see SignalMatrix
+ * @see PaperTrade
+ */
+public class SignalMatrixTest extends TestCase {
+
+    private static final TradingDate LAST_DATE = new TradingDate(2005, 6, 30);
+    private static final int DAYS = 60;
+    private static final String[] SYMBOLS = {"AAA", "BBB", "CCC", "DDD", "EEE"};
+
+    // Reading held stops a rule from being precalculated, without changing
+    // its signals, as held is never negative.
+    private static final String NOT_PRECOMPUTABLE = " and held >= 0";
+
+    protected void setUp() {
+        QuoteSourceManager.setSource(new RisingAndFallingQuoteSource());
+        EODQuoteCache.expire();
+    }
+
+    protected void tearDown() {
+        // Let the quote source return to whatever the user selected
+        QuoteSourceManager.flush();
+    }
+
+    public void testIsPrecomputable() throws ExpressionException {
+        assertTrue(SignalMatrix.isPrecomputable(parse("close > avg(close, 5)")));
+        assertTrue(SignalMatrix.isPrecomputable(parse("order < 2 and daysfromstart > 3")));
+        assertFalse(SignalMatrix.isPrecomputable(parse("held > 5")));
+        assertFalse(SignalMatrix.isPrecomputable(parse("capital > 1000")));
+        assertFalse(SignalMatrix.isPrecomputable(parse("close > 0" + NOT_PRECOMPUTABLE)));
+    }
+
+    public void testQuoteRules() throws ExpressionException, SymbolFormatException {
+        checkSamePortfolio("close > avg(close, 5)", "close < avg(close, 5)",
+                           OrderComparator.DAY_CLOSE_DECREASING);
+    }
+
+    public void testOrderedRules() throws ExpressionException, SymbolFormatException {
+        // The order variable is defined when OrderCache.isOrdered() is true,
+        // which it is for NO_ORDER
+        checkSamePortfolio("order < 2 and close > lag(close, -1)",
+                           "daysfromstart > 3 and close < avg(close, 3)",
+                           OrderComparator.NO_ORDER);
+    }
+
+    public void testFailingRules() throws ExpressionException, SymbolFormatException {
+        // Dividing by zero fails on the days where the close is zero
+        checkSamePortfolio("close > 0 and 1 / (close - 10) > 0", "close < 9",
+                           OrderComparator.NO_ORDER);
+    }
+
+    // Paper trade with both precalculated and evaluated signals, and
+    // check the results are identical
+    private void checkSamePortfolio(String buy, String sell, int orderKey)
+        throws ExpressionException, SymbolFormatException {
+
+        EODQuoteBundle quoteBundle = createQuoteBundle();
+        OrderCache orderCache =
+            new OrderCache(quoteBundle, new OrderComparator(quoteBundle, orderKey));
+
+        Object precomputed = paperTrade(quoteBundle, orderCache, buy, sell);
+        Object evaluated = paperTrade(quoteBundle, orderCache,
+                                      "(" + buy + ")" + NOT_PRECOMPUTABLE,
+                                      "(" + sell + ")" + NOT_PRECOMPUTABLE);
+        assertEquals(evaluated, precomputed);
+    }
+
+    // Return the transactions of a paper trade keeping three stocks, or the
+    // error message if it failed
+    private Object paperTrade(EODQuoteBundle quoteBundle, OrderCache orderCache,
+                              String buyRule, String sellRule)
+        throws ExpressionException {
+
+        Variables variables = new Variables();
+        ImplicitVariables.getInstance().setup(variables, orderCache.isOrdered());
+
+        Expression buy = Parser.parse(variables, buyRule);
+        Expression sell = Parser.parse(variables, sellRule);
+        TradingDate startDate = LAST_DATE.previous(DAYS - 10);
+        Portfolio portfolio;
+
+        try {
+            portfolio = PaperTrade.paperTrade("Test", quoteBundle, variables,
+                                              orderCache, startDate, LAST_DATE,
+                                              buy, sell, new Money(10000),
+                                              3, new Money(10), "open", "open");
+        }
+        catch(EvaluationException e) {
+            return e.getMessage();
+        }
+
+        return portfolio.getTransactions();
+    }
+
+    private Expression parse(String rule) throws ExpressionException {
+        Variables variables = new Variables();
+        ImplicitVariables.getInstance().setup(variables, true);
+
+        return Parser.parse(variables, rule);
+    }
+
+    private EODQuoteBundle createQuoteBundle() throws SymbolFormatException {
+        List symbols = new ArrayList();
+
+        for(int i = 0; i < SYMBOLS.length; i++)
+            symbols.add(Symbol.find(SYMBOLS[i]));
+
+        return new EODQuoteBundle(new EODQuoteRange(symbols,
+                                                    LAST_DATE.previous(DAYS - 1),
+                                                    LAST_DATE));
+    }
+
+    // Quote source that makes up quotes which rise and fall. DDD doesn't
+    // trade every fifth day.
+    private static class RisingAndFallingQuoteSource extends GeneratedQuoteSource {
+        public RisingAndFallingQuoteSource() {
+            super(LAST_DATE);
+        }
+
+        protected EODQuote createQuote(Symbol symbol, TradingDate date, int day) {
+            int seed = symbol.toString().charAt(0) - 'A';
+
+            if(seed == 3 && day % 5 == 0)
+                return null;
+
+            float close = (float)Math.rint(10 + 3 * Math.sin(day * 0.7 + seed));
+            float open = (float)Math.rint(10 + 3 * Math.sin(day * 0.7 + seed - 0.5));
+
+            return new EODQuote(symbol, date, 1000 * (day % 7 + 1),
+                                Math.min(open, close) - 1, Math.max(open, close) + 1,
+                                open, close);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.analyser.ann;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.analyser.AnalyserThreadPool;
+
+import org.joone.engine.FullSynapse;
+import org.joone.engine.LinearLayer;
+import org.joone.engine.SigmoidLayer;
+import org.joone.net.NeuralNet;
+
+/**
+ * Verify that the backpropagation trainer reduces the error of a network
+ * and that the trained weights are written back to the Joone network.
+ *
+ * @see BackpropagationTrainer
+ */
+public class BackpropagationTrainerTest extends TestCase {
+
+    public void testTrain() {
+        NeuralNet nnet = createNetwork();
+        FeedForwardNetwork network = FeedForwardNetwork.create(nnet);
+        assertNotNull(network);
+
+        // Fire the first output if the first input is the larger,
+        // otherwise fire the second
+        Random random = new Random(1);
+        double[][] inputs = new double[400][2];
+        double[][] desired = new double[400][2];
+
+        for(int i = 0; i < inputs.length; i++) {
+            inputs[i][0] = random.nextDouble();
+            inputs[i][1] = random.nextDouble();
+            desired[i][0] = (inputs[i][0] > inputs[i][1]? 1.0D : 0.0D);
+            desired[i][1] = 1.0D - desired[i][0];
+        }
+
+        AnalyserThreadPool threadPool = new AnalyserThreadPool("Test", 4);
+        BackpropagationTrainer trainer =
+            new BackpropagationTrainer(network, 0.7D, 0.5D, threadPool);
+
+        double firstRMSE = trainer.train(inputs, desired, 0, inputs.length);
+        double lastRMSE = firstRMSE;
+
+        for(int cycle = 0; cycle < 500; cycle++)
+            lastRMSE = trainer.train(inputs, desired, 0, inputs.length);
+
+        threadPool.shutdown();
+
+        assertTrue(lastRMSE < firstRMSE / 2.0D);
+
+        // The Joone network should give the same outputs once the
+        // weights have been written back
+        network.writeWeights();
+        FeedForwardNetwork copy = FeedForwardNetwork.create(nnet);
+
+        for(int i = 0; i < 10; i++) {
+            double[] expected = network.run(inputs[i]);
+            double[] output = copy.run(inputs[i]);
+
+            for(int j = 0; j < expected.length; j++)
+                assertEquals(expected[j], output[j], 0.0D);
+        }
+    }
+
+    private NeuralNet createNetwork() {
+        LinearLayer input = new LinearLayer();
+        SigmoidLayer hidden = new SigmoidLayer();
+        SigmoidLayer output = new SigmoidLayer();
+
+        input.setRows(2);
+        hidden.setRows(6);
+        output.setRows(2);
+
+        FullSynapse synapseIH = new FullSynapse();
+        FullSynapse synapseHO = new FullSynapse();
+        input.addOutputSynapse(synapseIH);
+        hidden.addInputSynapse(synapseIH);
+        hidden.addOutputSynapse(synapseHO);
+        output.addInputSynapse(synapseHO);
+
+        synapseIH.randomize(0.5D);
+        synapseHO.randomize(0.5D);
+        hidden.randomize(0.5D);
+        output.randomize(0.5D);
+
+        NeuralNet nnet = new NeuralNet();
+        nnet.addLayer(input, NeuralNet.INPUT_LAYER);
+        nnet.addLayer(hidden, NeuralNet.HIDDEN_LAYER);
+        nnet.addLayer(output, NeuralNet.OUTPUT_LAYER);
+
+        return nnet;
+    }
+}
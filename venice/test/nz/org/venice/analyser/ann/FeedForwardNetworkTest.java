@@ -0,0 +1,138 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.analyser.ann;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joone.engine.ContextLayer;
+import org.joone.engine.DirectSynapse;
+import org.joone.engine.FullSynapse;
+import org.joone.engine.Layer;
+import org.joone.engine.LinearLayer;
+import org.joone.engine.Pattern;
+import org.joone.engine.SigmoidLayer;
+import org.joone.engine.TanhLayer;
+import org.joone.net.NeuralNet;
+
+/**
+ * Verify that running a copy of a Joone neural network gives the same
+ * outputs as running the network through Joone.
+ *
+ * @see FeedForwardNetwork
+ */
+public class FeedForwardNetworkTest extends TestCase {
+
+    public void testSigmoid() {
+        checkOutputs(createNetwork(new SigmoidLayer(), new SigmoidLayer()));
+    }
+
+    public void testTanh() {
+        checkOutputs(createNetwork(new TanhLayer(), new SigmoidLayer()));
+    }
+
+    public void testUnsupported() {
+        assertNull(FeedForwardNetwork.create(createNetwork(new ContextLayer(),
+                                                           new SigmoidLayer())));
+    }
+
+    // Create a network like the default network with the given hidden and
+    // output layers, and random weights
+    private NeuralNet createNetwork(Layer hidden, Layer output) {
+        LinearLayer input = new LinearLayer();
+
+        input.setRows(4);
+        hidden.setRows(12);
+        output.setRows(2);
+
+        FullSynapse synapseIH = new FullSynapse();
+        FullSynapse synapseHO = new FullSynapse();
+        input.addOutputSynapse(synapseIH);
+        hidden.addInputSynapse(synapseIH);
+        hidden.addOutputSynapse(synapseHO);
+        output.addInputSynapse(synapseHO);
+
+        synapseIH.randomize(0.5D);
+        synapseHO.randomize(0.5D);
+        hidden.randomize(0.5D);
+        output.randomize(0.5D);
+
+        NeuralNet nnet = new NeuralNet();
+        nnet.addLayer(input, NeuralNet.INPUT_LAYER);
+        nnet.addLayer(hidden, NeuralNet.HIDDEN_LAYER);
+        nnet.addLayer(output, NeuralNet.OUTPUT_LAYER);
+
+        return nnet;
+    }
+
+    private void checkOutputs(NeuralNet nnet) {
+        FeedForwardNetwork network = FeedForwardNetwork.create(nnet);
+        assertNotNull(network);
+        assertEquals(4, network.getInputs());
+        assertEquals(2, network.getOutputs());
+
+        Random random = new Random(1);
+        double[][] inputs = new double[10][4];
+
+        for(int i = 0; i < inputs.length; i++)
+            for(int j = 0; j < inputs[i].length; j++)
+                inputs[i][j] = random.nextDouble() * 10.0D - 5.0D;
+
+        double[][] outputs = network.run(inputs);
+
+        for(int i = 0; i < inputs.length; i++) {
+            double[] expected = runJoone(nnet, inputs[i]);
+            double[] output = network.run(inputs[i]);
+
+            for(int j = 0; j < expected.length; j++) {
+                assertEquals(expected[j], output[j], 1E-12D);
+                assertEquals(expected[j], outputs[i][j], 1E-12D);
+            }
+        }
+    }
+
+    // Run the network through Joone, as ArtificialNeuralNetwork used to
+    private double[] runJoone(NeuralNet nnet, double[] inputs) {
+        Layer input = nnet.getInputLayer();
+        input.removeAllInputs();
+        DirectSynapse inputSynapse = new DirectSynapse();
+        input.addInputSynapse(inputSynapse);
+
+        Layer output = nnet.getOutputLayer();
+        output.removeAllOutputs();
+        DirectSynapse outputSynapse = new DirectSynapse();
+        output.addOutputSynapse(outputSynapse);
+
+        nnet.start();
+
+        Pattern pattern = new Pattern(inputs);
+        pattern.setCount(1);
+        inputSynapse.fwdPut(pattern);
+        double[] outputs = outputSynapse.fwdGet().getArray();
+
+        Pattern stop = new Pattern(new double[inputs.length]);
+        stop.setCount(-1);
+        inputSynapse.fwdPut(stop);
+        outputSynapse.fwdGet();
+
+        return outputs;
+    }
+}
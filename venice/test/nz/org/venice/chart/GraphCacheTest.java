@@ -0,0 +1,109 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package nz.org.venice.chart;
+
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.chart.source.GraphSource;
+
+/**
+ * Verify that the graph cache only returns a graph's data when the graph's
+ * name, settings and source data are unchanged.
+ *
+ * @author Andrew Leppard
+ * @see GraphCache
+ */
+public class GraphCacheTest extends TestCase {
+
+    public void testHit() {
+        GraphCache cache = GraphCache.getInstance();
+        HashMap settings = createSettings("10");
+        Object data = new Object();
+
+        cache.put(GraphCache.createKey("Hit", settings, createSource(10)), data);
+
+        assertSame(data, cache.get(GraphCache.createKey("Hit", createSettings("10"),
+                                                        createSource(10))));
+    }
+
+    public void testFingerprintChanged() {
+        GraphCache cache = GraphCache.getInstance();
+        TestGraphSource source = createSource(10);
+
+        cache.put(GraphCache.createKey("Fingerprint", createSettings("10"), source),
+                  new Object());
+
+        // Change one of the quotes, as an import would
+        source.getGraphable().putY(new Integer(5), 1000.0D);
+
+        assertNull(cache.get(GraphCache.createKey("Fingerprint", createSettings("10"),
+                                                  source)));
+
+        // A source with more data is also different
+        assertNull(cache.get(GraphCache.createKey("Fingerprint", createSettings("10"),
+                                                  createSource(11))));
+    }
+
+    public void testSettingsChanged() {
+        GraphCache cache = GraphCache.getInstance();
+
+        cache.put(GraphCache.createKey("Settings", createSettings("10"), createSource(10)),
+                  new Object());
+
+        assertNull(cache.get(GraphCache.createKey("Settings", createSettings("20"),
+                                                  createSource(10))));
+    }
+
+    private HashMap createSettings(String period) {
+        HashMap settings = new HashMap();
+        settings.put("period", period);
+        return settings;
+    }
+
+    // Create a source with the given number of points
+    private TestGraphSource createSource(int size) {
+        Graphable graphable = new Graphable();
+
+        for(int i = 0; i < size; i++)
+            graphable.putY(new Integer(i), i * 1.5D);
+
+        return new TestGraphSource(graphable);
+    }
+
+    // Graph source of a symbol with the given data
+    private static class TestGraphSource implements GraphSource {
+        private Graphable graphable;
+
+        public TestGraphSource(Graphable graphable) {
+            this.graphable = graphable;
+        }
+
+        public String getName() { return "CBA"; }
+        public int getType() { return SYMBOL; }
+        public String getToolTipText(Comparable x) { return null; }
+        public String getYLabel(double value) { return null; }
+        public double[] getAcceptableMajorDeltas() { return null; }
+        public double[] getAcceptableMinorDeltas() { return null; }
+        public Graphable getGraphable() { return graphable; }
+        public void adjust(int type, double adjustValue, Comparable startPoint,
+                           boolean direction) {}
+    }
+}
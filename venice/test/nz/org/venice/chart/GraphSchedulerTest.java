@@ -0,0 +1,130 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package nz.org.venice.chart;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Verify that scheduling a job for a graph cancels the last job scheduled
+ * for the same graph, and that only the last job's results are used.
+ *
+ * @author Andrew Leppard
+ * @see GraphScheduler
+ */
+public class GraphSchedulerTest extends TestCase {
+
+    // Longest time to wait for a job, in milliseconds
+    private final static long TIMEOUT = 10000;
+
+    // Names of the jobs whose finish task ran
+    private List finished;
+
+    // Whether each job saw that it had been cancelled
+    private boolean[] cancelled;
+
+    protected void setUp() {
+        finished = Collections.synchronizedList(new ArrayList());
+        cancelled = new boolean[2];
+    }
+
+    public void testOnlyLastJobFinishes() throws InterruptedException {
+        scheduleTwoJobs(this, "graph", "graph");
+
+        assertEquals(1, finished.size());
+        assertEquals("second", finished.get(0));
+    }
+
+    public void testCancelledJob() throws InterruptedException {
+        scheduleTwoJobs(this, "graph", "graph");
+
+        assertTrue(cancelled[0]);
+        assertFalse(cancelled[1]);
+
+        // Threads that aren't running jobs are never cancelled
+        Thread.currentThread().interrupt();
+        assertFalse(GraphScheduler.isCancelled());
+        Thread.interrupted();
+    }
+
+    public void testDifferentGraphsNotCancelled() throws InterruptedException {
+        scheduleTwoJobs(this, "graph", "other graph");
+
+        assertFalse(cancelled[0]);
+        assertFalse(cancelled[1]);
+        assertEquals(2, finished.size());
+    }
+
+    // Schedule a job for the first graph and, once it has started,
+    // schedule a second job for the second graph. Wait for both to finish.
+    private void scheduleTwoJobs(Object owner, Object firstGraph, Object secondGraph)
+        throws InterruptedException {
+
+        final GraphScheduler scheduler = GraphScheduler.getInstance();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+
+        scheduler.schedule(owner, firstGraph, new Runnable() {
+                public void run() {
+                    started.countDown();
+
+                    // Pretend to compute the graph until cancelled, or
+                    // for a little while if not
+                    long end = System.currentTimeMillis() + 500;
+                    while(!GraphScheduler.isCancelled() &&
+                          System.currentTimeMillis() < end)
+                        Thread.yield();
+
+                    cancelled[0] = GraphScheduler.isCancelled();
+                    scheduler.finish(new Finish("first"));
+                    done.countDown();
+                }
+            });
+
+        assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        scheduler.schedule(owner, secondGraph, new Runnable() {
+                public void run() {
+                    cancelled[1] = GraphScheduler.isCancelled();
+                    scheduler.finish(new Finish("second"));
+                    done.countDown();
+                }
+            });
+
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    // Task which records that the job with the given name finished
+    private class Finish implements Runnable {
+        private String name;
+
+        public Finish(String name) {
+            this.name = name;
+        }
+
+        public void run() {
+            finished.add(name);
+        }
+    }
+}
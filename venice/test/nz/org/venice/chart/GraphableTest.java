@@ -0,0 +1,184 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.chart;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Verify that the highest and lowest Y values of a range of points, which
+ * are found using a segment tree, are the same as scanning every point in
+ * the range.
+ *
+ * @author Andrew Leppard
+ * @see Graphable
+ */
+public class GraphableTest extends TestCase {
+
+    // Sizes of the graphables tested. The segment tree doesn't need its
+    // size to be a power of two, so test sizes either side of one.
+    private final static int[] SIZES = {1, 2, 3, 7, 8, 9, 16, 100, 1000, 1025};
+
+    public void testRandomRanges() {
+        Random random = new Random(12345);
+
+        for(int i = 0; i < SIZES.length; i++) {
+            int size = SIZES[i];
+            Graphable graphable = createGraphable(random, size);
+
+            for(int j = 0; j < 500; j++) {
+                int firstIndex = random.nextInt(size);
+                int lastIndex = firstIndex + random.nextInt(size - firstIndex);
+
+                checkRange(graphable, firstIndex, lastIndex);
+            }
+        }
+    }
+
+    public void testSinglePoints() {
+        Random random = new Random(12345);
+
+        for(int i = 0; i < SIZES.length; i++) {
+            Graphable graphable = createGraphable(random, SIZES[i]);
+
+            for(int index = 0; index < SIZES[i]; index++)
+                checkRange(graphable, index, index);
+        }
+    }
+
+    public void testWholeRange() {
+        Random random = new Random(12345);
+
+        for(int i = 0; i < SIZES.length; i++) {
+            Graphable graphable = createGraphable(random, SIZES[i]);
+
+            checkRange(graphable, 0, SIZES[i] - 1);
+
+            // The range of X values is the same as the range of indices
+            List xRange = new ArrayList(graphable.getXRange());
+            assertEquals(highestY(graphable, 0, SIZES[i] - 1),
+                         graphable.getHighestY(xRange), 0.0D);
+            assertEquals(lowestY(graphable, 0, SIZES[i] - 1),
+                         graphable.getLowestY(xRange), 0.0D);
+        }
+    }
+
+    public void testNodeBoundaries() {
+        Random random = new Random(12345);
+
+        for(int i = 0; i < SIZES.length; i++) {
+            int size = SIZES[i];
+            Graphable graphable = createGraphable(random, size);
+
+            // Ranges which start or end on the edge of a node of each
+            // level of the tree, and just either side of it
+            for(int width = 1; width <= size; width *= 2) {
+                for(int boundary = 0; boundary <= size; boundary += width) {
+                    for(int delta = -1; delta <= 1; delta++) {
+                        int index = boundary + delta;
+
+                        if(index < 0 || index >= size)
+                            continue;
+
+                        checkRange(graphable, index, size - 1);
+                        checkRange(graphable, 0, index);
+                        checkRange(graphable, index, Math.min(size - 1, index + width - 1));
+                        checkRange(graphable, Math.max(0, index - width + 1), index);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testChangedValues() {
+        Random random = new Random(12345);
+        Graphable graphable = createGraphable(random, 100);
+
+        checkRange(graphable, 0, 99);
+
+        // Changing a value must rebuild the tree
+        graphable.putY(new Integer(50), 1000.0D);
+        graphable.putY(new Integer(60), -1000.0D);
+
+        assertEquals(1000.0D, graphable.getHighestY(0, 99), 0.0D);
+        assertEquals(-1000.0D, graphable.getLowestY(0, 99), 0.0D);
+        checkRange(graphable, 0, 99);
+        checkRange(graphable, 51, 59);
+
+        // Adding a point must rebuild the tree
+        graphable.putY(new Integer(100), 2000.0D);
+        assertEquals(2000.0D, graphable.getHighestY(0, 100), 0.0D);
+        checkRange(graphable, 0, 100);
+    }
+
+    public void testEmptyRange() {
+        Graphable graphable = createGraphable(new Random(12345), 10);
+
+        assertEquals(Double.NEGATIVE_INFINITY, graphable.getHighestY(5, 4), 0.0D);
+        assertEquals(Double.MAX_VALUE, graphable.getLowestY(5, 4), 0.0D);
+    }
+
+    // Create a graphable with the given number of points of random
+    // values. Some values are repeated, as they would be in a chart.
+    private Graphable createGraphable(Random random, int size) {
+        Graphable graphable = new Graphable();
+
+        for(int i = 0; i < size; i++) {
+            double y = random.nextInt(4) == 0 ?
+                random.nextInt(10) : (random.nextDouble() - 0.5D) * 100.0D;
+
+            graphable.putY(new Integer(i), y);
+        }
+
+        assertTrue(graphable.isSorted());
+        return graphable;
+    }
+
+    // Check the tree gives the same result as a linear scan
+    private void checkRange(Graphable graphable, int firstIndex, int lastIndex) {
+        String range = graphable.size() + ": " + firstIndex + "-" + lastIndex;
+
+        assertEquals(range, highestY(graphable, firstIndex, lastIndex),
+                     graphable.getHighestY(firstIndex, lastIndex), 0.0D);
+        assertEquals(range, lowestY(graphable, firstIndex, lastIndex),
+                     graphable.getLowestY(firstIndex, lastIndex), 0.0D);
+    }
+
+    private double highestY(Graphable graphable, int firstIndex, int lastIndex) {
+        double highestY = Double.NEGATIVE_INFINITY;
+
+        for(int i = firstIndex; i <= lastIndex; i++)
+            highestY = Math.max(highestY, graphable.getYAt(i));
+
+        return highestY;
+    }
+
+    private double lowestY(Graphable graphable, int firstIndex, int lastIndex) {
+        double lowestY = Double.MAX_VALUE;
+
+        for(int i = firstIndex; i <= lastIndex; i++)
+            lowestY = Math.min(lowestY, graphable.getYAt(i));
+
+        return lowestY;
+    }
+}
@@ -0,0 +1,271 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.parser;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.parser.expression.NumberExpression;
+import nz.org.venice.quote.MissingQuoteException;
+import nz.org.venice.quote.Quote;
+import nz.org.venice.quote.QuoteBundle;
+import nz.org.venice.quote.Symbol;
+import nz.org.venice.quote.SymbolFormatException;
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Verify that the expression cache shares results between equal
+ * expressions, and never caches expressions which use variables.
+ *
+ * @see ExpressionCache
+ */
+public class ExpressionCacheTest extends TestCase {
+
+    private final static int DAYS = 100;
+
+    private ExpressionCache cache;
+
+    protected void setUp() {
+        cache = ExpressionCache.getInstance();
+        cache.clear();
+        cache.resetStatistics();
+    }
+
+    public void testSharedSubexpression()
+        throws ExpressionException, SymbolFormatException {
+
+        Symbol symbol = Symbol.find("CBA");
+        QuoteBundle quoteBundle = createQuoteBundle();
+        Expression buyRule = parse("avg(close, 10, 0) > avg(close, 20, -1)");
+        Expression sellRule = parse("avg(close, 10, 0) < avg(close, 20, -1) * 0.9");
+
+        for(int day = 30; day < DAYS; day++) {
+            buyRule.evaluate(new Variables(), quoteBundle, symbol, day);
+            sellRule.evaluate(new Variables(), quoteBundle, symbol, day);
+        }
+
+        // The sell rule's averages are always the buy rule's averages
+        assertEquals(2 * (DAYS - 30), cache.getMisses());
+        assertEquals(2 * (DAYS - 30), cache.getHits());
+
+        // Cached results must be the same as evaluating the expression
+        Expression average = parse("avg(close, 20, -1)");
+        CacheableExpression uncached = (CacheableExpression)parse("avg(close, 20, -1)");
+
+        for(int day = 30; day < DAYS; day++)
+            assertEquals(uncached.evaluateUncached(new Variables(), quoteBundle, symbol, day),
+                         average.evaluate(new Variables(), quoteBundle, symbol, day),
+                         0.0D);
+    }
+
+    public void testQuoteKinds()
+        throws ExpressionException, SymbolFormatException {
+
+        Symbol symbol = Symbol.find("CBA");
+        QuoteBundle quoteBundle = createQuoteBundle();
+        Expression open = parse("max(open, 5, 0)");
+        Expression close = parse("max(close, 5, 0)");
+
+        assertFalse(open.equals(close));
+        assertEquals(50.0D, open.evaluate(new Variables(), quoteBundle, symbol, 50), 0.0D);
+        assertEquals(100.0D, close.evaluate(new Variables(), quoteBundle, symbol, 50), 0.0D);
+        assertEquals(0, cache.getHits());
+    }
+
+    public void testVariablesNotCached()
+        throws ExpressionException, SymbolFormatException {
+
+        Symbol symbol = Symbol.find("CBA");
+        QuoteBundle quoteBundle = createQuoteBundle();
+        Variables variables = new Variables();
+        variables.add("period", Expression.INTEGER_TYPE, false);
+
+        Expression average = Parser.parse(variables, "avg(close, period, 0)");
+
+        variables.setValue("period", 10);
+        double shortAverage = average.evaluate(variables, quoteBundle, symbol, 50);
+        variables.setValue("period", 20);
+        double longAverage = average.evaluate(variables, quoteBundle, symbol, 50);
+
+        assertTrue(shortAverage != longAverage);
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(0, cache.size());
+    }
+
+    public void testEviction()
+        throws ExpressionException, SymbolFormatException {
+
+        Symbol symbol = Symbol.find("CBA");
+        QuoteBundle quoteBundle = createQuoteBundle();
+        ExpressionCache smallCache = new ExpressionCache(2);
+        CacheableExpression average = (CacheableExpression)parse("avg(close, 10, 0)");
+
+        smallCache.evaluate(average, new Variables(), quoteBundle, symbol, 20);
+        smallCache.evaluate(average, new Variables(), quoteBundle, symbol, 21);
+        smallCache.evaluate(average, new Variables(), quoteBundle, symbol, 20);
+        smallCache.evaluate(average, new Variables(), quoteBundle, symbol, 22);
+        assertEquals(2, smallCache.size());
+        assertEquals(1, smallCache.getHits());
+
+        // Day 21 was the least recently used
+        smallCache.evaluate(average, new Variables(), quoteBundle, symbol, 20);
+        smallCache.evaluate(average, new Variables(), quoteBundle, symbol, 21);
+        assertEquals(2, smallCache.getHits());
+        assertEquals(4, smallCache.getMisses());
+    }
+
+    public void testStripedCache()
+        throws ExpressionException, SymbolFormatException {
+
+        Symbol symbol = Symbol.find("CBA");
+        QuoteBundle quoteBundle = createQuoteBundle();
+        ExpressionCache stripedCache = new ExpressionCache(ExpressionCache.DEFAULT_CAPACITY);
+        CacheableExpression average = (CacheableExpression)parse("avg(close, 10, 0)");
+
+        for(int day = 10; day < 100; day++)
+            stripedCache.evaluate(average, new Variables(), quoteBundle, symbol, day);
+        for(int day = 10; day < 100; day++)
+            assertEquals(average.evaluateUncached(new Variables(), quoteBundle, symbol, day),
+                         stripedCache.evaluate(average, new Variables(), quoteBundle,
+                                               symbol, day),
+                         0.0D);
+
+        assertEquals(90, stripedCache.size());
+        assertEquals(90, stripedCache.getHits());
+        assertEquals(90, stripedCache.getMisses());
+
+        stripedCache.clear();
+        assertEquals(0, stripedCache.size());
+    }
+
+    public void testExpressionChanged()
+        throws ExpressionException, SymbolFormatException {
+
+        Symbol symbol = Symbol.find("CBA");
+        QuoteBundle quoteBundle = createQuoteBundle();
+        ExpressionCache cache = new ExpressionCache(ExpressionCache.DEFAULT_CAPACITY);
+        CacheableExpression average = (CacheableExpression)parse("avg(close, 10, 0)");
+
+        cache.evaluate(average, new Variables(), quoteBundle, symbol, 50);
+
+        // Changing a number in place, as the genetic programme's mutator
+        // does, must give a different result rather than the cached one
+        ((NumberExpression)average.getChild(1)).setValue(20);
+
+        assertEquals(parse("avg(close, 20, 0)").evaluate(new Variables(), quoteBundle,
+                                                         symbol, 50),
+                     cache.evaluate(average, new Variables(), quoteBundle, symbol, 50),
+                     0.0D);
+        assertEquals(2, cache.getMisses());
+    }
+
+    public void testQuotesChanged()
+        throws ExpressionException, SymbolFormatException {
+
+        Symbol symbol = Symbol.find("CBA");
+        double[] closes = new double[DAYS];
+        QuoteBundle quoteBundle = createQuoteBundle(closes);
+        String[] rules = {"avg(close, 2)", "sd(close, 2)", "ema(close, 2)",
+                          "bol_upper(close, 2)", "bol_lower(close, 2)", "rsi(3)"};
+        Expression[] expressions = new Expression[rules.length];
+
+        for(int day = 0; day < DAYS; day++)
+            closes[day] = 5.0D + day % 3;
+
+        for(int i = 0; i < rules.length; i++) {
+            expressions[i] = parse(rules[i]);
+            expressions[i].evaluate(new Variables(), quoteBundle, symbol, 50);
+        }
+
+        // Change the quotes behind the same offsets, as an import does,
+        // and make sure no expression returns a result from the old quotes
+        closes[49] = 20.0D;
+        closes[50] = 12.0D;
+        cache.clear();
+
+        for(int i = 0; i < rules.length; i++) {
+            CacheableExpression uncached = (CacheableExpression)parse(rules[i]);
+
+            assertEquals(rules[i],
+                         uncached.evaluateUncached(new Variables(), quoteBundle, symbol, 50),
+                         expressions[i].evaluate(new Variables(), quoteBundle, symbol, 50),
+                         0.0D);
+        }
+    }
+
+    private Expression parse(String string) throws ExpressionException {
+        return Parser.parse(new Variables(), string);
+    }
+
+    // Create a quote bundle where the day open is the date offset and
+    // the day close is twice the date offset
+    private QuoteBundle createQuoteBundle() {
+        double[] closes = new double[DAYS];
+
+        for(int day = 0; day < DAYS; day++)
+            closes[day] = 2 * day;
+
+        return createQuoteBundle(closes);
+    }
+
+    // Create a quote bundle where the day open is the date offset and
+    // the day close is read from the given array, which may be changed
+    private QuoteBundle createQuoteBundle(final double[] closes) {
+        return new QuoteBundle() {
+                public double getQuote(Symbol symbol, int quoteType, int now, int offset)
+                    throws MissingQuoteException {
+                    return getQuote(symbol, quoteType, now + offset);
+                }
+
+                public double getQuote(Symbol symbol, int quoteType, int offset)
+                    throws MissingQuoteException {
+                    if(offset < 0 || offset >= DAYS)
+                        throw MissingQuoteException.getInstance();
+                    return (quoteType == Quote.DAY_CLOSE) ? closes[offset] : offset;
+                }
+
+                public double getNearestQuote(Symbol symbol, int quoteType, int offset)
+                    throws MissingQuoteException {
+                    return getQuote(symbol, quoteType, offset);
+                }
+
+                public Quote getQuote(Symbol symbol, int offset)
+                    throws MissingQuoteException {
+                    throw MissingQuoteException.getInstance();
+                }
+
+                public TradingDate offsetToDate(int offset) {
+                    return null;
+                }
+
+                public int getOffset(Quote quote) {
+                    return 0;
+                }
+
+                public int getFirstOffset() {
+                    return 0;
+                }
+
+                public int getLastOffset() {
+                    return DAYS - 1;
+                }
+            };
+    }
+}
@@ -0,0 +1,183 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.parser;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.parser.expression.CompiledExpression;
+import nz.org.venice.quote.MissingQuoteException;
+import nz.org.venice.quote.Quote;
+import nz.org.venice.quote.QuoteBundle;
+import nz.org.venice.quote.Symbol;
+import nz.org.venice.quote.SymbolFormatException;
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Verify that compiled expressions give exactly the same results as
+ * the original expressions.
+ *
+ * @see ExpressionCompiler
+ */
+public class ExpressionCompilerTest extends TestCase {
+
+    private final static int DAYS = 50;
+
+    public void testCompiledResults()
+        throws ExpressionException, SymbolFormatException {
+
+        String[] expressions = {
+            "x + y * 2",
+            "(x - y) / (y + 1)",
+            "percent(x, 20) - abs(y - 7)",
+            "x > y",
+            "x >= y",
+            "x < y",
+            "x <= y",
+            "x == y",
+            "x != y",
+            "x > 3 and y < 5",
+            "x > 3 or y < 5",
+            "not(x > y)",
+            "if(x > y) {x * 2} else {y / 3}",
+            "close > open * 1.1",
+            "avg(close, 5, 0) > avg(close, 10, -1) and close > 2 * 5",
+            "(close - open) / (close - open)",
+            "lag(close, -1) / close > 1.5 or volume < 100"
+        };
+
+        Symbol symbol = Symbol.find("CBA");
+        QuoteBundle quoteBundle = createQuoteBundle();
+
+        for(int i = 0; i < expressions.length; i++) {
+            Variables variables = createVariables();
+            Expression expression = Parser.parse(variables, expressions[i]);
+            Expression compiled = ExpressionCompiler.compile(expression);
+
+            assertTrue(expressions[i], compiled instanceof CompiledExpression);
+            assertEquals(expression.toString(), compiled.toString());
+            assertEquals(expression.getType(), compiled.getType());
+
+            for(int day = 15; day < DAYS; day++) {
+                variables.setValue("x", day % 7);
+                variables.setValue("y", day % 5);
+
+                compare(expressions[i], expression, compiled, variables,
+                        quoteBundle, symbol, day);
+                compare(expressions[i], expression, (Expression)compiled.clone(), variables,
+                        quoteBundle, symbol, day);
+            }
+        }
+    }
+
+    public void testNotCompiled() throws ExpressionException {
+        Expression expression = Parser.parse(createVariables(), "avg(close, 20, 0)");
+
+        assertSame(expression, ExpressionCompiler.compile(expression));
+    }
+
+    public void testConstantFolding() throws ExpressionException {
+        Expression expression = Parser.parse(createVariables(), "x > 2 * 10 + 1");
+
+        // Only the variable is left to be evaluated
+        assertEquals(1, ExpressionCompiler.getNodes(expression).length);
+    }
+
+    // Compare the result or the exception of the two expressions
+    private void compare(String text, Expression expression, Expression compiled,
+                         Variables variables, QuoteBundle quoteBundle, Symbol symbol,
+                         int day) {
+        String expected;
+        String actual;
+
+        try {
+            expected = Double.toString(expression.evaluate(variables, quoteBundle,
+                                                           symbol, day));
+        }
+        catch(EvaluationException e) {
+            expected = e.getReason();
+        }
+
+        try {
+            actual = Double.toString(compiled.evaluate(variables, quoteBundle,
+                                                       symbol, day));
+        }
+        catch(EvaluationException e) {
+            actual = e.getReason();
+        }
+
+        assertEquals(text + " on day " + day, expected, actual);
+    }
+
+    private Variables createVariables() {
+        Variables variables = new Variables();
+        variables.add("x", Expression.INTEGER_TYPE, false);
+        variables.add("y", Expression.INTEGER_TYPE, false);
+        return variables;
+    }
+
+    // Create a quote bundle with a saw tooth of quotes, where the day open
+    // equals the day close every fourth day
+    private QuoteBundle createQuoteBundle() {
+        return new QuoteBundle() {
+                public double getQuote(Symbol symbol, int quoteType, int now, int offset)
+                    throws MissingQuoteException {
+                    return getQuote(symbol, quoteType, now + offset);
+                }
+
+                public double getQuote(Symbol symbol, int quoteType, int offset)
+                    throws MissingQuoteException {
+                    if(offset < 0 || offset >= DAYS)
+                        throw MissingQuoteException.getInstance();
+                    else if(quoteType == Quote.DAY_OPEN)
+                        return 10 + offset % 3;
+                    else if(quoteType == Quote.DAY_VOLUME)
+                        return 50 * (offset % 4);
+                    else
+                        return 10 + offset % 4;
+                }
+
+                public double getNearestQuote(Symbol symbol, int quoteType, int offset)
+                    throws MissingQuoteException {
+                    return getQuote(symbol, quoteType, offset);
+                }
+
+                public Quote getQuote(Symbol symbol, int offset)
+                    throws MissingQuoteException {
+                    throw MissingQuoteException.getInstance();
+                }
+
+                public TradingDate offsetToDate(int offset) {
+                    return null;
+                }
+
+                public int getOffset(Quote quote) {
+                    return 0;
+                }
+
+                public int getFirstOffset() {
+                    return 0;
+                }
+
+                public int getLastOffset() {
+                    return DAYS - 1;
+                }
+            };
+    }
+}
@@ -0,0 +1,168 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.parser;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.quote.MissingQuoteException;
+import nz.org.venice.quote.Quote;
+import nz.org.venice.quote.QuoteBundle;
+import nz.org.venice.quote.Symbol;
+import nz.org.venice.quote.SymbolFormatException;
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Verify that evaluating an expression over a range of days gives exactly
+ * the same results as evaluating it a day at a time.
+ *
+ * @see Expression#evaluateSeries
+ */
+public class ExpressionSeriesTest extends TestCase {
+
+    private final static int DAYS = 50;
+
+    public void testSeriesResults()
+        throws ExpressionException, SymbolFormatException {
+
+        String[] expressions = {
+            "close + open * 2",
+            "(close - open) / (open + 1)",
+            "close > open",
+            "close >= open",
+            "close < open",
+            "close <= open",
+            "close == open",
+            "close != open",
+            "close > 11 and open < 12",
+            "close > 11 or open < 11",
+            "not(close > open)",
+            "avg(close, 5, 0) > avg(close, 10, -1)",
+            "avg(open, lag(open, -1) - 8, 0)",
+            "ema(close, 5, 0, 0.2) - ema(close, 10, -2, 0.1)",
+            "rsi(7, 0) + rsi(3, -1)",
+            "lag(close, -3) - lag(open, -1)",
+            "(close - open) / (close - open)",
+            "avg(close, 0, 0)",
+            "lag(close, -60)"
+        };
+
+        Symbol symbol = Symbol.find("CBA");
+        QuoteBundle quoteBundle = createQuoteBundle();
+
+        for(int i = 0; i < expressions.length; i++) {
+            Expression expression = Parser.parse(new Variables(), expressions[i]);
+
+            compare(expressions[i], expression, quoteBundle, symbol, 20, DAYS - 1);
+            compare(expressions[i], expression, quoteBundle, symbol, 0, DAYS - 1);
+            compare(expressions[i], expression, quoteBundle, symbol, 30, 30);
+            compare(expressions[i], ExpressionCompiler.compile(expression),
+                    quoteBundle, symbol, 20, DAYS - 1);
+        }
+    }
+
+    public void testVariables() throws ExpressionException, SymbolFormatException {
+        // Expressions with side effects must be evaluated a day at a time
+        Expression expression = Parser.parse(new Variables(), "int x = 0\n x = x + 1");
+        double[] results = expression.evaluateSeries(new Variables(), createQuoteBundle(),
+                                                     Symbol.find("CBA"), 10, 14);
+
+        assertEquals(5, results.length);
+        assertEquals(1.0D, results[4], 0.0D);
+    }
+
+    // Compare the results or the exception of the series with evaluating a
+    // day at a time
+    private void compare(String text, Expression expression, QuoteBundle quoteBundle,
+                         Symbol symbol, int firstDay, int lastDay) {
+        String expected = "";
+        String actual = "";
+
+        try {
+            for(int day = firstDay; day <= lastDay; day++)
+                expected += expression.evaluate(new Variables(), quoteBundle,
+                                                symbol, day) + " ";
+        }
+        catch(EvaluationException e) {
+            expected = e.getReason();
+        }
+
+        try {
+            double[] results = expression.evaluateSeries(new Variables(), quoteBundle, symbol,
+                                                         firstDay, lastDay);
+            assertEquals(text, lastDay - firstDay + 1, results.length);
+
+            for(int i = 0; i < results.length; i++)
+                actual += results[i] + " ";
+        }
+        catch(EvaluationException e) {
+            actual = e.getReason();
+        }
+
+        assertEquals(text + " from day " + firstDay, expected, actual);
+    }
+
+    // Create a quote bundle with a saw tooth of quotes
+    private QuoteBundle createQuoteBundle() {
+        return new QuoteBundle() {
+                public double getQuote(Symbol symbol, int quoteType, int now, int offset)
+                    throws MissingQuoteException {
+                    return getQuote(symbol, quoteType, now + offset);
+                }
+
+                public double getQuote(Symbol symbol, int quoteType, int offset)
+                    throws MissingQuoteException {
+                    if(offset < 0 || offset >= DAYS)
+                        throw MissingQuoteException.getInstance();
+                    else if(quoteType == Quote.DAY_OPEN)
+                        return 10 + offset % 3;
+                    else if(quoteType == Quote.DAY_VOLUME)
+                        return 50 * (offset % 4);
+                    else
+                        return 10 + offset % 4;
+                }
+
+                public double getNearestQuote(Symbol symbol, int quoteType, int offset)
+                    throws MissingQuoteException {
+                    return getQuote(symbol, quoteType, offset);
+                }
+
+                public Quote getQuote(Symbol symbol, int offset)
+                    throws MissingQuoteException {
+                    throw MissingQuoteException.getInstance();
+                }
+
+                public TradingDate offsetToDate(int offset) {
+                    return new TradingDate(2000, 1, 3).next(offset);
+                }
+
+                public int getOffset(Quote quote) {
+                    return 0;
+                }
+
+                public int getFirstOffset() {
+                    return 0;
+                }
+
+                public int getLastOffset() {
+                    return DAYS - 1;
+                }
+            };
+    }
+}
@@ -0,0 +1,199 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.portfolio;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.quote.EODQuote;
+import nz.org.venice.quote.EODQuoteBundle;
+import nz.org.venice.quote.EODQuoteCache;
+import nz.org.venice.quote.EODQuoteRange;
+import nz.org.venice.quote.GeneratedQuoteSource;
+import nz.org.venice.quote.MissingQuoteException;
+import nz.org.venice.quote.Quote;
+import nz.org.venice.quote.QuoteSourceManager;
+import nz.org.venice.quote.Symbol;
+import nz.org.venice.quote.SymbolFormatException;
+import nz.org.venice.util.Currency;
+import nz.org.venice.util.Money;
+import nz.org.venice.util.MoneyAccumulator;
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Verify that valuing a portfolio from its ledger gives exactly the same
+ * value as asking each of its accounts for their value.
+ *
+ * @author Andrew Leppard
+ * @see PortfolioLedger
+ */
+public class PortfolioLedgerTest extends TestCase {
+
+    private static final TradingDate LAST_DATE = new TradingDate(2005, 6, 30);
+    private static final int DAYS = 120;
+    private static final String[] SYMBOLS = {"AAA", "BBB", "CCC", "DDD"};
+
+    protected void setUp() {
+        QuoteSourceManager.setSource(new FractionalQuoteSource());
+        EODQuoteCache.expire();
+    }
+
+    protected void tearDown() {
+        // Let the quote source return to whatever the user selected
+        QuoteSourceManager.flush();
+    }
+
+    public void testLedgerValue() throws SymbolFormatException, MissingQuoteException {
+        EODQuoteBundle quoteBundle = createQuoteBundle();
+        Random random = new Random(12345);
+
+        Portfolio portfolio = new Portfolio("Test", Currency.getDefaultCurrency());
+        CashAccount[] cashAccounts = {new CashAccount("Cash 1"),
+                                      new CashAccount("Cash 2")};
+        ShareAccount[] shareAccounts = {new ShareAccount("Shares 1"),
+                                        new ShareAccount("Shares 2"),
+                                        new ShareAccount("Shares 3")};
+
+        for(int i = 0; i < cashAccounts.length; i++)
+            portfolio.addAccount(cashAccounts[i]);
+        for(int i = 0; i < shareAccounts.length; i++)
+            portfolio.addAccount(shareAccounts[i]);
+
+        for(int dateOffset = quoteBundle.getFirstOffset();
+            dateOffset <= quoteBundle.getLastOffset(); dateOffset++) {
+
+            // The ledger built on the previous day is still valid
+            checkValue(portfolio, quoteBundle, dateOffset);
+
+            TradingDate date = quoteBundle.offsetToDate(dateOffset);
+            int transactions = random.nextInt(4);
+
+            for(int i = 0; i < transactions; i++)
+                portfolio.addTransaction(createTransaction(random, quoteBundle, dateOffset,
+                                                           cashAccounts, shareAccounts));
+
+            checkValue(portfolio, quoteBundle, dateOffset);
+        }
+
+        // Make sure the test covered the ledger with a few holdings
+        assertTrue(portfolio.getStocksHeld().size() > 1);
+    }
+
+    // Check the portfolio's value on the given day matches the old
+    // valuation, which asks each account for its value.
+    private void checkValue(Portfolio portfolio, EODQuoteBundle quoteBundle, int dateOffset)
+        throws MissingQuoteException {
+
+        Currency currency = portfolio.getCurrency();
+        TradingDate date = quoteBundle.offsetToDate(dateOffset);
+        MoneyAccumulator value = new MoneyAccumulator(currency);
+        MoneyAccumulator cashValue = new MoneyAccumulator(currency);
+
+        for(Iterator iterator = portfolio.getAccounts().iterator(); iterator.hasNext();) {
+            Account account = (Account)iterator.next();
+
+            account.addValue(value, quoteBundle, dateOffset);
+
+            if(account.getType() == Account.CASH_ACCOUNT)
+                cashValue.add(((CashAccount)account).getValue());
+        }
+
+        assertEquals(value.toMoney(), portfolio.getValue(quoteBundle, dateOffset));
+        assertEquals(cashValue.toMoney(), portfolio.getCashValue(date));
+        assertEquals(portfolio.getShareValue(quoteBundle, date),
+                     portfolio.getShareValue(quoteBundle, dateOffset));
+
+        MoneyAccumulator ledgerCashValue = new MoneyAccumulator(currency);
+        new PortfolioLedger(currency, portfolio.getAccounts()).addCashValue(ledgerCashValue);
+        assertEquals(cashValue.toMoney(), ledgerCashValue.toMoney());
+    }
+
+    // Create a random deposit, withdrawal, transfer or share trade. Shares
+    // are only sold or reinvested if they are held, otherwise they are bought.
+    private Transaction createTransaction(Random random, EODQuoteBundle quoteBundle,
+                                          int dateOffset, CashAccount[] cashAccounts,
+                                          ShareAccount[] shareAccounts)
+        throws SymbolFormatException, MissingQuoteException {
+
+        TradingDate date = quoteBundle.offsetToDate(dateOffset);
+        CashAccount cashAccount = cashAccounts[random.nextInt(cashAccounts.length)];
+        ShareAccount shareAccount = shareAccounts[random.nextInt(shareAccounts.length)];
+        Symbol symbol = Symbol.find(SYMBOLS[random.nextInt(SYMBOLS.length)]);
+        Money amount = new Money(random.nextInt(100000) / 100.0D);
+        Money tradeCost = new Money(10);
+        StockHolding holding = shareAccount.get(symbol);
+
+        int type = random.nextInt(6);
+        double price = quoteBundle.getQuote(symbol, Quote.DAY_CLOSE, dateOffset);
+
+        if(type == 0)
+            return Transaction.newDeposit(date, amount, cashAccount);
+        else if(type == 1)
+            return Transaction.newWithdrawal(date, amount, cashAccount);
+        else if(type == 2)
+            return Transaction.newTransfer(date, amount, cashAccount,
+                                           cashAccounts[random.nextInt(cashAccounts.length)]);
+        else if(type == 3 && holding != null)
+            return Transaction.newDividendDRP(date, symbol, random.nextInt(20) + 1,
+                                              shareAccount);
+        else if(type == 5 && holding != null) {
+            int shares = random.nextInt(holding.getShares()) + 1;
+
+            return Transaction.newReduce(date, new Money(price * shares), symbol, shares,
+                                         tradeCost, cashAccount, shareAccount);
+        }
+        else {
+            int shares = random.nextInt(1000) + 1;
+
+            return Transaction.newAccumulate(date, new Money(price * shares), symbol, shares,
+                                             tradeCost, cashAccount, shareAccount);
+        }
+    }
+
+    private EODQuoteBundle createQuoteBundle() throws SymbolFormatException {
+        List symbols = new ArrayList();
+
+        for(int i = 0; i < SYMBOLS.length; i++)
+            symbols.add(Symbol.find(SYMBOLS[i]));
+
+        return new EODQuoteBundle(new EODQuoteRange(symbols,
+                                                    LAST_DATE.previous(DAYS - 1),
+                                                    LAST_DATE));
+    }
+
+    // Quote source that makes up quotes with fractional closes, so the
+    // rounding of each holding's value is tested.
+    private static class FractionalQuoteSource extends GeneratedQuoteSource {
+        public FractionalQuoteSource() {
+            super(LAST_DATE);
+        }
+
+        protected EODQuote createQuote(Symbol symbol, TradingDate date, int day) {
+            int seed = symbol.toString().charAt(0) - 'A';
+            float close = (float)(10 + 3 * Math.sin(day * 0.7 + seed));
+
+            return new EODQuote(symbol, date, 1000, close - 1, close + 1, close, close);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Verify that the columnar quote cache storage holds exactly the same
+ * quotes as the original hashmap storage.
+ *
+ * @see ColumnarEODQuoteCacheStorage
+ * @see HashEODQuoteCacheStorage
+ */
+public class ColumnarEODQuoteCacheStorageTest extends TestCase {
+
+    private static final int DATES = 300;
+
+    public void testLoadAndFree() throws SymbolFormatException {
+        EODQuoteCacheStorage hash = new HashEODQuoteCacheStorage();
+        EODQuoteCacheStorage columnar = new ColumnarEODQuoteCacheStorage();
+        List symbols = createSymbols();
+        Random random = new Random(1);
+
+        for(int i = 0; i < DATES; i++) {
+            hash.addDate();
+            columnar.addDate();
+        }
+
+        // Load quotes in a random order, leaving holes and reloading
+        // some quotes twice.
+        for(int i = 0; i < 5000; i++) {
+            Symbol symbol = (Symbol)symbols.get(random.nextInt(symbols.size()));
+            int dateOffset = -random.nextInt(DATES);
+            float close = random.nextFloat() * 10.0F;
+            long volume = random.nextInt(100000);
+
+            assertEquals(hash.load(symbol, dateOffset, volume, close - 1, close + 1,
+                                   close, close),
+                         columnar.load(symbol, dateOffset, volume, close - 1, close + 1,
+                                       close, close));
+        }
+
+        compare(hash, columnar, symbols, DATES);
+
+        // Free about half the quotes
+        for(int i = 0; i < 5000; i++) {
+            Symbol symbol = (Symbol)symbols.get(random.nextInt(symbols.size()));
+            int dateOffset = -random.nextInt(DATES);
+
+            assertEquals(hash.free(symbol, dateOffset), columnar.free(symbol, dateOffset));
+        }
+
+        compare(hash, columnar, symbols, DATES);
+    }
+
+    public void testInsertDate() throws SymbolFormatException {
+        EODQuoteCacheStorage hash = new HashEODQuoteCacheStorage();
+        EODQuoteCacheStorage columnar = new ColumnarEODQuoteCacheStorage();
+        List symbols = createSymbols();
+        Symbol symbol = (Symbol)symbols.get(0);
+
+        for(int i = 0; i < 10; i++) {
+            hash.addDate();
+            columnar.addDate();
+        }
+
+        hash.load(symbol, -5, 100, 1.0F, 2.0F, 1.5F, 1.75F);
+        columnar.load(symbol, -5, 100, 1.0F, 2.0F, 1.5F, 1.75F);
+
+        // Inserting newer dates shifts the existing quotes back
+        for(int i = 0; i < 3; i++) {
+            hash.insertDate();
+            columnar.insertDate();
+        }
+
+        assertTrue(columnar.containsQuote(symbol, -8));
+        assertFalse(columnar.containsQuote(symbol, -5));
+
+        hash.load(symbol, 0, 200, 2.0F, 3.0F, 2.5F, 2.75F);
+        columnar.load(symbol, 0, 200, 2.0F, 3.0F, 2.5F, 2.75F);
+
+        compare(hash, columnar, symbols, 13);
+    }
+
+    private void compare(EODQuoteCacheStorage expected, EODQuoteCacheStorage actual,
+                         List symbols, int dates) {
+        TradingDate date = new TradingDate(2000, 1, 3);
+
+        for(int dateOffset = 0; dateOffset > -dates; dateOffset--) {
+            for(int i = 0; i < symbols.size(); i++) {
+                Symbol symbol = (Symbol)symbols.get(i);
+                boolean contains = expected.containsQuote(symbol, dateOffset);
+
+                assertEquals(contains, actual.containsQuote(symbol, dateOffset));
+
+                if(!contains)
+                    continue;
+
+                try {
+                    for(int quoteType = Quote.DAY_CLOSE; quoteType <= Quote.DAY_VOLUME;
+                        quoteType++)
+                        assertEquals(expected.getQuote(symbol, quoteType, dateOffset),
+                                     actual.getQuote(symbol, quoteType, dateOffset),
+                                     0.0D);
+
+                    assertEquals(expected.getQuote(symbol, date, dateOffset),
+                                 actual.getQuote(symbol, date, dateOffset));
+                }
+                catch(QuoteNotLoadedException e) {
+                    fail("Quote " + symbol + " not loaded at " + dateOffset);
+                }
+            }
+
+            Set expectedSymbols = new HashSet();
+            Set actualSymbols = new HashSet();
+            expected.addSymbols(expectedSymbols, dateOffset - 20, dateOffset);
+            actual.addSymbols(actualSymbols, dateOffset - 20, dateOffset);
+            assertEquals(expectedSymbols, actualSymbols);
+        }
+    }
+
+    private List createSymbols() throws SymbolFormatException {
+        List symbols = new ArrayList();
+
+        for(int i = 0; i < 26; i++)
+            symbols.add(Symbol.find("Z" + (char)('A' + i) + "Q"));
+
+        return symbols;
+    }
+}
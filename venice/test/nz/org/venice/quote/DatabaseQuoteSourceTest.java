@@ -22,6 +22,14 @@ import junit.framework.TestCase;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -142,6 +150,175 @@ public class DatabaseQuoteSourceTest extends TestCase
         assertEquals(dates.get(3), new TradingDate(2005, 9, 16));
     }
 
+    /**
+     * A database manager whose prepared statements don't report how many
+     * rows each statement in a batch changed, as some JDBC drivers do.
+     * It can also pretend the database can skip existing quotes when
+     * inserting.
+     */
+    private static class NoInfoDatabaseManager extends DatabaseManager {
+        private boolean insertIgnore;
+
+        public NoInfoDatabaseManager(String fileName, boolean insertIgnore) {
+            super(fileName);
+            this.insertIgnore = insertIgnore;
+        }
+
+        protected String buildInsertNewQuoteQuery() {
+            return insertIgnore? buildInsertQuoteQuery() : null;
+        }
+
+        public PreparedStatement prepareStatement(String SQLString) throws SQLException {
+            final PreparedStatement statement = super.prepareStatement(SQLString);
+            final boolean ignoreExisting = insertIgnore && SQLString.startsWith("INSERT");
+
+            // Run each statement of the batch on its own and hide the results
+            InvocationHandler handler = new InvocationHandler() {
+                    private List parameters = new ArrayList();
+                    private List batch = new ArrayList();
+
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                        throws Throwable {
+
+                        if(method.getName().startsWith("set") && args.length == 2) {
+                            parameters.add(new Object[] {method, args});
+                            return method.invoke(statement, args);
+                        }
+                        else if(method.getName().equals("addBatch")) {
+                            batch.add(parameters);
+                            parameters = new ArrayList();
+                            return null;
+                        }
+                        else if(method.getName().equals("executeBatch")) {
+                            int[] counts = new int[batch.size()];
+
+                            for(int i = 0; i < batch.size(); i++) {
+                                for(Iterator iterator = ((List)batch.get(i)).iterator();
+                                    iterator.hasNext();) {
+                                    Object[] parameter = (Object[])iterator.next();
+                                    ((Method)parameter[0]).invoke(statement, (Object[])parameter[1]);
+                                }
+
+                                try {
+                                    statement.executeUpdate();
+                                }
+                                catch(SQLException e) {
+                                    if(!ignoreExisting)
+                                        throw e;
+                                }
+
+                                counts[i] = Statement.SUCCESS_NO_INFO;
+                            }
+
+                            batch.clear();
+                            return counts;
+                        }
+                        else {
+                            try {
+                                return method.invoke(statement, args);
+                            }
+                            catch(InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                    }
+                };
+
+            return (PreparedStatement)Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                             new Class[] {PreparedStatement.class},
+                                                             handler);
+        }
+    }
+
+    // Test that importing a quote which is already in the database
+    // replaces it, and that only the new quotes are counted
+    public void testImportReplacesQuotes() {
+        String databaseFile = createImportDatabaseFile();
+        checkImportReplacesQuotes(new DatabaseManager(databaseFile));
+    }
+
+    // Test importing quotes when the driver doesn't report whether each
+    // quote was updated or inserted
+    public void testImportWithoutUpdateCounts() {
+        String databaseFile = createImportDatabaseFile();
+        checkImportReplacesQuotes(new NoInfoDatabaseManager(databaseFile, false));
+
+        databaseFile = createImportDatabaseFile();
+        checkImportReplacesQuotes(new NoInfoDatabaseManager(databaseFile, true));
+    }
+
+    // Delete any old import test database and return its file name
+    private String createImportDatabaseFile() {
+        String[] extensions = {".log", ".properties", ".script", ".data", ".backup"};
+        String databaseFile = null;
+
+        try {
+            for(int i = 0; i < extensions.length; i++)
+                new File(".importdatabase" + extensions[i]).delete();
+
+            databaseFile = new File(".importdatabase").getCanonicalPath();
+        }
+        catch(IOException e) {
+            fail(e.getMessage());
+        }
+
+        return databaseFile;
+    }
+
+    private void checkImportReplacesQuotes(DatabaseManager databaseManager) {
+        Symbol CBA = null;
+
+        try {
+            CBA = Symbol.find("CBA");
+        }
+        catch(SymbolFormatException e) {
+            fail(e.getMessage());
+        }
+
+        DatabaseQuoteSource database = new DatabaseQuoteSource(databaseManager);
+
+        List importedQuotes = new ArrayList();
+        importedQuotes.add(new EODQuote(CBA, new TradingDate(2005, 9, 16),
+                                        1000, 12.0D, 12.0D, 12.0D, 12.0D));
+        importedQuotes.add(new EODQuote(CBA, new TradingDate(2005, 9, 15),
+                                        1000, 12.0D, 12.0D, 12.0D, 12.0D));
+        assertEquals(2, database.importQuotes(importedQuotes));
+
+        importedQuotes.set(0, new EODQuote(CBA, new TradingDate(2005, 9, 16),
+                                           2000, 11.0D, 13.0D, 11.5D, 12.5D));
+        importedQuotes.add(new EODQuote(CBA, new TradingDate(2005, 9, 14),
+                                        1000, 12.0D, 12.0D, 12.0D, 12.0D));
+        assertEquals(1, database.importQuotes(importedQuotes));
+
+        try {
+            Statement statement = databaseManager.createStatement();
+            ResultSet RS = statement.executeQuery("SELECT * FROM " +
+                                                  DatabaseManager.SHARE_TABLE_NAME +
+                                                  " ORDER BY " + DatabaseManager.DATE_FIELD);
+            int rows = 0;
+
+            while(RS.next()) {
+                if(new TradingDate(RS.getDate(DatabaseManager.DATE_FIELD)).equals(new TradingDate(2005, 9, 16))) {
+                    assertEquals(11.5D, RS.getDouble(DatabaseManager.DAY_OPEN_COLUMN), 0.0001D);
+                    assertEquals(12.5D, RS.getDouble(DatabaseManager.DAY_CLOSE_COLUMN), 0.0001D);
+                    assertEquals(13.0D, RS.getDouble(DatabaseManager.DAY_HIGH_COLUMN), 0.0001D);
+                    assertEquals(11.0D, RS.getDouble(DatabaseManager.DAY_LOW_COLUMN), 0.0001D);
+                    assertEquals(2000, RS.getLong(DatabaseManager.DAY_VOLUME_COLUMN));
+                }
+                rows++;
+            }
+
+            assertEquals(3, rows);
+            RS.close();
+            statement.close();
+        }
+        catch(SQLException e) {
+            fail(e.getMessage());
+        }
+
+        databaseManager.shutdown();
+    }
+
     //Test that bulk date AdvanceDecline returns the same data
     //as cumulating individual dates
     
@@ -0,0 +1,180 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.prefs.PreferencesManager;
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Verify that the quote bundle cache frees the least recently used quote
+ * bundles, never frees pinned quote bundles, and keeps quotes that are
+ * still used by other quote bundles.
+ *
+ * @see EODQuoteBundleCache
+ */
+public class EODQuoteBundleCacheTest extends TestCase {
+
+    private static final TradingDate LAST_DATE = new TradingDate(2005, 6, 30);
+    private static final int DAYS = 40;
+
+    private int previousMaximumCachedQuotes;
+
+    protected void setUp() {
+        previousMaximumCachedQuotes = PreferencesManager.getMaximumCachedQuotes();
+        PreferencesManager.putMaximumCachedQuotes(100);
+
+        QuoteSourceManager.setSource(new ConstantQuoteSource());
+        EODQuoteCache.expire();
+    }
+
+    protected void tearDown() {
+        PreferencesManager.putMaximumCachedQuotes(previousMaximumCachedQuotes);
+
+        // Let the quote source return to whatever the user selected
+        QuoteSourceManager.flush();
+    }
+
+    public void testPinnedQuoteBundleNotFreed() throws SymbolFormatException {
+        EODQuoteBundleCache quoteBundleCache = EODQuoteBundleCache.getInstance();
+        EODQuoteBundle a = createQuoteBundle("AAA", null);
+        EODQuoteBundle b = createQuoteBundle("BBB", null);
+
+        a.pin();
+
+        // The cache is now too big, the oldest bundle is pinned so
+        // the other one is freed.
+        EODQuoteBundle c = createQuoteBundle("CCC", null);
+
+        assertTrue(quoteBundleCache.isLoaded(a));
+        assertFalse(quoteBundleCache.isLoaded(b));
+        assertTrue(quoteBundleCache.isLoaded(c));
+        assertEquals(2 * DAYS, EODQuoteCache.getInstance().size());
+        assertEquals(1, quoteBundleCache.getEvictions());
+
+        a.unpin();
+    }
+
+    public void testSharedQuotesNotFreed() throws SymbolFormatException {
+        EODQuoteBundleCache quoteBundleCache = EODQuoteBundleCache.getInstance();
+        EODQuoteCache quoteCache = EODQuoteCache.getInstance();
+
+        createQuoteBundle("AAA", null);
+        createQuoteBundle("AAA", "BBB");
+        EODQuoteBundle b = createQuoteBundle("BBB", null);
+
+        // Loading this frees the oldest two bundles. The first one frees no
+        // quotes, as the second contains all of its quotes, but the second
+        // one frees the quotes of AAA.
+        createQuoteBundle("CCC", null);
+
+        assertEquals(2, quoteBundleCache.getEvictions());
+        assertEquals(2 * DAYS, quoteCache.size());
+        assertFalse(quoteCache.containsQuote(Symbol.find("AAA"), 0));
+        assertTrue(quoteCache.containsQuote(Symbol.find("BBB"), 0));
+        assertTrue(quoteCache.containsQuote(Symbol.find("CCC"), 0));
+        assertTrue(quoteBundleCache.isLoaded(b));
+    }
+
+    public void testStatistics() throws SymbolFormatException, MissingQuoteException {
+        EODQuoteBundleCache quoteBundleCache = EODQuoteBundleCache.getInstance();
+        EODQuoteBundle a = createQuoteBundle("AAA", null);
+
+        // All the quotes of this bundle are already loaded
+        createQuoteBundle("AAA", null);
+        assertEquals(50.0D, quoteBundleCache.getHitRate(), 0.0D);
+
+        createQuoteBundle("BBB", null);
+        createQuoteBundle("CCC", null);
+        assertFalse(quoteBundleCache.isLoaded(a));
+
+        // Reading a quote reloads the bundle
+        assertEquals(1.0D, a.getQuote(Symbol.find("AAA"), Quote.DAY_CLOSE, 0), 0.0D);
+        assertTrue(quoteBundleCache.isLoaded(a));
+        assertEquals(1, quoteBundleCache.getReloads());
+    }
+
+    public void testNewerDateInserted() throws SymbolFormatException, WeekendDateException {
+        EODQuoteBundleCache quoteBundleCache = EODQuoteBundleCache.getInstance();
+        EODQuoteCache quoteCache = EODQuoteCache.getInstance();
+        Symbol aaa = Symbol.find("AAA");
+        Symbol bbb = Symbol.find("BBB");
+
+        EODQuoteBundle a = createQuoteBundle("AAA", null);
+        EODQuoteBundle shared = createQuoteBundle("AAA", "BBB");
+        shared.pin();
+
+        // Importing a newer date shifts the date offsets of every quote
+        quoteCache.dateToOffset(LAST_DATE.next(1));
+        assertEquals(-1, quoteCache.dateToOffset(LAST_DATE));
+
+        // Freeing the first bundle mustn't free any of the quotes the
+        // pinned bundle still uses
+        createQuoteBundle("CCC", null);
+
+        assertFalse(quoteBundleCache.isLoaded(a));
+        assertEquals(1, quoteBundleCache.getEvictions());
+        assertEquals(3 * DAYS, quoteCache.size());
+
+        for(int dateOffset = shared.getFirstOffset(); dateOffset <= shared.getLastOffset();
+            dateOffset++) {
+            assertTrue(quoteCache.containsQuote(aaa, dateOffset));
+            assertTrue(quoteCache.containsQuote(bbb, dateOffset));
+        }
+
+        // Once it is unpinned, freeing the shared bundle frees all its quotes
+        shared.unpin();
+        createQuoteBundle("DDD", null);
+
+        assertFalse(quoteBundleCache.isLoaded(shared));
+        assertEquals(2 * DAYS, quoteCache.size());
+        assertFalse(quoteCache.containsQuote(aaa, -1));
+    }
+
+    // Create a quote bundle of the last DAYS days of the given symbols
+    private EODQuoteBundle createQuoteBundle(String symbol1, String symbol2)
+        throws SymbolFormatException {
+
+        List symbols = new ArrayList();
+        symbols.add(Symbol.find(symbol1));
+
+        if(symbol2 != null)
+            symbols.add(Symbol.find(symbol2));
+
+        return new EODQuoteBundle(new EODQuoteRange(symbols,
+                                                    LAST_DATE.previous(DAYS - 1),
+                                                    LAST_DATE));
+    }
+
+    // Quote source where every quote is the same
+    private static class ConstantQuoteSource extends GeneratedQuoteSource {
+        public ConstantQuoteSource() {
+            super(LAST_DATE);
+        }
+
+        protected EODQuote createQuote(Symbol symbol, TradingDate date, int day) {
+            return new EODQuote(symbol, date, 100, 1.0F, 1.0F, 1.0F, 1.0F);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.util.Currency;
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Stress test the quote cache by reading quotes from several threads while
+ * other threads load and free quotes and expire the cache. Readers don't lock
+ * the cache, so they must never see a partially loaded quote.
+ *
+ * @see EODQuoteCache
+ * @see HashEODQuoteCacheStorage
+ * @see ColumnarEODQuoteCacheStorage
+ */
+public class EODQuoteCacheConcurrencyTest extends TestCase {
+
+    // Number of days back from the newest date that quotes are loaded
+    private static final int DATES = 400;
+
+    // Number of reader threads
+    private static final int READERS = 4;
+
+    // How long each stress test runs for in milliseconds
+    private static final long DURATION = 1500;
+
+    private List symbols;
+    private List failures;
+    private volatile boolean stopped;
+
+    protected void setUp() {
+        failures = Collections.synchronizedList(new ArrayList());
+        stopped = false;
+    }
+
+    public void testHashStorage() throws InterruptedException, SymbolFormatException {
+        createSymbols();
+        stressStorage(new HashEODQuoteCacheStorage());
+    }
+
+    public void testColumnarStorage() throws InterruptedException, SymbolFormatException {
+        createSymbols();
+        stressStorage(new ColumnarEODQuoteCacheStorage());
+    }
+
+    public void testLoadFreeAndExpire() throws InterruptedException, SymbolFormatException {
+        createSymbols();
+        QuoteSourceManager.setSource(new DateQuoteSource());
+        EODQuoteCache.expire();
+
+        List threads = new ArrayList();
+
+        // Two writers that load and free quotes. Each writer looks up
+        // the cache each time, so it switches to the new cache when the
+        // old one expires.
+        for(int i = 0; i < 2; i++) {
+            final Random random = new Random(i);
+
+            threads.add(new Thread() {
+                    public void run() {
+                        while(!stopped) {
+                            EODQuoteCache cache = EODQuoteCache.getInstance();
+                            int symbolIndex = random.nextInt(symbols.size());
+                            Symbol symbol = (Symbol)symbols.get(symbolIndex);
+                            int dateOffset = -random.nextInt(DATES);
+                            TradingDate date = cache.offsetToDate(dateOffset);
+
+                            if(random.nextInt(3) == 0)
+                                cache.free(symbol, dateOffset);
+                            else {
+                                float close = getClose(symbolIndex, dateOffset);
+                                cache.load(symbol, date, (long)close * 10, close - 1,
+                                           close + 1, close, close);
+                            }
+                        }
+                    }
+                });
+        }
+
+        // Readers that check any quote they see and convert between dates
+        // and offsets, which expands the cache.
+        for(int i = 0; i < READERS; i++) {
+            final Random random = new Random(100 + i);
+
+            threads.add(new Thread() {
+                    public void run() {
+                        while(!stopped) {
+                            EODQuoteCache cache = EODQuoteCache.getInstance();
+                            int symbolIndex = random.nextInt(symbols.size());
+                            Symbol symbol = (Symbol)symbols.get(symbolIndex);
+                            int dateOffset = -random.nextInt(DATES * 2);
+                            TradingDate date = cache.offsetToDate(dateOffset);
+
+                            try {
+                                if(cache.dateToOffset(date) != dateOffset)
+                                    fail("Date " + date + " not at offset " + dateOffset);
+                            }
+                            catch(WeekendDateException e) {
+                                fail("Offset " + dateOffset + " is on a weekend");
+                            }
+
+                            try {
+                                check(symbolIndex, dateOffset,
+                                      cache.getQuote(symbol, Quote.DAY_CLOSE, dateOffset),
+                                      cache.getQuote(symbol, dateOffset));
+                            }
+                            catch(QuoteNotLoadedException e) {
+                                // OK, quote isn't loaded
+                            }
+                        }
+                    }
+                });
+        }
+
+        // Expire the cache every so often
+        threads.add(new Thread() {
+                public void run() {
+                    while(!stopped) {
+                        try {
+                            Thread.sleep(50);
+                        }
+                        catch(InterruptedException e) {
+                            return;
+                        }
+                        EODQuoteCache.expire();
+                    }
+                }
+            });
+
+        run(threads);
+
+        // Once everything is quiet, the count of quotes in the cache should
+        // match the quotes it contains.
+        EODQuoteCache cache = EODQuoteCache.getInstance();
+        int size = 0;
+
+        for(int dateOffset = 0; dateOffset > -DATES; dateOffset--)
+            for(int i = 0; i < symbols.size(); i++)
+                if(cache.containsQuote((Symbol)symbols.get(i), dateOffset))
+                    size++;
+
+        assertEquals(size, cache.size());
+
+        // Let the quote source return to whatever the user selected
+        QuoteSourceManager.flush();
+    }
+
+    // Read from a storage on several threads while a single writer loads
+    // and frees quotes and adds dates, in the same way the quote cache
+    // only ever writes to its storage on one thread at a time.
+    private void stressStorage(final EODQuoteCacheStorage storage)
+        throws InterruptedException {
+
+        final int[] dateCount = new int[1];
+        List threads = new ArrayList();
+
+        storage.addDate();
+        dateCount[0] = 1;
+
+        threads.add(new Thread() {
+                public void run() {
+                    Random random = new Random(1);
+
+                    while(!stopped) {
+                        synchronized(storage) {
+                            if(dateCount[0] < DATES && random.nextInt(10) == 0) {
+                                storage.addDate();
+                                dateCount[0]++;
+                            }
+
+                            int symbolIndex = random.nextInt(symbols.size());
+                            Symbol symbol = (Symbol)symbols.get(symbolIndex);
+                            int dateOffset = -random.nextInt(dateCount[0]);
+
+                            if(random.nextInt(3) == 0)
+                                storage.free(symbol, dateOffset);
+                            else {
+                                float close = getClose(symbolIndex, dateOffset);
+                                storage.load(symbol, dateOffset, (long)close * 10,
+                                             close - 1, close + 1, close, close);
+                            }
+                        }
+                    }
+                }
+            });
+
+        final TradingDate date = new TradingDate(2000, 1, 3);
+
+        for(int i = 0; i < READERS; i++) {
+            final Random random = new Random(100 + i);
+
+            threads.add(new Thread() {
+                    public void run() {
+                        while(!stopped) {
+                            int symbolIndex = random.nextInt(symbols.size());
+                            Symbol symbol = (Symbol)symbols.get(symbolIndex);
+                            int dateOffset = -random.nextInt(DATES);
+
+                            try {
+                                check(symbolIndex, dateOffset,
+                                      storage.getQuote(symbol, Quote.DAY_CLOSE, dateOffset),
+                                      storage.getQuote(symbol, date, dateOffset));
+                            }
+                            catch(QuoteNotLoadedException e) {
+                                // OK, quote isn't loaded
+                            }
+
+                            storage.containsQuote(symbol, dateOffset);
+                        }
+                    }
+                });
+        }
+
+        run(threads);
+    }
+
+    private void createSymbols() throws SymbolFormatException {
+        symbols = new ArrayList();
+
+        for(int i = 0; i < 26; i++)
+            symbols.add(Symbol.find("Z" + (char)('A' + i) + "C"));
+    }
+
+    // Run the threads for a while, then stop them and make sure none failed
+    private void run(List threads) throws InterruptedException {
+        for(int i = 0; i < threads.size(); i++) {
+            Thread thread = (Thread)threads.get(i);
+
+            thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    public void uncaughtException(Thread thread, Throwable e) {
+                        failures.add(e);
+                    }
+                });
+            thread.start();
+        }
+
+        Thread.sleep(DURATION);
+        stopped = true;
+
+        for(int i = 0; i < threads.size(); i++)
+            ((Thread)threads.get(i)).join();
+
+        if(!failures.isEmpty())
+            throw new AssertionError(failures.get(0));
+    }
+
+    // Each quote has its own close so a reader can tell if it sees the wrong quote
+    private static float getClose(int symbolIndex, int dateOffset) {
+        return (float)(symbolIndex * 1000 - dateOffset + 1);
+    }
+
+    // Make sure the quote values are those that were loaded. The quote may be
+    // freed and loaded again between reading the two values but that
+    // doesn't change the values.
+    private static void check(int symbolIndex, int dateOffset, double close, EODQuote quote) {
+        float expectedClose = getClose(symbolIndex, dateOffset);
+
+        assertEquals(expectedClose, close, 0.0D);
+        assertEquals(expectedClose, quote.getDayClose(), 0.0D);
+        assertEquals(expectedClose, quote.getDayOpen(), 0.0D);
+        assertEquals(expectedClose - 1, quote.getDayLow(), 0.0D);
+        assertEquals(expectedClose + 1, quote.getDayHigh(), 0.0D);
+        assertEquals((long)expectedClose * 10, quote.getDayVolume());
+    }
+
+    // The quote cache only asks the quote source for its last date. The sample
+    // quote source can't be used as it displays a progress dialog.
+    private static class DateQuoteSource implements QuoteSource {
+        public String getSymbolName(Symbol symbol) { return null; }
+        public Symbol getSymbol(String partialCompanyName) { return null; }
+        public boolean symbolExists(Symbol symbol) { return false; }
+        public TradingDate getLastDate() { return new TradingDate(2005, 6, 30); }
+        public TradingDate getFirstDate() { return new TradingDate(2000, 1, 3); }
+        public boolean loadQuoteRange(EODQuoteRange quoteRange) { return false; }
+        public boolean containsDate(TradingDate date) { return false; }
+        public List getDates() { return new ArrayList(); }
+        public boolean isMarketIndex(Symbol symbol) { return false; }
+        public int getAdvanceDecline(TradingDate date) { return 0; }
+        public HashMap getAdvanceDecline(TradingDate startDate, TradingDate endDate) {
+            return new HashMap();
+        }
+        public List getExchangeRates(Currency sourceCurrency, Currency destinationCurrency) {
+            return new ArrayList();
+        }
+        public void shutdown() {}
+        public void cacheExpiry() {}
+    }
+}
@@ -0,0 +1,106 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package nz.org.venice.quote;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import nz.org.venice.util.Currency;
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Quote source for tests that makes up a quote for each symbol on each
+ * day. The sample quote source can't be used in tests as it displays a
+ * progress dialog. Tests subclass it to say what each quote should be.
+ *
+ * Example:
+ * <pre>
+ *      QuoteSourceManager.setSource(new GeneratedQuoteSource(LAST_DATE) {
+ *              protected EODQuote createQuote(Symbol symbol, TradingDate date, int day) {
+ *                  return new EODQuote(symbol, date, 100, 1.0F, 1.0F, 1.0F, 1.0F);
+ *              }
+ *          });
+ * </pre>
+ *
+ * @see nz.org.venice.quote.SyntheticQuoteSource
+ */
+public abstract class GeneratedQuoteSource implements QuoteSource {
+
+    // Date of the last quotes
+    private final TradingDate lastDate;
+
+    /**
+     * Create a new quote source with quotes up to the given date.
+     *
+     * @param lastDate the date of the last quotes
+     */
+    public GeneratedQuoteSource(TradingDate lastDate) {
+        this.lastDate = lastDate;
+    }
+
+    /**
+     * Create the quote of the given symbol on the given date.
+     *
+     * @param symbol the symbol
+     * @param date   the date
+     * @param day    the number of days from the last date to the date,
+     *               as returned by {@link TradingDate#getDifference}
+     * @return the quote or <code>null</code> if there is no quote on that date
+     */
+    protected abstract EODQuote createQuote(Symbol symbol, TradingDate date, int day);
+
+    public boolean loadQuoteRange(EODQuoteRange quoteRange) {
+        EODQuoteCache quoteCache = EODQuoteCache.getInstance();
+
+        for(Iterator iterator = quoteRange.getAllSymbols().iterator();
+            iterator.hasNext();) {
+            Symbol symbol = (Symbol)iterator.next();
+
+            for(TradingDate date = quoteRange.getFirstDate();
+                !date.after(quoteRange.getLastDate()); date = date.next(1)) {
+                EODQuote quote = createQuote(symbol, date, lastDate.getDifference(date));
+
+                if(quote != null)
+                    quoteCache.load(quote);
+            }
+        }
+
+        return true;
+    }
+
+    public String getSymbolName(Symbol symbol) { return null; }
+    public Symbol getSymbol(String partialCompanyName) { return null; }
+    public boolean symbolExists(Symbol symbol) { return true; }
+    public TradingDate getLastDate() { return lastDate; }
+    public TradingDate getFirstDate() { return lastDate.previous(1000); }
+    public boolean containsDate(TradingDate date) { return true; }
+    public List getDates() { return new ArrayList(); }
+    public boolean isMarketIndex(Symbol symbol) { return false; }
+    public int getAdvanceDecline(TradingDate date) { return 0; }
+    public HashMap getAdvanceDecline(TradingDate startDate, TradingDate endDate) {
+        return new HashMap();
+    }
+    public List getExchangeRates(Currency sourceCurrency, Currency destinationCurrency) {
+        return new ArrayList();
+    }
+    public void shutdown() {}
+    public void cacheExpiry() {}
+}
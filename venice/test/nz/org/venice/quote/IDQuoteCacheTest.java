@@ -0,0 +1,175 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package nz.org.venice.quote;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.util.TradingDate;
+import nz.org.venice.util.TradingTime;
+
+/**
+ * Verify that the intra-day quote cache only keeps the most recent times
+ * in memory, that fast access time offsets do not change as older quotes
+ * are removed, and that removed quotes can be read back from the spill file.
+ *
+ * @see IDQuoteCache
+ */
+public class IDQuoteCacheTest extends TestCase {
+
+    private static final TradingDate DATE = new TradingDate(2005, 6, 30);
+    private static final int TIMES = 12;
+
+    private Symbol cba;
+    private Symbol anz;
+    private File file;
+
+    protected void setUp() throws IOException {
+        try {
+            cba = Symbol.find("CBA");
+            anz = Symbol.find("ANZ");
+        }
+        catch(SymbolFormatException e) {
+            fail(e.getMessage());
+        }
+
+        file = File.createTempFile("venice", ".idq");
+    }
+
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testRetention() throws QuoteNotLoadedException {
+        IDQuoteCache cache = new IDQuoteCache(5, null);
+        loadQuotes(cache);
+
+        assertEquals(TIMES - 5, cache.getFirstTimeOffset());
+        assertEquals(TIMES - 1, cache.getLastTimeOffset());
+
+        for(int i = TIMES - 5; i < TIMES; i++) {
+            assertEquals(i + 1.0D, cache.getQuote(cba, Quote.DAY_CLOSE, i), 0.0D);
+            assertEquals(getTime(i), cache.offsetToTime(i));
+            assertEquals(i, cache.timeToOffset(getTime(i)));
+        }
+
+        // ANZ only traded on even times
+        assertEquals(10 * 100, cache.getQuote(anz, Quote.DAY_VOLUME, 10), 0.0D);
+        assertNotLoaded(cache, anz, 9);
+
+        // Older quotes have been discarded
+        assertNotLoaded(cache, cba, TIMES - 6);
+        assertNull(cache.offsetToTime(TIMES - 6));
+        assertTrue(cache.timeToOffset(getTime(TIMES - 6)) < 0);
+
+        // And newer quotes haven't arrived
+        assertNotLoaded(cache, cba, TIMES);
+    }
+
+    public void testSpill() throws QuoteNotLoadedException {
+        IDQuoteCache cache = new IDQuoteCache(3, file);
+        loadQuotes(cache);
+
+        assertEquals(0, cache.getFirstTimeOffset());
+        assertEquals(TIMES - 1, cache.getLastTimeOffset());
+
+        for(int i = 0; i < TIMES; i++) {
+            IDQuote quote = cache.getQuote(cba, i);
+            assertEquals(cba, quote.getSymbol());
+            assertEquals(DATE, quote.getDate());
+            assertEquals(getTime(i), quote.getTime());
+            assertEquals(i + 1.0D, quote.getDayClose(), 0.0D);
+            assertEquals(i + 1.5D, quote.getAsk(), 0.0D);
+
+            assertEquals(getTime(i), cache.offsetToTime(i));
+            assertEquals(i, cache.timeToOffset(getTime(i)));
+
+            if(i % 2 == 0)
+                assertEquals(i * 100, cache.getQuote(anz, Quote.DAY_VOLUME, i), 0.0D);
+            else
+                assertNotLoaded(cache, anz, i);
+        }
+    }
+
+    public void testChangedSymbols() {
+        IDQuoteCache cache = new IDQuoteCache(5, null);
+        final List events = new ArrayList();
+
+        cache.addQuoteListener(new QuoteListener() {
+                public void newQuotes(QuoteEvent event) {
+                    events.add(event.getSymbols());
+                }
+            });
+
+        List quotes = new ArrayList();
+        quotes.add(new IDQuote(cba, DATE, getTime(0), 100, 1, 2, 1, 2, 1, 2));
+        quotes.add(new IDQuote(anz, DATE, getTime(0), 100, 1, 2, 1, 2, 1, 2));
+        cache.load(quotes);
+
+        // Only ANZ traded
+        quotes = new ArrayList();
+        quotes.add(new IDQuote(cba, DATE, getTime(1), 100, 1, 2, 1, 2, 1, 2));
+        quotes.add(new IDQuote(anz, DATE, getTime(1), 200, 1, 2, 1, 2, 1, 2));
+        cache.load(quotes);
+
+        // Nothing traded
+        cache.load(quotes);
+
+        assertEquals(3, events.size());
+        assertEquals(2, ((Set)events.get(0)).size());
+        assertEquals(1, ((Set)events.get(1)).size());
+        assertTrue(((Set)events.get(1)).contains(anz));
+        assertTrue(((Set)events.get(2)).isEmpty());
+    }
+
+    // Load a quote for CBA at every time and ANZ at every other time
+    private void loadQuotes(IDQuoteCache cache) {
+        for(int i = 0; i < TIMES; i++) {
+            List quotes = new ArrayList();
+
+            quotes.add(new IDQuote(cba, DATE, getTime(i), 1000 + i,
+                                   i, i + 2.0D, i + 0.5D, i + 1.0D, i + 0.75D, i + 1.5D));
+
+            if(i % 2 == 0)
+                quotes.add(new IDQuote(anz, DATE, getTime(i), i * 100,
+                                       i, i, i, i, i, i));
+
+            cache.load(quotes);
+        }
+    }
+
+    private TradingTime getTime(int i) {
+        return new TradingTime(10, i, 30);
+    }
+
+    private void assertNotLoaded(IDQuoteCache cache, Symbol symbol, int timeOffset) {
+        try {
+            cache.getQuote(symbol, Quote.DAY_CLOSE, timeOffset);
+            fail();
+        }
+        catch(QuoteNotLoadedException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+
+package nz.org.venice.quote;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Verify that quotes written to a mapped quote file are read back
+ * unchanged.
+ *
+ * @see MappedQuoteFile
+ * @see MappedQuoteFileWriter
+ */
+public class MappedQuoteFileTest extends TestCase {
+
+    private File file;
+
+    protected void setUp() throws IOException {
+        file = File.createTempFile("venice", ".vmq");
+    }
+
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testRoundTrip() throws IOException, SymbolFormatException {
+        Symbol cba = Symbol.find("CBA");
+        Symbol anz = Symbol.find("ANZ");
+        TradingDate date = new TradingDate(2005, 3, 1);
+
+        // Symbols don't have to be written in order, but their quotes
+        // have to be grouped together in date order.
+        MappedQuoteFileWriter writer = new MappedQuoteFileWriter(file);
+
+        for(int i = 0; i < 2000; i++)
+            writer.write(cba, date.next(i), 1000 + i, i, i + 2, i + 1, i + 1.5F);
+
+        writer.write(anz, date.next(1), 50, 1.0F, 2.0F, 1.5F, 1.75F);
+        writer.write(anz, date.next(3), 60, 2.0F, 3.0F, 2.5F, 2.75F);
+
+        // Duplicate quotes are skipped
+        writer.write(anz, date.next(3), 60, 2.0F, 3.0F, 2.5F, 2.75F);
+
+        assertEquals(2002, writer.close());
+
+        MappedQuoteFile mappedFile = new MappedQuoteFile(file);
+
+        try {
+            List symbols = mappedFile.getSymbols();
+            assertEquals(2, symbols.size());
+            assertEquals(anz, symbols.get(0));
+            assertEquals(cba, symbols.get(1));
+            assertEquals(2000, mappedFile.getDates().length);
+            assertEquals(date, MappedQuoteFile.toTradingDate(mappedFile.getDates()[0]));
+
+            // Read a run from the middle of the quotes
+            int first = mappedFile.findDate(cba, MappedQuoteFile.toInt(date.next(100)));
+            int last = mappedFile.findDate(cba, MappedQuoteFile.toInt(date.next(199)) + 1);
+            assertEquals(100, first);
+            assertEquals(100, last - first);
+
+            int[] dates = new int[100];
+            long[] volume = new long[100];
+            float[] low = new float[100];
+            float[] high = new float[100];
+            float[] open = new float[100];
+            float[] close = new float[100];
+            mappedFile.read(cba, first, last - first, dates, volume, low, high, open, close);
+
+            for(int i = 0; i < 100; i++) {
+                assertEquals(date.next(100 + i), MappedQuoteFile.toTradingDate(dates[i]));
+                assertEquals(1100 + i, volume[i]);
+                assertEquals(100 + i, low[i], 0.0F);
+                assertEquals(102 + i, high[i], 0.0F);
+                assertEquals(101 + i, open[i], 0.0F);
+                assertEquals(101.5F + i, close[i], 0.0F);
+            }
+
+            assertEquals(2, mappedFile.getQuoteCount(anz));
+            assertEquals(1, mappedFile.findDate(anz, MappedQuoteFile.toInt(date.next(2))));
+            assertFalse(mappedFile.containsSymbol(Symbol.find("XYZ")));
+        }
+        finally {
+            mappedFile.close();
+        }
+    }
+
+    public void testUngroupedSymbols() throws IOException, SymbolFormatException {
+        Symbol cba = Symbol.find("CBA");
+        Symbol anz = Symbol.find("ANZ");
+        TradingDate date = new TradingDate(2005, 3, 1);
+        MappedQuoteFileWriter writer = new MappedQuoteFileWriter(file);
+
+        writer.write(cba, date, 1, 1.0F, 1.0F, 1.0F, 1.0F);
+        writer.write(anz, date, 1, 1.0F, 1.0F, 1.0F, 1.0F);
+
+        try {
+            writer.write(cba, date.next(1), 1, 1.0F, 1.0F, 1.0F, 1.0F);
+            fail("Expected IOException");
+        }
+        catch(IOException e) {
+            // Expected
+        }
+
+        writer.close();
+    }
+
+    public void testReadAfterClose() throws IOException, SymbolFormatException {
+        Symbol cba = Symbol.find("CBA");
+        TradingDate date = new TradingDate(2005, 3, 1);
+        MappedQuoteFileWriter writer = new MappedQuoteFileWriter(file);
+
+        for(int i = 0; i < 10; i++)
+            writer.write(cba, date.next(i), 1000 + i, i, i + 2, i + 1, i + 1.5F);
+
+        writer.close();
+
+        // A reader that is still using the file when the quote source
+        // closes it must be able to finish reading.
+        MappedQuoteFile mappedFile = new MappedQuoteFile(file);
+        mappedFile.close();
+
+        int[] dates = new int[10];
+        long[] volume = new long[10];
+        float[] low = new float[10];
+        float[] high = new float[10];
+        float[] open = new float[10];
+        float[] close = new float[10];
+        int first = mappedFile.findDate(cba, MappedQuoteFile.toInt(date));
+        mappedFile.read(cba, first, 10, dates, volume, low, high, open, close);
+
+        assertEquals(0, first);
+        assertEquals(date.next(9), MappedQuoteFile.toTradingDate(dates[9]));
+        assertEquals(1009, volume[9]);
+    }
+
+    public void testNotMappedFile() throws IOException {
+        try {
+            new MappedQuoteFile(file);
+            fail("Expected IOException");
+        }
+        catch(IOException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Verify that converting quotes to a mapped quote file that is already
+ * being read installs a new version of the file, which the quote source
+ * then switches to.
+ *
+ * @see MappedQuoteSource
+ */
+public class MappedQuoteSourceTest extends TestCase {
+
+    private File file;
+
+    protected void setUp() throws IOException {
+        file = File.createTempFile("venice", ".vmq");
+    }
+
+    protected void tearDown() {
+        // Let the quote source return to whatever the user selected
+        QuoteSourceManager.flush();
+
+        for(int version = MappedQuoteSource.getNewestVersion(file); version >= 0; version--)
+            MappedQuoteSource.getVersionFile(file, version).delete();
+    }
+
+    public void testInstallNewVersion() throws IOException, SymbolFormatException {
+        TradingDate firstDate = new TradingDate(2005, 3, 1);
+        TradingDate secondDate = new TradingDate(2005, 6, 1);
+
+        writeQuotes(file, firstDate);
+
+        MappedQuoteSource source = new MappedQuoteSource(file);
+        QuoteSourceManager.setSource(source);
+        assertEquals(firstDate, source.getFirstDate());
+
+        // Install a new version while the current version is mapped
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        writeQuotes(temporaryFile, secondDate);
+        MappedQuoteSource.install(temporaryFile, file);
+
+        assertFalse(temporaryFile.exists());
+        assertEquals(1, MappedQuoteSource.getNewestVersion(file));
+        assertTrue(MappedQuoteSource.getVersionFile(file, 1).exists());
+        assertEquals(secondDate, source.getFirstDate());
+
+        // A new quote source also reads the newest version
+        assertEquals(secondDate, new MappedQuoteSource(file).getFirstDate());
+    }
+
+    // Write a mapped quote file containing a few quotes from the given date
+    private void writeQuotes(File fileName, TradingDate date)
+        throws IOException, SymbolFormatException {
+
+        MappedQuoteFileWriter writer = new MappedQuoteFileWriter(fileName);
+
+        for(int i = 0; i < 5; i++)
+            writer.write(Symbol.find("CBA"), date.next(i), 100, 1.0F, 2.0F, 1.5F, 1.75F);
+
+        writer.close();
+    }
+}
@@ -0,0 +1,168 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.quote;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import nz.org.venice.parser.EvaluationException;
+import nz.org.venice.util.TradingDate;
+
+/**
+ * Verify that the quote functions evaluated over a sliding quote function
+ * window give exactly the same results as when they are evaluated by
+ * reading the whole period from the quote bundle.
+ *
+ * @see QuoteFunctionWindow
+ * @see QuoteBundleFunctionSource
+ */
+public class QuoteFunctionWindowTest extends TestCase {
+
+    private final static int DAYS = 500;
+
+    public void testConsecutiveDays() throws EvaluationException, SymbolFormatException {
+        QuoteBundle quoteBundle = createQuoteBundle(1L, true, 0.0D);
+
+        for(int period = 1; period < 40; period += 7)
+            compare(quoteBundle, 0, period, 1);
+    }
+
+    public void testMissingQuotes() throws EvaluationException, SymbolFormatException {
+        QuoteBundle quoteBundle = createQuoteBundle(2L, true, 0.3D);
+
+        for(int period = 1; period < 40; period += 7) {
+            compare(quoteBundle, 0, period, 1);
+            compare(quoteBundle, -3, period, 1);
+        }
+    }
+
+    public void testSkippedDays() throws EvaluationException, SymbolFormatException {
+        QuoteBundle quoteBundle = createQuoteBundle(3L, true, 0.1D);
+
+        compare(quoteBundle, 0, 20, 3);
+        compare(quoteBundle, -1, 20, 19);
+        compare(quoteBundle, 0, 20, 20);
+        compare(quoteBundle, 0, 20, 45);
+    }
+
+    public void testInexactQuotes() throws EvaluationException, SymbolFormatException {
+        QuoteBundle quoteBundle = createQuoteBundle(4L, false, 0.1D);
+
+        compare(quoteBundle, 0, 15, 1);
+        compare(quoteBundle, -2, 30, 2);
+    }
+
+    // Move a window through every day in the quote bundle and make sure
+    // each function gives the same result as the quote bundle function source
+    private void compare(QuoteBundle quoteBundle, int offset, int period, int step)
+        throws EvaluationException, SymbolFormatException {
+
+        Symbol symbol = Symbol.find("CBA");
+
+        QuoteFunctionWindow window =
+            new QuoteFunctionWindow(quoteBundle, symbol, Quote.DAY_CLOSE, offset, period);
+
+        for(int day = 0; day < DAYS; day += step) {
+            QuoteFunctionSource source =
+                new QuoteBundleFunctionSource(quoteBundle, symbol, Quote.DAY_CLOSE,
+                                              day, offset, period);
+            window.moveTo(day);
+
+            for(int index = 0; index < period; index++)
+                assertSame(source.getValue(index), window.getValue(index));
+
+            assertSame(QuoteFunctions.avg(source, period), window.avg());
+            assertSame(QuoteFunctions.rsi(source, period), window.rsi());
+            assertSame(QuoteFunctions.smoothRSI(source, period, null).rsi,
+                       window.smoothRSI());
+            assertSame(QuoteFunctions.sd(source, period),
+                       QuoteFunctions.sd(window, period));
+            assertSame(QuoteFunctions.ema(source, period, 0.1D),
+                       QuoteFunctions.ema(window, period, 0.1D));
+        }
+    }
+
+    // Check the values are identical, including NaN
+    private void assertSame(double expected, double actual) {
+        assertEquals(new Double(expected), new Double(actual));
+    }
+
+    // Create a quote bundle containing a random walk of day close quotes.
+    // Exact quotes are rounded to single precision as they are when
+    // they are stored in the quote cache.
+    private QuoteBundle createQuoteBundle(long seed, boolean isExact,
+                                          double missingProbability) {
+        Random random = new Random(seed);
+        final double[] quotes = new double[DAYS];
+        double quote = 10.0D;
+
+        for(int day = 0; day < DAYS; day++) {
+            quote = Math.max(0.1D, quote + random.nextGaussian() * 0.2D);
+
+            if(random.nextDouble() < missingProbability)
+                quotes[day] = Double.NaN;
+            else if(isExact)
+                quotes[day] = (float)quote;
+            else
+                quotes[day] = quote;
+        }
+
+        return new QuoteBundle() {
+                public double getQuote(Symbol symbol, int quoteType, int now, int offset)
+                    throws MissingQuoteException {
+                    return getQuote(symbol, quoteType, now + offset);
+                }
+
+                public double getQuote(Symbol symbol, int quoteType, int offset)
+                    throws MissingQuoteException {
+                    if(offset < 0 || offset >= DAYS || Double.isNaN(quotes[offset]))
+                        throw MissingQuoteException.getInstance();
+                    return quotes[offset];
+                }
+
+                public double getNearestQuote(Symbol symbol, int quoteType, int offset)
+                    throws MissingQuoteException {
+                    return getQuote(symbol, quoteType, offset);
+                }
+
+                public Quote getQuote(Symbol symbol, int offset)
+                    throws MissingQuoteException {
+                    throw MissingQuoteException.getInstance();
+                }
+
+                public TradingDate offsetToDate(int offset) {
+                    return null;
+                }
+
+                public int getOffset(Quote quote) {
+                    return 0;
+                }
+
+                public int getFirstOffset() {
+                    return 0;
+                }
+
+                public int getLastOffset() {
+                    return DAYS - 1;
+                }
+            };
+    }
+}
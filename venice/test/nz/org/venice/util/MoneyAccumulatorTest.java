@@ -0,0 +1,65 @@
+/* Merchant of Venice - technical analysis software for the stock market.
+   Copyright (C) 2002 Andrew Leppard (aleppard@picknowl.com.au)
+
+   This program is free software; you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation; either version 2 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+   GNU General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this program; if not, write to the Free Software
+   Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package nz.org.venice.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Verify that summing money with a money accumulator gives exactly the
+ * same result as summing it with money.
+ *
+ * @see MoneyAccumulator
+ */
+public class MoneyAccumulatorTest extends TestCase {
+
+    public void testSameAsMoney() {
+        Currency currency = Currency.getDefaultCurrency();
+        MoneyAccumulator sum = new MoneyAccumulator(currency);
+        Money money = new Money(currency, 0.0D);
+
+        // Prices multiplied by share counts don't land on whole cents,
+        // so each addition is rounded
+        for(int i = 0; i < 1000; i++) {
+            double value = 1.2345D * i / 7.0D;
+
+            sum.add(value);
+            money = money.add(value);
+        }
+
+        Money tradeCost = new Money(currency, 29.95D);
+
+        sum.subtract(tradeCost);
+        money = money.subtract(tradeCost);
+        sum.divide(3);
+        money = money.divide(3);
+
+        assertEquals(money, sum.toMoney());
+        assertEquals(money.doubleValue(), sum.doubleValue(), 0.0D);
+
+        sum.set(tradeCost);
+        sum.add(tradeCost);
+        assertEquals(tradeCost.multiply(2), sum.toMoney());
+        assertTrue(sum.isGreaterThan(tradeCost));
+        assertFalse(sum.isLessThanEqual(tradeCost));
+
+        sum.clear();
+        assertEquals(Money.ZERO, sum.toMoney());
+    }
+}